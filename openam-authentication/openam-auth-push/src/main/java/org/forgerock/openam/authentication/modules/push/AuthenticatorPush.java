@@ -80,6 +80,7 @@ public class AuthenticatorPush extends AMLoginModule {
     private Principal principal;
 
     private PollingWaitAssistant pollingWaitAssistant;
+    private MessagePromise messagePromise;
     private UserPushDeviceProfileManager userPushDeviceProfileManager =
             InjectorHolder.getInstance(UserPushDeviceProfileManager.class);
 
@@ -143,6 +144,12 @@ public class AuthenticatorPush extends AMLoginModule {
             pollingWaitAssistant.resetWait();
             return STATE_WAIT;
         case COMPLETE:
+            try {
+                messagePromise.getPromise().getOrThrowUninterruptibly();
+            } catch (Exception e) {
+                DEBUG.warning("AuthenticatorPush :: message was not responded to.", e);
+                throw failedAsLoginException();
+            }
             storeUsername(username);
             return ISAuthConstants.LOGIN_SUCCEED;
         case TIMEOUT:
@@ -230,12 +237,13 @@ public class AuthenticatorPush extends AMLoginModule {
 
             servicePredicates.addAll(pushService.getAuthenticationMessagePredicatesFor(realm));
 
-            MessagePromise promise = messageDispatcher.expect(message.getMessageId(), servicePredicates);
+            messagePromise = messageDispatcher.expect(message.getMessageId(), servicePredicates);
             pushService.send(message, realm);
-            pollingWaitAssistant.start(promise.getPromise());
+            pollingWaitAssistant.start(messagePromise.getPromise());
             return true;
         } catch (PushNotificationException e) {
             DEBUG.error("AuthenticatorPush :: sendMessage() : Failed to transmit message through PushService.");
+            messageDispatcher.forget(message.getMessageId());
         }
 
         return false;
@@ -219,6 +219,10 @@ public abstract class CacheBlockBase {
      * @return true if cache expiry is enabled and the cache has expired
      */
     public boolean hasExpiredAndUpdated() {
+        if (!isEntryExpirationEnabled()) {
+            // Avoid taking the write lock on every read when entries never expire.
+            return false;
+        }
 
         writeLock.lock();
         try {
@@ -41,10 +41,6 @@ import com.iplanet.dpro.session.share.SessionEncodeURL;
 import com.iplanet.dpro.session.share.SessionInfo;
 import com.iplanet.services.naming.WebtopNaming;
 import com.iplanet.sso.SSOToken;
-import com.sun.identity.common.HeadTaskRunnable;
-import com.sun.identity.common.SystemTimerPool;
-import com.sun.identity.common.TaskRunnable;
-import com.sun.identity.common.TimerPool;
 import com.sun.identity.session.util.SessionUtils;
 import com.sun.identity.shared.Constants;
 import com.sun.identity.shared.debug.Debug;
@@ -61,7 +57,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -94,7 +89,7 @@ import static org.forgerock.openam.utils.Time.*;
  *
  */
 
-public class InternalSession implements TaskRunnable, Serializable {
+public class InternalSession implements Runnable, Serializable {
 
     // Debug should not be serialised.
     private transient Debug debug;
@@ -230,10 +225,8 @@ public class InternalSession implements TaskRunnable, Serializable {
     private static int interval = Integer.parseInt(
         SystemProperties.get(
         "com.sun.identity.session.interval", "10"));
-    private transient volatile TaskRunnable nextTask = null;
-    private transient volatile TaskRunnable previousTask = null;
-    private transient volatile HeadTaskRunnable headTask = null;
-    private transient TimerPool timerPool = null;
+    private transient volatile SessionExpiryScheduler.Entry expiryEntry = null;
+    private transient volatile SessionExpiryScheduler expiryScheduler = null;
     private volatile boolean reschedulePossible;
 
     /*
@@ -379,7 +372,7 @@ public class InternalSession implements TaskRunnable, Serializable {
         maxSessionTime = maxDefaultIdleTime;
         reschedulePossible = maxDefaultIdleTime > maxIdleTime;
         sessionState = INVALID;
-        timerPool = SystemTimerPool.getTimerPool();
+        expiryScheduler = SessionExpiryScheduler.getInstance();
         sessionProperties = new Properties();
         willExpireFlag = true;
     }
@@ -439,108 +432,40 @@ public class InternalSession implements TaskRunnable, Serializable {
     }
 
     /**
-     * Implements for TaskRunnable.
+     * Returns the time at which this session is next due to be checked for expiry.
      *
-     * @param headTask The HeadTask indicate the time to run this task.
-     */
-    public void setHeadTask(HeadTaskRunnable headTask) {
-        this.headTask = headTask;
-    }
-
-    /**
-     * Implements for TaskRunnable.
-     *
-     * @return The long value indicates the time this task is scheduled.
+     * @return The time in milliseconds, or -1 if the session is not scheduled.
      */
     public long scheduledExecutionTime() {
-        synchronized (this) {
-            if (headTask != null) {
-                return headTask.scheduledExecutionTime();
-            }
-        }
-        return -1;
+        SessionExpiryScheduler.Entry entry = expiryEntry;
+        return entry == null ? -1 : entry.scheduledExecutionTime();
     }
 
     /**
-     * Implements for TaskRunnable.
+     * Schedules this session to be checked for expiry at the given time.
      *
-     * @return The HeadTask of this task.
+     * @param time The time in milliseconds.
      */
-    public HeadTaskRunnable getHeadTask() {
-        // no need to synchronize for single operation
-        return headTask;
+    private void scheduleExpiryCheck(long time) {
+        expiryScheduler.schedule(getExpiryEntry(), time);
     }
 
     /**
-     * Implements for TaskRunnable.
-     *
-     * @return The task previous to this one.
+     * The wheel entry is created on first use, rather than on construction, because deserialisation
+     * bypasses field initialisers for transient fields.
      */
-    public TaskRunnable previous() {
-        return previousTask;
-    }
-
-    /**
-     * Implements for TaskRunnable.
-     *
-     * @return The task next to this one.
-     */
-    public TaskRunnable next() {
-        return nextTask;
-    }
-
-    /**
-     * Implements for TaskRunnable.
-     *
-     * @param task The task previous to this one.
-     */
-    public void setPrevious(TaskRunnable task) {
-        previousTask = task;
-    }
-
-    /**
-     * Implements for TaskRunnable.
-     *
-     * @param task The task next to this one.
-     */
-    public void setNext(TaskRunnable task) {
-        nextTask = task;
-    }
-
-    /**
-     * Implements for TaskRunnable.
-     *
-     * @return false since this class will not be used as container.
-     */
-    public boolean addElement(Object obj) {
-        return false;
-    }
-
-    /**
-     * Implements for TaskRunnable.
-     *
-     * @return false since this class will not be used as container.
-     */
-    public boolean removeElement(Object obj) {
-        return false;
-    }
-
-    /**
-     * Implements for TaskRunnable.
-     *
-     * @return true since this class will not be used as container.
-     */
-    public boolean isEmpty() {
-        return true;
-    }
-
-    /**
-     * Implements for GeneralTaskRunnable.
-     *
-     * @return -1 since it is not a periodic task.
-     */
-    public long getRunPeriod() {
-        return -1;
+    private SessionExpiryScheduler.Entry getExpiryEntry() {
+        SessionExpiryScheduler.Entry entry = expiryEntry;
+        if (entry == null) {
+            synchronized (this) {
+                entry = expiryEntry;
+                if (entry == null) {
+                    entry = new SessionExpiryScheduler.Entry(this);
+                    expiryEntry = entry;
+                }
+            }
+        }
+        return entry;
     }
 
     /**
@@ -555,10 +480,9 @@ public class InternalSession implements TaskRunnable, Serializable {
                 if (timeLeft == 0) {
                     changeStateAndNotify(SessionEvent.MAX_TIMEOUT);
                     sessionAuditor.auditActivity(toSessionInfo(), AM_SESSION_MAX_TIMED_OUT);
-                    if (timerPool != null) {
+                    if (expiryScheduler != null) {
                         if (purgeDelay > 0) {
-                            timerPool.schedule(this, new Date((timedOutAt +
-                                (purgeDelay * 60)) * 1000));
+                            scheduleExpiryCheck((timedOutAt + (purgeDelay * 60)) * 1000);
                         }
                     }
                 } else {
@@ -566,18 +490,15 @@ public class InternalSession implements TaskRunnable, Serializable {
                     if (idleTimeLeft <= 0 && sessionState != INACTIVE) {
                         changeStateAndNotify(SessionEvent.IDLE_TIMEOUT);
                         sessionAuditor.auditActivity(toSessionInfo(), AM_SESSION_IDLE_TIMED_OUT);
-                        if (timerPool != null) {
+                        if (expiryScheduler != null) {
                             if (purgeDelay > 0) {
-                                timerPool.schedule(this, new Date((timedOutAt +
-                                    (purgeDelay * 60)) * 1000));
+                                scheduleExpiryCheck((timedOutAt + (purgeDelay * 60)) * 1000);
                             }
                         }
                     } else {
                         long timeToWait = Math.min(timeLeft, idleTimeLeft);
-                        if (timerPool != null) {
-                            timerPool.schedule(this, new Date(((
-                                    currentTimeMillis() / 1000) +
-                                timeToWait) * 1000));
+                        if (expiryScheduler != null) {
+                            scheduleExpiryCheck(((currentTimeMillis() / 1000) + timeToWait) * 1000);
                         }
                     }
                 }
@@ -588,41 +509,21 @@ public class InternalSession implements TaskRunnable, Serializable {
     }
 
     /**
-     * Cancel the scheduled run of this task from TimerPool.
+     * Cancel the scheduled expiry check of this session.
      */
     public void cancel() {
-        HeadTaskRunnable oldHeadTask = null;
-        do {
-            oldHeadTask = headTask;
-            if (oldHeadTask != null) {
-                if (oldHeadTask.acquireValidLock()) {
-                    try {
-                        if (oldHeadTask == headTask) {
-                            if (!oldHeadTask.isTimedOut()) {
-                                previousTask.setNext(nextTask);
-                                if (nextTask != null) {
-                                    nextTask.setPrevious(previousTask);
-                                    nextTask = null;
-                                } else {
-                                    oldHeadTask.setTail(previousTask);
-                                }
-                            }
-                            break;
-                        }
-                    } finally {
-                        oldHeadTask.releaseLockAndNotify();
-                    }
-                }
-            }
-        } while (oldHeadTask != headTask);
-        headTask = null;
+        SessionExpiryScheduler.Entry entry = expiryEntry;
+        SessionExpiryScheduler scheduler = expiryScheduler;
+        if (entry != null && scheduler != null) {
+            scheduler.cancel(entry);
+        }
     }
 
     /**
-     * Schedule this task to TimerPool according to the current state.
+     * Schedule the expiry check of this session according to the current state.
      */
     protected void reschedule() {
-        if (timerPool != null) {
+        if (expiryScheduler != null) {
             long timeoutTime = Long.MAX_VALUE;
             switch (sessionState) {
                 case INVALID:
@@ -639,8 +540,7 @@ public class InternalSession implements TaskRunnable, Serializable {
                 cancel();
             }
             if (scheduledExecutionTime() == -1) {
-                Date time = new Date(timeoutTime);
-                timerPool.schedule(this, time);
+                scheduleExpiryCheck(timeoutTime);
             }
         }
     }
@@ -1191,7 +1091,7 @@ public class InternalSession implements TaskRunnable, Serializable {
             maxIdleTime = Long.MAX_VALUE / 60;
             maxCachingTime = serviceConfig.getApplicationMaxCachingTime();
             cancel();
-            timerPool = null;
+            expiryScheduler = null;
         }
         willExpireFlag = expire;
     }
@@ -1846,15 +1746,14 @@ public class InternalSession implements TaskRunnable, Serializable {
      */
     public void scheduleExpiry() {
         if (willExpireFlag) {
-            timerPool = SystemTimerPool.getTimerPool();
+            expiryScheduler = SessionExpiryScheduler.getInstance();
             if (!isTimedOut()) {
                 if (isInvalid()) {
                     long expectedTime = creationTime +
                         (maxDefaultIdleTime * 60);
                     if (expectedTime > (currentTimeMillis() / 1000)) {
-                        if (timerPool != null) {
-                            timerPool.schedule(this, new Date(expectedTime *
-                                1000));
+                        if (expiryScheduler != null) {
+                            scheduleExpiryCheck(expectedTime * 1000);
                         }
                     } else {
                         removeSession();
@@ -1864,9 +1763,8 @@ public class InternalSession implements TaskRunnable, Serializable {
                     if (timeLeft == 0) {
                         changeStateAndNotify(SessionEvent.MAX_TIMEOUT);
                         sessionAuditor.auditActivity(toSessionInfo(), AM_SESSION_MAX_TIMED_OUT);
-                        if (timerPool != null) {
-                            timerPool.schedule(this, new Date((timedOutAt +
-                                (purgeDelay * 60)) * 1000));
+                        if (expiryScheduler != null) {
+                            scheduleExpiryCheck((timedOutAt + (purgeDelay * 60)) * 1000);
                         }
                     } else {
                         long idleTimeLeft = (maxIdleTime * 60) - getIdleTime();
@@ -1874,16 +1772,13 @@ public class InternalSession implements TaskRunnable, Serializable {
                             sessionState != INACTIVE) {
                             changeStateAndNotify(SessionEvent.IDLE_TIMEOUT);
                             sessionAuditor.auditActivity(toSessionInfo(), AM_SESSION_IDLE_TIMED_OUT);
-                            if (timerPool != null) {
-                                timerPool.schedule(this, new Date((timedOutAt +
-                                    (purgeDelay * 60)) * 1000));
+                            if (expiryScheduler != null) {
+                                scheduleExpiryCheck((timedOutAt + (purgeDelay * 60)) * 1000);
                             }
                         } else {
                             long timeToWait = Math.min(timeLeft, idleTimeLeft);
-                            if (timerPool != null) {
-                                timerPool.schedule(this, new Date(((
-                                        currentTimeMillis() / 1000) +
-                                    timeToWait) * 1000));
+                            if (expiryScheduler != null) {
+                                scheduleExpiryCheck(((currentTimeMillis() / 1000) + timeToWait) * 1000);
                             }
                         }
                     }
@@ -1891,9 +1786,8 @@ public class InternalSession implements TaskRunnable, Serializable {
             } else {
                 long expectedTime = timedOutAt + purgeDelay * 60;
                 if (expectedTime > (currentTimeMillis() / 1000)) {
-                    if (timerPool != null) {
-                        timerPool.schedule(this, new Date(expectedTime *
-                            1000));
+                    if (expiryScheduler != null) {
+                        scheduleExpiryCheck(expectedTime * 1000);
                     }
                 } else {
                     removeSession();
@@ -11,20 +11,26 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 package com.iplanet.dpro.session.service;
 
 import com.iplanet.dpro.session.SessionID;
 
-import org.forgerock.openam.utils.SingleValueMapper;
 import org.forgerock.util.Reject;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.AbstractCollection;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Responsible for caching and providing access to {@link com.iplanet.dpro.session.service.InternalSession} objects.
@@ -40,12 +46,23 @@ import java.util.concurrent.ConcurrentHashMap;
  *
  * This cache has been designed to remove previous references to Session handles and restricted tokens
  * when they are no longer referenced by the InternalSession.
+ *
+ * Thread Safety: updates for a given SessionID are serialised on one of a fixed number of lock stripes, so
+ * updates to unrelated sessions do not contend with each other. Each cache entry records the handle and
+ * restricted tokens that were indexed for it, which allows stale secondary index entries to be removed
+ * without a global lock. Reads never lock.
  */
 @Singleton
 public class InternalSessionCache {
-    private final ConcurrentHashMap<SessionID, InternalSession> cache;
-    private final SingleValueMapper<String, InternalSession> handle = new SingleValueMapper<String, InternalSession>();
-    private final SingleValueMapper<SessionID, InternalSession> restricted = new SingleValueMapper<SessionID, InternalSession>();
+    private static final int STRIPES = 64;
+
+    private final ConcurrentMap<SessionID, Entry> cache;
+    private final ConcurrentMap<String, InternalSession> handle = new ConcurrentHashMap<String, InternalSession>();
+    private final ConcurrentMap<SessionID, InternalSession> restricted =
+            new ConcurrentHashMap<SessionID, InternalSession>();
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong contendedUpdates = new AtomicLong();
 
     /**
      * Construct an InternalSessionCache intended to provide Session caching for provided SessionService configuration.
@@ -53,11 +70,15 @@ public class InternalSessionCache {
      */
     @Inject
     public InternalSessionCache(SessionServiceConfig config) {
-        cache = new ConcurrentHashMap<SessionID, InternalSession>(config.getMaxSessions());
+        cache = new ConcurrentHashMap<SessionID, Entry>(config.getMaxSessions(), 0.75f, STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
     }
 
     public InternalSession getBySessionID(SessionID sessionID) {
-        return cache.get(sessionID);
+        Entry entry = cache.get(sessionID);
+        return entry == null ? null : entry.session;
     }
 
     public InternalSession getByHandle(String sessionHandle) {
@@ -75,52 +96,75 @@ public class InternalSessionCache {
      * - Session Handle
      * - Restricted Tokens
      *
-     * Synchronized: makes updates to multiple data structures atomic.
+     * References which were stored for a previous put of the same session, but which are no longer
+     * held by the session, are removed.
      *
      * @param session Non null InternalSession to store.
      */
-    public synchronized void put(InternalSession session) {
+    public void put(InternalSession session) {
         Reject.ifNull(session);
-        cache.put(session.getID(), session);
+        SessionID sessionID = session.getID();
+        ReentrantLock lock = lock(sessionID);
+        try {
+            String sessionHandle = session.getSessionHandle();
+            Set<SessionID> restrictedIDs = new HashSet<SessionID>(session.getRestrictedTokens());
+            Entry previous = cache.put(sessionID, new Entry(session, sessionHandle, restrictedIDs));
 
-        // Session Handle
-        if (session.getSessionHandle() != null) {
-            handle.put(session.getSessionHandle(), session);
-        }
+            if (previous != null) {
+                if (previous.handle != null && !previous.handle.equals(sessionHandle)) {
+                    handle.remove(previous.handle, previous.session);
+                }
+                for (SessionID restrictedID : previous.restrictedIDs) {
+                    if (!restrictedIDs.contains(restrictedID)) {
+                        restricted.remove(restrictedID, previous.session);
+                    }
+                }
+            }
+
+            // Session Handle
+            if (sessionHandle != null) {
+                handle.put(sessionHandle, session);
+            }
 
-        // Restricted Sessions
-        for (SessionID restrictedID : session.getRestrictedTokens()) {
-            restricted.put(restrictedID, session);
+            // Restricted Sessions
+            for (SessionID restrictedID : restrictedIDs) {
+                restricted.put(restrictedID, session);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
      * Remove the Session from the cache.
      *
-     * Synchronized: makes updates to multiple data structures atomic.
-     *
      * @param sessionID Non null SessionID.
      *
      * @return The InternalSession that was removed from the cache.
      */
-    public synchronized InternalSession remove(SessionID sessionID) {
-        InternalSession remove = cache.remove(sessionID);
+    public InternalSession remove(SessionID sessionID) {
+        ReentrantLock lock = lock(sessionID);
+        try {
+            Entry remove = cache.remove(sessionID);
 
-        if (remove == null) {
-            return null;
-        }
+            if (remove == null) {
+                return null;
+            }
 
-        // Clear Session Handle
-        if (remove.getSessionHandle() != null) {
-            handle.remove(remove.getSessionHandle());
-        }
+            // Clear Session Handle
+            if (remove.handle != null) {
+                handle.remove(remove.handle, remove.session);
+            }
 
-        // Clear Restricted Tokens
-        for (SessionID restrictedID : remove.getRestrictedTokens()) {
-            restricted.remove(restrictedID);
-        }
+            // Clear Restricted Tokens
+            for (SessionID restrictedID : remove.restrictedIDs) {
+                restricted.remove(restrictedID, remove.session);
+            }
 
-        return remove;
+            return remove.session;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -149,6 +193,78 @@ public class InternalSessionCache {
      * @return Unmodifiable collection of all Sessions that are stored in the cache.
      */
     public Collection<InternalSession> getAllSessions() {
-        return Collections.unmodifiableCollection(cache.values());
+        return Collections.unmodifiableCollection(new SessionView());
+    }
+
+    /**
+     * @return The total number of put and remove operations performed against this cache.
+     */
+    public long getUpdateCount() {
+        return updates.get();
+    }
+
+    /**
+     * @return The number of put and remove operations which had to wait for another update on the same lock stripe.
+     */
+    public long getContendedUpdateCount() {
+        return contendedUpdates.get();
+    }
+
+    private ReentrantLock lock(SessionID sessionID) {
+        Reject.ifNull(sessionID);
+        int hash = sessionID.hashCode();
+        ReentrantLock lock = locks[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+        updates.incrementAndGet();
+        if (!lock.tryLock()) {
+            contendedUpdates.incrementAndGet();
+            lock.lock();
+        }
+        return lock;
+    }
+
+    /**
+     * The cached session along with the secondary index keys which were stored for it.
+     */
+    private static final class Entry {
+        private final InternalSession session;
+        private final String handle;
+        private final Set<SessionID> restrictedIDs;
+
+        private Entry(InternalSession session, String handle, Set<SessionID> restrictedIDs) {
+            this.session = session;
+            this.handle = handle;
+            this.restrictedIDs = restrictedIDs;
+        }
+    }
+
+    /**
+     * Live view of the cached sessions.
+     */
+    private final class SessionView extends AbstractCollection<InternalSession> {
+        @Override
+        public Iterator<InternalSession> iterator() {
+            final Iterator<Entry> entries = cache.values().iterator();
+            return new Iterator<InternalSession>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public InternalSession next() {
+                    return entries.next().session;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return cache.size();
+        }
     }
 }
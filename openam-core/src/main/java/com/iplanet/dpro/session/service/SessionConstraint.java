@@ -137,6 +137,13 @@ public class SessionConstraint {
         // Step 1: get constraints for the given user via IDRepo
         int quota = getSessionQuota(is);
 
+        // When sessions are tracked on this server the count is known without visiting each session,
+        // so the sessions only need to be gathered once the quota has been reached.
+        if (SessionCount.hasFewerSessionsThan(is.getUUID(), quota)) {
+            SessionCount.incrementSessionCount(is);
+            return false;
+        }
+
 	// Step 2: get the information (session id and expiration
 	// time) of all sessions for the given user from all
 	// AM servers and/or session repository
@@ -27,7 +27,7 @@
  */
 
 /**
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 
 package com.iplanet.dpro.session.service;
@@ -56,7 +56,6 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -91,9 +90,8 @@ import org.forgerock.openam.utils.TimeUtils;
   */
 public class SessionCount {
 
-    // SessionInfoMap: uuid -> Set (list of sids)
-    private static Map uuidSessionMap = Collections
-            .synchronizedMap(new HashMap());
+    // uuid -> Set (list of sids), when the session count is tracked locally
+    private static final UserSessionIndex sessionIndex;
 
     /* Single server mode*/
     static final int SINGLE_SERVER_MODE = 1;
@@ -155,6 +153,8 @@ public class SessionCount {
         if (debug.messageEnabled()) {
             debug.message("SessionCount: useLocalSessionsInMultiServerMode set to " + useLocalSessionsInMultiServerMode);                        
         }
+
+        sessionIndex = new UserSessionIndex(isSessionCountTrackedLocally());
     }
 
     static int getDeploymentMode() {
@@ -217,24 +217,45 @@ public class SessionCount {
      * Get user sessions from local server
      */
     static Map<String, Long> getSessionsFromLocalServer(String uuid) {
-        Set<SessionID> sessions = (Set<SessionID>) uuidSessionMap.get(uuid);
         Map<String, Long> retSessions = new HashMap<String, Long>();
 
-        if (sessions != null) {
-            synchronized (sessions) {
-                for (SessionID sid : sessions) {
-                    InternalSession is = sessionService.getInternalSession(sid);
-                    
-                    if (is != null) {
-                        retSessions.put(sid.toString(), new Long(is.getExpirationTime()));
-                    }
-                }
+        for (SessionID sid : sessionIndex.getSessions(uuid)) {
+            InternalSession is = sessionService.getInternalSession(sid);
+
+            if (is != null) {
+                retSessions.put(sid.toString(), is.getExpirationTime());
             }
         }
         
         return retSessions;
     }
 
+    /**
+     * Returns true if the session count for the user is tracked by this server.
+     *
+     * @return true in single server mode, or in multi server mode when local sessions are used.
+     */
+    static boolean isSessionCountTrackedLocally() {
+        return deploymentMode == SINGLE_SERVER_MODE
+                || (deploymentMode == MULTI_SERVER_MODE && useLocalSessionsInMultiServerMode());
+    }
+
+    /**
+     * Returns true if the user is known to have fewer sessions than the quota without visiting the sessions, in
+     * which case {@link #getAllSessionsByUUID(String)} need not be called to check the quota.
+     *
+     * @param uuid User's universal unique ID.
+     * @param quota The user's session quota.
+     * @return true if the sessions are tracked on this server and there are fewer than the quota.
+     */
+    static boolean hasFewerSessionsThan(String uuid, int quota) {
+        return sessionIndex.hasFewerSessionsThan(normaliseUUID(uuid), quota);
+    }
+
+    private static String normaliseUUID(String uuid) {
+        return caseSensitiveUUID || uuid == null ? uuid : uuid.toLowerCase();
+    }
+
     /*
      * Get user sessions from session repository
      */
@@ -331,18 +352,7 @@ public class SessionCount {
      *
      */
     public static void incrementSessionCount(InternalSession is) {
-
-        if ((deploymentMode == SINGLE_SERVER_MODE) || 
-                (deploymentMode == MULTI_SERVER_MODE && useLocalSessionsInMultiServerMode())) {
-            Set sessions = (Set) uuidSessionMap.get((caseSensitiveUUID) ? is.getUUID() : is.getUUID().toLowerCase());
-            if (sessions != null) {
-                sessions.add(is.getID());
-            } else {
-                sessions = Collections.synchronizedSet(new HashSet());
-                sessions.add(is.getID());
-                uuidSessionMap.put((caseSensitiveUUID) ? is.getUUID() : is.getUUID().toLowerCase(), sessions);
-            }
-        }
+        sessionIndex.add(normaliseUUID(is.getUUID()), is.getID());
     }
 
     /**
@@ -351,23 +361,7 @@ public class SessionCount {
      *
      */
     static void decrementSessionCount(InternalSession is) {
-        String uuid = is.getUUID();
-        if (!caseSensitiveUUID && uuid != null) {
-            uuid = uuid.toLowerCase();
-        }
-        SessionID sid = is.getID();
-
-        if ((deploymentMode == SINGLE_SERVER_MODE) || 
-                (deploymentMode == MULTI_SERVER_MODE && useLocalSessionsInMultiServerMode())) {
-            Set sessions = (Set) uuidSessionMap.get(uuid);
-            if (sessions != null) {
-                sessions.remove(sid);
-                if (sessions.isEmpty()) {
-                    uuidSessionMap.remove(uuid);
-                }
-            }
-
-        }
+        sessionIndex.remove(normaliseUUID(is.getUUID()), is.getID());
     }
 
     private static SessionResponse getSessionResponse(URL svcurl,
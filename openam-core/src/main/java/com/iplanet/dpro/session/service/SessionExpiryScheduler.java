@@ -0,0 +1,391 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.iplanet.dpro.session.service;
+
+import static org.forgerock.openam.utils.Time.*;
+
+import com.iplanet.am.util.SystemProperties;
+import com.sun.identity.common.ShutdownManager;
+import com.sun.identity.shared.debug.Debug;
+import org.forgerock.util.Reject;
+import org.forgerock.util.thread.listener.ShutdownListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedules the expiry of {@link InternalSession}s on a hashed timing wheel.
+ *
+ * Each session owns a single {@link Entry} which is linked into the wheel bucket for its expiry tick, so
+ * scheduling, re-scheduling and cancelling are constant time operations which do not allocate. A single
+ * ticker thread advances the wheel once per tick and hands all of the entries which have expired in that
+ * tick to the expiry threads as one batch. Entries whose expiry lies more than one revolution away stay in
+ * their bucket until the wheel comes round to them.
+ *
+ * The expired session is run through {@link InternalSession#run()}, which performs the idle/max timeout
+ * state changes and so invokes the configured {@link org.forgerock.openam.session.service.SessionTimeoutHandler}s
+ * exactly as it did when each session was a separate {@link com.sun.identity.common.TimerPool} task.
+ *
+ * Thread Safety: each bucket is guarded by its own monitor. Changes to the schedule of one entry are
+ * serialised on that entry.
+ */
+public class SessionExpiryScheduler {
+
+    /** The name of the scheduler, used for thread names and debug. */
+    public static final String SCHEDULER_NAME = "SessionExpiryScheduler";
+    /** System property for the tick duration of the wheel in milliseconds. */
+    public static final String TICK_DURATION_PROPERTY = "org.forgerock.openam.session.expiry.tickDuration";
+    /** System property for the number of buckets in the wheel, rounded up to a power of two. */
+    public static final String WHEEL_SIZE_PROPERTY = "org.forgerock.openam.session.expiry.wheelSize";
+    /** System property for the number of threads which run expired sessions. */
+    public static final String THREAD_COUNT_PROPERTY = "org.forgerock.openam.session.expiry.threads";
+
+    private static final long DEFAULT_TICK_DURATION = 1000L;
+    private static final int DEFAULT_WHEEL_SIZE = 1024;
+    private static final int DEFAULT_THREAD_COUNT = 3;
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private static SessionExpiryScheduler instance;
+
+    private final long tickDuration;
+    private final int mask;
+    private final Bucket[] wheel;
+    private final ExecutorService executor;
+    private final Debug debug;
+    private final long startTime;
+    private final AtomicLong scheduledCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final List<Entry> expired = new ArrayList<Entry>();
+    private volatile long currentTick = 0;
+    private volatile Thread ticker;
+
+    /**
+     * Create and return the system wide session expiry scheduler.
+     *
+     * @return The started, shared scheduler.
+     */
+    public static synchronized SessionExpiryScheduler getInstance() {
+        if (instance == null) {
+            final SessionExpiryScheduler scheduler = new SessionExpiryScheduler(
+                    SystemProperties.getAsLong(TICK_DURATION_PROPERTY, DEFAULT_TICK_DURATION),
+                    SystemProperties.getAsInt(WHEEL_SIZE_PROPERTY, DEFAULT_WHEEL_SIZE),
+                    Executors.newFixedThreadPool(
+                            SystemProperties.getAsInt(THREAD_COUNT_PROPERTY, DEFAULT_THREAD_COUNT),
+                            new NamedThreadFactory(SCHEDULER_NAME)),
+                    Debug.getInstance(SCHEDULER_NAME));
+            scheduler.start();
+            ShutdownManager.getInstance().addShutdownListener(new ShutdownListener() {
+                @Override
+                public void shutdown() {
+                    synchronized (SessionExpiryScheduler.class) {
+                        scheduler.shutdown();
+                        instance = null;
+                    }
+                }
+            });
+            instance = scheduler;
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a scheduler which is not yet ticking.
+     *
+     * @param tickDuration The duration of one tick in milliseconds, also the resolution of expiry.
+     * @param wheelSize The number of buckets in the wheel, rounded up to a power of two.
+     * @param executor The executor which runs batches of expired sessions.
+     * @param debug Debug instance for errors raised by expired sessions.
+     */
+    SessionExpiryScheduler(long tickDuration, int wheelSize, ExecutorService executor, Debug debug) {
+        Reject.ifTrue(tickDuration <= 0, "Tick duration must be positive");
+        Reject.ifTrue(wheelSize <= 0, "Wheel size must be positive");
+        this.tickDuration = tickDuration;
+        this.executor = executor;
+        this.debug = debug;
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.startTime = currentTimeMillis();
+    }
+
+    /**
+     * Schedules the entry to expire at the given time. If the entry is already scheduled it is moved.
+     *
+     * @param entry Non null entry to schedule.
+     * @param time The time, in milliseconds since the epoch, at which the entry should expire.
+     */
+    public void schedule(Entry entry, long time) {
+        synchronized (entry) {
+            boolean wasScheduled = unlink(entry);
+            long tick = Math.max((time - startTime + tickDuration - 1) / tickDuration, currentTick + 1);
+            entry.time = time;
+            entry.tick = tick;
+            while (!wheel[(int) (entry.tick & mask)].add(entry)) {
+                // The ticker has already passed this bucket, so the entry is due on the next tick.
+                entry.tick = Math.max(entry.tick, currentTick) + 1;
+            }
+            if (!wasScheduled) {
+                scheduledCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes the entry from the wheel if it is scheduled.
+     *
+     * @param entry Non null entry to cancel.
+     */
+    public void cancel(Entry entry) {
+        synchronized (entry) {
+            if (unlink(entry)) {
+                scheduledCount.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return The number of entries currently waiting to expire.
+     */
+    public long getScheduledCount() {
+        return scheduledCount.get();
+    }
+
+    /**
+     * @return The total number of entries which have expired.
+     */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**
+     * @return The total number of batches of expired entries which have been run.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Starts the ticker thread.
+     */
+    synchronized void start() {
+        if (ticker == null) {
+            ticker = new Thread(new Ticker(), SCHEDULER_NAME + "-Ticker");
+            ticker.setDaemon(true);
+            ticker.start();
+        }
+    }
+
+    /**
+     * Stops the ticker thread and the expiry threads. Entries still on the wheel will not expire.
+     */
+    synchronized void shutdown() {
+        if (ticker != null) {
+            ticker.interrupt();
+            ticker = null;
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Processes every tick which has elapsed up to the given time, expiring all due entries.
+     *
+     * Only called by the ticker thread, or directly by tests when the ticker has not been started.
+     *
+     * @param now The current time in milliseconds since the epoch.
+     */
+    void advance(long now) {
+        long target = (now - startTime) / tickDuration;
+        while (currentTick < target) {
+            long tick = currentTick + 1;
+            wheel[(int) (tick & mask)].expire(tick, expired);
+            currentTick = tick;
+        }
+        if (!expired.isEmpty()) {
+            expiredCount.addAndGet(expired.size());
+            scheduledCount.addAndGet(-expired.size());
+            for (int from = 0; from < expired.size(); from += MAX_BATCH_SIZE) {
+                int to = Math.min(from + MAX_BATCH_SIZE, expired.size());
+                dispatch(expired.subList(from, to).toArray(new Entry[to - from]));
+            }
+            expired.clear();
+        }
+    }
+
+    private void dispatch(final Entry[] batch) {
+        batchCount.incrementAndGet();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (Entry entry : batch) {
+                        try {
+                            entry.session.run();
+                        } catch (RuntimeException e) {
+                            debug.error("SessionExpiryScheduler: error expiring session", e);
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            debug.warning("SessionExpiryScheduler: dropped batch of {} expired sessions during shutdown",
+                    batch.length);
+        }
+    }
+
+    private boolean unlink(Entry entry) {
+        Bucket bucket = entry.bucket;
+        return bucket != null && bucket.remove(entry);
+    }
+
+    /**
+     * The position of a single {@link InternalSession} on the wheel. An entry is created once per session
+     * and reused for every re-schedule.
+     */
+    public static final class Entry {
+        private final InternalSession session;
+        private volatile Bucket bucket;
+        private volatile long time = -1;
+        private Entry previous;
+        private Entry next;
+        private long tick;
+
+        /**
+         * @param session The session to run when this entry expires.
+         */
+        public Entry(InternalSession session) {
+            this.session = session;
+        }
+
+        /**
+         * @return The time in milliseconds the entry is scheduled to expire, or -1 if it is not scheduled.
+         */
+        public long scheduledExecutionTime() {
+            return bucket == null ? -1 : time;
+        }
+    }
+
+    /**
+     * A doubly linked list of entries, guarded by its own monitor.
+     */
+    private static final class Bucket {
+        private Entry head;
+        private long expiredTick = -1;
+
+        private synchronized boolean add(Entry entry) {
+            if (entry.tick <= expiredTick) {
+                return false;
+            }
+            entry.previous = null;
+            entry.next = head;
+            if (head != null) {
+                head.previous = entry;
+            }
+            head = entry;
+            entry.bucket = this;
+            return true;
+        }
+
+        private synchronized boolean remove(Entry entry) {
+            if (entry.bucket != this) {
+                return false;
+            }
+            unlinkLocked(entry);
+            return true;
+        }
+
+        private synchronized void expire(long tick, List<Entry> expired) {
+            expiredTick = tick;
+            Entry entry = head;
+            while (entry != null) {
+                Entry next = entry.next;
+                if (entry.tick <= tick) {
+                    unlinkLocked(entry);
+                    expired.add(entry);
+                }
+                entry = next;
+            }
+        }
+
+        private void unlinkLocked(Entry entry) {
+            if (entry.previous != null) {
+                entry.previous.next = entry.next;
+            } else {
+                head = entry.next;
+            }
+            if (entry.next != null) {
+                entry.next.previous = entry.previous;
+            }
+            entry.previous = null;
+            entry.next = null;
+            entry.bucket = null;
+        }
+    }
+
+    /**
+     * Sleeps until the start of each tick and advances the wheel.
+     */
+    private final class Ticker implements Runnable {
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    long nextTickTime = startTime + (currentTick + 1) * tickDuration;
+                    long sleep = nextTickTime - currentTimeMillis();
+                    if (sleep > 0) {
+                        Thread.sleep(sleep);
+                    }
+                    advance(currentTimeMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    debug.error("SessionExpiryScheduler: error advancing wheel", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates daemon threads with a common name prefix.
+     */
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
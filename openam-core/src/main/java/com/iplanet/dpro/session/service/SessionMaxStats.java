@@ -24,7 +24,7 @@
  *
  * $Id: SessionMaxStats.java,v 1.4 2008/06/25 05:41:31 qcheng Exp $
  *
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 package com.iplanet.dpro.session.service;
 
@@ -92,7 +92,10 @@ public class SessionMaxStats implements StatsListener {
                            "Max active sessions Current/Peak:" +
                            maxActiveSessions + "/" + peakActiveSessions + "\n" +
                            "Session Notifications in Queue Current/Peak:"
-                           + notificationQueue + "/" + peakNotificationQueue);
+                           + notificationQueue + "/" + peakNotificationQueue + "\n" +
+                           "Session table updates Total/Contended:" +
+                           internalSessionCache.getUpdateCount() + "/" +
+                           internalSessionCache.getContendedUpdateCount());
        } 
        else {
            stats.record("No sessions found in session table");
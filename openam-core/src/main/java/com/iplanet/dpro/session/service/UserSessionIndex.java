@@ -0,0 +1,141 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.iplanet.dpro.session.service;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.iplanet.dpro.session.SessionID;
+import org.forgerock.util.annotations.VisibleForTesting;
+
+/**
+ * Index of the sessions held on this server for each user, used by {@link SessionCount} to answer session
+ * quota checks without visiting every session.
+ * <p>
+ * The index is a concurrent map of concurrent sets, so sessions of different users are added and removed without
+ * contending on a shared lock. A user's set is removed from the index once it is empty, and additions retry if
+ * their set is removed concurrently.
+ * <p>
+ * The index only holds sessions when the session count is tracked on this server. Otherwise it is disabled, and
+ * quota checks must fall back to asking the other servers or the session repository.
+ */
+final class UserSessionIndex {
+
+    private final ConcurrentMap<String, Set<SessionID>> uuidSessionMap =
+            new ConcurrentHashMap<String, Set<SessionID>>();
+    private final boolean enabled;
+
+    /**
+     * Constructs a new index.
+     *
+     * @param enabled Whether the session count is tracked on this server.
+     */
+    UserSessionIndex(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return Whether the session count is tracked on this server.
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds a session created for a user.
+     *
+     * @param uuid The normalised universal ID of the user.
+     * @param sid The ID of the session.
+     */
+    void add(String uuid, SessionID sid) {
+        if (!enabled || uuid == null) {
+            return;
+        }
+        while (true) {
+            Set<SessionID> sessions = uuidSessionMap.get(uuid);
+            if (sessions == null) {
+                Set<SessionID> created = Collections.newSetFromMap(new ConcurrentHashMap<SessionID, Boolean>());
+                sessions = uuidSessionMap.putIfAbsent(uuid, created);
+                if (sessions == null) {
+                    sessions = created;
+                }
+            }
+            sessions.add(sid);
+            if (uuidSessionMap.get(uuid) == sessions) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes a session of a user which has been destroyed or has timed out. Removing a session which is not
+     * indexed has no effect.
+     *
+     * @param uuid The normalised universal ID of the user.
+     * @param sid The ID of the session.
+     */
+    void remove(String uuid, SessionID sid) {
+        if (!enabled || uuid == null) {
+            return;
+        }
+        Set<SessionID> sessions = uuidSessionMap.get(uuid);
+        if (sessions != null) {
+            sessions.remove(sid);
+            if (sessions.isEmpty() && uuidSessionMap.remove(uuid, sessions)) {
+                // A concurrent add may have added to the set before it was removed from the index.
+                for (SessionID remaining : sessions) {
+                    add(uuid, remaining);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs of the sessions held on this server for a user.
+     *
+     * @param uuid The normalised universal ID of the user.
+     * @return A live view of the user's sessions, or an empty set.
+     */
+    Set<SessionID> getSessions(String uuid) {
+        Set<SessionID> sessions = uuid == null ? null : uuidSessionMap.get(uuid);
+        return sessions == null ? Collections.<SessionID>emptySet() : sessions;
+    }
+
+    /**
+     * Returns true if the user is known to have fewer sessions on this server than the quota, in which case a new
+     * session can be allowed without gathering the user's sessions. When this returns false the quota may or may
+     * not have been reached: the index may be disabled, or may still hold sessions which have since gone, so the
+     * sessions must be gathered to decide.
+     *
+     * @param uuid The normalised universal ID of the user.
+     * @param quota The user's session quota.
+     * @return true if a new session is within the quota.
+     */
+    boolean hasFewerSessionsThan(String uuid, int quota) {
+        return enabled && getSessions(uuid).size() < quota;
+    }
+
+    /**
+     * @return The number of users with sessions in the index.
+     */
+    @VisibleForTesting
+    int getUserCount() {
+        return uuidSessionMap.size();
+    }
+}
@@ -394,8 +394,7 @@ public class AMLoginContext {
             if (isPureJAAS()) {
                 debug.message("Using pure jaas mode.");
                 if (authThread == null) {
-                    authThread = new AuthThreadManager();
-                    authThread.start();
+                    authThread = AuthThreadManager.getInstance();
                 }
             }
 
@@ -972,6 +971,8 @@ public class AMLoginContext {
             debug.message("Returning getRequiredInfo... :" + getRequiredInfo);
         }
         authThread.removeFromHash(thread, "timeoutHash");
+        // only the callback handler checks for timed out threads, do not keep this request thread
+        authThread.removeFromHash(thread, "timedOutHash");
         return getRequiredInfo;
     }
 
@@ -33,78 +33,71 @@ package com.sun.identity.authentication.service;
 
 import static org.forgerock.openam.utils.Time.*;
 
-import java.util.Enumeration;
-import java.util.Hashtable;
-
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.identity.common.ShutdownManager;
 import com.sun.identity.shared.debug.Debug;
+import org.forgerock.util.thread.listener.ShutdownListener;
 
 /**
- * AuthThreadManager sleeps for n milliseconds as set in 
- * iplanet-am-auth-sleep-interval wakes up and checks for each thread 
- * in the timeout Hash for timeout.
- * If thread has timed out adds thread to timedOutHash and removed from
- * timeoutHash. 
+ * AuthThreadManager times out the threads of pure JAAS logins which are
+ * waiting for callbacks to be requested or submitted.
+ * When a thread starts waiting a timeout task is scheduled for it; if the
+ * thread is still waiting when the task runs, the thread is added to the
+ * timed out threads and interrupted. The task is cancelled when the thread
+ * stops waiting, so idle logins cost a single scheduled task each rather than
+ * a periodic scan of every waiting thread.
  */
-public class AuthThreadManager extends Thread   {
+public class AuthThreadManager {
+
+    private static final String NAME = "AuthThreadManager";
+    static Debug debug = Debug.getInstance("amThreadManager");
+    private static AuthThreadManager instance;
 
-    long timeout = 60;
-    static Debug debug = null;
-    static int i=0;
-    Hashtable timeoutHash = new Hashtable();
-    Hashtable timedOutHash = new Hashtable();
-    long lastCallbackSent;
-    long defaultSleepTime = 300000;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ConcurrentMap<Thread, TimeoutTask> timeoutHash = new ConcurrentHashMap<>();
+    private final Set<Thread> timedOutHash = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
 
     /**
-     * Creates <code>AuthThreadManager</code> object.
+     * Returns the shared <code>AuthThreadManager</code>, creating it on first use.
+     *
+     * @return the shared <code>AuthThreadManager</code>.
      */
-    public AuthThreadManager () {
-        debug = Debug.getInstance("amThreadManager");
-        defaultSleepTime = AuthD.getAuth().getDefaultSleepTime();
-        if (debug.messageEnabled()) {
-            debug.message("Default sleep time : " + defaultSleepTime);
+    public static synchronized AuthThreadManager getInstance() {
+        if (instance == null) {
+            final AuthThreadManager manager = new AuthThreadManager();
+            ShutdownManager.getInstance().addShutdownListener(new ShutdownListener() {
+                @Override
+                public void shutdown() {
+                    manager.shutdown();
+                }
+            });
+            instance = manager;
         }
+        return instance;
     }
 
     /**
-     * thread sleeps for n milliseconds as set in iplanet-am-auth-sleep-interval
-     * wakes up and checks for each thread in the timeout Hash for timeout.
-     * if thread has timed out adds thread to timedOutHash and removed from
-     * timeoutHash 
+     * Creates <code>AuthThreadManager</code> object.
      */
-    public void run() {
-        while (true) {
-            try {
-                sleep(defaultSleepTime);
-                if (debug.messageEnabled()) {
-                    debug.message("Thread Waking up");
-                    debug.message("timeoutHash :" + timeoutHash);
-                }
-
-                if ((timeoutHash != null) && (!timeoutHash.isEmpty())) {
-                    Enumeration timeoutElem = timeoutHash.keys();
-                    while (timeoutElem.hasMoreElements()) {
-                        Object key = timeoutElem.nextElement();
-                        Thread thread = (Thread) key;
-                        Hashtable s = (Hashtable) timeoutHash.get(key);
-                        long timeout = ((Long)s.get("PageTimeout")).longValue();
-                        long lastCallbackSent = 
-                            ((Long) s.get("LastCallbackSent")).longValue();
-
-                        if (isLoginTimeout(lastCallbackSent , timeout)) {
-                            if (debug.messageEnabled()) {
-                                debug.message("Interrupting thread" + thread);
-                            }
-                            thread.interrupt();
-                            timeoutHash.remove(key);
-                            timedOutHash.put(thread, Boolean.TRUE);
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                debug.message("Error run : " , e);
+    public AuthThreadManager() {
+        scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, NAME);
+                thread.setDaemon(true);
+                return thread;
             }
-        }
+        });
+        // cancelled timeouts are the common case, do not keep them queued until they are due
+        scheduler.setRemoveOnCancelPolicy(true);
     }
 
     /**
@@ -115,14 +108,21 @@ public class AuthThreadManager extends Thread   {
      */
     public boolean isLoginTimeout(long lastCallbackSent, long timeout) {
         long now = currentTimeMillis();
-        long timeoutVal = lastCallbackSent + (timeout -3) * 1000;
-        return (timeoutVal < now);
+        return (getTimeoutTime(lastCallbackSent, timeout) < now);
+    }
+
+    private long getTimeoutTime(long lastCallbackSent, long timeout) {
+        return lastCallbackSent + (timeout - 3) * 1000;
     }
 
     /**
-     * Stores the thread as key and the time out value &
-     * last callback sent in a Hashtable 
-     * @param currentThread will be stored
+     * Schedules the thread to be timed out once the page timeout has
+     * passed since the last callback was sent, or since now if that is
+     * later: the last callback sent time is not set until the first page
+     * is sent, and may be older than the page timeout on later pages, and a
+     * thread which has just started waiting must not be interrupted at once.
+     * Does nothing if the thread is already scheduled.
+     * @param currentThread will be timed out
      * @param pageTimeOut configured timeout value
      * @param lastCallbackSent time for last callback was sent
      */
@@ -133,17 +133,16 @@ public class AuthThreadManager extends Thread   {
         if (debug.messageEnabled()) {
             debug.message("Setting hash... : "  + currentThread);
         }
-        if (timeoutHash.contains(currentThread)) {
+        TimeoutTask task = new TimeoutTask(currentThread);
+        if (timeoutHash.putIfAbsent(currentThread, task) != null) {
             return;
         }
-        Hashtable param = new Hashtable();
-        param.put("PageTimeout" , new Long(pageTimeOut));
-        param.put("LastCallbackSent",new Long(lastCallbackSent));
-
-        timeoutHash.put(currentThread,param);    
+        long now = currentTimeMillis();
+        long delay = getTimeoutTime(Math.max(lastCallbackSent, now), pageTimeOut) - now;
+        task.future = scheduler.schedule(task, Math.max(delay, 0), TimeUnit.MILLISECONDS);
 
         if (debug.messageEnabled()){
-            debug.message("timeOutHash is : " + timeoutHash);
+            debug.message("Waiting threads : " + timeoutHash.size());
         }
     }
 
@@ -153,18 +152,7 @@ public class AuthThreadManager extends Thread   {
      * @return <code>true</code> if the is timed out
      */
     public boolean isTimedOut(Thread thread) {
-        if (debug.messageEnabled()) {
-            debug.message("Timed ut hash has : " + timedOutHash);
-        }
-        if  ((timedOutHash ==  null) || (timedOutHash.isEmpty())) {
-            return false;
-        }
-        try {
-            Boolean timedOut = (Boolean) timedOutHash.get(thread);
-            return timedOut.booleanValue();
-        } catch (Exception e ) {
-            return false;
-        }
+        return timedOutHash.contains(thread);
     }
     
     /**
@@ -178,27 +166,54 @@ public class AuthThreadManager extends Thread   {
                 thread + "from hash : " + hashName);
         }
         if (hashName.equals("timeoutHash")) {
-            removeHash(timeoutHash,thread);
-            if (debug.messageEnabled()){
-                debug.message("timeOutHash is : " + timeoutHash);
+            TimeoutTask task = timeoutHash.remove(thread);
+            if (task != null) {
+                task.cancel();
             }
         }
 
         if (hashName.equals("timedOutHash")) {
-            removeHash(timedOutHash,thread);
-            if (debug.messageEnabled()){
-                debug.message("timedOutHash is : " + timedOutHash);
-            }
+            timedOutHash.remove(thread);
         } 
     }
 
-    void removeHash(Hashtable hash,Thread thread) {
-        if ((hash == null) || hash.isEmpty()) {
-            return;
+    /**
+     * Cancels all scheduled timeouts and stops the timeout thread.
+     */
+    void shutdown() {
+        scheduler.shutdownNow();
+        timeoutHash.clear();
+    }
+
+    /**
+     * Times out its thread unless the thread stopped waiting, and so removed
+     * this task, first.
+     */
+    private final class TimeoutTask implements Runnable {
+
+        private final Thread thread;
+        private volatile ScheduledFuture<?> future;
+
+        private TimeoutTask(Thread thread) {
+            this.thread = thread;
         }
-        try {
-            hash.remove(thread);
-        } catch (Exception e) {
+
+        @Override
+        public void run() {
+            if (timeoutHash.remove(thread, this)) {
+                if (debug.messageEnabled()) {
+                    debug.message("Interrupting thread" + thread);
+                }
+                timedOutHash.add(thread);
+                thread.interrupt();
+            }
+        }
+
+        private void cancel() {
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
         }
     }
 }
@@ -93,6 +93,15 @@ public class IdCacheBlock extends CacheBlockBase {
         }
     }
 
+    /**
+     * Returns the longest time for which any cache entry remains valid.
+     *
+     * @return the expiration time in milliseconds, or 0 if cache entry expiration is disabled
+     */
+    public static long getMaxEntryExpirationTime() {
+        return ENTRY_EXPIRATION_ENABLED_FLAG ? Math.max(ENTRY_USER_EXPIRE_TIME, ENTRY_DEFAULT_EXPIRE_TIME) : 0;
+    }
+
     public Set getFullyQualifiedNames() {
         return (fullyQualifiedNames);
     }
@@ -24,6 +24,7 @@
  *
  * $Id: IdCacheStats.java,v 1.2 2008/08/07 17:22:06 arviranga Exp $
  *
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 
 package com.sun.identity.idm.common;
@@ -34,7 +35,8 @@ import com.sun.identity.shared.stats.StatsListener;
 /** 
  * <code>IdCacheStats</code> implements the <code>StatsListener</code>
  * and provides the information of the total number of entry in cache 
- * table and the number of hits and total number of reads.
+ * table, the number of hits and total number of reads, the number of
+ * evictions and the time taken to load entries on a cache miss.
  */
 public class IdCacheStats implements StatsListener {
 
@@ -54,6 +56,12 @@ public class IdCacheStats implements StatsListener {
 
     long totalSearchHits = 0;   // Overall search cache hits
 
+    long totalEvictions = 0;    // Overall entries evicted from the cache
+
+    long totalLoads = 0;        // Overall loads from the data stores
+
+    long totalLoadTime = 0;     // Overall time spent loading, in milliseconds
+
     private Stats stats = null;
 
 
@@ -99,6 +107,19 @@ public class IdCacheStats implements StatsListener {
         }
     }
 
+    public void incrementEvictionCount(int sizeOfCache) {
+        if (stats.isEnabled()) {
+            totalEvictions++;
+            cacheSize = sizeOfCache;
+        }
+    }
+
+    public void updateLoadTime(long loadTimeMillis) {
+        if (stats.isEnabled()) {
+            totalLoads++;
+            totalLoadTime += loadTimeMillis;
+        }
+    }
 
     /**
      * Prints the session statistics for the given session table.
@@ -122,6 +143,11 @@ public class IdCacheStats implements StatsListener {
                 + "\nTotal number of FQDN Search hits since server start: "
                 + totalSearchHits + "\nOverall Hit ratio: "
                 + (double) totalSearchHits / (double) totalSearchRequests
+                + "\nTotal number of evictions since server start: "
+                + totalEvictions
+                + "\nTotal number of loads from data stores since server start: "
+                + totalLoads + "\nAverage load time (ms): "
+                + (double) totalLoadTime / (double) totalLoads
                 + "\nTotal Cache Size: " + cacheSize + "\n");
 
         // Reset interval hits to 0
@@ -0,0 +1,210 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.idm.server;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.iplanet.am.sdk.AMEvent;
+import com.sun.identity.common.DNUtils;
+import com.sun.identity.idm.common.IdCacheBlock;
+import org.forgerock.guava.common.cache.Cache;
+import org.forgerock.guava.common.cache.CacheBuilder;
+import org.forgerock.guava.common.cache.RemovalListener;
+
+/**
+ * The identity attribute cache used by {@link IdCachedServicesImpl}, holding an {@link IdCacheBlock} for each
+ * universal identifier.
+ * <p>
+ * The cache is bounded to a maximum size. Reads do not lock the cache, and writes only lock the segment holding
+ * the entry. When cache entry expiration is enabled, entries which have not been used for longer than the
+ * expiration time are removed, as they would have expired when next used anyway.
+ */
+final class IdCache {
+
+    private static final String AMSDKDN = ",amsdkdn=";
+
+    private final Cache<String, IdCacheBlock> cache;
+
+    /**
+     * Constructs a new cache.
+     *
+     * @param maxSize The maximum number of entries held.
+     * @param expirationTime The time in milliseconds after which unused entries are removed, or 0 to keep them
+     *                       until they are evicted.
+     * @param removalListener Listener notified when an entry is removed or evicted.
+     */
+    IdCache(int maxSize, long expirationTime, RemovalListener<Object, Object> removalListener) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .removalListener(removalListener);
+        if (expirationTime > 0) {
+            builder.expireAfterAccess(expirationTime, TimeUnit.MILLISECONDS);
+        }
+        cache = builder.build();
+    }
+
+    /**
+     * Returns the cache block for the universal identifier.
+     *
+     * @param dn The lower case universal identifier.
+     * @return The cache block, or null if there is none.
+     */
+    IdCacheBlock get(String dn) {
+        return cache.getIfPresent(dn);
+    }
+
+    /**
+     * Returns the cache block for the universal identifier, adding one unless another thread has already done so.
+     *
+     * @param dn The lower case universal identifier.
+     * @return The cache block.
+     */
+    IdCacheBlock getOrCreate(String dn) {
+        IdCacheBlock cb = new IdCacheBlock(dn, true);
+        IdCacheBlock existing = cache.asMap().putIfAbsent(dn, cb);
+        return existing == null ? cb : existing;
+    }
+
+    /**
+     * Returns the cache block for the normalised DN of an entry, which may also be cached without its AMSDK DN.
+     *
+     * @param dn The normalised DN.
+     * @return The cache block, or null if there is none.
+     */
+    IdCacheBlock find(String dn) {
+        IdCacheBlock cb = cache.getIfPresent(dn);
+        if (cb == null) {
+            int ind = dn.toLowerCase().indexOf(AMSDKDN);
+            if (ind > -1) {
+                // TODO: Should return entries which might have amsdkDN but
+                // notifications have not told us about it (like
+                // notifications from plugins other than AMSDKRepo
+                cb = cache.getIfPresent(dn.substring(0, ind));
+            }
+        }
+        return cb;
+    }
+
+    /**
+     * Removes the cache block for the universal identifier.
+     *
+     * @param dn The lower case universal identifier.
+     */
+    void remove(String dn) {
+        cache.invalidate(dn);
+    }
+
+    /**
+     * Updates the cache for an event notification, removing the entries or attributes affected by the changes,
+     * deletions or renaming of entries with and without aci's.
+     *
+     * @param dn The normalised DN of the entry.
+     * @param eventType The {@link AMEvent} type of modification.
+     * @param cosType true if it is cos related.
+     * @param aciChange true if it is aci related.
+     * @param attrNames Set of attribute names which should be removed from the cache entries in the case of a cos
+     *                  change.
+     */
+    void dirty(String dn, int eventType, boolean cosType, boolean aciChange, Set attrNames) {
+        IdCacheBlock cb;
+        String cachedID = getCacheId(dn);
+        switch (eventType) {
+        case AMEvent.OBJECT_ADDED:
+            cb = find(dn);
+            if (cb != null) { // Mark an invalid entry as valid now
+                cb.setExists(true);
+            }
+            if (cosType) { // A cos type event remove all affected attributes
+                removeCachedAttributes(cachedID, attrNames);
+            }
+            break;
+        case AMEvent.OBJECT_REMOVED:
+        case AMEvent.OBJECT_RENAMED:
+            // Better to remove the renamed entry, or else it will be just
+            // hanging in the cache, until LRU kicks in.
+            cb = cache.asMap().remove(cachedID);
+            if (cb != null) {
+                cb.clear(); // Clear anyway & help the GC process
+            }
+            if (cosType) {
+                removeCachedAttributes(cachedID, attrNames);
+            }
+            break;
+        case AMEvent.OBJECT_CHANGED:
+            cb = find(dn);
+            if (cb != null) {
+                cb.clear(); // Just clear the entry. Don't remove.
+            }
+            if (cosType) {
+                removeCachedAttributes(cachedID, attrNames);
+            } else if (aciChange) { // Clear all affected entries
+                removeCachedAttributes(cachedID, null);
+            }
+            break;
+        }
+    }
+
+    /**
+     * Removes all the cache blocks.
+     */
+    void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return The number of cache blocks.
+     */
+    int size() {
+        return (int) cache.size();
+    }
+
+    /**
+     * @return A view of the cache blocks by universal identifier.
+     */
+    Map<String, IdCacheBlock> asMap() {
+        return cache.asMap();
+    }
+
+    // Clears the attributes of all the entries whose DN ends with the affected DN, or the whole entry when no
+    // attributes are given
+    private void removeCachedAttributes(String affectDNs, Set attrNames) {
+        for (Map.Entry<String, IdCacheBlock> entry : cache.asMap().entrySet()) {
+            String key = DNUtils.normalizeDN(entry.getKey());
+            int l1 = key.length();
+            int l2 = affectDNs.length();
+            if (key.regionMatches(true, (l1 - l2), affectDNs, 0, l2)) {
+                // key ends with 'affectDN' string
+                IdCacheBlock cb = entry.getValue();
+                if (cb != null) {
+                    if ((attrNames != null) && !cb.hasExpiredAndUpdated() && cb.isExists()) {
+                        cb.removeAttributes(attrNames);
+                    } else {
+                        cb.clear();
+                    }
+                }
+            }
+        }
+    }
+
+    // strip away amsdkdn from dn.
+    private String getCacheId(String dn) {
+        int ind = dn.toLowerCase().indexOf(AMSDKDN);
+        return ind > -1 ? dn.substring(0, ind) : dn;
+    }
+}
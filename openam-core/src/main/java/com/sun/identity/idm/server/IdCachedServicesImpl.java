@@ -24,13 +24,11 @@
  *
  * $Id: IdCachedServicesImpl.java,v 1.21 2009/08/25 06:50:53 hengming Exp $
  *
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 package com.sun.identity.idm.server;
 
-import com.iplanet.am.sdk.AMEvent;
 import com.iplanet.am.sdk.AMHashMap;
-import com.iplanet.am.util.Cache;
 import com.iplanet.am.util.SystemProperties;
 import com.iplanet.sso.SSOException;
 import com.iplanet.sso.SSOToken;
@@ -54,10 +52,12 @@ import com.sun.identity.monitoring.MonitoringUtil;
 import com.sun.identity.monitoring.SsoServerIdRepoSvcImpl;
 import com.sun.identity.shared.stats.Stats;
 import com.sun.identity.sm.ServiceManager;
-import java.util.Enumeration;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+import org.forgerock.guava.common.cache.RemovalListener;
+import org.forgerock.guava.common.cache.RemovalNotification;
 import org.forgerock.openam.utils.CrestQuery;
 import org.forgerock.util.thread.listener.ShutdownListener;
 import org.forgerock.util.thread.listener.ShutdownManager;
@@ -78,7 +78,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
     private static IdCachedServicesImpl instance;
 
     // Class Private
-    private Cache idRepoCache;
+    private volatile IdCache idRepoCache;
 
     private IdCacheStats cacheStats;
 
@@ -106,17 +106,42 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
 
     private IdCachedServicesImpl() {
         super();
-        initializeCache();
         stats = Stats.getInstance(getClass().getName());
         cacheStats = new IdCacheStats(IdConstants.IDREPO_CACHESTAT);
         stats.addStatsListener(cacheStats);
         if (MonitoringUtil.isRunning()) {
             monIdRepo = Agent.getIdrepoSvcMBean();
         }
+        initializeCache();
     }
 
+    /**
+     * Creates the cache, bounded to the maximum size, which counts the entries evicted to keep within the bound.
+     */
     private void initializeCache() {
-        idRepoCache = new Cache(maxSize);
+        idRepoCache = new IdCache(maxSize, IdCacheBlock.getMaxEntryExpirationTime(),
+                new RemovalListener<Object, Object>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<Object, Object> notification) {
+                        if (notification.wasEvicted()) {
+                            cacheStats.incrementEvictionCount(getSize());
+                            if (MonitoringUtil.isRunning() && ((monIdRepo = Agent.getIdrepoSvcMBean()) != null)) {
+                                monIdRepo.incCacheEvictions(getSize());
+                            }
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Records the time taken to load attributes from the data stores on a cache miss.
+     */
+    private void recordLoadTime(long startTime) {
+        long loadTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        cacheStats.updateLoadTime(loadTime);
+        if (MonitoringUtil.isRunning() && ((monIdRepo = Agent.getIdrepoSvcMBean()) != null)) {
+            monIdRepo.incCacheLoadTime(loadTime);
+        }
     }
 
     private void resetCache(int maxCacheSize) {
@@ -171,13 +196,10 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("\n<<<<<<< BEGIN SDK CACHE CONTENTS >>>>>>>>");
-        if (!idRepoCache.isEmpty()) { // Should never be null
-            Enumeration cacheKeys = idRepoCache.keys();
-            while (cacheKeys.hasMoreElements()) {
-                String key = (String) cacheKeys.nextElement();
-                IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(key);
-                sb.append("\nSDK Cache Block: ").append(key);
-                sb.append(cb.toString());
+        if (idRepoCache.size() > 0) {
+            for (Map.Entry<String, IdCacheBlock> entry : idRepoCache.asMap().entrySet()) {
+                sb.append("\nSDK Cache Block: ").append(entry.getKey());
+                sb.append(entry.getValue().toString());
             }
         } else {
             sb.append("<empty>");
@@ -189,32 +211,6 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
     /*************************************************************************/
     // Update/Dirty methods of this class.
     // *************************************************************************
-    private void removeCachedAttributes(String affectDNs, Set attrNames) {
-        Enumeration cacheKeys = idRepoCache.keys();
-        while (cacheKeys.hasMoreElements()) {
-            String key = DNUtils.normalizeDN(
-                cacheKeys.nextElement().toString());
-            int l1 = key.length();
-            int l2 = affectDNs.length();
-            if (key.regionMatches(true, (l1 - l2), affectDNs, 0, l2)) {
-                // key ends with 'affectDN' string
-                IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(key);
-                if (cb != null) {
-                    // key ends with 'affectDN' string
-                    if ((attrNames != null) &&
-                        !cb.hasExpiredAndUpdated() && cb.isExists()) {
-                        cb.removeAttributes(attrNames);
-                    } else {
-                        cb.clear();
-                    }
-                }
-            }
-        }
-    }
-
-    private void clearCachedEntries(String affectDNs) {
-        removeCachedAttributes(affectDNs, null);
-    }
 
     /**
      * This method is used to clear the entire SDK cache in the event that
@@ -250,59 +246,16 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
      */
     public void dirtyCache(String dn, int eventType, boolean cosType,
         boolean aciChange, Set attrNames) {
-        IdCacheBlock cb;
         String originalDN = dn;
         dn = DNUtils.normalizeDN(dn);
-        String cachedID = getCacheId(dn);
-        switch (eventType) {
-        case AMEvent.OBJECT_ADDED:
-            cb = getFromCache(dn);
-            if (cb != null) { // Mark an invalid entry as valid now
-                cb.setExists(true);
-            }
-            if (cosType) { // A cos type event remove all affected attributes
-                removeCachedAttributes(cachedID, attrNames);
-            }
-            break;
-        case AMEvent.OBJECT_REMOVED:
-            cb = (IdCacheBlock) idRepoCache.remove(cachedID);
-            if (cb != null) {
-                cb.clear(); // Clear anyway & help the GC process
-            }
-            if (cosType) {
-                removeCachedAttributes(cachedID, attrNames);
-            }
-            break;
-        case AMEvent.OBJECT_RENAMED:
-            // Better to remove the renamed entry, or else it will be just
-            // hanging in the cache, until LRU kicks in.
-            cb = (IdCacheBlock) idRepoCache.remove(cachedID);
-            if (cb != null) {
-                cb.clear(); // Clear anyway & help the GC process
-            }
-            if (cosType) {
-                removeCachedAttributes(cachedID, attrNames);
-            }
-            break;
-        case AMEvent.OBJECT_CHANGED:
-            cb = getFromCache(dn);
-            if (cb != null) {
-                cb.clear(); // Just clear the entry. Don't remove.
-            }
-            if (cosType) {
-                removeCachedAttributes(cachedID, attrNames);
-            } else if (aciChange) { // Clear all affected entries
-                clearCachedEntries(cachedID);
-            }
-            break;
-        }
+        idRepoCache.dirty(dn, eventType, cosType, aciChange, attrNames);
         if (DEBUG.messageEnabled()) {
             DEBUG.message("IdCachedServicesImpl.dirtyCache(): Cache "
                     + "dirtied because of Event Notification. Parameters - "
                     + "eventType: " + eventType + ", cosType: "
                     + cosType + ", aciChange: " + aciChange
                     + ", fullDN: " + originalDN + "; rfcDN ="
-                    + dn + "; cachedID=" + cachedID);
+                    + dn);
         }
     }
 
@@ -313,7 +266,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
     private void updateCache(SSOToken token, String dn, Map stringAttributes,
         Map byteAttributes) throws IdRepoException, SSOException {
         String key = dn; // This is already normalized
-        IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(key);
+        IdCacheBlock cb = idRepoCache.get(key);
         if (cb != null && !cb.hasExpiredAndUpdated() && cb.isExists()) {
             AMIdentity tokenId = IdUtils.getIdentity(token);
             String pDN = tokenId.getUniversalId();
@@ -323,7 +276,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
 
     private void dirtyCache(String dn) {
         String key = DNUtils.normalizeDN(dn);
-        IdCacheBlock cb = getFromCache(key);
+        IdCacheBlock cb = idRepoCache.find(key);
         if (cb != null) {
             cb.clear();
         }
@@ -369,7 +322,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         AMHashMap attributes;
 
         // Check in the cache
-        IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(dn);
+        IdCacheBlock cb = idRepoCache.get(dn);
         if (cb == null) { // Entry not present in cache
             if (DEBUG.messageEnabled()) {
                 DEBUG.message("IdCachedServicesImpl.getAttributes(): "
@@ -381,15 +334,16 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
             // If the attributes returned here have an empty set as value, then
             // such attributes do not have a value or invalid attributes.
             // Internally keep track of these attributes.
+            long startTime = System.nanoTime();
             attributes = (AMHashMap) super.getAttributes(token, type, name,
                     attrNames, amOrgName, amsdkDN, isStringValues);
+            recordLoadTime(startTime);
 
             // Find the missing attributes and add to cache
             Set missAttrNames = attributes.getMissingAndEmptyKeys(attrNames);
-            cb = new IdCacheBlock(dn, true);
+            cb = idRepoCache.getOrCreate(dn);
             cb.putAttributes(principalDN, attributes, missAttrNames, false,
                     !isStringValues);
-            idRepoCache.put(dn, cb);
         } else { // Entry present in cache
             attributes = (AMHashMap) cb.getAttributes(principalDN, attrNames,
                     !isStringValues);
@@ -405,9 +359,11 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
                             + "attributes from DS: "
                             + missAttrNames);
                 }
+                long startTime = System.nanoTime();
                 AMHashMap dsAttributes = (AMHashMap) super.getAttributes(token,
                         type, name, attrNames, amOrgName, amsdkDN,
                         isStringValues);
+                recordLoadTime(startTime);
                 attributes.putAll(dsAttributes);
 
                 // Add these attributes, may be found in DS or just mark them
@@ -452,7 +408,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         String principalDN = IdUtils.getUniversalId(tokenId);
 
         // Get the cache entry
-        IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(dn);
+        IdCacheBlock cb = idRepoCache.get(dn);
         AMHashMap attributes;
         if ((cb != null) && cb.hasCompleteSet(principalDN)) {
             cacheStats.updateGetHitCount(getSize());
@@ -475,11 +431,12 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
                     + " complete attribute"
                     + " set NOT found in cache. Getting from DS.");
             }
+            long startTime = System.nanoTime();
             attributes = (AMHashMap) super.getAttributes(token, type, name,
                 amOrgName, amsdkDN);
+            recordLoadTime(startTime);
             if (cb == null) {
-                cb = new IdCacheBlock(dn, true);
-                idRepoCache.put(dn, cb);
+                cb = idRepoCache.getOrCreate(dn);
             }
             cb.putAttributes(principalDN, attributes, null, true, false);
             if (DEBUG.messageEnabled()) {
@@ -545,7 +502,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         // Update the cache
         AMIdentity id = new AMIdentity(token, name, type, orgName, amsdkDN);
         String dn = id.getUniversalId().toLowerCase();
-        IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(dn);
+        IdCacheBlock cb = idRepoCache.get(dn);
         if ((cb != null) && !cb.hasExpiredAndUpdated() && cb.isExists()) {
             // Remove the attributes
             cb.removeAttributes(attrNames);
@@ -584,7 +541,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
                 // If not search in server.
                 AMIdentity uvid = new AMIdentity(token, pattern, type, orgName, null);
                 String universalID = uvid.getUniversalId().toLowerCase();
-                IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(universalID);
+                IdCacheBlock cb = idRepoCache.get(universalID);
                 if ((cb != null) && !cb.hasExpiredAndUpdated() && cb.isExists() &&
                                                                             (ctrl.getSearchModifierMap() == null)) {
                     // Check if search is for a specific identity
@@ -634,7 +591,7 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
 
         // Get the cache entry
         Set answer = null;
-        IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(dn);
+        IdCacheBlock cb = idRepoCache.get(dn);
         if (cb != null) {
             // Get the fully qualified names
             answer = cb.getFullyQualifiedNames();
@@ -650,32 +607,6 @@ public class IdCachedServicesImpl extends IdServicesImpl implements IdCachedServ
         return (answer);
     }
 
-    // Return cache block for the universal identifier
-    private IdCacheBlock getFromCache(String dn) {
-        IdCacheBlock cb = (IdCacheBlock) idRepoCache.get(dn);
-        if (cb == null) {
-            int ind = dn.toLowerCase().indexOf(",amsdkdn=");
-            if (ind > -1) {
-                String tmp = dn.substring(0, ind);
-                // TODO: Should return entries which might have amsdkDN but
-                // notifications have not told us about it (like
-                // notifications from plugins other than AMSDKRepo
-                cb = (IdCacheBlock) idRepoCache.get(tmp);
-            }
-        }
-        return cb;
-    }
-
-    // strip away amsdkdn from dn.
-    private String getCacheId(String dn) {
-        String cachedId = dn;
-        int ind = dn.toLowerCase().indexOf(",amsdkdn=");
-        if (ind > -1) {
-             cachedId = dn.substring(0, ind);
-        }
-        return cachedId;
-    }
-
     @Override
     public synchronized void notifyChanges() {
         final int value = SystemProperties.getAsInt(CACHE_MAX_SIZE_KEY, CACHE_MAX_SIZE_INT);
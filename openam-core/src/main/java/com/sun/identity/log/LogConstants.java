@@ -24,7 +24,7 @@
  *
  * $Id: LogConstants.java,v 1.16 2008/09/18 22:56:31 veiming Exp $
  *
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  * Portions Copyrighted 2013 Cybernetica AS.
  * Portions Copyrighted 2014 Nomura Research Institute, Ltd
  */
@@ -310,6 +310,20 @@ public class LogConstants {
     public static final String BUFFER_TIME =
         "iplanet-am-logging-buffer-time-in-seconds";
     public static final long BUFFER_TIME_DEFAULT = 3600;
+    /**
+     * Property defining the maximum number of log records each handler holds
+     * in memory while waiting to write them.
+     */
+    public static final String BUFFER_MAX_RECORDS =
+        "org.forgerock.openam.logging.buffer.maxRecords";
+    public static final int BUFFER_MAX_RECORDS_DEFAULT = 10000;
+    /**
+     * Property defining what happens to a log record when its handler already
+     * holds the maximum number of records in memory; BLOCK (the default) to
+     * wait for space, or DROP to discard the record.
+     */
+    public static final String BUFFER_BACKPRESSURE =
+        "org.forgerock.openam.logging.buffer.backpressure";
     /**
      * Attribute defining the Time Buffering Status; ON or OFF.
      * @supported.api
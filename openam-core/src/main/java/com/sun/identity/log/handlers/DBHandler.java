@@ -33,6 +33,7 @@ import static org.forgerock.openam.utils.Time.*;
 
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -42,12 +43,14 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Formatter;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
@@ -88,7 +91,10 @@ public class DBHandler extends Handler {
     private String password;
     private int recCountLimit;
     private int recMaxDBMem = 2;
-    private LinkedList<LogRecord> recordBuffer;
+    private LogRecordBuffer<LogRecord> recordBuffer;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    // Records which could not be written, to be written before the next buffered records.
+    private final LinkedList<LogRecord> retryBuffer = new LinkedList<LogRecord>();
     private TimeBufferingTask bufferTask;
     private boolean timeBufferingEnabled = false;
     private SsoServerLoggingSvcImpl logServiceImplForMonitoring = null;
@@ -349,7 +355,12 @@ public class DBHandler extends Handler {
             connectionToDBLost = false;
         }
 
-        recordBuffer = new LinkedList<LogRecord>();
+        recordBuffer = LogRecordBuffer.create(recCountLimit, new Runnable() {
+            @Override
+            public void run() {
+                nonBlockingFlush();
+            }
+        });
         if (timeBufferingEnabled) {
             startTimeBufferingThread();
         }
@@ -375,16 +386,19 @@ public class DBHandler extends Handler {
         if (!isLoggable(logRecord)) {
             return;
         }
-        synchronized (this) {
-            recordBuffer.add(logRecord);
-            if (recordBuffer.size() >= recCountLimit) {
-                if (Debug.messageEnabled()) {
-                    Debug.message(tableName + ":DBHandler:.publish(): got "
-                        + recordBuffer.size() + " records, Limit "
-                        + recCountLimit + " writing all");
-                }
-                nonBlockingFlush();
+        if (!recordBuffer.offer(logRecord)) {
+            if (MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
+                dbLogHandlerForMonitoring.incHandlerDroppedCount(1);
             }
+            return;
+        }
+        if (recordBuffer.size() >= recCountLimit) {
+            if (Debug.messageEnabled()) {
+                Debug.message(tableName + ":DBHandler:.publish(): got "
+                    + recordBuffer.size() + " records, Limit "
+                    + recCountLimit + " writing all");
+            }
+            nonBlockingFlush();
         }
     }
 
@@ -398,6 +412,17 @@ public class DBHandler extends Handler {
      * @throws SQLException if there is an issue creating or preparing the statement values.
      */
     private PreparedStatement getInsertPreparedStatement(List<String> values) throws SQLException {
+        PreparedStatement preparedStatement = conn.prepareStatement(getInsertStatementString(values.size()));
+        setInsertValues(preparedStatement, values);
+        return preparedStatement;
+    }
+
+    /**
+     * Construct the INSERT statement with placeholders for the given number of values.
+     * @param valueCount The number of values inserted.
+     * @return The INSERT statement.
+     */
+    private String getInsertStatementString(int valueCount) {
 
         StringBuilder insertStringBuffer = new StringBuilder(2000);
         insertStringBuffer.append("INSERT INTO ").append(tableName);
@@ -409,7 +434,7 @@ public class DBHandler extends Handler {
         insertStringBuffer.append(" VALUES (");
 
         // Inset a placeholder for every value we have.
-        for (int i = 0; i < (values.size() - 1); i++) {
+        for (int i = 0; i < (valueCount - 1); i++) {
            insertStringBuffer.append("?,");
         }
         // Finish with remaining value placeholder less the ,
@@ -420,9 +445,16 @@ public class DBHandler extends Handler {
             Debug.message(tableName +
                 ":DBHandler:getInsertPreparedStatement preparedStatementString is " + preparedStatementString);
         }
+        return preparedStatementString;
+    }
 
-        PreparedStatement preparedStatement = conn.prepareStatement(preparedStatementString);
-
+    /**
+     * Set the values to be inserted on the INSERT statement.
+     * @param preparedStatement The INSERT statement.
+     * @param values The values to be inserted.
+     * @throws SQLException if there is an issue setting the statement values.
+     */
+    private void setInsertValues(PreparedStatement preparedStatement, List<String> values) throws SQLException {
         // Column numbers in PreparedStatements start at 1 not 0.
         // Set the time and data values directly, these are always the first two columns.
         preparedStatement.setTimestamp(1, new Timestamp(Long.parseLong(values.get(0))));
@@ -435,8 +467,6 @@ public class DBHandler extends Handler {
         for (int i = 2; i < values.size(); i++) {
             preparedStatement.setString(i + 1, values.get(i));
         }
-
-        return preparedStatement;
     }
 
     /**
@@ -495,67 +525,65 @@ public class DBHandler extends Handler {
 
     /**
      * Flush any buffered messages.
+     * <p>
+     * The logging thread writes every record buffered by the time it runs,
+     * so only one task is scheduled at a time.
      */
     protected void nonBlockingFlush() {
-        LinkedList<LogRecord> tempBuffer = null;
-        synchronized (this) {
-            if (recordBuffer.size() <= 0) {
-                if (Debug.messageEnabled()) {
-                    Debug.message(tableName + ":DBHandler:nonBlockingFlush: no records in buffer to write");
-                }
-                return;
-            }
-
-            String tableName = getTableName();
-            if (tableName == null) {
-                Debug.error(tableName + ":DBHandler:nonBlockingFlush:NullLocationException: table name is null");
-                int recordsToBeDropped = recordBuffer.size();
-                recordBuffer.clear();
-                //Monit start
-                if (MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
-                    dbLogHandlerForMonitoring.incHandlerDroppedCount(recordsToBeDropped);
-                }
-                //Monit end
-                return;
-            } else {
-                tempBuffer = recordBuffer;
-                recordBuffer = new LinkedList<LogRecord>();
+        if (recordBuffer.size() <= 0 && !hasRecordsToRetry()) {
+            if (Debug.messageEnabled()) {
+                Debug.message(tableName + ":DBHandler:nonBlockingFlush: no records in buffer to write");
             }
+            return;
+        }
+        if (!flushScheduled.compareAndSet(false, true)) {
+            return;
         }
 
-        LogTask task = new LogTask(tempBuffer);
+        LogTask task = new LogTask();
         try {
             // Get an instance as required otherwise it can cause issues on container restart.
             LoggingThread.getInstance().run(task);
         } catch (ThreadPoolException ex) {
             // use current thread to flush the data if ThreadPool is shutdown
-            synchronized (this) {
-                task.run();
-            }
+            task.run();
         }
     }
 
     @Override
     public void flush() {
         synchronized (this) {
-            if (recordBuffer.size() <= 0) {
-                return;
-            }
+            writeBufferedRecords();
+        }
+    }
 
-            String tableName = getTableName();
-            if (tableName == null) {
-                int recordsToBeDropped = recordBuffer.size();
-                recordBuffer.clear();
-                //Monit start
-                if (MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
-                    dbLogHandlerForMonitoring.incHandlerDroppedCount(recordsToBeDropped);
-                }
-                //Monit end
-                return;
+    private synchronized boolean hasRecordsToRetry() {
+        return !retryBuffer.isEmpty();
+    }
+
+    /**
+     * Writes the records left from a failed write followed by the buffered records.
+     * Must be called holding the lock on this handler.
+     */
+    private void writeBufferedRecords() {
+        LinkedList<LogRecord> records = new LinkedList<LogRecord>(retryBuffer);
+        retryBuffer.clear();
+        recordBuffer.drainTo(records);
+        if (records.isEmpty()) {
+            return;
+        }
+
+        String tableName = getTableName();
+        if (tableName == null) {
+            Debug.error(tableName + ":DBHandler:nonBlockingFlush:NullLocationException: table name is null");
+            //Monit start
+            if (MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
+                dbLogHandlerForMonitoring.incHandlerDroppedCount(records.size());
             }
-            logRecords(recordBuffer);
-            recordBuffer.clear();
+            //Monit end
+            return;
         }
+        logRecords(records);
     }
     
     /**
@@ -588,38 +616,19 @@ public class DBHandler extends Handler {
     }
 
     private void clearBuffer(LinkedList<LogRecord> buffer) {
-        synchronized (this) {
-            int reccnt = recordBuffer.size();
-            if (buffer != recordBuffer) {
-                reccnt += buffer.size();
+        int removeCount = buffer.size() - recMaxDBMem;
+        if (removeCount > 0) {
+            Debug.error(tableName + ":DBHandler:dropping " + removeCount + " records.");
+            for (int i = 0; i < removeCount; ++i) {
+                buffer.removeFirst();
             }
-            if (reccnt > recMaxDBMem) {            
-                int removeCount = reccnt - recMaxDBMem;
-                    Debug.error(tableName + ":DBHandler:dropping " + removeCount + " records.");
-                if (removeCount >= buffer.size()) {
-                    removeCount -= buffer.size();
-                    buffer.clear();
-                }
-                for(int i = 0; i < removeCount; ++i) {
-                    if (!buffer.isEmpty()) {
-                        buffer.remove(0);
-                    } else {
-                        recordBuffer.remove(0);
-                    }
-                }
-                //Monit start
-                if (MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
-                    dbLogHandlerForMonitoring.incHandlerDroppedCount(removeCount);
-                }
-                //Monit end
-            }
-            if ((buffer != recordBuffer) && (!buffer.isEmpty())) {
-                int bufsize = buffer.size();
-                for (int i = 0; i < bufsize; i++) {
-                    recordBuffer.addFirst(buffer.removeLast());
-                }
+            //Monit start
+            if (MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
+                dbLogHandlerForMonitoring.incHandlerDroppedCount(removeCount);
             }
+            //Monit end
         }
+        retryBuffer.addAll(buffer);
     }
 
     /**
@@ -1009,12 +1018,20 @@ public class DBHandler extends Handler {
             closeStatement(testConnectionStatement);
         }
 
+        insertBatch(records);
+
+        //
+        //  insert any records the batch did not, one at a time, so
+        //  that failures are recovered from record by record.
+        //
         PreparedStatement insertStatement = null;
-        for (LogRecord record : records) {
+        for (Iterator<LogRecord> iterator = records.iterator(); iterator.hasNext();) {
+            LogRecord record = iterator.next();
             List<String> values = getValues(record);
             try {
                 insertStatement = getInsertPreparedStatement(values);
                 insertStatement.executeUpdate();
+                iterator.remove();
                 //Monit start
                 if (MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
                     dbLogHandlerForMonitoring.incHandlerSuccessCount(1);
@@ -1068,6 +1085,7 @@ public class DBHandler extends Handler {
                     try {
                         insertStatement = getInsertPreparedStatement(values);
                         insertStatement.executeUpdate();
+                        iterator.remove();
                     } catch (SQLException sqle2) {
                         //  guess NOW it's an error
                         Debug.error(tableName +
@@ -1137,6 +1155,7 @@ public class DBHandler extends Handler {
                         createTable (tableName);
                         insertStatement = getInsertPreparedStatement(values);
                         insertStatement.executeUpdate();
+                        iterator.remove();
                         //Monit start
                         if (MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
                             dbLogHandlerForMonitoring.incHandlerSuccessCount(1);
@@ -1190,6 +1209,63 @@ public class DBHandler extends Handler {
         }
     }
 
+    /**
+     * Inserts the records with a single batch, removing those which the database reports as inserted. Any records
+     * left are to be inserted one at a time.
+     * @param records The records to insert.
+     */
+    private void insertBatch(LinkedList<LogRecord> records) {
+        if (records.size() < 2) {
+            return;
+        }
+        PreparedStatement insertStatement = null;
+        int inserted = 0;
+        try {
+            for (LogRecord record : records) {
+                List<String> values = getValues(record);
+                if (insertStatement == null) {
+                    insertStatement = conn.prepareStatement(getInsertStatementString(values.size()));
+                }
+                setInsertValues(insertStatement, values);
+                insertStatement.addBatch();
+            }
+            insertStatement.executeBatch();
+            inserted = records.size();
+            records.clear();
+        } catch (BatchUpdateException bue) {
+            //
+            //  drivers either stop at the first failed insert or carry
+            //  on and mark each failed insert; either way the counts
+            //  tell which of the records are already in the table.
+            //
+            int[] updateCounts = bue.getUpdateCounts();
+            Iterator<LogRecord> iterator = records.iterator();
+            for (int i = 0; updateCounts != null && i < updateCounts.length && iterator.hasNext(); i++) {
+                iterator.next();
+                if (updateCounts[i] != Statement.EXECUTE_FAILED) {
+                    iterator.remove();
+                    inserted++;
+                }
+            }
+            if (Debug.messageEnabled()) {
+                Debug.message(tableName + ":DBHandler:insertBatch:BatchUpdateException (" + bue.getErrorCode()
+                        + "): " + bue.getMessage() + ", " + records.size() + " records left");
+            }
+        } catch (SQLException sqle) {
+            if (Debug.messageEnabled()) {
+                Debug.message(tableName + ":DBHandler:insertBatch:SQLException (" + sqle.getErrorCode() + "): "
+                        + sqle.getMessage());
+            }
+        } finally {
+            closeStatement(insertStatement);
+        }
+        //Monit start
+        if (inserted > 0 && MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
+            dbLogHandlerForMonitoring.incHandlerSuccessCount(inserted);
+        }
+        //Monit end
+    }
+
     private void closeResultSet(ResultSet resultSet) {
 
         if (resultSet != null) {
@@ -1220,15 +1296,12 @@ public class DBHandler extends Handler {
 
     private class LogTask implements Runnable {
 
-        private LinkedList<LogRecord> buffer;
-
-        public LogTask(LinkedList<LogRecord> buffer) {
-            this.buffer = buffer;
-        }
-
         public void run() {
-
-            logRecords(buffer);
+            synchronized (DBHandler.this) {
+                // Records published from here on need another task to write them.
+                flushScheduled.set(false);
+                writeBufferedRecords();
+            }
         }
     }
 
@@ -41,10 +41,12 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
@@ -62,6 +64,7 @@ import com.sun.identity.monitoring.Agent;
 import com.sun.identity.monitoring.MonitoringUtil;
 import com.sun.identity.monitoring.SsoServerLoggingHdlrEntryImpl;
 import com.sun.identity.monitoring.SsoServerLoggingSvcImpl;
+import org.forgerock.util.annotations.VisibleForTesting;
 import java.io.FileNotFoundException;
 import java.util.Calendar;
 
@@ -91,7 +94,8 @@ public class FileHandler extends java.util.logging.Handler {
     private Formatter formatter;
     private String fileName;
     private int recCountLimit;
-    private LinkedList recordBuffer;
+    private LogRecordBuffer<String> recordBuffer;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
     private TimeBufferingTask bufferTask;
     private boolean timeBufferingEnabled = false;
     private boolean rotateEnabled = true;
@@ -108,15 +112,22 @@ public class FileHandler extends java.util.logging.Handler {
 
     private static final String DEFAULT_LOG_SUFFIX_FORMAT = "-MM.dd.yy-kk.mm";
 
+    /**
+     * Large enough for a batch of buffered records to reach the file in a single write.
+     */
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
     private class MeteredStream extends OutputStream {
 
         OutputStream out;
         String filename = null;
+        long written;
 
         MeteredStream(File fileName, boolean append) throws IOException {
             this.filename = fileName.toString();
             FileOutputStream fout = new FileOutputStream(filename, append);
-            this.out = new BufferedOutputStream(fout);
+            this.out = new BufferedOutputStream(fout, WRITE_BUFFER_SIZE);
+            this.written = fileName.length();
         }
 
         /**
@@ -127,6 +138,7 @@ public class FileHandler extends java.util.logging.Handler {
          */
         public void write(int b) throws IOException {
             out.write(b);
+            written++;
         }
 
         /**
@@ -137,6 +149,7 @@ public class FileHandler extends java.util.logging.Handler {
          */
         public void write(byte[] b) throws IOException {
             out.write(b);
+            written += b.length;
         }
 
         /**
@@ -150,6 +163,7 @@ public class FileHandler extends java.util.logging.Handler {
         public void write(byte[] b, int offset, int length)
                 throws IOException {
             out.write(b, offset, length);
+            written += length;
         }
 
         /**
@@ -382,7 +396,7 @@ public class FileHandler extends java.util.logging.Handler {
         }
         logger.setCurrentFile(this.fileName);
 
-        recordBuffer = new LinkedList();
+        recordBuffer = createRecordBuffer();
 
         if (timeBufferingEnabled) {
             startTimeBufferingThread();
@@ -397,6 +411,37 @@ public class FileHandler extends java.util.logging.Handler {
         }
     }
 
+    /**
+     * Creates a handler which writes to a file in the location, rotated by size, without reading the logging
+     * configuration.
+     * @param location The directory of the file.
+     * @param fileName The name of the file.
+     * @param maxFileSize The size in bytes at which the file is rotated.
+     * @param historyFiles The number of rotated files kept.
+     * @param recCountLimit The number of records buffered before they are written.
+     * @throws IOException If the file cannot be opened.
+     */
+    @VisibleForTesting
+    FileHandler(String location, String fileName, long maxFileSize, int historyFiles, int recCountLimit)
+            throws IOException {
+        this.fileName = fileName;
+        this.location = location.endsWith(File.separator) ? location : location + File.separator;
+        this.maxFileSize = maxFileSize;
+        this.count = historyFiles;
+        this.recCountLimit = recCountLimit;
+        openFiles(this.location + fileName);
+        recordBuffer = createRecordBuffer();
+    }
+
+    private LogRecordBuffer<String> createRecordBuffer() {
+        return LogRecordBuffer.create(recCountLimit, new Runnable() {
+            @Override
+            public void run() {
+                nonBlockingFlush();
+            }
+        });
+    }
+
     private String wrapFilename(String fileName) {
         String prefix = lmanager.getProperty(LogConstants.LOGFILE_PREFIX);
         String suffixFormat = lmanager.getProperty(LogConstants.LOGFILE_SUFFIX);
@@ -477,18 +522,26 @@ public class FileHandler extends java.util.logging.Handler {
         }
         Formatter formatter = getFormatter();
         String message = formatter.format(lrecord);
-        synchronized (this) {        
-            recordBuffer.add(message);
-            if (recordBuffer.size() >= recCountLimit) {
-                if (Debug.messageEnabled()) {
-                    Debug.message(fileName + ":FileHandler.publish(): got " +
-                        recordBuffer.size() + " records, writing all");
-                }
-                nonBlockingFlush();
+        if (!recordBuffer.offer(message)) {
+            if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring != null) {
+                fileLogHandlerForMonitoring.incHandlerDroppedCount(1);
+            }
+            return;
+        }
+        if (recordBuffer.size() >= recCountLimit) {
+            if (Debug.messageEnabled()) {
+                Debug.message(fileName + ":FileHandler.publish(): got " +
+                    recordBuffer.size() + " records, writing all");
             }
+            nonBlockingFlush();
         }
     }
 
+    private Charset getCharset() {
+        String encoding = getEncoding();
+        return encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+    }
+
     private String getHeaderString() {
         if (headerString == null) {
             headerString = getFormatter().getHead(this);
@@ -498,76 +551,90 @@ public class FileHandler extends java.util.logging.Handler {
 
     /**
      * Flush any buffered messages.
+     * <p>
+     * The logging thread writes every message buffered by the time it runs,
+     * so only one task is scheduled at a time.
      */
     protected void nonBlockingFlush() {
-        LinkedList writeBuffer = null;
-        synchronized (this) {
-            if (recordBuffer.size() <= 0) {
-                if (Debug.messageEnabled()) {
-                    Debug.message(fileName +
-                        ":FileHandler.flush: no records in buffer to write");
-                }
-                return;
+        if (recordBuffer.size() <= 0) {
+            if (Debug.messageEnabled()) {
+                Debug.message(fileName +
+                    ":FileHandler.flush: no records in buffer to write");
             }
-            writeBuffer = recordBuffer;
-            recordBuffer = new LinkedList();
+            return;
         }
-        LogTask task = new LogTask(writeBuffer);
+        if (!flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        LogTask task = new LogTask();
         try {
             // Get an instance as required otherwise it can cause issues on container restart.
             LoggingThread.getInstance().run(task);
         } catch (ThreadPoolException ex) {
             // use current thread to flush the data if ThreadPool is shutdown
-            synchronized (this) {
-                task.run();
-            }
+            task.run();
         }
     }
 
     public void flush() {
         synchronized (this) {
-            if (recordBuffer.size() <= 0) {
-                return;
-            }
-            if (writer == null) {
-                int recordsToBeDropped = recordBuffer.size();
-                if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring !=
-                    null) {
-                    fileLogHandlerForMonitoring.incHandlerDroppedCount(
-                        recordsToBeDropped);
-                }
-                recordBuffer.clear();
-                return;
+            writeBufferedRecords();
+        }
+    }
+
+    /**
+     * Writes the buffered messages and flushes them to the file together.
+     * Must be called holding the lock on this handler.
+     */
+    private void writeBufferedRecords() {
+        List<String> messages = new ArrayList<String>(recordBuffer.size());
+        if (recordBuffer.drainTo(messages) == 0) {
+            return;
+        }
+        if (writer == null) {
+            Debug.error(fileName + ":FileHandler: Writer is null");
+            if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring !=
+                null) {
+                fileLogHandlerForMonitoring.incHandlerDroppedCount(
+                    messages.size());
             }
-            for (Iterator iter = recordBuffer.iterator(); iter.hasNext();) {
-                String message = (String) iter.next();
-                if (needsRotation(message)) {
-                    rotate();
-                }
-                try {
-                    if (!headerWritten) {
-                        writer.write(getHeaderString());
-                        headerWritten = true;
-                    }
-                    writer.write(message);
-                    if (MonitoringUtil.isRunning() &&
-                        fileLogHandlerForMonitoring != null) {
-                        fileLogHandlerForMonitoring.incHandlerSuccessCount(1);
-                    }
-                } catch (IOException ex) {
+            return;
+        }
+        if (Debug.messageEnabled()) {
+            Debug.message(fileName + ":FileHandler.flush: writing " +
+                "buffered records (" + messages.size() + " records)");
+        }
+        // Records are encoded here rather than by the writer, so the metered stream counts every byte of them
+        // as they are written, and the file size can be checked before each record.
+        Charset charset = getCharset();
+        int written = 0;
+        for (String message : messages) {
+            byte[] bytes = message.getBytes(charset);
+            if (needsRotation(bytes.length)) {
+                rotate();
+            }
+            try {
+                if (!headerWritten) {
+                    meteredStream.write(getHeaderString().getBytes(charset));
+                    headerWritten = true;
                 }
-                cleanup();
+                meteredStream.write(bytes);
+                written++;
+            } catch (IOException ex) {
+                Debug.error(fileName +
+                    ":FileHandler: could not write to file: ", ex);
             }
-            recordBuffer.clear();
-        }        
+        }
+        cleanup();
+        if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring != null) {
+            fileLogHandlerForMonitoring.incHandlerSuccessCount(written);
+        }
     }
 
-    private boolean needsRotation(String message) {
+    private boolean needsRotation(int length) {
         if (rotateEnabled) {
             if (rotatingBySize) {
-                if (!message.isEmpty()
-                        && new File(meteredStream.filename).length() >= maxFileSize
-                                - message.length()) {
+                if (length > 0 && meteredStream.written >= maxFileSize - length) {
                     return true;
                 }
             } else {
@@ -733,49 +800,11 @@ public class FileHandler extends java.util.logging.Handler {
 
     private class LogTask implements Runnable {
 
-        private LinkedList buffer;
-
-        public LogTask(LinkedList buffer) {
-            this.buffer = buffer;
-        }
-
         public void run() {
-            if (writer == null) {
-                Debug.error(fileName + ":FileHandler: Writer is null");
-                int recordsToBeDropped = buffer.size();
-                if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring !=
-                    null) {
-                    fileLogHandlerForMonitoring.incHandlerDroppedCount(
-                        recordsToBeDropped);
-                }
-                buffer.clear();
-                return;
-            }
-            if (Debug.messageEnabled()) {
-                Debug.message(fileName + ":FileHandler.flush: writing " +
-                    "buffered records (" +
-                    buffer.size() + " records)");
-            }
-            for (Iterator iter = buffer.iterator(); iter.hasNext();) {
-                String message = (String) iter.next();
-                if (needsRotation(message)) {
-                    rotate();
-                }
-                try {
-                    if (!headerWritten) {
-                        writer.write(getHeaderString());
-                        headerWritten = true;
-                    }
-                    writer.write(message);
-                    if (MonitoringUtil.isRunning() &&
-                        fileLogHandlerForMonitoring != null) {
-                        fileLogHandlerForMonitoring.incHandlerSuccessCount(1);
-                    }
-                } catch (IOException ex) {
-                    Debug.error(fileName +
-                        ":FileHandler: could not write to file: ", ex);
-                }
-                cleanup();
+            synchronized (FileHandler.this) {
+                // Messages published from here on need another task to write them.
+                flushScheduled.set(false);
+                writeBufferedRecords();
             }
         }
 
@@ -0,0 +1,165 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.log.handlers;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.iplanet.am.util.SystemProperties;
+import com.sun.identity.log.LogConstants;
+
+/**
+ * A bounded buffer of log records, written to by many threads and drained by the single thread writing them to the
+ * log destination.
+ * <p/>
+ * Records are held in a ring of slots. A publishing thread claims the next slot with a single compare and swap, so
+ * publishing never takes a lock, and the writing thread drains every published record in one pass so that they can
+ * be written to the destination together. When the ring is full the configured {@link Backpressure} applies.
+ * <p/>
+ * Only one thread may drain the buffer at a time; callers are expected to hold the handler's write lock.
+ *
+ * @param <T> The type of record held.
+ */
+final class LogRecordBuffer<T> {
+
+    /**
+     * What a publishing thread does when the buffer is full.
+     */
+    enum Backpressure {
+        /** Wait until the writing thread has made space. */
+        BLOCK,
+        /** Discard the record and count it as dropped. */
+        DROP
+    }
+
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    private final Backpressure backpressure;
+    private final Runnable whenFull;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // Only written by the draining thread.
+    private volatile long head;
+
+    /**
+     * @param minCapacity The minimum number of records held; rounded up to a power of two.
+     * @param backpressure What a publishing thread does when the buffer is full.
+     * @param whenFull Called by a publishing thread which finds the buffer full, to ensure that it is being drained.
+     */
+    LogRecordBuffer(int minCapacity, Backpressure backpressure, Runnable whenFull) {
+        int capacity = Integer.highestOneBit(Math.max(1, minCapacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<T>(capacity);
+        this.mask = capacity - 1;
+        this.backpressure = backpressure;
+        this.whenFull = whenFull;
+    }
+
+    /**
+     * Creates a buffer holding at least the given number of records, and at least the number configured by
+     * {@link LogConstants#BUFFER_MAX_RECORDS}, applying the backpressure configured by
+     * {@link LogConstants#BUFFER_BACKPRESSURE}.
+     *
+     * @param recCountLimit The number of records after which the handler writes the buffer.
+     * @param whenFull Called by a publishing thread which finds the buffer full, to ensure that it is being drained.
+     * @param <T> The type of record held.
+     * @return The buffer.
+     */
+    static <T> LogRecordBuffer<T> create(int recCountLimit, Runnable whenFull) {
+        int maxRecords = SystemProperties.getAsInt(LogConstants.BUFFER_MAX_RECORDS,
+                LogConstants.BUFFER_MAX_RECORDS_DEFAULT);
+        Backpressure backpressure = Backpressure.BLOCK;
+        String policy = SystemProperties.get(LogConstants.BUFFER_BACKPRESSURE);
+        if (policy != null && policy.trim().equalsIgnoreCase(Backpressure.DROP.name())) {
+            backpressure = Backpressure.DROP;
+        }
+        return new LogRecordBuffer<T>(Math.max(maxRecords, recCountLimit), backpressure, whenFull);
+    }
+
+    /**
+     * Adds a record to the buffer, waiting for space or dropping the record if the buffer is full.
+     *
+     * @param record The record.
+     * @return {@code true} if the record was added, {@code false} if it was dropped.
+     */
+    boolean offer(T record) {
+        while (true) {
+            long claim = tail.get();
+            if (claim - head > mask) {
+                whenFull.run();
+                if (backpressure == Backpressure.DROP) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                LockSupport.parkNanos(PARK_NANOS);
+            } else if (tail.compareAndSet(claim, claim + 1)) {
+                slots.set((int) claim & mask, record);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Moves every published record to the target, in the order in which they were published.
+     *
+     * @param target The collection to add the records to.
+     * @return The number of records moved.
+     */
+    int drainTo(Collection<? super T> target) {
+        long current = head;
+        long end = tail.get();
+        int count = 0;
+        while (current < end) {
+            int index = (int) current & mask;
+            T record = slots.get(index);
+            if (record == null) {
+                // The slot has been claimed but the record is not yet published.
+                break;
+            }
+            slots.set(index, null);
+            target.add(record);
+            current++;
+            count++;
+        }
+        head = current;
+        return count;
+    }
+
+    /**
+     * @return The approximate number of records held.
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    /**
+     * @return The maximum number of records held.
+     */
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return The number of records dropped since the buffer was created.
+     */
+    long getDroppedCount() {
+        return dropped.get();
+    }
+}
@@ -45,14 +45,17 @@ import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.LogRecord;
 
+import com.iplanet.am.util.ThreadPoolException;
 import com.iplanet.log.NullLocationException;
 import com.sun.identity.common.GeneralTaskRunnable;
 import com.sun.identity.common.SystemTimer;
@@ -117,6 +120,16 @@ public class SecureFileHandler extends java.util.logging.Handler {
     private SsoServerLoggingSvcImpl logServiceImplForMonitoring = null;
     private SsoServerLoggingHdlrEntryImpl sfLogHandlerForMonitoring = null;
     private static String token = null;
+    private final LogRecordBuffer<LogRecord> recordBuffer =
+        LogRecordBuffer.create(1, new Runnable() {
+            @Override
+            public void run() {
+                nonBlockingFlush();
+            }
+        });
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    // Characters given to the writer but not yet flushed to the metered stream.
+    private int unflushedLength;
     
     static {
         String logPass= (String)
@@ -316,6 +329,7 @@ public class SecureFileHandler extends java.util.logging.Handler {
         
         BufferedOutputStream bout = new BufferedOutputStream(fout);
         meteredStream = new MeteredStream(bout, len);
+        unflushedLength = 0;
         setOutputStream(meteredStream);
         checkForHeaderWritten(fileName.toString());
     }
@@ -369,9 +383,17 @@ public class SecureFileHandler extends java.util.logging.Handler {
      * Flush any buffered messages.
      */
     public void flush() {
+        synchronized (this) {
+            writeBufferedRecords();
+            flushWriter();
+        }
+    }
+
+    private void flushWriter() {
         if (writer != null) {
             try {
                 writer.flush();
+                unflushedLength = 0;
             } catch (Exception ex) {
                 Debug.error(logName+":SecureFileHandler: " +
                                 "Could not Flush Output", ex);
@@ -417,9 +439,13 @@ public class SecureFileHandler extends java.util.logging.Handler {
      * ELF. This method first checks if the header is already written to the 
      * file, if not, gets the header from the Formatter and writes it at the 
      * beginning of the file.
+     * <p>
+     * The record is buffered, and formatted and written by the logging
+     * thread, so that the MAC of each record is chained off the previous
+     * record in the order in which the records are written to the file.
      * @param lrecord the log record to be published.
      */
-    public synchronized void publish(LogRecord lrecord) {
+    public void publish(LogRecord lrecord) {
         if (MonitoringUtil.isRunning() && sfLogHandlerForMonitoring != null) {
             sfLogHandlerForMonitoring.incHandlerRequestCount(1);
         }
@@ -430,25 +456,94 @@ public class SecureFileHandler extends java.util.logging.Handler {
         if (!isLoggable(lrecord)) {
             return;
         }
-        String message = "";
-        message = getFormatter().format(lrecord);
-        try {
-            if (!headerWritten) {
-                writer.write(getFormatter().getHead(this));
-                headerWritten = true;
-            }
-            writer.write(message);
-            if (MonitoringUtil.isRunning() && sfLogHandlerForMonitoring != null) {
-                sfLogHandlerForMonitoring.incHandlerSuccessCount(1);
-            }
-        } catch (IOException ex) {
-            Debug.error(logName +
-                ":SecureFileHandler: could not write to file", ex);
+        if (!recordBuffer.offer(lrecord)) {
             if (MonitoringUtil.isRunning() && sfLogHandlerForMonitoring != null) {
                 sfLogHandlerForMonitoring.incHandlerDroppedCount(1);
             }
+            return;
+        }
+        nonBlockingFlush();
+    }
+
+    /**
+     * Schedules the logging thread to write the buffered records, unless it
+     * is already due to.
+     */
+    private void nonBlockingFlush() {
+        if (!flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        LogTask task = new LogTask();
+        try {
+            LoggingThread.getInstance().run(task);
+        } catch (ThreadPoolException ex) {
+            // use current thread to write the records if ThreadPool is shutdown
+            task.run();
+        }
+    }
+
+    /**
+     * Formats and writes the buffered records, and flushes them to the file
+     * together. The MACing key is read from and written to the secure storage
+     * once for the records rather than for each record.
+     * Must be called holding the lock on this handler.
+     */
+    private void writeBufferedRecords() {
+        List<LogRecord> records = new ArrayList<LogRecord>(recordBuffer.size());
+        if (recordBuffer.drainTo(records) == 0) {
+            return;
+        }
+        boolean batch = startMACBatch();
+        try {
+            for (LogRecord lrecord : records) {
+                String message = getFormatter().format(lrecord);
+                try {
+                    if (!headerWritten) {
+                        String header = getFormatter().getHead(this);
+                        writer.write(header);
+                        unflushedLength += header.length();
+                        headerWritten = true;
+                    }
+                    writer.write(message);
+                    unflushedLength += message.length();
+                    if (MonitoringUtil.isRunning() &&
+                        sfLogHandlerForMonitoring != null) {
+                        sfLogHandlerForMonitoring.incHandlerSuccessCount(1);
+                    }
+                } catch (IOException ex) {
+                    Debug.error(logName +
+                        ":SecureFileHandler: could not write to file", ex);
+                    if (MonitoringUtil.isRunning() &&
+                        sfLogHandlerForMonitoring != null) {
+                        sfLogHandlerForMonitoring.incHandlerDroppedCount(1);
+                    }
+                }
+                if (Debug.messageEnabled()) {
+                        Debug.message(logName+":Check for file size = "
+                        + maxFileSize+" with size written = " 
+                        + (meteredStream.written + unflushedLength));
+                }
+                if ((message.length() > 0 ) &&
+                    (meteredStream.written + unflushedLength >= maxFileSize)) {
+                    if (Debug.messageEnabled()) {
+                        Debug.message("SecureFileHandler: FileFull Event reached");
+                    }
+                    // The archive signs the last MAC and may replace the
+                    // keystore, so the key must be in the secure storage.
+                    flushWriter();
+                    if (batch) {
+                        endMACBatch();
+                    }
+                    archive();
+                    batch = startMACBatch();
+                }
+            }
+            flushWriter();
+        } finally {
+            if (batch) {
+                endMACBatch();
+            }
         }
-        flush();
         // This flag is set only when the Verification is on and at that time
         // the last line for the logger is not set for the duration of the 
         // verification.
@@ -459,16 +554,29 @@ public class SecureFileHandler extends java.util.logging.Handler {
         if(lv.getVerificationFlag() == false) {
             helper.setLastLineforLogger(true);
         }
-        if (Debug.messageEnabled()) {
-                Debug.message(logName+":Check for file size = "
-                + maxFileSize+" with size written = " 
-                + meteredStream.written);
+    }
+
+    private boolean startMACBatch() {
+        if (helper == null) {
+            return false;
         }
-        if ((message.length() > 0 ) && (meteredStream.written >= maxFileSize)) {
-            if (Debug.messageEnabled()) {
-                Debug.message("SecureFileHandler: FileFull Event reached");
-            }
-            archive();
+        try {
+            helper.startLogEntryBatch();
+            return true;
+        } catch (Exception e) {
+            // Each record is MACed on its own, reporting the error again.
+            Debug.error(logName +
+                ":SecureFileHandler: could not start MAC batch", e);
+            return false;
+        }
+    }
+
+    private void endMACBatch() {
+        try {
+            helper.endLogEntryBatch();
+        } catch (Exception e) {
+            Debug.error(logName +
+                ":SecureFileHandler: could not store MACing key", e);
         }
     }
     
@@ -544,7 +652,7 @@ public class SecureFileHandler extends java.util.logging.Handler {
             Debug.error(logName +
                 ":SecureLogHelper: could not write signature to file", ioe);
         }
-        flush();
+        flushWriter();
         try {
             if (writer != null) {
                 writer.close();
@@ -583,7 +691,7 @@ public class SecureFileHandler extends java.util.logging.Handler {
             Debug.error(logName +
                 ":SecureFileHandler: could not write to file", ex);
         }
-        flush();
+        flushWriter();
     }
     
     private void checkForHeaderWritten(String fileName) {
@@ -990,6 +1098,20 @@ public class SecureFileHandler extends java.util.logging.Handler {
         }
     }
     
+    /**
+     *  Writes the buffered records on the logging thread.
+     */
+    private class LogTask implements Runnable {
+
+        public void run() {
+            synchronized (SecureFileHandler.this) {
+                // Records published from here on need another task to write them.
+                flushScheduled.set(false);
+                writeBufferedRecords();
+            }
+        }
+    }
+
     /**
      *  Inner class which extends the abstract TimerTask class and impelements
      *  the run method which is run periodically which does the actual signing.
@@ -1014,6 +1136,8 @@ public class SecureFileHandler extends java.util.logging.Handler {
                 Logger.rwLock.readRequest();
                 synchronized(logger) {
                     try {
+                        // Write any buffered records before reading the log.
+                        flush();
                         String[][] result = LogReader.read(PREFIX + logName, 
                                         new LogQuery(1), 
                                         Token.createToken("Auditor", 
@@ -1048,6 +1172,9 @@ public class SecureFileHandler extends java.util.logging.Handler {
                                     addLogInfo(LogConstants.SIGNATURE_FIELDNAME,
                                         signature);
                                     publish(lr);
+                                    // Write the signature straight after the
+                                    // record whose MAC it signs.
+                                    flush();
                                 } else {
                                     Debug.warning(logName+"Signature is Null");
                                 }
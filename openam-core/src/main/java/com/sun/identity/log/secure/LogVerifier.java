@@ -223,6 +223,29 @@ public class LogVerifier{
      * @throws Exception if it fails to verify any mac value in the log entry.
      */
     public boolean verify()
+    throws Exception{
+        // The verifier key is read from and written to the secure storage
+        // once for the whole run rather than for every record.
+        SecureLogHelper batchHelper = SecureFileHandler.getSecureLogHelper(name);
+        boolean batch = false;
+        if (batchHelper != null) {
+            try {
+                batchHelper.startVerifierBatch();
+                batch = true;
+            } catch (Exception e) {
+                Debug.error(name + ":Could not start verifier batch", e);
+            }
+        }
+        try {
+            return verifyRecords();
+        } finally {
+            if (batch) {
+                batchHelper.endVerifierBatch();
+            }
+        }
+    }
+
+    private boolean verifyRecords()
     throws Exception{
         Logger logger = (com.sun.identity.log.Logger)Logger.getLogger(name);
         ArrayList fileList = new ArrayList();
@@ -230,6 +253,8 @@ public class LogVerifier{
         Object token = new Object();
         synchronized(logger) {
             verificationOn = true;
+            // Records may still be buffered by the handler.
+            logger.flush();
             long start = currentTimeMillis();
             helper = SecureFileHandler.getSecureLogHelper(name);
             fileList = SecureFileHandler.getCurrentFileList(name);
@@ -24,6 +24,7 @@
  *
  * $Id: SecureLogHelper.java,v 1.6 2009/04/07 23:24:33 hvijay Exp $
  *
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 
 package com.sun.identity.log.secure;
@@ -75,6 +76,16 @@ public abstract class SecureLogHelper {
     
     boolean LoggerLastLine = false;
     boolean VerifierLastLine = false;
+
+    /*
+     * Set while a batch of log entries is MACed or verified. The current
+     * key is then read from the secure storage at the start of the batch
+     * and written back at its end, rather than for every entry.
+     */
+    boolean loggerBatch = false;
+    boolean loggerKeyChanged = false;
+    boolean verifierBatch = false;
+    boolean verifierKeyChanged = false;
     
     AMPassword loggerPass = null;
     AMPassword verifierPass = null;
@@ -272,6 +283,7 @@ public abstract class SecureLogHelper {
             AMPassword newverpass = (AMPassword) password.clone();
             writeToSecretStore(currentVerifierKey, verifierFileName, 
                 newverpass, currentKey);
+            verifierKeyChanged = false;
             
         }else{
             throw new Exception(logFileName + " Verifier is not initialized");
@@ -323,15 +335,10 @@ public abstract class SecureLogHelper {
      */
     public synchronized byte[] generateLogEntryMAC(String LogEntry)
     throws Exception {
-        byte[] key = null;
         lastMac = currentMAC;
-        key = readFromSecretStore(logFileName, currentKey, loggerPass);
-        if((currentLoggerKey != null ) && 
-           (equalByteArrays(currentLoggerKey, key) == false)) {
-            throw new Exception("Possible Intrusion or " + " Misconfiguration");
+        if (!loggerBatch) {
+            readLoggerKey();
         }
-        
-        currentLoggerKey = key;
         // Generate the MAC
         currentMAC = getDigest(LogEntry, currentLoggerKey);
         
@@ -342,10 +349,57 @@ public abstract class SecureLogHelper {
         currentLoggerKey = md.digest();
         
         // Write the key to the secret store
-        writeToSecretStore(currentLoggerKey, logFileName,
-                loggerPass, currentKey);
+        if (loggerBatch) {
+            loggerKeyChanged = true;
+        } else {
+            writeToSecretStore(currentLoggerKey, logFileName,
+                    loggerPass, currentKey);
+        }
         return currentMAC;
     }
+
+    /**
+     * Starts a batch of log entries to be MACed by
+     * <code>generateLogEntryMAC</code>. The current key is read from the
+     * secure storage now, and is only written back by
+     * <code>endLogEntryBatch</code>.
+     * @throws Exception if the key in the secure storage is not the expected
+     *         key, or it fails to read the key
+     */
+    public synchronized void startLogEntryBatch()
+    throws Exception {
+        readLoggerKey();
+        loggerBatch = true;
+        loggerKeyChanged = false;
+    }
+
+    /**
+     * Ends a batch of log entries, writing the current key to the secure
+     * storage if it has changed.
+     * @throws Exception if it fails to write the key
+     */
+    public synchronized void endLogEntryBatch()
+    throws Exception {
+        if (!loggerBatch) {
+            return;
+        }
+        loggerBatch = false;
+        if (loggerKeyChanged) {
+            loggerKeyChanged = false;
+            writeToSecretStore(currentLoggerKey, logFileName,
+                    loggerPass, currentKey);
+        }
+    }
+
+    private void readLoggerKey()
+    throws Exception {
+        byte[] key = readFromSecretStore(logFileName, currentKey, loggerPass);
+        if((currentLoggerKey != null ) && 
+           (equalByteArrays(currentLoggerKey, key) == false)) {
+            throw new Exception("Possible Intrusion or " + " Misconfiguration");
+        }
+        currentLoggerKey = key;
+    }
     
     /**
      * Verifies the current MAC by taking the currentVerifierKey
@@ -360,16 +414,10 @@ public abstract class SecureLogHelper {
         boolean macValid = false;
         
         try{
-            byte[] verifierKey = readFromSecretStore(verifierFileName, 
-                currentKey, verifierPass);
-            if((currentVerifierKey!= null ) && 
-             !(new String(currentVerifierKey).equals(new String(verifierKey)))){
-                throw new Exception(verifierFileName + 
-                    " Possible Intrusion or " + " Misconfiguration");
+            if (!verifierBatch) {
+                readVerifierKey();
             }
             
-            currentVerifierKey = verifierKey;
-            
             byte[] digest = getDigest(LogEntry, currentVerifierKey);
             
             if(equalByteArrays(mac,digest)){
@@ -377,8 +425,12 @@ public abstract class SecureLogHelper {
                 md.update(currentVerifierKey);
                 currentVerifierKey = md.digest();
                 // Write the key to the secret store
-                writeToSecretStore(currentVerifierKey, verifierFileName, 
-                    verifierPass, currentKey);
+                if (verifierBatch) {
+                    verifierKeyChanged = true;
+                } else {
+                    writeToSecretStore(currentVerifierKey, verifierFileName, 
+                        verifierPass, currentKey);
+                }
                 macValid = true;
             } 
         }catch (Exception e){
@@ -388,6 +440,50 @@ public abstract class SecureLogHelper {
         
         return macValid;
     }
+
+    /**
+     * Starts a batch of log entries to be verified by <code>verifyMAC</code>.
+     * The current verifier key is read from the secure storage now, and is
+     * only written back by <code>endVerifierBatch</code>.
+     * @throws Exception if the key in the secure storage is not the expected
+     *         key, or it fails to read the key
+     */
+    public synchronized void startVerifierBatch()
+    throws Exception {
+        readVerifierKey();
+        verifierBatch = true;
+        verifierKeyChanged = false;
+    }
+
+    /**
+     * Ends a batch of verified log entries, writing the current verifier key
+     * to the secure storage if it has changed.
+     * @throws Exception if it fails to write the key
+     */
+    public synchronized void endVerifierBatch()
+    throws Exception {
+        if (!verifierBatch) {
+            return;
+        }
+        verifierBatch = false;
+        if (verifierKeyChanged) {
+            verifierKeyChanged = false;
+            writeToSecretStore(currentVerifierKey, verifierFileName,
+                verifierPass, currentKey);
+        }
+    }
+
+    private void readVerifierKey()
+    throws Exception {
+        byte[] verifierKey = readFromSecretStore(verifierFileName, 
+            currentKey, verifierPass);
+        if((currentVerifierKey!= null ) && 
+         !(new String(currentVerifierKey).equals(new String(verifierKey)))){
+            throw new Exception(verifierFileName + 
+                " Possible Intrusion or " + " Misconfiguration");
+        }
+        currentVerifierKey = verifierKey;
+    }
     
     /**
      * Set the Logger's last line
@@ -27,7 +27,7 @@
  */
 
 /*
- * Portions Copyrighted 2011 ForgeRock AS
+ * Portions Copyrighted 2011-2016 ForgeRock AS
  */
 package com.sun.identity.monitoring;
 
@@ -103,4 +103,25 @@ public class SsoServerIdRepoSvcImpl extends SsoServerIdRepoSvc {
         IdRepoSearchRqts = Long.valueOf(li);
         IdRepoCacheEntries = Long.valueOf(cacheEntries);
     }
+
+    /*
+     * corresponds to idm's incrementEvictionCount, which
+     * increments totalEvictions
+     */
+    public void incCacheEvictions (long cacheEntries) {
+        long li = IdRepoCacheEvictions.longValue();
+        li++;
+        IdRepoCacheEvictions = Long.valueOf(li);
+        IdRepoCacheEntries = Long.valueOf(cacheEntries);
+    }
+
+    /*
+     * corresponds to idm's updateLoadTime, which
+     * adds to totalLoadTime
+     */
+    public void incCacheLoadTime (long loadTimeMillis) {
+        long li = IdRepoCacheLoadTime.longValue();
+        li += loadTimeMillis;
+        IdRepoCacheLoadTime = Long.valueOf(li);
+    }
 }
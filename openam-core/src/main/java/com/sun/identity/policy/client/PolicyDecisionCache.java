@@ -0,0 +1,533 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.policy.client;
+
+import static org.forgerock.openam.utils.Time.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.iplanet.sso.SSOException;
+import com.sun.identity.policy.PolicyException;
+import com.sun.identity.policy.ResourceResult;
+import org.forgerock.util.annotations.VisibleForTesting;
+
+/**
+ * The client side cache of policy decisions, keyed by service name, resource name, session token ID and scope.
+ * <p/>
+ * Lookups do not take a lock. Decisions are indexed by session token ID and by service and resource name, so that
+ * a session or policy change notification removes just the decisions it affects. The cache is bounded by the total
+ * weight of the decisions held, being the number of {@link ResourceResult}s in each, and evicts the oldest decisions
+ * first; as every decision lives for the same time, these are also the first to expire. Index entries are removed
+ * with the last decision they refer to, and the record of the order decisions were added in is compacted once it
+ * holds many decisions which have since been removed, so neither grows beyond the decisions held.
+ * <p/>
+ * Concurrent requests for the same decision are coalesced into a single request to the policy service.
+ */
+final class PolicyDecisionCache {
+
+    // Removed decisions tolerated in the insertion order before it is compacted, beyond one per decision held
+    private static final int INSERTION_ORDER_SLACK = 16;
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+    private final ConcurrentMap<String, Set<Key>> keysByToken = new ConcurrentHashMap<String, Set<Key>>();
+    // service name -> resource name -> keys
+    private final ConcurrentMap<String, ConcurrentMap<String, Set<Key>>> keysByResource =
+            new ConcurrentHashMap<String, ConcurrentMap<String, Set<Key>>>();
+    // Entries in the order they were added, which is also the order in which they expire.
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<Entry>();
+    // Approximate length of insertionOrder, as its size() traverses the whole queue.
+    private final AtomicInteger queueLength = new AtomicInteger();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final ConcurrentMap<List<Object>, Load> sharedLoads = new ConcurrentHashMap<List<Object>, Load>();
+    private final Set<Load> pendingLoads = Collections.newSetFromMap(new ConcurrentHashMap<Load, Boolean>());
+    private final AtomicLong weight = new AtomicLong();
+    private volatile long maxWeight;
+
+    /**
+     * @param maxWeight The maximum total weight of the decisions held.
+     */
+    PolicyDecisionCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Sets the maximum total weight of the decisions held.
+     *
+     * @param maxWeight The maximum weight.
+     */
+    void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        evict();
+    }
+
+    /**
+     * Returns the cached decision for the key, if it has not expired.
+     *
+     * @param key The key.
+     * @return The decision, or {@code null}.
+     */
+    Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.isExpired(currentTimeMillis())) {
+            remove(entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Gets a decision from the policy service and caches it. If {@code coalesce} is set and another thread is already
+     * getting the decision for the same key, environment and action names, waits for and returns its decision instead.
+     *
+     * @param key The key.
+     * @param env The environment the decision is requested with; must not be changed afterwards.
+     * @param actionNames The action names the decision is requested for; must not be changed afterwards.
+     * @param ttl How long, in milliseconds, to cache the decision for.
+     * @param coalesce Whether the decision may be shared with other threads requesting it.
+     * @param fetcher Gets the decision from the policy service.
+     * @return The decision.
+     * @throws PolicyException If the decision could not be got.
+     * @throws SSOException If the session token is not valid.
+     */
+    Entry load(Key key, Map env, Set actionNames, long ttl, boolean coalesce, Fetcher fetcher)
+            throws PolicyException, SSOException {
+        Load load = new Load(key, Arrays.<Object>asList(key, env, actionNames));
+        if (coalesce) {
+            Load existing = sharedLoads.putIfAbsent(load.id, load);
+            if (existing != null) {
+                return existing.await();
+            }
+        }
+        pendingLoads.add(load);
+        try {
+            Entry entry = new Entry(key, fetcher.fetch(), env, actionNames, currentTimeMillis() + ttl);
+            put(entry);
+            if (load.invalidated) {
+                // A notification arrived while the decision was being got, so it may already be stale.
+                remove(entry);
+            }
+            load.complete(entry, null);
+            return entry;
+        } catch (PolicyException | SSOException | RuntimeException | Error e) {
+            load.complete(null, e);
+            throw e;
+        } finally {
+            pendingLoads.remove(load);
+            if (coalesce) {
+                sharedLoads.remove(load.id, load);
+            }
+        }
+    }
+
+    /**
+     * Removes the decisions for a session token.
+     *
+     * @param tokenID The session token ID.
+     */
+    void removeToken(String tokenID) {
+        for (Load load : pendingLoads) {
+            if (load.key.tokenID.equals(tokenID)) {
+                load.invalidated = true;
+            }
+        }
+        removeKeys(removeIndexed(keysByToken, tokenID));
+    }
+
+    /**
+     * Returns the names of the resources which decisions are cached for.
+     *
+     * @param serviceName The service name.
+     * @return The resource names.
+     */
+    Set<String> getResourceNames(String serviceName) {
+        ConcurrentMap<String, Set<Key>> resources = keysByResource.get(serviceName);
+        return resources == null ? Collections.<String>emptySet() : resources.keySet();
+    }
+
+    /**
+     * Removes the decisions for a resource.
+     *
+     * @param serviceName The service name.
+     * @param resourceName The resource name.
+     */
+    void removeResource(String serviceName, String resourceName) {
+        for (Load load : pendingLoads) {
+            if (load.key.serviceName.equals(serviceName) && load.key.resourceName.equals(resourceName)) {
+                load.invalidated = true;
+            }
+        }
+        ConcurrentMap<String, Set<Key>> resources = keysByResource.get(serviceName);
+        if (resources != null) {
+            removeKeys(removeIndexed(resources, resourceName));
+        }
+    }
+
+    /**
+     * Removes the decisions for a service.
+     *
+     * @param serviceName The service name.
+     */
+    void removeService(String serviceName) {
+        for (Load load : pendingLoads) {
+            if (load.key.serviceName.equals(serviceName)) {
+                load.invalidated = true;
+            }
+        }
+        ConcurrentMap<String, Set<Key>> resources = keysByResource.remove(serviceName);
+        if (resources != null) {
+            for (String resourceName : resources.keySet()) {
+                removeKeys(removeIndexed(resources, resourceName));
+            }
+        }
+    }
+
+    /**
+     * @return The total weight of the decisions held.
+     */
+    long getWeight() {
+        return weight.get();
+    }
+
+    /**
+     * @return The number of decisions held.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of session tokens which decisions are indexed by.
+     */
+    @VisibleForTesting
+    int getIndexedTokenCount() {
+        return keysByToken.size();
+    }
+
+    /**
+     * @return The number of decisions in the record of the order decisions were added in.
+     */
+    @VisibleForTesting
+    int getInsertionOrderLength() {
+        return insertionOrder.size();
+    }
+
+    private void put(Entry entry) {
+        Key key = entry.key;
+        Entry old = entries.put(key, entry);
+        weight.addAndGet(old == null ? entry.weight : entry.weight - old.weight);
+        // Indexed after being added, so that a concurrent removal of the previous entry cannot unindex this one.
+        index(key);
+        insertionOrder.add(entry);
+        queueLength.incrementAndGet();
+        evict();
+    }
+
+    private void evict() {
+        long now = currentTimeMillis();
+        Entry eldest;
+        while ((eldest = insertionOrder.peek()) != null
+                && (weight.get() > maxWeight || eldest.isExpired(now))) {
+            if (insertionOrder.remove(eldest)) {
+                queueLength.decrementAndGet();
+                remove(eldest);
+            }
+        }
+        compactInsertionOrder();
+    }
+
+    /**
+     * Drops the decisions which have been removed or replaced from the insertion order, once they make up more than
+     * half of it, so that removed decisions are not kept until they reach the head of the queue.
+     */
+    private void compactInsertionOrder() {
+        if (queueLength.get() <= 2 * entries.size() + INSERTION_ORDER_SLACK || !compacting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int length = 0;
+            for (Iterator<Entry> iter = insertionOrder.iterator(); iter.hasNext();) {
+                Entry entry = iter.next();
+                if (entries.get(entry.key) == entry) {
+                    length++;
+                } else {
+                    iter.remove();
+                }
+            }
+            queueLength.set(length);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    private void remove(Entry entry) {
+        if (entries.remove(entry.key, entry)) {
+            weight.addAndGet(-entry.weight);
+            unindex(entry.key);
+            if (entries.containsKey(entry.key)) {
+                // The key has been added again meanwhile.
+                index(entry.key);
+            }
+            compactInsertionOrder();
+        }
+    }
+
+    private void removeKeys(Set<Key> keys) {
+        if (keys != null) {
+            for (Key key : keys) {
+                removeKey(key);
+            }
+        }
+    }
+
+    private void removeKey(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    private void index(Key key) {
+        addIndexed(keysByToken, key.tokenID, key);
+        ConcurrentMap<String, Set<Key>> resources = keysByResource.get(key.serviceName);
+        if (resources == null) {
+            ConcurrentMap<String, Set<Key>> newResources = new ConcurrentHashMap<String, Set<Key>>();
+            resources = keysByResource.putIfAbsent(key.serviceName, newResources);
+            if (resources == null) {
+                resources = newResources;
+            }
+        }
+        addIndexed(resources, key.resourceName, key);
+    }
+
+    private void unindex(Key key) {
+        removeIndexed(keysByToken, key.tokenID, key);
+        ConcurrentMap<String, Set<Key>> resources = keysByResource.get(key.serviceName);
+        if (resources != null) {
+            removeIndexed(resources, key.resourceName, key);
+        }
+    }
+
+    /*
+     * The key sets of an index are changed while holding their lock, and a set is removed from the index once it is
+     * empty, so a key is only added to a set which is still in the index.
+     */
+
+    private static void addIndexed(ConcurrentMap<String, Set<Key>> index, String name, Key key) {
+        while (true) {
+            Set<Key> keys = index.get(name);
+            if (keys == null) {
+                Set<Key> newKeys = Collections.newSetFromMap(new ConcurrentHashMap<Key, Boolean>());
+                keys = index.putIfAbsent(name, newKeys);
+                if (keys == null) {
+                    keys = newKeys;
+                }
+            }
+            synchronized (keys) {
+                if (index.get(name) == keys) {
+                    keys.add(key);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void removeIndexed(ConcurrentMap<String, Set<Key>> index, String name, Key key) {
+        Set<Key> keys = index.get(name);
+        if (keys != null) {
+            synchronized (keys) {
+                if (keys.remove(key) && keys.isEmpty()) {
+                    index.remove(name, keys);
+                }
+            }
+        }
+    }
+
+    private static Set<Key> removeIndexed(ConcurrentMap<String, Set<Key>> index, String name) {
+        Set<Key> keys = index.remove(name);
+        if (keys == null) {
+            return null;
+        }
+        synchronized (keys) {
+            return new HashSet<Key>(keys);
+        }
+    }
+
+    /**
+     * Gets a decision from the policy service.
+     */
+    interface Fetcher {
+
+        /**
+         * @return The set of {@link ResourceResult}s making up the decision.
+         * @throws PolicyException If the decision could not be got.
+         * @throws SSOException If the session token is not valid.
+         */
+        Set fetch() throws PolicyException, SSOException;
+    }
+
+    /**
+     * Identifies a cached decision.
+     */
+    static final class Key {
+
+        private final String serviceName;
+        private final String resourceName;
+        private final String tokenID;
+        private final String scope;
+
+        Key(String serviceName, String resourceName, String tokenID, String scope) {
+            this.serviceName = serviceName;
+            this.resourceName = resourceName;
+            this.tokenID = tokenID;
+            this.scope = scope;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return serviceName.equals(other.serviceName) && resourceName.equals(other.resourceName)
+                    && tokenID.equals(other.tokenID) && scope.equals(other.scope);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = serviceName.hashCode();
+            result = 31 * result + resourceName.hashCode();
+            result = 31 * result + tokenID.hashCode();
+            return 31 * result + scope.hashCode();
+        }
+    }
+
+    /**
+     * A cached decision, with the environment and action names it was requested with.
+     */
+    static final class Entry {
+
+        private final Key key;
+        private final Set resourceResults;
+        private final Map env;
+        private final Set actionNames;
+        private final long expiryTime;
+        private final int weight;
+
+        private Entry(Key key, Set resourceResults, Map env, Set actionNames, long expiryTime) {
+            this.key = key;
+            this.resourceResults = resourceResults;
+            this.env = env;
+            this.actionNames = actionNames;
+            this.expiryTime = expiryTime;
+            this.weight = 1 + weigh(resourceResults);
+        }
+
+        Set getResourceResults() {
+            return resourceResults;
+        }
+
+        Map getEnv() {
+            return env;
+        }
+
+        Set getActionNames() {
+            return actionNames;
+        }
+
+        boolean isExpired(long now) {
+            return expiryTime < now;
+        }
+
+        private static int weigh(Set resourceResults) {
+            int weight = 0;
+            if (resourceResults != null) {
+                for (Iterator iter = resourceResults.iterator(); iter.hasNext();) {
+                    Object result = iter.next();
+                    weight++;
+                    if (result instanceof ResourceResult) {
+                        weight += weigh(((ResourceResult) result).getResourceResults());
+                    }
+                }
+            }
+            return weight;
+        }
+    }
+
+    /**
+     * A request to the policy service in progress.
+     */
+    private static final class Load {
+
+        private final Key key;
+        private final List<Object> id;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean invalidated;
+        private Entry entry;
+        private Throwable failure;
+
+        private Load(Key key, List<Object> id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        private void complete(Entry entry, Throwable failure) {
+            this.entry = entry;
+            this.failure = failure;
+            done.countDown();
+        }
+
+        private Entry await() throws PolicyException, SSOException {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure instanceof PolicyException) {
+                throw (PolicyException) failure;
+            } else if (failure instanceof SSOException) {
+                throw (SSOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return entry;
+        }
+    }
+}
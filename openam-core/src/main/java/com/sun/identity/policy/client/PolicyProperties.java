@@ -24,6 +24,8 @@
  *
  * $Id: PolicyProperties.java,v 1.11 2009/11/04 21:06:41 veiming Exp $
  *
+ * Portions Copyrighted 2016 ForgeRock AS.
+ *
  */
 
 
@@ -118,6 +120,13 @@ class PolicyProperties {
     public static final String RESULTS_CACHE_RESOURCE_CAP 
             = "com.sun.identity.policy.client.resultsCacheResourceCap";
 
+    /**
+     * The maximum total number of resource results held in the policy
+     * decision cache. Defaults to the resource cap times the session cap.
+     */
+    public static final String RESULTS_CACHE_MAX_WEIGHT
+            = "com.sun.identity.policy.client.resultsCacheMaxWeight";
+
     private final static String REST_NOTIFICATION_URL
             = "com.sun.identity.client.rest.notification.url";
 
@@ -138,6 +147,7 @@ class PolicyProperties {
     private String logName;
     private String notificationURL;
     private int cacheTtl; //milliseconds
+    private long resultsCacheMaxWeight;
     private String cacheMode;
     private int cleanupInterval; //milliseconds
     private int urlReadTimeout; //milliseconds
@@ -506,6 +516,30 @@ class PolicyProperties {
                 resultsCacheResourceCap = DEFAULT_RESULTS_CACHE_RESOURCE_CAP;
             }
         }
+
+        //initialize resultsCacheMaxWeight
+        resultsCacheMaxWeight
+                = (long)resultsCacheResourceCap * resultsCacheSessionCap;
+        String resultsCacheMaxWeightString
+                = getSystemProperty(RESULTS_CACHE_MAX_WEIGHT, ignoreCase);
+        if (resultsCacheMaxWeightString != null) {
+            try {
+                resultsCacheMaxWeight
+                        = Long.parseLong(resultsCacheMaxWeightString);
+            } catch (NumberFormatException nfe) {
+                if (debug.messageEnabled()) {
+                    debug.message(
+                            "PolicyProperties.constructor():"
+                            + RESULTS_CACHE_MAX_WEIGHT + " not a number"
+                            + ": defaulting to " + resultsCacheMaxWeight);
+                }
+            }
+        }
+        if (debug.messageEnabled()) {
+            debug.message("PolicyProperties.constructor():"
+                    + RESULTS_CACHE_MAX_WEIGHT + " = "
+                    + resultsCacheMaxWeight);
+        }
         
         //initialize useRESTProtocolFlag property
         String useRESTProtocolString = getSystemProperty(USE_REST_PROTOCOL, ignoreCase);
@@ -924,6 +958,10 @@ class PolicyProperties {
         return resultsCacheResourceCap;
     }
 
+    long getResultsCacheMaxWeight() {
+        return resultsCacheMaxWeight;
+    }
+
     /**
      * Gets system property
      * @param name name of the property
@@ -31,7 +31,6 @@ package com.sun.identity.policy.client;
 
 import static org.forgerock.openam.utils.Time.*;
 
-import com.iplanet.am.util.Cache;
 import com.iplanet.am.util.SystemProperties;
 import com.iplanet.dpro.session.Session;
 import com.iplanet.dpro.session.SessionException;
@@ -111,8 +110,7 @@ class ResourceResultCache implements SSOTokenListener {
     private Set remotePolicyListeners 
             = Collections.synchronizedSet(new HashSet(10));
 
-    //serviceName -> resourceName -> sessionId -> scope -> result
-    private Map resultCache = new HashMap(10); 
+    private final PolicyDecisionCache decisionCache;
 
     private PolicyNotificationHandler notificationHandler;
     private Set tokenRegistry = 
@@ -167,6 +165,8 @@ class ResourceResultCache implements SSOTokenListener {
         this.policyProperties = policyProperties;
         notificationHandler = new PolicyNotificationHandler(this);
         cacheTtl = policyProperties.getCacheTtl();
+        decisionCache = new PolicyDecisionCache(
+                policyProperties.getResultsCacheMaxWeight());
 
         if (policyProperties.notificationEnabled()){
             //register notification handler with PLLClient
@@ -203,6 +203,8 @@ class ResourceResultCache implements SSOTokenListener {
         }  else {
             resourceResultCache.policyProperties = policyProperties;
             resourceResultCache.cacheTtl = policyProperties.getCacheTtl();
+            resourceResultCache.decisionCache.setMaxWeight(
+                    policyProperties.getResultsCacheMaxWeight());
         }
         return resourceResultCache;
     } 
@@ -416,9 +418,10 @@ class ResourceResultCache implements SSOTokenListener {
      * @throws InvalidAppSSOTokenException if application session token 
      * is not valid
      */ 
-    private Set getResourceResults(SSOToken appToken, String serviceName,
-            SSOToken token, String resourceName, Set actionNames,
-            Map env, String scope, boolean useCache) 
+    private Set getResourceResults(final SSOToken appToken,
+            final String serviceName, final SSOToken token,
+            final String resourceName, Set actionNames,
+            Map env, final String scope, boolean useCache) 
             throws InvalidAppSSOTokenException, 
             PolicyException, SSOException {
         SSOTokenManager.getInstance().validateToken(token);
@@ -435,155 +438,88 @@ class ResourceResultCache implements SSOTokenListener {
                     + ":entering ");
         }
 
-        Map resourceTokenIDsMap = null;
-        // resultCache -> serviceName -> resourceName -> sessionId -> scope -> result
-        synchronized(resultCache) {
-            // resourceName -> sessionId -> scope -> result
-            resourceTokenIDsMap = (Map)resultCache.get(serviceName);
-            if (resourceTokenIDsMap == null) {
-                // changed to fix 4295 Policy cache causes frequent 
-                // full gc or out of memory issues
-                resourceTokenIDsMap 
-                        = new Cache(policyProperties.getResultsCacheResourceCap());
-                resultCache.put(serviceName, resourceTokenIDsMap);
-            }
-        }
-
-        Map tokenIDScopesMap = null;
-        // resourceTokenIDsMap -> resourceName -> sessionId -> scope -> result
-        synchronized(resourceTokenIDsMap) {
-            // sessionId -> scope -> result
-            tokenIDScopesMap = (Map)resourceTokenIDsMap.get(resourceName);
-            if (tokenIDScopesMap == null) {
-                // changed to fix 4295 Policy cache causes frequent full 
-                // gc or out of memory issues
-                tokenIDScopesMap  
-                        = new Cache(policyProperties.getResultsCacheSessionCap());
-                resourceTokenIDsMap.put(resourceName, tokenIDScopesMap);
+        final Set actionNames1 = actionNames == null ? null : new HashSet(actionNames);
+        final Map env1 = env == null ? null : PolicyUtils.cloneMap(env);
+        PolicyDecisionCache.Fetcher fetcher = new PolicyDecisionCache.Fetcher() {
+            public Set fetch() throws PolicyException, SSOException {
+                // changed to fix 4205 Policy client code has bottleneck when processing notificati 
+                // FIXME: remove the check for service name with the some fix on server
+                if (policyProperties.useRESTProtocol()
+                        && IPLANET_AM_WEB_AGENT_SERVICE.equalsIgnoreCase(serviceName)) {
+                    return getRESTResultsFromServer(appToken, serviceName,
+                            token, resourceName, scope, actionNames1, env1);
+                } else {
+                    return getResultsFromServer(appToken, serviceName,
+                            token, resourceName, scope, actionNames1, env1);
+                }
             }
-        }
+        };
 
-        Map scopeResultsMap= null;
         String tokenID =  token.getTokenID().toString();
-        // tokenIDScopesMap -> sessionId -> scope -> result
-        synchronized(tokenIDScopesMap) {
-            scopeResultsMap = (Map)tokenIDScopesMap.get(tokenID);
-            if (scopeResultsMap == null) {
-                scopeResultsMap = new HashMap();
-                tokenIDScopesMap.put(tokenID, scopeResultsMap);
-                if (!tokenRegistry.contains(tokenID)) {
-                    token.addSSOTokenListener(this);
-                    tokenRegistry.add(tokenID);
-                }
-            }
+        if (!tokenRegistry.contains(tokenID)) {
+            token.addSSOTokenListener(this);
+            tokenRegistry.add(tokenID);
         }
-
-        Object[] results = null;
-        boolean fetchResultsFromServer = false;
-        // scopeResultsMap -> scope -> result
-        synchronized(scopeResultsMap) {
-            results = (Object[])scopeResultsMap.get(scope);
-            if ( results == null) {
-
-                //array elements:resourceResults, env, ttl, actionNames
-                results = new Object[4];
-                scopeResultsMap.put(scope, results);
+        PolicyDecisionCache.Key key = new PolicyDecisionCache.Key(serviceName,
+                resourceName, tokenID, scope);
+        PolicyDecisionCache.Entry results = null;
+        if ( !useCache ) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since useCache is false");
             }
-
-            if ( !useCache ) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since useCache is false");
-                }
-                fetchResultsFromServer = true;
-            } else if (results[0] == null) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server "
-                            + " since results not in cache");
-                }
-                fetchResultsFromServer = true;
-            } else if ((env == null) && (results[1] != null)) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since env does not match");
-                }
-                fetchResultsFromServer = true;
-            } else if ((env != null) && !env.equals(results[1])) { 
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since env does not Match");
-                }
-                fetchResultsFromServer = true;
-            } else if (((Long) results[2]).longValue()
-                    < currentTimeMillis()) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since results ttl has "
-                            + " expired");
-                }
-                fetchResultsFromServer = true;
-            } else if ((actionNames == null) && (results[3] != null)) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since action names do not "
-                            + " match");
-                }
-                fetchResultsFromServer = true;
-            } else if ((actionNames != null) &&  (results[3] == null)) {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since action names do not "
-                            + " Match");
-                }
-                fetchResultsFromServer = true;
-            } else if ((results[3] !=null) &&!((Set)results[3]).containsAll(
-                    actionNames))  {
-                if (debug.messageEnabled()) {
-                    debug.message("ResourceResultCache.getResourceResults():"
-                            + "would contact server since cached action names "
-                            + " do not cover request action names");
-                }
-                fetchResultsFromServer = true;
-            } else if (resourceResultsHasAdvices((Set)(results[0]))
-                    && PolicyProperties.SELF.equals(cacheMode)) { 
-                //get from server if there were advices in the cached decision
-                //we do this only if cacheMode is self
-                fetchResultsFromServer = true;
-
+        } else if ((results = decisionCache.get(key)) == null) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server "
+                        + " since results not in cache");
             }
-
-        }
-
-        // changed to fix 4205 Policy client code has bottleneck when processing notificati 
-        // FIXME: remove the check for service name with the some fix on server
-        if (fetchResultsFromServer) {
-            if(policyProperties.useRESTProtocol() 
-                    && IPLANET_AM_WEB_AGENT_SERVICE.equalsIgnoreCase(serviceName)) {
-                resourceResults = getRESTResultsFromServer(appToken, 
-                        serviceName, token, resourceName, scope, 
-                        actionNames, env);
-            } else {
-                resourceResults = getResultsFromServer(appToken, 
-                        serviceName, token, resourceName, scope, 
-                        actionNames, env);
+        } else if ((env == null) && (results.getEnv() != null)) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since env does not match");
             }
-            results[0] = resourceResults;
-
-            if (env != null) {
-                env = PolicyUtils.cloneMap(env);
+            results = null;
+        } else if ((env != null) && !env.equals(results.getEnv())) { 
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since env does not Match");
             }
-            results[1] = env;
-
-            results[2] 
-                    = new Long(currentTimeMillis() + cacheTtl);
-
-            if (actionNames != null) {
-                Set actionNames1 = actionNames;
-                actionNames = new HashSet();
-                actionNames.addAll(actionNames1);
+            results = null;
+        } else if ((actionNames == null) && (results.getActionNames() != null)) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since action names do not "
+                        + " match");
             }
-            results[3] = actionNames;
+            results = null;
+        } else if ((actionNames != null) && (results.getActionNames() == null)) {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since action names do not "
+                        + " Match");
+            }
+            results = null;
+        } else if ((results.getActionNames() != null)
+                && !results.getActionNames().containsAll(actionNames))  {
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache.getResourceResults():"
+                        + "would contact server since cached action names "
+                        + " do not cover request action names");
+            }
+            results = null;
+        } else if (resourceResultsHasAdvices(results.getResourceResults())
+                && PolicyProperties.SELF.equals(cacheMode)) { 
+            //get from server if there were advices in the cached decision
+            //we do this only if cacheMode is self
+            results = null;
+        }
+
+        if (results == null) {
+            // concurrent requests for the same decision share one request
+            // to the server, unless the caller asked not to use the cache
+            results = decisionCache.load(key, env1, actionNames1, cacheTtl,
+                    useCache, fetcher);
         } else {
             if (debug.messageEnabled()) {
                 debug.message("ResourceResultCache.getResourceResults():"
@@ -593,7 +529,7 @@ class ResourceResultCache implements SSOTokenListener {
         }
 
 
-        resourceResults = (Set)(results[0]);
+        resourceResults = results.getResourceResults();
         if (debug.messageEnabled()) {
             debug.message("ResourceResultCache.getResourceResults("
                     + serviceName + ","
@@ -1225,42 +1161,20 @@ class ResourceResultCache implements SSOTokenListener {
         }
 
         try {
-            synchronized(resultCache) {
-                Set services = (Set)resultCache.keySet();
-                Iterator serviceIter = services.iterator();
-                while (serviceIter.hasNext()) {
-                    String serviceName = (String)serviceIter.next();
-                    Map resourceTokenIDsMap = (Map)resultCache.get(serviceName);
-                    synchronized(resourceTokenIDsMap) {
-                        Set resources = (Set)resourceTokenIDsMap.keySet();
-                        Iterator resourceIter = resources.iterator();
-                        while (resourceIter.hasNext()) {
-                            String resource = (String)resourceIter.next();
-                            Map tokenIDScopesMap 
-                                    = (Map)resourceTokenIDsMap.get(resource);
-                            if (tokenIDScopesMap != null) {
-                                tokenIDScopesMap.remove(tokenID);
-                            }
-                            
-                            boolean tokenPresent = tokenRegistry.remove(tokenID);
-                            if ( (tokenPresent == false) &&
-                                (debug.messageEnabled()) ) {
-                                debug.message("ResourceResultCache. tokenID= "
-                                    + SECRET_MASK
-                                    + " not found in Token Registry.");
-                            }
+            decisionCache.removeToken(tokenID);
+            boolean tokenPresent = tokenRegistry.remove(tokenID);
+            if ( (tokenPresent == false) &&
+                (debug.messageEnabled()) ) {
+                debug.message("ResourceResultCache. tokenID= "
+                    + SECRET_MASK
+                    + " not found in Token Registry.");
+            }
 
-                            if (debug.messageEnabled()) {
-                                debug.message("ResourceResultCache."
-                                    + "ssoTokenChanged():"
-                                    + "removing cache results for "
-                                    + "tokenID=" + SECRET_MASK //mask tokenID
-                                    + ":serviceName=" + serviceName 
-                                    + ":resource=" + resource);
-                            }
-                        }
-                    }
-                }
+            if (debug.messageEnabled()) {
+                debug.message("ResourceResultCache."
+                    + "ssoTokenChanged():"
+                    + "removed cache results for "
+                    + "tokenID=" + SECRET_MASK); //mask tokenID
             }
         } catch (Throwable t) {
             if (debug.warningEnabled()) {
@@ -1282,10 +1196,9 @@ class ResourceResultCache implements SSOTokenListener {
             return;
         }  
 
-        Map resourceTokenIDsMap 
-                = (Map)(resourceResultCache.resultCache).get(serviceName);
-        if ((resourceTokenIDsMap == null)
-                || resourceTokenIDsMap.isEmpty()) {
+        PolicyDecisionCache decisionCache = resourceResultCache.decisionCache;
+        Set cachedResourceNames = decisionCache.getResourceNames(serviceName);
+        if (cachedResourceNames.isEmpty()) {
             return;
         } 
 
@@ -1300,62 +1213,59 @@ class ResourceResultCache implements SSOTokenListener {
                         + "clearCacheForResourceNames():"
                         + "affectedResourceName=" + affectedRN);
             }
-            synchronized (resourceTokenIDsMap) {
-                Set cachedResourceNames = resourceTokenIDsMap.keySet();
-                Iterator crIter = cachedResourceNames.iterator();
-                while (crIter.hasNext()) {
-                    String cachedRN = (String)crIter.next();
+            Iterator crIter = cachedResourceNames.iterator();
+            while (crIter.hasNext()) {
+                String cachedRN = (String)crIter.next();
+                if (debug.messageEnabled()) {
+                    debug.message("ResourceResultCache."
+                            + "clearCacheForResourceNames():"
+                            + "affectedResourceName=" + affectedRN
+                            + ":cachedResourceName=" + cachedRN);
+                }
+                if (affectedRN.equals(cachedRN)) {
+                    decisionCache.removeResource(serviceName, cachedRN);
                     if (debug.messageEnabled()) {
                         debug.message("ResourceResultCache."
                                 + "clearCacheForResourceNames():"
-                                + "affectedResourceName=" + affectedRN
-                                + ":cachedResourceName=" + cachedRN);
+                                + "cleared cached results for "
+                                + "resourceName=" + cachedRN
+                                + ":affectedResourceName=" + affectedRN
+                                + ":match=SAME RESOURCE NAME");
                     }
-                    if (affectedRN.equals(cachedRN)) {
-                        crIter.remove();
+                } else {
+                    ResourceMatch rm 
+                            = resourceComparator.compare( cachedRN, 
+                            affectedRN, true); //wildcard compare
+                    if (rm.equals(ResourceMatch.EXACT_MATCH)) {
+                        decisionCache.removeResource(serviceName, cachedRN);
                         if (debug.messageEnabled()) {
                             debug.message("ResourceResultCache."
                                     + "clearCacheForResourceNames():"
                                     + "cleared cached results for "
                                     + "resourceName=" + cachedRN
                                     + ":affectedResourceName=" + affectedRN
-                                    + ":match=SAME RESOURCE NAME");
+                                    + ":match=EXACT_MATCH");
                         }
-                    } else {
-                        ResourceMatch rm 
-                                = resourceComparator.compare( cachedRN, 
-                                affectedRN, true); //wildcard compare
-                        if (rm.equals(ResourceMatch.EXACT_MATCH)) {
-                            crIter.remove();
-                            if (debug.messageEnabled()) {
-                                debug.message("ResourceResultCache."
-                                        + "clearCacheForResourceNames():"
-                                        + "cleared cached results for "
-                                        + "resourceName=" + cachedRN
-                                        + ":affectedResourceName=" + affectedRN
-                                        + ":match=EXACT_MATCH");
-                            }
-                        } else if (rm.equals(ResourceMatch.WILDCARD_MATCH)) {
-                            crIter.remove();
-                            if (debug.messageEnabled()) {
-                                debug.message("ResourceResultCache."
-                                        + "clearCacheForResourceNames():"
-                                        + "cleared cached results for "
-                                        + "resourceName=" + cachedRN
-                                        + ":affectedResourceName=" + affectedRN
-                                        + ":match=WILD_CARD_MATCH");
-                            }
-                        } else if (rm.equals(
-                                ResourceMatch.SUB_RESOURCE_MATCH)) {
-                            crIter.remove();
-                            if (debug.messageEnabled()) {
-                                debug.message("ResourceResultCache."
-                                        + "clearCacheForResourceNames():"
-                                        + "cleared cached results for "
-                                        + "resourceName=" + cachedRN
-                                        + ":affectedResourceName=" + affectedRN
-                                        + ":match=SUB_RESOURCE_MACTH");
-                            }
+                    } else if (rm.equals(ResourceMatch.WILDCARD_MATCH)) {
+                        decisionCache.removeResource(serviceName, cachedRN);
+                        if (debug.messageEnabled()) {
+                            debug.message("ResourceResultCache."
+                                    + "clearCacheForResourceNames():"
+                                    + "cleared cached results for "
+                                    + "resourceName=" + cachedRN
+                                    + ":affectedResourceName=" + affectedRN
+                                    + ":match=WILD_CARD_MATCH");
+                        }
+                    } else if (rm.equals(
+                            ResourceMatch.SUB_RESOURCE_MATCH)) {
+                        decisionCache.removeResource(serviceName, cachedRN);
+                        if (debug.messageEnabled()) {
+                            debug.message("ResourceResultCache."
+                                    + "clearCacheForResourceNames():"
+                                    + "cleared cached results for "
+                                    + "resourceName=" + cachedRN
+                                    + ":affectedResourceName=" + affectedRN
+                                    + ":match=SUB_RESOURCE_MACTH");
                         }
                     }
                 }
@@ -1560,9 +1470,7 @@ class ResourceResultCache implements SSOTokenListener {
                     + "clearCachedDecisionsForService():"
                     + "serviceName=" + serviceName);
         } 
-        synchronized(resultCache) {
-            resultCache.remove(serviceName);
-        }
+        decisionCache.removeService(serviceName);
     }
 
     /**
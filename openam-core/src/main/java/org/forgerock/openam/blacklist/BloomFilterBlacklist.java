@@ -16,53 +16,57 @@
 
 package org.forgerock.openam.blacklist;
 
-import javax.annotation.Nonnull;
-import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.sun.identity.shared.debug.Debug;
-import org.forgerock.bloomfilter.BloomFilter;
-import org.forgerock.bloomfilter.BloomFilters;
-import org.forgerock.bloomfilter.ConcurrencyStrategy;
-import org.forgerock.bloomfilter.ExpiryStrategy;
-import org.forgerock.guava.common.hash.Funnel;
-import org.forgerock.guava.common.hash.Funnels;
-import org.forgerock.guava.common.hash.PrimitiveSink;
-import org.forgerock.openam.utils.StringUtils;
 import org.forgerock.util.Reject;
 import org.forgerock.util.annotations.VisibleForTesting;
+import org.forgerock.util.time.TimeService;
 
 /**
  * A entry blacklist decorator implementation that uses a bloom filter to reduce the number of checks that need to
  * be performed against the underlying blacklist implementation. The advantage of a bloom filter is that it can store
  * very large blacklists (millions of entries) in memory, but with some possibility of false positives.
+ * <p/>
+ * The bloom filter is partitioned by the expiry time of the entries, and each partition is discarded once all of
+ * its entries have expired, so the memory it uses is bounded by the number of entries which are still blacklisted.
+ * Entries are looked up by their stable id alone, as their expiry time can change after they are blacklisted.
+ * <p/>
+ * The observed and expected false positive rates and the memory used by the filter are reported by
+ * {@link BloomFilterBlacklistStats}.
  *
  * @param <T> The blacklist type.
  */
 public final class BloomFilterBlacklist<T extends Blacklistable> implements Blacklist<T> {
-    private static final double FALSE_POSITIVE_PROBABILITY = 0.001d; // 0.1%
-    private static final int NUM_EXPECTED_BLACKLISTED_ENTRIES = 10000;
+    // Every partition is checked, so keep the partitions few and their combined probability near 0.1%
+    private static final double FALSE_POSITIVE_PROBABILITY_PER_PARTITION = 0.0002d;
+    private static final int NUM_EXPECTED_BLACKLISTED_ENTRIES_PER_PARTITION = 5000;
+    private static final long PARTITION_MS = TimeUnit.MINUTES.toMillis(30);
     private static final int CAPACITY_GROWTH_FACTOR = 2;
     private static final double FALSE_POSITIVE_PROBABILITY_SCALE_FACTOR = 0.6d;
 
     private static final Debug DEBUG = Debug.getInstance("blacklist");
 
     private final Blacklist<T> delegate;
-    private final long purgeDelayMs;
-    private final BloomFilter<BlacklistEntry> bloomFilter;
+    private final TimePartitionedBloomFilter bloomFilter;
+    private final AtomicLong trueNegatives = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
 
     @VisibleForTesting
-    BloomFilterBlacklist(Blacklist<T> delegate, long purgeDelayMs, final BloomFilter<BlacklistEntry> bloomFilter) {
+    BloomFilterBlacklist(Blacklist<T> delegate, final long purgeDelayMs,
+            final TimePartitionedBloomFilter bloomFilter) {
         Reject.ifNull(delegate, bloomFilter);
 
         this.delegate = delegate;
-        this.purgeDelayMs = purgeDelayMs;
         this.bloomFilter = bloomFilter;
 
         delegate.subscribe(new Listener() {
             @Override
             public void onBlacklisted(String id, long expiryTime) {
                 DEBUG.message("BloomFilterBlacklist: Blacklisting entry from event: {}", id);
-                bloomFilter.add(new BlacklistEntry(id, expiryTime));
+                // Held for as long as the delegate may still hold the entry
+                bloomFilter.add(id, expiryTime + purgeDelayMs);
             }
         });
 
@@ -81,14 +85,9 @@ public final class BloomFilterBlacklist<T extends Blacklistable> implements Blac
      * @param purgeDelayMs The purge delay in milli seconds.
      */
     public BloomFilterBlacklist(Blacklist<T> delegate, long purgeDelayMs) {
-        this(delegate, purgeDelayMs, BloomFilters.create(EntryFunnel.INSTANCE)
-                        .withFalsePositiveProbability(FALSE_POSITIVE_PROBABILITY)
-                        .withInitialCapacity(NUM_EXPECTED_BLACKLISTED_ENTRIES)
-                        .withExpiryStrategy(EntryExpirationStrategy.INSTANCE)
-                        .withCapacityGrowthFactor(CAPACITY_GROWTH_FACTOR)
-                        .withFalsePositiveProbabilityScaleFactor(FALSE_POSITIVE_PROBABILITY_SCALE_FACTOR)
-                        .withConcurrencyStrategy(ConcurrencyStrategy.ATOMIC)
-                        .build());
+        this(delegate, purgeDelayMs, new TimePartitionedBloomFilter(PARTITION_MS,
+                NUM_EXPECTED_BLACKLISTED_ENTRIES_PER_PARTITION, FALSE_POSITIVE_PROBABILITY_PER_PARTITION,
+                CAPACITY_GROWTH_FACTOR, FALSE_POSITIVE_PROBABILITY_SCALE_FACTOR, TimeService.SYSTEM));
     }
 
     @Override
@@ -100,9 +99,13 @@ public final class BloomFilterBlacklist<T extends Blacklistable> implements Blac
     @Override
     public boolean isBlacklisted(T entry) throws BlacklistException {
         DEBUG.message("BloomFilterBlacklist: checking blacklist");
-        boolean blacklisted = false;
-        if (bloomFilter.mightContain(BlacklistEntry.from(entry, purgeDelayMs))) {
-            blacklisted = delegate.isBlacklisted(entry);
+        if (!bloomFilter.mightContain(entry.getStableStorageID())) {
+            trueNegatives.incrementAndGet();
+            return false;
+        }
+        boolean blacklisted = delegate.isBlacklisted(entry);
+        if (!blacklisted) {
+            falsePositives.incrementAndGet();
         }
         return blacklisted;
     }
@@ -113,67 +116,34 @@ public final class BloomFilterBlacklist<T extends Blacklistable> implements Blac
     }
 
     /**
-     * Adapter to allow entries to be stored in Guava bloom filters. Uses the UTF-8 encoded bytes of the
-     * stable id of the entry as the key.
+     * @return The proportion of checks of entries which were not blacklisted that the bloom filter could not rule
+     * out, and so were checked against the definitive blacklist.
      */
-    private enum EntryFunnel implements Funnel<BlacklistEntry> {
-        INSTANCE;
-
-        private static final Funnel<CharSequence> UTF8FUNNEL = Funnels.stringFunnel(Charset.forName("UTF-8"));
-
-        @Override
-        public void funnel(@Nonnull BlacklistEntry entry, @Nonnull PrimitiveSink primitiveSink) {
-            UTF8FUNNEL.funnel(entry.stableId, primitiveSink);
-        }
+    public double getObservedFalsePositiveRate() {
+        long positives = falsePositives.get();
+        long total = positives + trueNegatives.get();
+        return total == 0 ? 0 : (double) positives / total;
     }
 
     /**
-     * Strategy to determine when a entry has expired and no longer needs to be stored in the bloom filter.
+     * @return The probability of a false positive expected from the current contents of every generation of the
+     * bloom filter.
      */
-    private enum EntryExpirationStrategy implements ExpiryStrategy<BlacklistEntry> {
-        INSTANCE;
-
-        @Override
-        public long expiryTime(BlacklistEntry entry) {
-            return entry.expiryTime;
-        }
+    public double getExpectedFalsePositiveProbability() {
+        return bloomFilter.getExpectedFalsePositiveProbability();
     }
 
     /**
-     * Minimal information about an entry required for blacklisting in the bloom filter.
+     * @return The approximate number of blacklisted entries held in the bloom filter.
      */
-    @VisibleForTesting
-    public static final class BlacklistEntry {
-        private final String stableId;
-        private final long expiryTime;
-
-        BlacklistEntry(final String stableId, final long expiryTime) {
-            this.stableId = stableId;
-            this.expiryTime = expiryTime;
-        }
-
-        static BlacklistEntry from(Blacklistable entry, long purgeDelayMs) throws BlacklistException {
-            return new BlacklistEntry(entry.getStableStorageID(), entry.getBlacklistExpiryTime() + purgeDelayMs);
-        }
-
-        @Override
-        public boolean equals(final Object o) {
-            if (this == o) {
-                return true;
-            }
-            if (o == null || getClass() != o.getClass()) {
-                return false;
-            }
-
-            final BlacklistEntry that = (BlacklistEntry) o;
-            return expiryTime == that.expiryTime && StringUtils.isEqualTo(stableId, that.stableId);
-        }
+    public long getEntryCount() {
+        return bloomFilter.getEntryCount();
+    }
 
-        @Override
-        public int hashCode() {
-            int result = stableId != null ? stableId.hashCode() : 0;
-            result = 31 * result + (int) (expiryTime ^ (expiryTime >>> 32));
-            return result;
-        }
+    /**
+     * @return The number of bytes of memory used by the bloom filter.
+     */
+    public long getMemoryUsage() {
+        return bloomFilter.getMemoryUsage();
     }
 }
@@ -0,0 +1,70 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.blacklist;
+
+import com.sun.identity.shared.stats.Stats;
+import com.sun.identity.shared.stats.StatsListener;
+
+/**
+ * Prints the number of entries, the memory used and the observed and expected false positive rates of a
+ * {@link BloomFilterBlacklist} to the {@value #STATS_NAME} stats file.
+ */
+public class BloomFilterBlacklistStats implements StatsListener {
+
+    /** The name of the stats file. */
+    public static final String STATS_NAME = "amBlacklistBloomFilter";
+
+    private final String name;
+    private final BloomFilterBlacklist<?> blacklist;
+
+    BloomFilterBlacklistStats(String name, BloomFilterBlacklist<?> blacklist) {
+        this.name = name;
+        this.blacklist = blacklist;
+    }
+
+    /**
+     * Adds the statistics of a blacklist as a listener of the stats service, if it is enabled.
+     *
+     * @param name The name of the blacklist, such as the type of entry it holds.
+     * @param blacklist The blacklist.
+     */
+    public static void register(String name, BloomFilterBlacklist<?> blacklist) {
+        Stats stats = Stats.getInstance(STATS_NAME);
+        if (stats.isEnabled()) {
+            stats.addStatsListener(new BloomFilterBlacklistStats(name, blacklist));
+        }
+    }
+
+    @Override
+    public void printStats() {
+        Stats.getInstance(STATS_NAME).record(format());
+    }
+
+    /**
+     * @return The statistics, as printed to the stats file.
+     */
+    String format() {
+        return new StringBuilder("Blacklist Bloom Filter ").append(name).append(" Statistics")
+                .append("\n--------------------")
+                .append("\nEntries: ").append(blacklist.getEntryCount())
+                .append("\nMemory: ").append(blacklist.getMemoryUsage()).append(" bytes")
+                .append("\nObserved false positive rate: ").append(blacklist.getObservedFalsePositiveRate())
+                .append("\nExpected false positive probability: ")
+                .append(blacklist.getExpectedFalsePositiveProbability())
+                .toString();
+    }
+}
@@ -47,8 +47,8 @@ import org.forgerock.openam.shared.concurrency.ThreadMonitor;
 import org.forgerock.openam.sm.datalayer.api.query.PartialToken;
 import org.forgerock.openam.tokens.CoreTokenField;
 import org.forgerock.openam.tokens.TokenType;
-import org.forgerock.openam.utils.TimeUtils;
 import org.forgerock.util.Reject;
+import org.forgerock.util.query.QueryFilter;
 
 /**
  * Entry blacklist that stores blacklisted entries in the CTS until they expire. A stable ID is stored in the CTS
@@ -87,6 +87,12 @@ public final class CTSBlacklist<T extends Blacklistable> implements Blacklist<T>
     private static final CoreTokenField BLACKLIST_TIME_FIELD = CoreTokenField.DATE_ONE;
     private static final CoreTokenField SERVER_ID_FIELD = CoreTokenField.STRING_ONE;
 
+    /**
+     * The overlap between consecutive polls, allowing for entries recorded by servers whose clocks are behind ours
+     * or which only become visible after a replication delay. Entries seen twice are notified twice.
+     */
+    private static final long POLL_OVERLAP_MS = 10000L;
+
     private final CTSPersistentStore cts;
     private final TokenType tokenType;
     private final PollTask pollTask;
@@ -152,8 +158,11 @@ public final class CTSBlacklist<T extends Blacklistable> implements Blacklist<T>
         scheduledExecutorService.execute(new Runnable() {
             @Override
             public void run() {
-                // Replay the existing blacklisted entries for the listener
-                for (PartialToken token : findEntriesBlacklistedSince(0)) {
+                // Polling only needs to find the entries blacklisted after those which are replayed
+                lastPollTime.compareAndSet(0, currentTimeMillis());
+                // Replay the existing blacklisted entries for the listener, including those blacklisted by this
+                // server before it was restarted
+                for (PartialToken token : findEntriesBlacklistedSince(0, true)) {
                     listener.onBlacklisted(token.<String>getValue(CoreTokenField.TOKEN_ID),
                             token.<Calendar>getValue(CoreTokenField.EXPIRY_DATE).getTimeInMillis());
                 }
@@ -181,13 +190,18 @@ public final class CTSBlacklist<T extends Blacklistable> implements Blacklist<T>
         }
     }
 
-    private Collection<PartialToken> findEntriesBlacklistedSince(long lastPollTime) {
-        // Search for blacklist tokens that have been added since our last poll time, but not from this server (those
-        // will already have been notified directly from the blacklist() method).
+    private Collection<PartialToken> findEntriesBlacklistedSince(long lastPollTime, boolean includeLocalServer) {
+        // Search for unexpired blacklist tokens that have been added since our last poll time. Unless replaying the
+        // whole blacklist, exclude those from this server, which will already have been notified directly from the
+        // blacklist() method.
+        QueryFilter<CoreTokenField> query = and(equalTo(CoreTokenField.TOKEN_TYPE, tokenType),
+                greaterThanOrEqualTo(BLACKLIST_TIME_FIELD, timeOf(lastPollTime)),
+                greaterThan(CoreTokenField.EXPIRY_DATE, now()));
+        if (!includeLocalServer) {
+            query = and(query, not(equalTo(SERVER_ID_FIELD, localServerId)));
+        }
         final TokenFilter filter = new TokenFilterBuilder()
-                .withQuery(and(equalTo(CoreTokenField.TOKEN_TYPE, tokenType),
-                                greaterThanOrEqualTo(BLACKLIST_TIME_FIELD, timeOf(lastPollTime)),
-                                not(equalTo(SERVER_ID_FIELD, localServerId))))
+                .withQuery(query)
                 .returnAttribute(CoreTokenField.TOKEN_ID)
                 .returnAttribute(CoreTokenField.EXPIRY_DATE)
                 .build();
@@ -226,13 +240,14 @@ public final class CTSBlacklist<T extends Blacklistable> implements Blacklist<T>
         @Override
         public void run() {
             DEBUG.message("CTSBlacklist: polling for new blacklisted entries");
+            long since = lastPollTime.getAndSet(currentTimeMillis());
             Collection<PartialToken> results =
-                    findEntriesBlacklistedSince(lastPollTime.getAndSet(currentTimeMillis()));
+                    findEntriesBlacklistedSince(Math.max(0, since - POLL_OVERLAP_MS), false);
             if (results != null) {
                 DEBUG.message("CTSBlacklist: Processing {} entry blacklist notifications", results.size());
                 for (PartialToken token : results) {
                     notifyListeners(token.<String>getValue(CoreTokenField.TOKEN_ID),
-                            TimeUtils.toUnixTime(token.<Calendar>getValue(CoreTokenField.EXPIRY_DATE)));
+                            token.<Calendar>getValue(CoreTokenField.EXPIRY_DATE).getTimeInMillis());
                 }
             }
         }
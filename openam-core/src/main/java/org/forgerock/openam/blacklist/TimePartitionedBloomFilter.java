@@ -0,0 +1,324 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.blacklist;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.forgerock.guava.common.hash.HashFunction;
+import org.forgerock.guava.common.hash.Hashing;
+import org.forgerock.util.Reject;
+import org.forgerock.util.annotations.VisibleForTesting;
+import org.forgerock.util.time.TimeService;
+
+/**
+ * A bloom filter of entry ids which is partitioned into generations by the expiry time of the entries.
+ * <p/>
+ * Each generation holds the entries which expire within a fixed window of time, and is discarded in its entirety
+ * once that window has passed, so the memory used by the filter is bounded by the number of unexpired entries
+ * rather than by how long the filter has been running. The expiry time is only used to decide when an entry can be
+ * forgotten: the expiry time of an entry may change after it has been added, such as when a session is refreshed,
+ * so a check consults every generation which has not yet been discarded, and the probability of a false positive
+ * is at most the sum of the probabilities of the generations held.
+ * <p/>
+ * Each generation starts with a small capacity and grows by chaining further, larger, stages as entries are added,
+ * tightening the false positive probability of each stage so that the combined probability stays close to the
+ * configured probability.
+ */
+class TimePartitionedBloomFilter {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long partitionMs;
+    private final int initialCapacity;
+    private final double falsePositiveProbability;
+    private final int capacityGrowthFactor;
+    private final double falsePositiveProbabilityScaleFactor;
+    private final TimeService clock;
+    private final ConcurrentNavigableMap<Long, Generation> generations = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param partitionMs The window of expiry times held by each generation, in milliseconds.
+     * @param initialCapacity The number of entries a generation holds before it grows.
+     * @param falsePositiveProbability The probability of a false positive in a generation which has not yet grown.
+     * @param capacityGrowthFactor The factor by which the capacity of each new stage of a generation grows.
+     * @param falsePositiveProbabilityScaleFactor The factor by which the false positive probability of each new
+     *                                            stage of a generation is tightened.
+     * @param clock The source of the current time.
+     */
+    TimePartitionedBloomFilter(long partitionMs, int initialCapacity, double falsePositiveProbability,
+            int capacityGrowthFactor, double falsePositiveProbabilityScaleFactor, TimeService clock) {
+        Reject.ifNull(clock);
+        Reject.ifFalse(partitionMs > 0, "partitionMs must be > 0");
+        Reject.ifFalse(initialCapacity > 0, "initialCapacity must be > 0");
+        Reject.ifFalse(falsePositiveProbability > 0 && falsePositiveProbability < 1,
+                "falsePositiveProbability must be between 0 and 1");
+        this.partitionMs = partitionMs;
+        this.initialCapacity = initialCapacity;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.capacityGrowthFactor = capacityGrowthFactor;
+        this.falsePositiveProbabilityScaleFactor = falsePositiveProbabilityScaleFactor;
+        this.clock = clock;
+    }
+
+    /**
+     * Adds an entry to the generation for its expiry time. Entries which have already expired are ignored.
+     *
+     * @param id The stable id of the entry.
+     * @param expiryTime The time, in milliseconds from UTC epoch, at which the entry expires.
+     */
+    void add(String id, long expiryTime) {
+        long now = clock.now();
+        discardExpiredGenerations(now);
+        if (expiryTime < now) {
+            return;
+        }
+        long partition = expiryTime / partitionMs;
+        Generation generation = generations.get(partition);
+        if (generation == null) {
+            Generation created = new Generation();
+            generation = generations.putIfAbsent(partition, created);
+            if (generation == null) {
+                generation = created;
+            }
+        }
+        generation.add(hash(id));
+    }
+
+    /**
+     * Determines whether an entry might have been added. A {@code false} result means that the entry was definitely
+     * not added, or the generation it was added to has been discarded.
+     *
+     * @param id The stable id of the entry.
+     * @return {@code true} if the entry might have been added.
+     */
+    boolean mightContain(String id) {
+        discardExpiredGenerations(clock.now());
+        long hash = hash(id);
+        for (Generation generation : generations.values()) {
+            if (generation.mightContain(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of generations currently held.
+     */
+    @VisibleForTesting
+    int getGenerationCount() {
+        discardExpiredGenerations(clock.now());
+        return generations.size();
+    }
+
+    /**
+     * @return The approximate number of distinct entries currently held.
+     */
+    long getEntryCount() {
+        discardExpiredGenerations(clock.now());
+        long count = 0;
+        for (Generation generation : generations.values()) {
+            count += generation.getEntryCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return The current probability of a false positive, as the sum of the probabilities of every generation held
+     * since each of them is checked.
+     */
+    double getExpectedFalsePositiveProbability() {
+        discardExpiredGenerations(clock.now());
+        double probability = 0;
+        for (Generation generation : generations.values()) {
+            probability += generation.getExpectedFalsePositiveProbability();
+        }
+        return Math.min(1, probability);
+    }
+
+    /**
+     * @return The number of bytes of memory used by the bit sets of all generations.
+     */
+    long getMemoryUsage() {
+        discardExpiredGenerations(clock.now());
+        long bytes = 0;
+        for (Generation generation : generations.values()) {
+            bytes += generation.getMemoryUsage();
+        }
+        return bytes;
+    }
+
+    private void discardExpiredGenerations(long now) {
+        long current = now / partitionMs;
+        Map.Entry<Long, Generation> first = generations.firstEntry();
+        if (first != null && first.getKey() < current) {
+            generations.headMap(current).clear();
+        }
+    }
+
+    private static long hash(String id) {
+        return HASH_FUNCTION.hashString(id, UTF_8).asLong();
+    }
+
+    /**
+     * The entries expiring within one partition, held in a chain of stages of growing capacity.
+     */
+    private final class Generation {
+        private final List<Stage> stages = new CopyOnWriteArrayList<>();
+
+        Generation() {
+            stages.add(new Stage(initialCapacity, falsePositiveProbability));
+        }
+
+        void add(long hash) {
+            for (Stage stage : stages) {
+                if (stage.mightContain(hash)) {
+                    return;
+                }
+            }
+            Stage current = currentStage();
+            if (current.isFull()) {
+                synchronized (this) {
+                    current = currentStage();
+                    if (current.isFull()) {
+                        current = new Stage(current.capacity * capacityGrowthFactor,
+                                current.falsePositiveProbability * falsePositiveProbabilityScaleFactor);
+                        stages.add(current);
+                    }
+                }
+            }
+            current.add(hash);
+        }
+
+        boolean mightContain(long hash) {
+            for (Stage stage : stages) {
+                if (stage.mightContain(hash)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long getEntryCount() {
+            long count = 0;
+            for (Stage stage : stages) {
+                count += stage.count.get();
+            }
+            return count;
+        }
+
+        double getExpectedFalsePositiveProbability() {
+            double probability = 0;
+            for (Stage stage : stages) {
+                probability += stage.getExpectedFalsePositiveProbability();
+            }
+            return probability;
+        }
+
+        long getMemoryUsage() {
+            long bytes = 0;
+            for (Stage stage : stages) {
+                bytes += stage.bits.length() * 8L;
+            }
+            return bytes;
+        }
+
+        private Stage currentStage() {
+            return stages.get(stages.size() - 1);
+        }
+    }
+
+    /**
+     * A fixed size bloom filter, which uses double hashing of a 64 bit hash to derive its bit indexes.
+     */
+    private static final class Stage {
+        private final int capacity;
+        private final double falsePositiveProbability;
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicInteger bitsSet = new AtomicInteger();
+
+        Stage(int capacity, double falsePositiveProbability) {
+            this.capacity = capacity;
+            this.falsePositiveProbability = falsePositiveProbability;
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveProbability)
+                    / (Math.log(2) * Math.log(2)));
+            this.bits = new AtomicLongArray((int) Math.max(1, (optimalBits + 63) / 64));
+            this.bitCount = bits.length() * 64L;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        }
+
+        boolean isFull() {
+            return count.get() >= capacity;
+        }
+
+        void add(long hash) {
+            int hash1 = (int) hash;
+            int hash2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                if (setBit(index(hash1 + i * hash2))) {
+                    bitsSet.incrementAndGet();
+                }
+            }
+            count.incrementAndGet();
+        }
+
+        boolean mightContain(long hash) {
+            int hash1 = (int) hash;
+            int hash2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashCount; i++) {
+                long index = index(hash1 + i * hash2);
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        double getExpectedFalsePositiveProbability() {
+            return Math.pow((double) bitsSet.get() / bitCount, hashCount);
+        }
+
+        private long index(int combinedHash) {
+            return (combinedHash & Integer.MAX_VALUE) % bitCount;
+        }
+
+        private boolean setBit(long index) {
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            while (true) {
+                long current = bits.get(word);
+                if ((current & mask) != 0) {
+                    return false;
+                }
+                if (bits.compareAndSet(word, current, current | mask)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -94,6 +94,7 @@ import org.forgerock.openam.auditors.SMSAuditFilter;
 import org.forgerock.openam.auditors.SMSAuditor;
 import org.forgerock.openam.blacklist.Blacklist;
 import org.forgerock.openam.blacklist.BloomFilterBlacklist;
+import org.forgerock.openam.blacklist.BloomFilterBlacklistStats;
 import org.forgerock.openam.blacklist.CTSBlacklist;
 import org.forgerock.openam.blacklist.CachingBlacklist;
 import org.forgerock.openam.blacklist.NoOpBlacklist;
@@ -582,7 +583,9 @@ public class CoreGuiceModule extends AbstractModule {
         }
 
         if (pollIntervalMs > 0) {
-            blacklist = new BloomFilterBlacklist<>(blacklist, purgeDelayMs);
+            BloomFilterBlacklist<Session> bloomFilterBlacklist = new BloomFilterBlacklist<>(blacklist, purgeDelayMs);
+            BloomFilterBlacklistStats.register("Session", bloomFilterBlacklist);
+            blacklist = bloomFilterBlacklist;
         }
 
         return blacklist;
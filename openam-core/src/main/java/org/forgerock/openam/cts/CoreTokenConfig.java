@@ -44,6 +44,7 @@ public class CoreTokenConfig {
     private final boolean tokensEncrypted;
     private final boolean tokensCompressed;
     private final boolean attributeNamesCompressed;
+    private final boolean sessionsBinary;
 
     /**
      * Create a new default instance of the CoreTokenConfig which will establish the various configuration
@@ -74,6 +75,9 @@ public class CoreTokenConfig {
         // Control Attribute Name Compression.
         attributeNamesCompressed = SystemProperties.getAsBoolean(Constants.SESSION_REPOSITORY_ATTRIBUTE_NAME_COMPRESSION);
 
+        // Control binary serialisation of Sessions.
+        sessionsBinary = SystemProperties.getAsBoolean(Constants.SESSION_REPOSITORY_BINARY_SERIALISATION);
+
         // Controls the size of pages requested for CTS Reaper
         cleanupPageSize = 1000;
     }
@@ -179,6 +183,13 @@ public class CoreTokenConfig {
         return attributeNamesCompressed;
     }
 
+    /**
+     * @return True if Sessions should be serialised in binary rather than JSON. False by default.
+     */
+    public boolean isSessionBinarySerialised() {
+        return sessionsBinary;
+    }
+
     /**
      * @return The LDAP Query Page size in Tokens that will be deleted by the CTS Reaper.
      */
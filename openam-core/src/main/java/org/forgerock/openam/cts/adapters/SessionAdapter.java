@@ -21,11 +21,15 @@ import org.forgerock.openam.tokens.TokenType;
 import org.forgerock.openam.cts.api.fields.SessionTokenField;
 import org.forgerock.openam.cts.api.tokens.Token;
 import org.forgerock.openam.cts.api.tokens.TokenIdFactory;
+import org.forgerock.openam.cts.utils.BinarySerialisation;
 import org.forgerock.openam.cts.utils.JSONSerialisation;
 import org.forgerock.openam.cts.utils.blob.TokenBlobUtils;
 import org.forgerock.openam.cts.utils.blob.strategies.AttributeCompressionStrategy;
 import org.forgerock.openam.utils.TimeUtils;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import javax.inject.Inject;
 import java.lang.reflect.Field;
 import java.util.Calendar;
@@ -43,6 +47,7 @@ public class SessionAdapter implements TokenAdapter<InternalSession> {
     private final TokenIdFactory tokenIdFactory;
     private final CoreTokenConfig config;
     private final JSONSerialisation serialisation;
+    private final BinarySerialisation binarySerialisation;
     private final TokenBlobUtils blobUtils;
 
     /**
@@ -56,14 +61,17 @@ public class SessionAdapter implements TokenAdapter<InternalSession> {
      * @param tokenIdFactory Non null.
      * @param config Non null.
      * @param serialisation Non null.
+     * @param binarySerialisation Non null.
      * @param blobUtils A collection of Binary Object utilities.
      */
     @Inject
     public SessionAdapter(TokenIdFactory tokenIdFactory, CoreTokenConfig config,
-                          JSONSerialisation serialisation, TokenBlobUtils blobUtils) {
+                          JSONSerialisation serialisation, BinarySerialisation binarySerialisation,
+                          TokenBlobUtils blobUtils) {
         this.tokenIdFactory = tokenIdFactory;
         this.config = config;
         this.serialisation = serialisation;
+        this.binarySerialisation = binarySerialisation;
         this.blobUtils = blobUtils;
     }
 
@@ -96,10 +104,14 @@ public class SessionAdapter implements TokenAdapter<InternalSession> {
         token.setAttribute(SessionTokenField.SESSION_ID.getField(), session.getID().toString());
 
         // Binary data
-        String jsonBlob = serialisation.serialise(session);
-        blobUtils.setBlobFromString(token, jsonBlob);
-
-        String latestAccessTime = filterLatestAccessTime(token);
+        String latestAccessTime;
+        if (config.isSessionBinarySerialised()) {
+            latestAccessTime = setBinaryBlob(token, session);
+        } else {
+            String jsonBlob = serialisation.serialise(session);
+            blobUtils.setBlobFromString(token, jsonBlob);
+            latestAccessTime = filterLatestAccessTime(token);
+        }
         if (latestAccessTime != null) {
             token.setAttribute(SessionTokenField.LATEST_ACCESS_TIME.getField(), latestAccessTime);
         }
@@ -113,12 +125,28 @@ public class SessionAdapter implements TokenAdapter<InternalSession> {
     /**
      * Convert from a Token to an Internal Session.
      *
-     * Simply deserialise the InternalSession from the JSON blob.
+     * Simply deserialise the InternalSession from the JSON or binary blob.
      *
      * @param token Token to be converted back to its original format.
      * @return Non null InternalSession.
      */
     public InternalSession fromToken(Token token) {
+        InternalSession session;
+        if (BinarySerialisation.isBinary(token.getBlob())) {
+            session = fromBinaryBlob(token);
+        } else {
+            session = fromJsonBlob(token);
+        }
+        if (session.getSessionHandle() == null) {
+            //Originally the sessionHandle was stored in the serialize token, so if after the deserialization the
+            //sessionHandle field is not set, then we should attempt to retrieve the value directly from the token.
+            session.setSessionHandle(token.<String>getValue(SessionTokenField.SESSION_HANDLE.getField()));
+        }
+
+        return session;
+    }
+
+    private InternalSession fromJsonBlob(Token token) {
         String jsonBlob = blobUtils.getBlobAsString(token);
         int index = findIndexOfValidField(jsonBlob);
 
@@ -137,14 +165,46 @@ public class SessionAdapter implements TokenAdapter<InternalSession> {
             jsonBlob = jsonBlob.substring(0, index) + addition + jsonBlob.substring(index, jsonBlob.length());
         }
 
-        InternalSession session = serialisation.deserialise(jsonBlob, InternalSession.class);
-        if (session.getSessionHandle() == null) {
-            //Originally the sessionHandle was stored in the serialize token, so if after the deserialization the
-            //sessionHandle field is not set, then we should attempt to retrieve the value directly from the token.
-            session.setSessionHandle(token.<String>getValue(SessionTokenField.SESSION_HANDLE.getField()));
+        return serialisation.deserialise(jsonBlob, InternalSession.class);
+    }
+
+    /**
+     * The binary blob is decoded to a JSON tree, so the LatestAccessTime can be restored as a field rather
+     * than inserted into the text of the blob.
+     */
+    private InternalSession fromBinaryBlob(Token token) {
+        JsonNode tree = binarySerialisation.decode(token.getBlob());
+
+        String latestAccessTime = token.getValue(SessionTokenField.LATEST_ACCESS_TIME.getField());
+        if (latestAccessTime != null && tree.isObject()) {
+            String fieldName = SessionTokenField.LATEST_ACCESS_TIME.getInternalSessionFieldName();
+            ((ObjectNode) tree).put(fieldName, Long.valueOf(latestAccessTime));
         }
 
-        return session;
+        return binarySerialisation.fromTree(tree, InternalSession.class);
+    }
+
+    /**
+     * Serialises the InternalSession to a binary blob, without the LatestAccessTime field.
+     *
+     * @param token Non null Token to store the blob in.
+     * @param session Non null InternalSession to serialise.
+     * @return The LatestAccessTime removed from the blob, or null if the session did not have one.
+     */
+    private String setBinaryBlob(Token token, InternalSession session) {
+        JsonNode tree = binarySerialisation.toTree(session);
+
+        String latestAccessTime = null;
+        if (tree.isObject()) {
+            String fieldName = SessionTokenField.LATEST_ACCESS_TIME.getInternalSessionFieldName();
+            JsonNode removed = ((ObjectNode) tree).remove(fieldName);
+            if (removed != null && removed.isIntegralNumber()) {
+                latestAccessTime = removed.asText();
+            }
+        }
+
+        token.setBlob(binarySerialisation.encode(tree));
+        return latestAccessTime;
     }
 
     /**
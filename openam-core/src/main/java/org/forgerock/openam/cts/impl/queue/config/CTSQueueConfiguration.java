@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014-2015 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 package org.forgerock.openam.cts.impl.queue.config;
 
@@ -21,6 +21,7 @@ import javax.inject.Singleton;
 import java.text.MessageFormat;
 
 import com.iplanet.am.util.SystemProperties;
+import com.sun.identity.common.configuration.ConfigurationListener;
 import com.sun.identity.shared.debug.Debug;
 import org.forgerock.openam.cts.api.CoreTokenConstants;
 import org.forgerock.openam.cts.impl.queue.QueueSelector;
@@ -84,6 +85,15 @@ public class CTSQueueConfiguration implements QueueConfiguration {
         return queueSize;
     }
 
+    /**
+     * Registers a listener to be notified when the configured queue size changes.
+     *
+     * @param listener Non null listener, which should re-read {@link #getQueueSize()} when notified.
+     */
+    public void addQueueSizeListener(ConfigurationListener listener) {
+        SystemProperties.observe(listener, CoreTokenConstants.CTS_ASYNC_QUEUE_SIZE);
+    }
+
     @Override
     public int getProcessors() throws DataLayerException {
         try {
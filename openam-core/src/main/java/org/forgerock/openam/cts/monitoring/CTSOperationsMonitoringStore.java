@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.cts.monitoring;
@@ -141,4 +141,60 @@ public interface CTSOperationsMonitoringStore {
      * @return the maximum observed failure rate of the given operation in the current monitoring period.
      */
     long getMaximumOperationFailuresPerPeriod(CTSOperation operation);
+
+    /**
+     * Records a task taken from one of the CTS asynchronous task queues.
+     *
+     * @param queue The index of the queue.
+     * @param depth The number of tasks ahead of the task on the queue when it was queued.
+     * @param waitTime The time in microseconds the task waited on the queue.
+     * @param serviceTime The time in microseconds taken to process the task.
+     */
+    void addQueuedTask(int queue, int depth, long waitTime, long serviceTime);
+
+    /**
+     * Records a task which was merged into, or cancelled by, another task for the same token whilst
+     * waiting on a CTS asynchronous task queue, and so did not result in its own operation.
+     *
+     * @param queue The index of the queue.
+     */
+    void addCoalescedTask(int queue);
+
+    /**
+     * Gets the number of tasks taken from the CTS asynchronous task queues.
+     *
+     * @return The number of tasks.
+     */
+    long getQueuedTaskCount();
+
+    /**
+     * Gets the number of tasks waiting on the CTS asynchronous task queues, as seen by the last task
+     * taken from each queue when that task was queued.
+     *
+     * @return The number of waiting tasks.
+     */
+    long getQueueDepth();
+
+    /**
+     * Gets the time tasks have waited on the CTS asynchronous task queues at the given percentile.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The wait time in microseconds.
+     */
+    long getQueueWaitTimeAtPercentile(double percentile);
+
+    /**
+     * Gets the time taken to process tasks from the CTS asynchronous task queues at the given percentile.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The service time in microseconds.
+     */
+    long getQueueServiceTimeAtPercentile(double percentile);
+
+    /**
+     * Gets the number of tasks which were coalesced on the CTS asynchronous task queues.
+     *
+     * @return The number of coalesced tasks.
+     */
+    long getCoalescedTaskCount();
 }
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.cts.monitoring.impl;
@@ -26,6 +26,7 @@ import org.forgerock.openam.cts.monitoring.CTSOperationsMonitoringStore;
 import org.forgerock.openam.cts.monitoring.CTSReaperMonitoringStore;
 import org.forgerock.openam.cts.monitoring.impl.connections.ConnectionStore;
 import org.forgerock.openam.cts.monitoring.impl.operations.TokenOperationsStore;
+import org.forgerock.openam.cts.monitoring.impl.queue.TaskQueueStore;
 import org.forgerock.openam.cts.monitoring.impl.reaper.ReaperMonitor;
 
 import javax.inject.Inject;
@@ -56,6 +57,7 @@ public class CTSMonitoringStoreImpl implements CTSOperationsMonitoringStore, CTS
     private final ExecutorService executorService;
     private final ReaperMonitor reaperMonitor;
     private final ConnectionStore connectionStore;
+    private final TaskQueueStore taskQueueStore;
 
     /**
      * Constructs an instance of the CTSMonitoringStoreImpl.
@@ -64,18 +66,22 @@ public class CTSMonitoringStoreImpl implements CTSOperationsMonitoringStore, CTS
      * @param executorService An instance of an ExecutorService.
      * @param tokenOperationsStore An instance of the TokenOperationsStore.
      * @param reaperMonitor An instance of the ReaperMonitor.
+     * @param connectionStore An instance of the ConnectionStore.
+     * @param taskQueueStore An instance of the TaskQueueStore.
      */
     @Inject
     public CTSMonitoringStoreImpl(@Named(EXECUTOR_BINDING_NAME) final ExecutorService executorService,
                                   final TokenOperationsStore tokenOperationsStore,
                                   final ReaperMonitor reaperMonitor,
                                   final ConnectionStore connectionStore,
+                                  final TaskQueueStore taskQueueStore,
                                   @Named(CoreTokenConstants.CTS_DEBUG) final Debug debug) {
         this.debug = debug;
         this.executorService = executorService;
         this.tokenOperationsStore = tokenOperationsStore;
         this.reaperMonitor = reaperMonitor;
         this.connectionStore = connectionStore;
+        this.taskQueueStore = taskQueueStore;
     }
 
     /**
@@ -230,4 +236,39 @@ public class CTSMonitoringStoreImpl implements CTSOperationsMonitoringStore, CTS
     public double getConnectionsCumulativeCount(boolean success) {
         return connectionStore.getConnectionsCumulativeCount(success);
     }
+
+    @Override
+    public void addQueuedTask(int queue, int depth, long waitTime, long serviceTime) {
+        taskQueueStore.addTask(queue, depth, waitTime, serviceTime);
+    }
+
+    @Override
+    public void addCoalescedTask(int queue) {
+        taskQueueStore.addCoalescedTask(queue);
+    }
+
+    @Override
+    public long getQueuedTaskCount() {
+        return taskQueueStore.getTaskCount();
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return taskQueueStore.getQueueDepth();
+    }
+
+    @Override
+    public long getQueueWaitTimeAtPercentile(double percentile) {
+        return taskQueueStore.getWaitTimeAtPercentile(percentile);
+    }
+
+    @Override
+    public long getQueueServiceTimeAtPercentile(double percentile) {
+        return taskQueueStore.getServiceTimeAtPercentile(percentile);
+    }
+
+    @Override
+    public long getCoalescedTaskCount() {
+        return taskQueueStore.getCoalescedTaskCount();
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.monitoring.impl.queue;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+
+import org.HdrHistogram.AtomicHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * A data structure that stores the depth, the wait and service time distributions and the number of
+ * coalesced tasks of each CTS asynchronous task queue.
+ *
+ * Times are recorded in microseconds into lock free histograms, so recording can take place on the
+ * CTS worker threads without contending with each other. The queues are reported together, as the
+ * number of queues depends on configuration.
+ */
+@Singleton
+public class TaskQueueStore {
+
+    private static final long HIGHEST_TRACKABLE_TIME = TimeUnit.MINUTES.toMicros(10);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final ConcurrentMap<Integer, QueueTimings> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Records a task which has been taken from a queue and processed.
+     *
+     * @param queue The index of the queue.
+     * @param depth The number of tasks ahead of the task on the queue when it was queued.
+     * @param waitTime The time in microseconds the task spent waiting on the queue.
+     * @param serviceTime The time in microseconds taken to process the task.
+     */
+    public void addTask(int queue, int depth, long waitTime, long serviceTime) {
+        QueueTimings timings = getTimings(queue);
+        timings.depth = depth;
+        timings.waitTimes.recordValue(clamp(waitTime));
+        timings.serviceTimes.recordValue(clamp(serviceTime));
+    }
+
+    /**
+     * Records a task which was coalesced with another task whilst waiting on a queue.
+     *
+     * @param queue The index of the queue.
+     */
+    public void addCoalescedTask(int queue) {
+        getTimings(queue).coalesced.incrementAndGet();
+    }
+
+    /**
+     * @return The total number of tasks taken from all of the queues.
+     */
+    public long getTaskCount() {
+        long count = 0;
+        for (QueueTimings timings : queues.values()) {
+            count += timings.waitTimes.getTotalCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return The sum of the depth of each queue, as seen by the last task taken from it when that task was queued.
+     */
+    public long getQueueDepth() {
+        long depth = 0;
+        for (QueueTimings timings : queues.values()) {
+            depth += timings.depth;
+        }
+        return depth;
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100.
+     * @return The time in microseconds tasks waited on any of the queues at the given percentile.
+     */
+    public long getWaitTimeAtPercentile(double percentile) {
+        Histogram waitTimes = createHistogram();
+        for (QueueTimings timings : queues.values()) {
+            waitTimes.add(timings.waitTimes);
+        }
+        return waitTimes.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100.
+     * @return The time in microseconds taken to process tasks from any of the queues at the given percentile.
+     */
+    public long getServiceTimeAtPercentile(double percentile) {
+        Histogram serviceTimes = createHistogram();
+        for (QueueTimings timings : queues.values()) {
+            serviceTimes.add(timings.serviceTimes);
+        }
+        return serviceTimes.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * @return The total number of tasks coalesced whilst waiting on any of the queues.
+     */
+    public long getCoalescedTaskCount() {
+        long count = 0;
+        for (QueueTimings timings : queues.values()) {
+            count += timings.coalesced.get();
+        }
+        return count;
+    }
+
+    private QueueTimings getTimings(int queue) {
+        QueueTimings timings = queues.get(queue);
+        if (timings == null) {
+            QueueTimings created = new QueueTimings();
+            timings = queues.putIfAbsent(queue, created);
+            if (timings == null) {
+                timings = created;
+            }
+        }
+        return timings;
+    }
+
+    private static Histogram createHistogram() {
+        return new Histogram(HIGHEST_TRACKABLE_TIME, SIGNIFICANT_DIGITS);
+    }
+
+    private static long clamp(long time) {
+        return Math.max(0, Math.min(time, HIGHEST_TRACKABLE_TIME));
+    }
+
+    private static final class QueueTimings {
+        private final AtomicHistogram waitTimes = new AtomicHistogram(HIGHEST_TRACKABLE_TIME, SIGNIFICANT_DIGITS);
+        private final AtomicHistogram serviceTimes = new AtomicHistogram(HIGHEST_TRACKABLE_TIME, SIGNIFICANT_DIGITS);
+        private final AtomicLong coalesced = new AtomicLong();
+        private volatile int depth;
+    }
+}
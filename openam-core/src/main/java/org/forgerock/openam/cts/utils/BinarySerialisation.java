@@ -0,0 +1,456 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.utils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.forgerock.openam.cts.api.CoreTokenConstants;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Responsible for serialising and deserialising objects to and from a compact binary form of JSON.
+ *
+ * Objects are mapped to and from a JSON tree by the same ObjectMapper as {@link JSONSerialisation}, so
+ * both forms carry exactly the same content. The tree is then encoded rather than written as text:
+ * <ul>
+ *     <li>Property names found in serialised sessions are written as an index into a fixed name table,
+ *     and any other property name is written once per blob and referred to by index thereafter.</li>
+ *     <li>Integers, such as timestamps, are written as zig-zag variable length integers.</li>
+ *     <li>Strings are written once per blob and referred to by index when repeated.</li>
+ * </ul>
+ *
+ * Each blob starts with a marker byte, which can never start JSON text, followed by a format version.
+ * The name table is part of version {@link #VERSION} of the format and must never change; a new table
+ * requires a new version.
+ */
+public class BinarySerialisation {
+
+    private static final byte MARKER = (byte) 0xB5;
+    /**
+     * The current version of the binary format.
+     */
+    public static final byte VERSION = 1;
+
+    private static final int NULL = 0;
+    private static final int FALSE = 1;
+    private static final int TRUE = 2;
+    private static final int INTEGER = 3;
+    private static final int DOUBLE = 4;
+    private static final int STRING = 5;
+    private static final int STRING_REFERENCE = 6;
+    private static final int OBJECT = 7;
+    private static final int ARRAY = 8;
+    private static final int BIG_INTEGER = 9;
+    private static final int BIG_DECIMAL = 10;
+    private static final int BINARY = 11;
+
+    private static final int MIN_INTERNED_STRING_LENGTH = 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] NAMES = {
+            // InternalSession
+            "clientDomain", "clientID", "cookieStr", "creationTime", "isISStored", "latestAccessTime",
+            "maxCachingTime", "maxIdleTime", "maxSessionTime", "reschedulePossible", "restrictedTokensBySid",
+            "sessionEventURLs", "sessionID", "sessionProperties", "sessionState", "sessionType", "timedOutAt",
+            "willExpireFlag",
+            // SessionID
+            "comingFromAuth", "cookieMode", "encryptedString", "extensionPart", "extensions", "isParsed",
+            "sessionDomain", "sessionServer", "sessionServerID", "sessionServerPort", "sessionServerProtocol",
+            "sessionServerURI", "tail", "SI", "S1", "SK",
+            // Session properties
+            "AMCtxId", "AuthLevel", "AuthType", "CharSet", "FullLoginURL", "Host", "HostName", "Locale",
+            "Organization", "Principal", "Principals", "Service", "SessionHandle", "UserId", "UserProfile",
+            "UserToken", "amlbcookie", "authInstant", "clientType", "cookieSupport", "loginURL", "successURL",
+            "sun.am.UniversalIdentifier"
+    };
+    private static final Map<String, Integer> NAME_INDEX = new HashMap<>();
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            NAME_INDEX.put(NAMES[i], i);
+        }
+    }
+
+    private final ObjectMapper mapper;
+
+    /**
+     * @param mapper The ObjectMapper which maps objects to and from JSON trees.
+     */
+    @Inject
+    public BinarySerialisation(@Named(CoreTokenConstants.OBJECT_MAPPER) ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * @param blob Possibly null blob.
+     * @return True if the blob was written by this class, false if it is not, for example if it is JSON text.
+     */
+    public static boolean isBinary(byte[] blob) {
+        return blob != null && blob.length > 1 && blob[0] == MARKER;
+    }
+
+    /**
+     * Serialise an object to binary.
+     *
+     * @param object Non null object to serialise.
+     * @return Non null binary blob.
+     */
+    public byte[] serialise(Object object) {
+        return encode(toTree(object));
+    }
+
+    /**
+     * Deserialise binary to an object of type T.
+     *
+     * @param blob Non null blob written by {@link #serialise(Object)}.
+     * @param clazz Class of the serialised object, required for deserialisation.
+     * @param <T> Type to cast the created object to when deserialising.
+     * @return Non null object of type T.
+     */
+    public <T> T deserialise(byte[] blob, Class<T> clazz) {
+        return fromTree(decode(blob), clazz);
+    }
+
+    /**
+     * Maps an object to a JSON tree.
+     *
+     * @param object Non null object to map.
+     * @return Non null JSON tree.
+     */
+    public JsonNode toTree(Object object) {
+        try {
+            return mapper.valueToTree(object);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException(
+                    MessageFormat.format("Failed to serialise {0}", object.getClass().getSimpleName()), e);
+        }
+    }
+
+    /**
+     * Maps a JSON tree to an object of type T.
+     *
+     * @param tree Non null JSON tree.
+     * @param clazz Class of the mapped object.
+     * @param <T> Type to cast the created object to.
+     * @return Non null object of type T.
+     */
+    public <T> T fromTree(JsonNode tree, Class<T> clazz) {
+        try {
+            return mapper.treeToValue(tree, clazz);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(
+                    MessageFormat.format("Failed to deserialise {0}", clazz.getSimpleName()), e);
+        }
+    }
+
+    /**
+     * Encodes a JSON tree in binary.
+     *
+     * @param tree Non null JSON tree.
+     * @return Non null binary blob.
+     */
+    public byte[] encode(JsonNode tree) {
+        Encoder encoder = new Encoder();
+        encoder.writeByte(MARKER);
+        encoder.writeByte(VERSION);
+        encoder.writeValue(tree);
+        return encoder.toByteArray();
+    }
+
+    /**
+     * Decodes a JSON tree from binary.
+     *
+     * @param blob Non null blob written by {@link #encode(JsonNode)}.
+     * @return Non null JSON tree.
+     * @throws IllegalStateException If the blob was not valid.
+     */
+    public JsonNode decode(byte[] blob) {
+        if (!isBinary(blob)) {
+            throw new IllegalStateException("Blob is not in binary format");
+        }
+        if (blob[1] != VERSION) {
+            throw new IllegalStateException(MessageFormat.format("Unsupported binary format version {0}", blob[1]));
+        }
+        try {
+            return new Decoder(blob, 2).readValue();
+        } catch (ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalStateException("Truncated binary blob", e);
+        }
+    }
+
+    /**
+     * Writes a JSON tree, interning the names and strings it has already written.
+     */
+    private static final class Encoder {
+        private final Map<String, Integer> names = new HashMap<>();
+        private final Map<String, Integer> strings = new HashMap<>();
+        private byte[] bytes = new byte[512];
+        private int count;
+
+        void writeValue(JsonNode node) {
+            if (node == null || node.isNull() || node.isMissingNode()) {
+                writeByte(NULL);
+            } else if (node.isBoolean()) {
+                writeByte(node.booleanValue() ? TRUE : FALSE);
+            } else if (node.isBigInteger()) {
+                writeByte(BIG_INTEGER);
+                writeText(node.bigIntegerValue().toString());
+            } else if (node.isBigDecimal()) {
+                writeByte(BIG_DECIMAL);
+                writeText(node.decimalValue().toString());
+            } else if (node.isIntegralNumber()) {
+                writeByte(INTEGER);
+                writeVarLong((node.longValue() << 1) ^ (node.longValue() >> 63));
+            } else if (node.isNumber()) {
+                writeByte(DOUBLE);
+                long bits = Double.doubleToLongBits(node.doubleValue());
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    writeByte((int) (bits >>> shift));
+                }
+            } else if (node.isTextual()) {
+                writeString(node.textValue());
+            } else if (node.isBinary()) {
+                byte[] value = binaryValue(node);
+                writeByte(BINARY);
+                writeVarLong(value.length);
+                writeBytes(value);
+            } else if (node.isArray()) {
+                writeByte(ARRAY);
+                writeVarLong(node.size());
+                for (JsonNode element : node) {
+                    writeValue(element);
+                }
+            } else if (node.isObject()) {
+                writeByte(OBJECT);
+                writeVarLong(node.size());
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    writeName(field.getKey());
+                    writeValue(field.getValue());
+                }
+            } else {
+                throw new IllegalStateException("Cannot encode JSON node of type " + node.getNodeType());
+            }
+        }
+
+        private void writeName(String name) {
+            Integer index = NAME_INDEX.get(name);
+            if (index == null) {
+                index = names.get(name);
+                if (index != null) {
+                    index += NAMES.length;
+                }
+            }
+            if (index != null) {
+                writeVarLong(index + 1);
+            } else {
+                names.put(name, names.size());
+                writeVarLong(0);
+                writeText(name);
+            }
+        }
+
+        private void writeString(String value) {
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeByte(STRING_REFERENCE);
+                writeVarLong(index);
+            } else {
+                if (value.length() >= MIN_INTERNED_STRING_LENGTH) {
+                    strings.put(value, strings.size());
+                }
+                writeByte(STRING);
+                writeText(value);
+            }
+        }
+
+        private void writeText(String text) {
+            byte[] encoded = text.getBytes(UTF_8);
+            writeVarLong(encoded.length);
+            writeBytes(encoded);
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeByte(int b) {
+            ensureSpace(1);
+            bytes[count++] = (byte) b;
+        }
+
+        private void writeBytes(byte[] data) {
+            ensureSpace(data.length);
+            System.arraycopy(data, 0, bytes, count, data.length);
+            count += data.length;
+        }
+
+        private void ensureSpace(int required) {
+            if (bytes.length - count < required) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, count + required));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, count);
+        }
+
+        private static byte[] binaryValue(JsonNode node) {
+            try {
+                return node.binaryValue();
+            } catch (java.io.IOException e) {
+                throw new IllegalStateException("Cannot encode binary JSON node", e);
+            }
+        }
+    }
+
+    /**
+     * Reads a JSON tree, resolving the names and strings interned by the {@link Encoder}.
+     */
+    private static final class Decoder {
+        private final JsonNodeFactory factory = JsonNodeFactory.instance;
+        private final List<String> names = new ArrayList<>();
+        private final List<String> strings = new ArrayList<>();
+        private final byte[] bytes;
+        private int position;
+
+        Decoder(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        JsonNode readValue() {
+            int type = bytes[position++];
+            switch (type) {
+            case NULL:
+                return factory.nullNode();
+            case FALSE:
+                return factory.booleanNode(false);
+            case TRUE:
+                return factory.booleanNode(true);
+            case INTEGER:
+                long encoded = readVarLong();
+                long value = (encoded >>> 1) ^ -(encoded & 1);
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    return factory.numberNode((int) value);
+                }
+                return factory.numberNode(value);
+            case DOUBLE:
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    bits = (bits << 8) | (bytes[position++] & 0xFF);
+                }
+                return factory.numberNode(Double.longBitsToDouble(bits));
+            case STRING:
+                String text = readText();
+                if (text.length() >= MIN_INTERNED_STRING_LENGTH) {
+                    strings.add(text);
+                }
+                return factory.textNode(text);
+            case STRING_REFERENCE:
+                return factory.textNode(strings.get(readIndex()));
+            case OBJECT:
+                ObjectNode object = factory.objectNode();
+                for (int i = readIndex(); i > 0; i--) {
+                    String name = readName();
+                    object.set(name, readValue());
+                }
+                return object;
+            case ARRAY:
+                ArrayNode array = factory.arrayNode();
+                for (int i = readIndex(); i > 0; i--) {
+                    array.add(readValue());
+                }
+                return array;
+            case BIG_INTEGER:
+                return factory.numberNode(new BigInteger(readText()));
+            case BIG_DECIMAL:
+                return factory.numberNode(new BigDecimal(readText()));
+            case BINARY:
+                int length = readIndex();
+                byte[] data = Arrays.copyOfRange(bytes, position, position + length);
+                position += length;
+                return factory.binaryNode(data);
+            default:
+                throw new IllegalStateException("Unknown binary value type " + type);
+            }
+        }
+
+        private String readName() {
+            int index = readIndex();
+            if (index == 0) {
+                String name = readText();
+                names.add(name);
+                return name;
+            }
+            index--;
+            return index < NAMES.length ? NAMES[index] : names.get(index - NAMES.length);
+        }
+
+        private String readText() {
+            int length = readIndex();
+            if (position + length > bytes.length) {
+                throw new ArrayIndexOutOfBoundsException(position + length);
+            }
+            String text = new String(bytes, position, length, UTF_8);
+            position += length;
+            return text;
+        }
+
+        private int readIndex() {
+            long value = readVarLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Invalid length " + value);
+            }
+            return (int) value;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("Malformed variable length integer");
+        }
+    }
+}
@@ -11,26 +11,49 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2014 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 package org.forgerock.openam.cts.utils.blob.strategies;
 
-import org.apache.commons.io.IOUtils;
+import com.iplanet.am.util.SystemProperties;
+import com.sun.identity.shared.Constants;
 import org.forgerock.openam.cts.utils.blob.BlobStrategy;
 import org.forgerock.openam.cts.utils.blob.TokenStrategyFailedException;
+import org.forgerock.openam.cts.utils.blob.strategies.compression.CompressionCodec;
+import org.forgerock.openam.cts.utils.blob.strategies.compression.CompressionCodecs;
 import org.forgerock.util.Reject;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
- * Responsible for compressing the binary object of Tokens using a GZip compression.
+ * Responsible for compressing the binary object of Tokens.
+ *
+ * Tokens are compressed with the codec configured by {@link Constants#SESSION_REPOSITORY_COMPRESSION_CODEC},
+ * which is GZIP unless configured otherwise. The first byte of a compressed Token identifies the codec which
+ * compressed it, so Tokens compressed with any built in codec, including GZIP Tokens written by earlier
+ * versions, can always be decompressed.
+ *
+ * @see CompressionCodecs
  */
 public class CompressionStrategy implements BlobStrategy {
 
+    private final CompressionCodec codec;
+
+    /**
+     * Create a CompressionStrategy using the configured codec.
+     */
+    public CompressionStrategy() {
+        this(CompressionCodecs.getCodec(SystemProperties.get(Constants.SESSION_REPOSITORY_COMPRESSION_CODEC)));
+    }
+
+    /**
+     * @param codec Non null codec to compress Tokens with.
+     */
+    public CompressionStrategy(CompressionCodec codec) {
+        Reject.ifNull(codec);
+        this.codec = codec;
+    }
+
     /**
      * Compress the Tokens binary object.
      *
@@ -41,16 +64,11 @@ public class CompressionStrategy implements BlobStrategy {
     @Override
     public byte[] perform(byte[] blob) throws TokenStrategyFailedException {
         Reject.ifNull(blob);
-        final ByteArrayOutputStream bout = new ByteArrayOutputStream(blob.length);
         try {
-            final GZIPOutputStream out = new GZIPOutputStream(bout);
-            out.write(blob);
-            out.flush();
-            out.close();
+            return codec.compress(blob);
         } catch (IOException e) {
             throw new TokenStrategyFailedException(e);
         }
-        return bout.toByteArray();
     }
 
     /**
@@ -63,15 +81,24 @@ public class CompressionStrategy implements BlobStrategy {
     @Override
     public byte[] reverse(byte[] blob) throws TokenStrategyFailedException {
         Reject.ifNull(blob);
-        final int lengthGuess = blob.length * 2;
-        final ByteArrayOutputStream bout = new ByteArrayOutputStream(lengthGuess);
         try {
-            GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(blob));
-            IOUtils.copy(inputStream, bout);
-            inputStream.close();
+            return getCodec(blob).decompress(blob);
         } catch (IOException e) {
             throw new TokenStrategyFailedException(e);
         }
-        return bout.toByteArray();
+    }
+
+    private CompressionCodec getCodec(byte[] blob) throws IOException {
+        if (blob.length == 0) {
+            throw new IOException("Empty compressed blob");
+        }
+        if (blob[0] == codec.getId()) {
+            return codec;
+        }
+        CompressionCodec blobCodec = CompressionCodecs.getCodec(blob[0]);
+        if (blobCodec == null) {
+            throw new IOException("Unknown compression codec " + blob[0]);
+        }
+        return blobCodec;
     }
 }
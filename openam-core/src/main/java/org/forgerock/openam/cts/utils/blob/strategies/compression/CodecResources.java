@@ -0,0 +1,159 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.utils.blob.strategies.compression;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Pools the deflaters, inflaters and working buffers used by the codecs.
+ *
+ * Deflaters and inflaters hold native memory and are expensive to create, so a bounded number of them are
+ * shared between threads and reset between uses. Surplus instances beyond the bound are released. Each
+ * thread reuses a working buffer, which is only retained while it remains below a modest size.
+ */
+final class CodecResources {
+
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final ThreadLocal<Buffer> BUFFERS = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer();
+        }
+    };
+
+    private CodecResources() {
+    }
+
+    /**
+     * @return A raw deflater, which must be returned with {@link #release(Deflater)}.
+     */
+    static Deflater deflater() {
+        Deflater deflater = DEFLATERS.poll();
+        return deflater == null ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : deflater;
+    }
+
+    /**
+     * @param deflater The deflater to return to the pool.
+     */
+    static void release(Deflater deflater) {
+        deflater.reset();
+        if (!DEFLATERS.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return A raw inflater, which must be returned with {@link #release(Inflater)}.
+     */
+    static Inflater inflater() {
+        Inflater inflater = INFLATERS.poll();
+        return inflater == null ? new Inflater(true) : inflater;
+    }
+
+    /**
+     * @param inflater The inflater to return to the pool.
+     */
+    static void release(Inflater inflater) {
+        inflater.reset();
+        if (!INFLATERS.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return The empty working buffer of the current thread.
+     */
+    static Buffer buffer() {
+        Buffer buffer = BUFFERS.get();
+        buffer.count = 0;
+        return buffer;
+    }
+
+    /**
+     * A growable byte buffer, similar to a ByteArrayOutputStream without synchronisation.
+     */
+    static final class Buffer {
+        private byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+        private int count;
+
+        void write(int b) {
+            ensureSpace(1);
+            bytes[count++] = (byte) b;
+        }
+
+        void write(byte[] data, int offset, int length) {
+            ensureSpace(length);
+            System.arraycopy(data, offset, bytes, count, length);
+            count += length;
+        }
+
+        void writeIntLE(int value) {
+            ensureSpace(4);
+            bytes[count++] = (byte) value;
+            bytes[count++] = (byte) (value >>> 8);
+            bytes[count++] = (byte) (value >>> 16);
+            bytes[count++] = (byte) (value >>> 24);
+        }
+
+        void deflate(Deflater deflater, byte[] data) {
+            deflater.setInput(data);
+            deflater.finish();
+            while (!deflater.finished()) {
+                ensureSpace(1);
+                count += deflater.deflate(bytes, count, bytes.length - count);
+            }
+        }
+
+        void inflate(Inflater inflater, byte[] data, int offset, int length) throws DataFormatException {
+            inflater.setInput(data, offset, length);
+            while (!inflater.finished()) {
+                ensureSpace(1);
+                int inflated = inflater.inflate(bytes, count, bytes.length - count);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated deflate stream");
+                }
+                count += inflated;
+            }
+        }
+
+        /**
+         * @return A copy of the contents of the buffer.
+         */
+        byte[] toByteArray() {
+            byte[] result = Arrays.copyOf(bytes, count);
+            if (bytes.length > MAX_RETAINED_BUFFER_SIZE) {
+                bytes = new byte[INITIAL_BUFFER_SIZE];
+            }
+            return result;
+        }
+
+        private void ensureSpace(int required) {
+            if (bytes.length - count < required) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, count + required));
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.utils.blob.strategies.compression;
+
+import java.io.IOException;
+
+/**
+ * A compression algorithm which can be applied to the binary object of a Token.
+ *
+ * The first byte of every compressed blob is the identifier of the codec which produced it, so that blobs
+ * continue to decompress after the configured codec has changed. Identifiers must be unique and must never
+ * be reassigned.
+ *
+ * @see CompressionCodecs
+ */
+public interface CompressionCodec {
+
+    /**
+     * @return The identifier of this codec, which is the first byte of each blob it produces.
+     */
+    byte getId();
+
+    /**
+     * @param data Non null data to compress.
+     * @return The compressed blob, starting with the identifier of this codec.
+     * @throws IOException If the data could not be compressed.
+     */
+    byte[] compress(byte[] data) throws IOException;
+
+    /**
+     * @param blob Non null blob produced by {@link #compress(byte[])}.
+     * @return The decompressed data.
+     * @throws IOException If the blob was not valid.
+     */
+    byte[] decompress(byte[] blob) throws IOException;
+}
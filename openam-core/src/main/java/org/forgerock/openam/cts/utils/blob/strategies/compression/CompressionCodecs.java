@@ -0,0 +1,111 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.utils.blob.strategies.compression;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.forgerock.openam.cts.api.CoreTokenConstants;
+
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * The built in compression codecs, and the resolution of the configured codec.
+ *
+ * The configured codec is named either by one of the built in names, {@link #GZIP}, {@link #DEFLATE},
+ * {@link #SESSION_DICTIONARY} or {@link #NONE}, or by the class name of a {@link CompressionCodec}
+ * implementation which has a public no argument constructor.
+ */
+public final class CompressionCodecs {
+
+    /**
+     * GZIP, which is the default and is readable by earlier versions.
+     */
+    public static final String GZIP = "GZIP";
+    /**
+     * Raw deflate, without the GZIP header and trailer.
+     */
+    public static final String DEFLATE = "DEFLATE";
+    /**
+     * Raw deflate primed with the {@link SessionBlobDictionary}.
+     */
+    public static final String SESSION_DICTIONARY = "SESSION_DICTIONARY";
+    /**
+     * No compression.
+     */
+    public static final String NONE = "NONE";
+
+    private static final Map<String, CompressionCodec> BY_NAME;
+    private static final Map<Byte, CompressionCodec> BY_ID;
+
+    static {
+        Map<String, CompressionCodec> byName = new HashMap<>();
+        byName.put(GZIP, new GzipCodec());
+        byName.put(DEFLATE, new DeflateCodec());
+        byName.put(SESSION_DICTIONARY,
+                new DeflateCodec(DeflateCodec.SESSION_DICTIONARY_ID, SessionBlobDictionary.getBytes()));
+        byName.put(NONE, new NoCompressionCodec());
+        Map<Byte, CompressionCodec> byId = new HashMap<>();
+        for (CompressionCodec codec : byName.values()) {
+            byId.put(codec.getId(), codec);
+        }
+        BY_NAME = Collections.unmodifiableMap(byName);
+        BY_ID = Collections.unmodifiableMap(byId);
+    }
+
+    private CompressionCodecs() {
+    }
+
+    /**
+     * @param id The identifier of a codec.
+     * @return The built in codec with the identifier, or null if there is none.
+     */
+    public static CompressionCodec getCodec(byte id) {
+        return BY_ID.get(id);
+    }
+
+    /**
+     * Resolves a codec by name, falling back to GZIP if the name cannot be resolved.
+     *
+     * @param name The built in name or class name of the codec. May be null.
+     * @return Non null codec.
+     */
+    public static CompressionCodec getCodec(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return BY_NAME.get(GZIP);
+        }
+        CompressionCodec codec = BY_NAME.get(name.trim().toUpperCase(Locale.ENGLISH));
+        if (codec != null) {
+            return codec;
+        }
+        try {
+            codec = Class.forName(name.trim()).asSubclass(CompressionCodec.class).newInstance();
+        } catch (ClassNotFoundException | ClassCastException | InstantiationException
+                | IllegalAccessException e) {
+            Debug.getInstance(CoreTokenConstants.CTS_DEBUG).error(
+                    "Unable to load compression codec {}, using {}", name, GZIP, e);
+            return BY_NAME.get(GZIP);
+        }
+        if (BY_ID.containsKey(codec.getId())) {
+            Debug.getInstance(CoreTokenConstants.CTS_DEBUG).error(
+                    "Compression codec {} reuses a built in identifier, using {}", name, GZIP);
+            return BY_NAME.get(GZIP);
+        }
+        return codec;
+    }
+}
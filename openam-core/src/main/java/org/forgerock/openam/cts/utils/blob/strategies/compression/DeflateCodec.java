@@ -0,0 +1,101 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.utils.blob.strategies.compression;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A codec which stores the data as a raw deflate stream, without the header and trailer of the GZIP format,
+ * optionally primed with a preset dictionary.
+ *
+ * A dictionary containing the structure shared by most blobs allows even short blobs to be compressed
+ * well, as the compressor can refer back into the dictionary from the first byte. The dictionary used by a
+ * codec identifier must never change, or blobs written with it will no longer decompress.
+ *
+ * @see SessionBlobDictionary
+ */
+public class DeflateCodec implements CompressionCodec {
+
+    /**
+     * The identifier of the codec without a dictionary.
+     */
+    public static final byte ID = 0x02;
+
+    /**
+     * The identifier of the codec using the {@link SessionBlobDictionary}.
+     */
+    public static final byte SESSION_DICTIONARY_ID = 0x03;
+
+    private final byte id;
+    private final byte[] dictionary;
+
+    /**
+     * Creates a codec without a dictionary.
+     */
+    public DeflateCodec() {
+        this(ID, null);
+    }
+
+    /**
+     * @param id The unique identifier of the codec.
+     * @param dictionary The preset dictionary, or null for none.
+     */
+    public DeflateCodec(byte id, byte[] dictionary) {
+        this.id = id;
+        this.dictionary = dictionary == null ? null : dictionary.clone();
+    }
+
+    @Override
+    public byte getId() {
+        return id;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        CodecResources.Buffer buffer = CodecResources.buffer();
+        buffer.write(id);
+        Deflater deflater = CodecResources.deflater();
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            buffer.deflate(deflater, data);
+        } finally {
+            CodecResources.release(deflater);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public byte[] decompress(byte[] blob) throws IOException {
+        CodecResources.Buffer buffer = CodecResources.buffer();
+        Inflater inflater = CodecResources.inflater();
+        try {
+            if (dictionary != null) {
+                inflater.setDictionary(dictionary);
+            }
+            buffer.inflate(inflater, blob, 1, blob.length - 1);
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid deflate blob", e);
+        } finally {
+            CodecResources.release(inflater);
+        }
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.utils.blob.strategies.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A codec which stores the data in the GZIP format, as written by earlier versions.
+ *
+ * GZIP blobs carry no additional identifier; the first byte of the GZIP magic number serves as the
+ * identifier of this codec. The stream is written and read with pooled deflaters and inflaters rather than
+ * with {@link java.util.zip.GZIPOutputStream}, which allocates a new deflater for every blob.
+ */
+public class GzipCodec implements CompressionCodec {
+
+    /**
+     * The identifier of this codec, which is the first byte of the GZIP magic number.
+     */
+    public static final byte ID = (byte) 0x1f;
+
+    private static final byte[] HEADER = {ID, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    private static final int FLAGS_OFFSET = 3;
+    private static final int TRAILER_LENGTH = 8;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        CodecResources.Buffer buffer = CodecResources.buffer();
+        buffer.write(HEADER, 0, HEADER.length);
+        Deflater deflater = CodecResources.deflater();
+        try {
+            buffer.deflate(deflater, data);
+        } finally {
+            CodecResources.release(deflater);
+        }
+        buffer.writeIntLE((int) crc(data, 0, data.length));
+        buffer.writeIntLE(data.length);
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public byte[] decompress(byte[] blob) throws IOException {
+        if (blob.length < HEADER.length + TRAILER_LENGTH || blob[1] != HEADER[1] || blob[2] != HEADER[2]) {
+            throw new IOException("Not in GZIP format");
+        }
+        if (blob[FLAGS_OFFSET] != 0) {
+            // Optional header fields are never written by this codec, leave them to the JDK to parse.
+            return decompressStream(blob);
+        }
+
+        CodecResources.Buffer buffer = CodecResources.buffer();
+        Inflater inflater = CodecResources.inflater();
+        int remaining;
+        try {
+            buffer.inflate(inflater, blob, HEADER.length, blob.length - HEADER.length);
+            remaining = inflater.getRemaining();
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid GZIP blob", e);
+        } finally {
+            CodecResources.release(inflater);
+        }
+        byte[] data = buffer.toByteArray();
+
+        int trailer = blob.length - remaining;
+        if (remaining < TRAILER_LENGTH
+                || readIntLE(blob, trailer) != (int) crc(data, 0, data.length)
+                || readIntLE(blob, trailer + 4) != data.length) {
+            throw new IOException("Corrupt GZIP trailer");
+        }
+        return data;
+    }
+
+    private static byte[] decompressStream(byte[] blob) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(blob.length * 2);
+        GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(blob));
+        try {
+            IOUtils.copy(inputStream, bout);
+        } finally {
+            inputStream.close();
+        }
+        return bout.toByteArray();
+    }
+
+    private static long crc(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return crc.getValue();
+    }
+
+    private static int readIntLE(byte[] blob, int offset) {
+        return (blob[offset] & 0xff)
+                | (blob[offset + 1] & 0xff) << 8
+                | (blob[offset + 2] & 0xff) << 16
+                | (blob[offset + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.utils.blob.strategies.compression;
+
+import java.util.Arrays;
+
+/**
+ * A codec which stores the data uncompressed, for deployments where the directory already compresses
+ * its entries or the CPU cost of compression is not wanted.
+ */
+public class NoCompressionCodec implements CompressionCodec {
+
+    /**
+     * The identifier of this codec.
+     */
+    public static final byte ID = 0x01;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        byte[] blob = new byte[data.length + 1];
+        blob[0] = ID;
+        System.arraycopy(data, 0, blob, 1, data.length);
+        return blob;
+    }
+
+    @Override
+    public byte[] decompress(byte[] blob) {
+        return Arrays.copyOfRange(blob, 1, blob.length);
+    }
+}
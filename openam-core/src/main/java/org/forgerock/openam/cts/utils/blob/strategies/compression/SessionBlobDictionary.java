@@ -0,0 +1,64 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.utils.blob.strategies.compression;
+
+import java.nio.charset.Charset;
+
+/**
+ * A static preset deflate dictionary of the common session-property names and field names found in the
+ * JSON blobs which the SessionAdapter produces from an InternalSession.
+ *
+ * The dictionary is written by hand rather than derived from sample blobs. It holds the field names, the
+ * names of the standard session properties and the default values of a typical deployment. Deflate refers back to the most recent part of the dictionary most cheaply, so the most frequent
+ * strings are placed at its end.
+ *
+ * The dictionary is part of the stored format of the {@link DeflateCodec#SESSION_DICTIONARY_ID} codec and
+ * must never be changed. An improved dictionary requires a new codec identifier.
+ */
+public final class SessionBlobDictionary {
+
+    private static final String DICTIONARY = "\"cookieMode\":null,\"cookieStr\":null,\"tail\":null}"
+            + "\"sessionServerProtocol\":\"https\",\"sessionServerPort\":\"443\",\"maxCachingTime\":3,"
+            + "\"restrictedTokensByRestriction\":{},\"restrictedTokensBySid\":{},\"sessionEventURLs\":{},"
+            + "\"reschedulePossible\":false,\"isISStored\":true,\"willExpireFlag\":true,\"version\":0,"
+            + "\"timedOutAt\":0,\"sessionType\":0,\"sessionState\":1,\"maxIdleTime\":30,\"maxSessionTime\":120,"
+            + "\"sessionProperties\":{\"CharSet\":\"UTF-8\",\"UserId\":\"\",\"FullLoginURL\":\"/openam/UI/Login\","
+            + "\"successURL\":\"/openam/console\",\"cookieSupport\":\"true\",\"AuthLevel\":\"0\","
+            + "\"SessionHandle\":\"shandle:\",\"UserToken\":\"\",\"loginURL\":\"/openam/UI/Login\","
+            + "\"Principals\":\"\",\"Service\":\"ldapService\",\"sun.am.UniversalIdentifier\":\"id=\","
+            + "\"amlbcookie\":\"01\",\"Organization\":\"dc=openam,dc=forgerock,dc=org\",\"Locale\":\"en_US\","
+            + "\"HostName\":\"\",\"AuthType\":\"DataStore\",\"Host\":\"\",\"UserProfile\":\"Required\","
+            + "\"clientType\":\"genericHTML\",\"AMCtxId\":\"\",\"authInstant\":\"Z\",\"Principal\":\"id=\"},"
+            + "\"sessionHandle\":\"shandle:AQIC5wM2LY4Sf\",\"extensionPart\":\"AAJTSQACMDIAAlNLAB\","
+            + "\"extensions\":{\"SI\":\"01\",\"S1\":\"01\",\"SK\":\"\"},\"isParsed\":true,"
+            + "\"sessionServerProtocol\":\"http\",\"sessionServerPort\":\"8080\",\"sessionServerURI\":\"/openam\","
+            + "\"sessionServerID\":\"01\",\"sessionServer\":\"\",\"sessionDomain\":\"dc=openam,dc=forgerock,dc=org\","
+            + "{\"clientDomain\":\"dc=openam,dc=forgerock,dc=org\",\"clientID\":\"id=,ou=user,dc=openam,dc=forgerock,"
+            + "dc=org\",\"creationTime\":14,\"latestAccessTime\":14,\"sessionID\":{\"comingFromAuth\":false,"
+            + "\"encryptedString\":\"AQIC5wM2LY4Sf\",\"uuid\":\"id=,ou=user,dc=openam,dc=forgerock,dc=org\"";
+
+    private static final byte[] BYTES = DICTIONARY.getBytes(Charset.forName("UTF-8"));
+
+    private SessionBlobDictionary() {
+    }
+
+    /**
+     * @return A copy of the dictionary.
+     */
+    public static byte[] getBytes() {
+        return BYTES.clone();
+    }
+}
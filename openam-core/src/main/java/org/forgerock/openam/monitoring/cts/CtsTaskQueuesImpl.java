@@ -0,0 +1,96 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.monitoring.cts;
+
+import com.sun.management.snmp.SnmpStatusException;
+import com.sun.management.snmp.agent.SnmpMib;
+import org.forgerock.guice.core.InjectorHolder;
+import org.forgerock.openam.cts.monitoring.CTSOperationsMonitoringStore;
+
+/**
+ * Implementation of the endpoint created by the monitoring framework for the CTS asynchronous task queues.
+ *
+ * The injected monitoring store is shared between the monitoring framework
+ * and the {@link org.forgerock.openam.sm.datalayer.impl.SeriesTaskExecutor} which records the queued tasks.
+ */
+public class CtsTaskQueuesImpl extends CtsTaskQueues {
+
+    private static final double MEDIAN = 50;
+    private static final double NINETY_NINTH_PERCENTILE = 99;
+
+    private final CTSOperationsMonitoringStore monitoringStore;
+
+    /**
+     * Constructs an instance of the CtsTaskQueuesImpl
+     *
+     * @param myMib The Mib.
+     */
+    public CtsTaskQueuesImpl(SnmpMib myMib) {
+        super(myMib);
+        this.monitoringStore = InjectorHolder.getInstance(CTSOperationsMonitoringStore.class);
+    }
+
+    /**
+     * Getter for the "QueuedTaskCumulative" variable.
+     */
+    public Long getQueuedTaskCumulative() throws SnmpStatusException {
+        return monitoringStore.getQueuedTaskCount();
+    }
+
+    /**
+     * Getter for the "QueuedTaskDepth" variable.
+     */
+    public Long getQueuedTaskDepth() throws SnmpStatusException {
+        return monitoringStore.getQueueDepth();
+    }
+
+    /**
+     * Getter for the "QueueWaitTimeMedian" variable.
+     */
+    public Long getQueueWaitTimeMedian() throws SnmpStatusException {
+        return monitoringStore.getQueueWaitTimeAtPercentile(MEDIAN);
+    }
+
+    /**
+     * Getter for the "QueueWaitTime99thPercentile" variable.
+     */
+    public Long getQueueWaitTime99thPercentile() throws SnmpStatusException {
+        return monitoringStore.getQueueWaitTimeAtPercentile(NINETY_NINTH_PERCENTILE);
+    }
+
+    /**
+     * Getter for the "QueueServiceTimeMedian" variable.
+     */
+    public Long getQueueServiceTimeMedian() throws SnmpStatusException {
+        return monitoringStore.getQueueServiceTimeAtPercentile(MEDIAN);
+    }
+
+    /**
+     * Getter for the "QueueServiceTime99thPercentile" variable.
+     */
+    public Long getQueueServiceTime99thPercentile() throws SnmpStatusException {
+        return monitoringStore.getQueueServiceTimeAtPercentile(NINETY_NINTH_PERCENTILE);
+    }
+
+    /**
+     * Getter for the "CoalescedTaskCumulative" variable.
+     */
+    public Long getCoalescedTaskCumulative() throws SnmpStatusException {
+        return monitoringStore.getCoalescedTaskCount();
+    }
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  *
  * The contents of this file are subject to the terms of the Common Development and
  * Distribution License (the License). You may not use this file except in compliance with the
@@ -33,6 +33,7 @@ public class FORGEROCK_OPENAM_CTS_MIBImpl extends FORGEROCK_OPENAM_CTS_MIB imple
 
     private CtsConnectionSuccessRate ctsConnectionSuccessRate;
     private CtsConnectionFailureRate ctsConnectionFailureRate;
+    private CtsTaskQueues ctsTaskQueues;
 
     /**
      * Default constructor. Initialize the Mib tree.
@@ -88,6 +89,10 @@ public class FORGEROCK_OPENAM_CTS_MIBImpl extends FORGEROCK_OPENAM_CTS_MIB imple
         return ctsConnectionFailureRate;
     }
 
+    public CtsTaskQueues getCtsTaskQueues() {
+        return ctsTaskQueues;
+    }
+
     /**
      * Factory method for "CtsConnectionSuccessRate" group MBean.
      *
@@ -142,4 +147,31 @@ public class FORGEROCK_OPENAM_CTS_MIBImpl extends FORGEROCK_OPENAM_CTS_MIB imple
         return ctsConnectionFailureRate;
     }
 
+    /**
+     * Factory method for "CtsTaskQueues" group MBean.
+     *
+     * You can redefine this method if you need to replace the default
+     * generated MBean class with your own customized class.
+     *
+     * @param groupName Name of the group ("CtsTaskQueues")
+     * @param groupOid  OID of this group
+     * @param groupObjname ObjectName for this group (may be null)
+     * @param server    MBeanServer for this group (may be null)
+     *
+     * @return An instance of the MBean class generated for the
+     *         "CtsTaskQueues" group (CtsTaskQueues)
+     *
+     * Note that when using standard metadata,
+     * the returned object must implement the "CtsTaskQueuesMBean"
+     * interface.
+     **/
+    protected Object createCtsTaskQueuesMBean(String groupName,
+                                              String groupOid,
+                                              ObjectName groupObjname, MBeanServer server)  {
+
+        ctsTaskQueues = new CtsTaskQueuesImpl(this);
+
+        return ctsTaskQueues;
+    }
+
 }
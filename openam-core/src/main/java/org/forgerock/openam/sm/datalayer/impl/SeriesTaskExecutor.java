@@ -17,11 +17,11 @@
 package org.forgerock.openam.sm.datalayer.impl;
 
 import java.text.MessageFormat;
-import java.util.Random;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -30,6 +30,8 @@ import org.forgerock.openam.cts.api.CoreTokenConstants;
 import org.forgerock.openam.cts.impl.queue.QueueSelector;
 import org.forgerock.openam.cts.impl.queue.config.CTSQueueConfiguration;
 import org.forgerock.openam.audit.context.AbstractAuditRequestContextPropagatingDecorator;
+import org.forgerock.openam.cts.monitoring.CTSOperationsMonitoringStore;
+import org.forgerock.openam.shared.concurrency.ResizableLinkedBlockingQueue;
 import org.forgerock.openam.shared.concurrency.ThreadMonitor;
 import org.forgerock.openam.audit.context.AuditRequestContext;
 import org.forgerock.openam.sm.datalayer.api.DataLayerConstants;
@@ -38,8 +40,10 @@ import org.forgerock.openam.sm.datalayer.api.QueueTimeoutException;
 import org.forgerock.openam.sm.datalayer.api.Task;
 import org.forgerock.openam.sm.datalayer.api.TaskExecutor;
 
+import com.sun.identity.common.configuration.ConfigurationListener;
 import com.sun.identity.shared.debug.Debug;
 import org.forgerock.openam.sm.datalayer.api.TokenStorageAdapter;
+import org.forgerock.openam.sm.datalayer.impl.tasks.WriteCoalescer;
 
 /**
  * The SeriesTaskExecutor is an executor that allows parallel processing of tasks, while guaranteeing that tasks on a
@@ -67,18 +71,29 @@ import org.forgerock.openam.sm.datalayer.api.TokenStorageAdapter;
  * this situation persists for an extended duration, then the CTS queues will
  * throttle the caller until the CTS has had time to catch up.
  *
+ * Tasks which are not keyed by a Token ID, such as queries, have no ordering requirement and are
+ * placed on the shorter of two randomly chosen queues, so they avoid a queue which is stalled behind
+ * a slow connection. The queues are resized in place when the configured queue size changes, and the
+ * depth, wait time and service time of each queue are recorded in the {@link CTSOperationsMonitoringStore}.
+ *
+ * Writes to a Token are coalesced by a {@link WriteCoalescer} whilst they wait on their queue, so that a
+ * burst of updates to a Token results in a single write. Tasks for a Token are coalesced and queued whilst
+ * holding a lock for its queue, which keeps the queue order consistent with the order of coalescing.
+ *
  * @see org.forgerock.openam.cts.impl.queue.config.CTSQueueConfiguration#getQueueTimeout()
  */
-public class SeriesTaskExecutor implements TaskExecutor {
-    private static final Random random = new Random();
+public class SeriesTaskExecutor implements TaskExecutor, ConfigurationListener {
     private final Debug debug;
-    private BlockingQueue<Task>[] taskQueues;
+    private ResizableLinkedBlockingQueue<Task>[] taskQueues;
+    private ReentrantLock[] queueLocks;
+    private final WriteCoalescer coalescer = new WriteCoalescer();
     private int processors;
     private boolean initialised = false;
     private final SeriesTaskExecutorThreadFactory processorFactory;
     private final ThreadMonitor monitor;
     private final CTSQueueConfiguration configuration;
     private final ExecutorService poolService;
+    private final CTSOperationsMonitoringStore monitoringStore;
 
     /**
      * Create a default instance of the SeriesTaskExecutor.
@@ -87,6 +102,7 @@ public class SeriesTaskExecutor implements TaskExecutor {
      * @param processorFactory Required to create worker thread instances.
      * @param monitor Required to ensure threads are restarted.
      * @param configuration Required to determine runtime configuration options.
+     * @param monitoringStore Required to record queue depth and timings.
      * @param debug Required for debugging.
      */
     @Inject
@@ -95,18 +111,55 @@ public class SeriesTaskExecutor implements TaskExecutor {
             SeriesTaskExecutorThreadFactory processorFactory,
             ThreadMonitor monitor,
             CTSQueueConfiguration configuration,
+            CTSOperationsMonitoringStore monitoringStore,
             @Named(DataLayerConstants.DATA_LAYER_DEBUG) Debug debug) {
         this.debug = debug;
         this.monitor = monitor;
         this.configuration = configuration;
         this.processorFactory = processorFactory;
         this.poolService = poolService;
+        this.monitoringStore = monitoringStore;
     }
 
     @Override
     public void execute(String tokenId, Task task) throws DataLayerException {
-        BlockingQueue<Task> queue = getQueue(tokenId);
-        offer(queue, task);
+        int select = selectQueue(tokenId);
+        if (tokenId == null) {
+            offer(select, null, task);
+            return;
+        }
+
+        ReentrantLock lock = queueLocks[select];
+        lock(lock, task);
+        try {
+            Task queued = coalescer.coalesce(tokenId, task);
+            if (queued != task) {
+                debug("Coalesced Task {0}", task);
+                monitoringStore.addCoalescedTask(select);
+            }
+            if (queued != null) {
+                offer(select, tokenId, queued);
+                coalescer.queued(tokenId, queued);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Resizes the queues when the configured queue size changes. Tasks already queued beyond a reduced
+     * size remain on the queue, but no further tasks are accepted until it has drained below the new size.
+     */
+    @Override
+    public synchronized void notifyChanges() {
+        if (!initialised) {
+            return;
+        }
+        int queueSize = configuration.getQueueSize();
+        for (ResizableLinkedBlockingQueue<Task> queue : taskQueues) {
+            queue.resizeQueue(queueSize);
+        }
+        debug("Resized {0} Task Queues to {1}", processors, queueSize);
     }
 
     /**
@@ -127,9 +180,11 @@ public class SeriesTaskExecutor implements TaskExecutor {
             throw new RuntimeException(e);
         }
 
-        taskQueues = new BlockingQueue[processors];
+        taskQueues = new ResizableLinkedBlockingQueue[processors];
+        queueLocks = new ReentrantLock[processors];
         for (int ii = 0; ii < processors; ii++) {
-            taskQueues[ii] = new LinkedBlockingQueue<Task>(configuration.getQueueSize());
+            taskQueues[ii] = new ResizableLinkedBlockingQueue<>(configuration.getQueueSize());
+            queueLocks[ii] = new ReentrantLock();
         }
 
         for (int ii = 0; ii < processors; ii++) {
@@ -137,16 +192,24 @@ public class SeriesTaskExecutor implements TaskExecutor {
             monitor.watchThread(poolService, processor);
         }
         debug("Created {0} Task Processors", processors);
+        configuration.addQueueSizeListener(this);
 
-        initialised = true;    }
+        initialised = true;
+    }
 
     /**
-     * Select a random queue to use for the query operation.
-     * @return Non null.
+     * Select the shorter of two distinct, randomly chosen queues for an operation which has no ordering
+     * requirement.
+     * @return The index of the selected queue.
      */
-    private BlockingQueue<Task> getQueueForQuery() {
-        String key = Integer.toString(random.nextInt());
-        return getQueue(key);
+    private int selectQueueForQuery() {
+        if (processors == 1) {
+            return 0;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(processors);
+        int second = (first + 1 + random.nextInt(processors - 1)) % processors;
+        return taskQueues[first].size() <= taskQueues[second].size() ? first : second;
     }
 
     /**
@@ -154,28 +217,46 @@ public class SeriesTaskExecutor implements TaskExecutor {
      *
      * The QueueSelector algorithm used will be consistent against the Token ID.
      *
-     * @param tokenId Non null Token ID.
-     * @return A non null Queue to assign the task to.
+     * @param tokenId Token ID, or null if the task is not specific to a token.
+     * @return The index of the queue to assign the task to.
      */
-    private BlockingQueue<Task> getQueue(String tokenId) {
+    private int selectQueue(String tokenId) {
         if (tokenId == null) {
-            return getQueueForQuery();
+            return selectQueueForQuery();
         }
         int select = QueueSelector.select(tokenId, processors);
         debug("Select Queue: Token ID {0} - Queue {1}", tokenId, select);
-        return taskQueues[select];
+        return select;
+    }
+
+    /**
+     * Acquire the lock of a queue within the queue timeout.
+     * @param lock Lock of the queue.
+     * @param task Task which is to be added to the queue.
+     * @throws QueueTimeoutException If the timeout expired before the lock was acquired.
+     */
+    private void lock(ReentrantLock lock, Task task) throws QueueTimeoutException {
+        try {
+            if (!lock.tryLock(configuration.getQueueTimeout(), TimeUnit.SECONDS)) {
+                throw new QueueTimeoutException(task);
+            }
+        } catch (InterruptedException e) {
+            throw new QueueTimeoutException(task, e);
+        }
     }
 
     /**
      * Assign the task to the queue with a known timeout.
-     * @param queue Non null BlockingQueue.
+     * @param select Index of the queue.
+     * @param tokenId Token ID of the task, or null if the task is not specific to a token.
      * @param task Task to add.
      * @throws org.forgerock.openam.sm.datalayer.api.QueueTimeoutException If the timeout expired before the Task was added.
      */
-    private void offer(BlockingQueue<Task> queue, Task task) throws QueueTimeoutException {
+    private void offer(int select, String tokenId, Task task) throws QueueTimeoutException {
+        BlockingQueue<Task> queue = taskQueues[select];
         try {
             debug("Queuing Task {0}", task.toString());
-            if (!queue.offer(wrap(task), configuration.getQueueTimeout(), TimeUnit.SECONDS)) {
+            if (!queue.offer(wrap(select, tokenId, task), configuration.getQueueTimeout(), TimeUnit.SECONDS)) {
                 throw new QueueTimeoutException(task);
             }
         } catch (InterruptedException e) {
@@ -191,8 +272,62 @@ public class SeriesTaskExecutor implements TaskExecutor {
         }
     }
 
-    Task wrap(Task task) {
-        return new AuditRequestContextPropagatingTask(task);
+    Task wrap(int select, String tokenId, Task task) {
+        return new QueueMonitoringTask(task, select, tokenId);
+    }
+
+    /**
+     * <code>Task</code> Decorator that ends the coalescing of a task once it is taken from its queue, and
+     * records the depth of its queue when it was queued, the time it waited on the queue and the time
+     * taken to process it.
+     */
+    class QueueMonitoringTask implements Task {
+
+        private final Task task;
+        private final Task delegate;
+        private final int select;
+        private final String tokenId;
+        private final int queueDepth;
+        private final long queuedAt = System.nanoTime();
+
+        QueueMonitoringTask(Task task, int select, String tokenId) {
+            this.task = task;
+            this.delegate = new AuditRequestContextPropagatingTask(task);
+            this.select = select;
+            this.tokenId = tokenId;
+            this.queueDepth = taskQueues[select].size();
+        }
+
+        @Override
+        public <T> void execute(T connection, TokenStorageAdapter<T> adapter) throws DataLayerException {
+            long startedAt = System.nanoTime();
+            started();
+            try {
+                delegate.execute(connection, adapter);
+            } finally {
+                long finishedAt = System.nanoTime();
+                monitoringStore.addQueuedTask(select, queueDepth,
+                        TimeUnit.NANOSECONDS.toMicros(startedAt - queuedAt),
+                        TimeUnit.NANOSECONDS.toMicros(finishedAt - startedAt));
+            }
+        }
+
+        @Override
+        public void processError(DataLayerException error) {
+            started();
+            delegate.processError(error);
+        }
+
+        private void started() {
+            if (tokenId != null) {
+                coalescer.started(tokenId, task);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
     }
 
     /**
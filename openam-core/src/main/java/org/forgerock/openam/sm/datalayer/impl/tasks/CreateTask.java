@@ -16,7 +16,6 @@
 package org.forgerock.openam.sm.datalayer.impl.tasks;
 
 import org.forgerock.openam.cts.api.tokens.Token;
-import org.forgerock.openam.sm.datalayer.api.AbstractTask;
 import org.forgerock.openam.sm.datalayer.api.DataLayerException;
 import org.forgerock.openam.sm.datalayer.api.ResultHandler;
 import org.forgerock.openam.sm.datalayer.api.TokenStorageAdapter;
@@ -25,17 +24,19 @@ import java.text.MessageFormat;
 
 /**
  * Responsible for creating a Token in LDAP Store.
+ *
+ * Whilst queued, later updates to the same Token may be merged into this task so that the latest state
+ * of the Token is created, and a later delete of the Token may cancel it. Once the task has been
+ * dispatched, a later update is performed on its own after the Token has been created.
  */
-public class CreateTask extends AbstractTask {
-    private final Token token;
+public class CreateTask extends TokenWriteTask {
 
     /**
      * @param token Non null Token to create.
      * @param handler Non null handler to notify.
      */
     public CreateTask(Token token, ResultHandler<Token, ?> handler) {
-        super(handler);
-        this.token = token;
+        super(token, handler);
     }
 
     /**
@@ -45,16 +46,16 @@ public class CreateTask extends AbstractTask {
      *
      * @param connection Non null connection to use.
      * @param adapter Required for LDAP operations.
+     * @param token Non null Token to create.
      * @throws DataLayerException If there was any problem creating the Token.
      */
     @Override
-    public void performTask(Object connection, TokenStorageAdapter adapter) throws DataLayerException {
+    protected <T> void write(T connection, TokenStorageAdapter<T> adapter, Token token) throws DataLayerException {
         adapter.create(connection, token);
-        handler.processResults(token);
     }
 
     @Override
     public String toString() {
-        return MessageFormat.format("CreateTask: {0}", token.getTokenId());
+        return MessageFormat.format("CreateTask: {0}", getTokenId());
     }
 }
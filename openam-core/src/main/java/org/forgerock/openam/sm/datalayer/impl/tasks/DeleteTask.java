@@ -18,6 +18,7 @@ package org.forgerock.openam.sm.datalayer.impl.tasks;
 import org.forgerock.openam.sm.datalayer.api.AbstractTask;
 import org.forgerock.openam.sm.datalayer.api.DataLayerException;
 import org.forgerock.openam.sm.datalayer.api.ResultHandler;
+import org.forgerock.openam.sm.datalayer.api.Task;
 import org.forgerock.openam.sm.datalayer.api.TokenStorageAdapter;
 
 import java.text.MessageFormat;
@@ -52,6 +53,26 @@ public class DeleteTask extends AbstractTask {
         handler.processResults(tokenId);
     }
 
+    /**
+     * Creates a task which completes this delete without contacting the persistence layer, for use when
+     * the Token was never written because its creation was cancelled by this delete.
+     *
+     * @return Non null task which notifies the handler of this delete when executed.
+     */
+    Task collapse() {
+        return new AbstractTask<String>(handler) {
+            @Override
+            public <T> void performTask(T connection, TokenStorageAdapter<T> adapter) {
+                handler.processResults(tokenId);
+            }
+
+            @Override
+            public String toString() {
+                return MessageFormat.format("DeleteTask (collapsed): {0}", tokenId);
+            }
+        };
+    }
+
     @Override
     public String toString() {
         return MessageFormat.format("DeleteTask: {0}", tokenId);
@@ -0,0 +1,153 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.sm.datalayer.impl.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.forgerock.openam.cts.api.tokens.Token;
+import org.forgerock.openam.sm.datalayer.api.AbstractTask;
+import org.forgerock.openam.sm.datalayer.api.DataLayerException;
+import org.forgerock.openam.sm.datalayer.api.ResultHandler;
+import org.forgerock.openam.sm.datalayer.api.TokenStorageAdapter;
+
+/**
+ * A task which writes a Token to the persistence layer.
+ *
+ * Whilst the task is waiting to be processed, later updates to the same Token may be merged into it
+ * and it may be cancelled by a later delete of the Token. Once the task has been dispatched from its
+ * queue it is closed, and neither can take place.
+ *
+ * Every handler merged into the task is notified of the outcome of the single write which is
+ * performed, or of success if the task was cancelled.
+ *
+ * @see WriteCoalescer
+ */
+public abstract class TokenWriteTask extends AbstractTask<Token> {
+
+    private final String tokenId;
+    private final List<ResultHandler<Token, ?>> mergedHandlers = new ArrayList<>(0);
+    private Token token;
+    private boolean closed = false;
+    private boolean cancelled = false;
+
+    /**
+     * @param token Non null Token to write.
+     * @param handler Non null handler to notify.
+     */
+    protected TokenWriteTask(Token token, ResultHandler<Token, ?> handler) {
+        super(handler);
+        this.token = token;
+        this.tokenId = token.getTokenId();
+    }
+
+    /**
+     * @return The ID of the Token this task writes.
+     */
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    /**
+     * Merges a later update of the same Token into this task, if it has not yet started.
+     *
+     * @param update Non null update of the same Token.
+     * @return True if the update was merged, and so must not be performed itself.
+     */
+    synchronized boolean merge(UpdateTask update) {
+        if (closed) {
+            return false;
+        }
+        token = update.getToken();
+        mergedHandlers.add(update.handler);
+        return true;
+    }
+
+    /**
+     * Cancels this task, if it has not yet started, so that it performs no write.
+     *
+     * @return True if the task was cancelled.
+     */
+    synchronized boolean cancel() {
+        if (closed) {
+            return false;
+        }
+        cancelled = true;
+        return true;
+    }
+
+    /**
+     * Closes the task to further merges and to cancellation, as it has been dispatched from its queue.
+     */
+    synchronized void dispatched() {
+        closed = true;
+    }
+
+    /**
+     * Closes the task to further merges and performs the write of the latest merged Token, unless the
+     * task has been cancelled.
+     *
+     * @param connection Non null connection to use.
+     * @param adapter Required for LDAP operations.
+     * @throws DataLayerException If there was any problem writing the Token.
+     */
+    @Override
+    public <T> void performTask(T connection, TokenStorageAdapter<T> adapter) throws DataLayerException {
+        Token latest;
+        boolean skip;
+        synchronized (this) {
+            closed = true;
+            latest = token;
+            skip = cancelled;
+        }
+        if (!skip) {
+            write(connection, adapter, latest);
+        }
+        handler.processResults(latest);
+        for (ResultHandler<Token, ?> merged : mergedHandlers) {
+            merged.processResults(latest);
+        }
+    }
+
+    @Override
+    public void processError(DataLayerException error) {
+        synchronized (this) {
+            closed = true;
+        }
+        super.processError(error);
+        for (ResultHandler<Token, ?> merged : mergedHandlers) {
+            merged.processError(error);
+        }
+    }
+
+    /**
+     * Performs the write of the Token.
+     *
+     * @param connection Non null connection to use.
+     * @param adapter Required for LDAP operations.
+     * @param token Non null Token to write.
+     * @throws DataLayerException If there was any problem writing the Token.
+     */
+    protected abstract <T> void write(T connection, TokenStorageAdapter<T> adapter, Token token)
+            throws DataLayerException;
+
+    /**
+     * @return The Token this task will currently write.
+     */
+    synchronized Token getToken() {
+        return token;
+    }
+}
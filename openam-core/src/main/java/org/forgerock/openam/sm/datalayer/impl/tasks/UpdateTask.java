@@ -16,28 +16,26 @@
 package org.forgerock.openam.sm.datalayer.impl.tasks;
 
 import org.forgerock.openam.cts.api.tokens.Token;
-import org.forgerock.openam.cts.exceptions.CoreTokenException;
-import org.forgerock.openam.sm.datalayer.api.AbstractTask;
 import org.forgerock.openam.sm.datalayer.api.DataLayerException;
 import org.forgerock.openam.sm.datalayer.api.ResultHandler;
-import org.forgerock.openam.sm.datalayer.api.Task;
 import org.forgerock.openam.sm.datalayer.api.TokenStorageAdapter;
 
 import java.text.MessageFormat;
 
 /**
  * Responsible for updating the LDAP persistence with the provided Token.
+ *
+ * Whilst queued, later updates to the same Token may be merged into this task so that only the
+ * latest state of the Token is written.
  */
-public class UpdateTask extends AbstractTask {
-    private final Token token;
+public class UpdateTask extends TokenWriteTask {
 
     /**
      * @param token Non null Token to update.
      * @param handler Non null handler to notify.
      */
     public UpdateTask(Token token, ResultHandler<Token, ?> handler) {
-        super(handler);
-        this.token = token;
+        super(token, handler);
     }
 
     /**
@@ -48,21 +46,21 @@ public class UpdateTask extends AbstractTask {
      *
      * @param connection Non null Connection.
      * @param adapter Non null for connection-coupled operations.
+     * @param token Non null Token to write.
      * @throws DataLayerException If there was an error of any kind.
      */
     @Override
-    public void performTask(Object connection, TokenStorageAdapter adapter) throws DataLayerException {
+    protected <T> void write(T connection, TokenStorageAdapter<T> adapter, Token token) throws DataLayerException {
         Token previous = adapter.read(connection, token.getTokenId());
         if (previous == null) {
             adapter.create(connection, token);
         } else {
             adapter.update(connection, previous, token);
         }
-        handler.processResults(token);
     }
 
     @Override
     public String toString() {
-        return MessageFormat.format("UpdateTask: {0}", token.getTokenId());
+        return MessageFormat.format("UpdateTask: {0}", getTokenId());
     }
 }
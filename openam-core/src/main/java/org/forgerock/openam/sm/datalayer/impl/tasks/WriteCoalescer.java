@@ -0,0 +1,94 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.sm.datalayer.impl.tasks;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.forgerock.openam.sm.datalayer.api.Task;
+
+/**
+ * Merges queued write tasks for the same Token ID, so that a burst of writes to a Token results in a
+ * single write to the persistence layer.
+ *
+ * The most recently queued task for each Token ID is tracked until it is dispatched from its queue. If
+ * it is a write which has not yet been dispatched then:
+ * <ul>
+ *     <li>A later update is merged into it, and the last write wins. An update is only merged into a
+ *     create whilst the create is still queued, so it is never lost by being merged into a create which
+ *     has already written the Token; once dispatched, the update is queued behind the create.</li>
+ *     <li>A later delete cancels it. If it was a create, the delete has nothing to remove and also
+ *     completes without contacting the persistence layer.</li>
+ * </ul>
+ * Any other task for the Token ID, such as a read, ends the tracking so that it observes every write
+ * queued before it.
+ *
+ * The caller must queue the tasks of a Token ID in the order they are passed to
+ * {@link #coalesce(String, Task)}, and must not interleave calls for the same Token ID.
+ */
+public class WriteCoalescer {
+
+    private final ConcurrentMap<String, TokenWriteTask> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Coalesces the task with the queued write for the same Token ID, if there is one.
+     *
+     * @param tokenId Non null Token ID the task is for.
+     * @param task Non null task which is about to be queued.
+     * @return The task to queue in its place, or null if the task was merged and nothing should be queued.
+     */
+    public Task coalesce(String tokenId, Task task) {
+        TokenWriteTask previous = pending.get(tokenId);
+        if (previous == null) {
+            return task;
+        }
+        if (task instanceof UpdateTask && previous.merge((UpdateTask) task)) {
+            return null;
+        }
+        if (task instanceof DeleteTask && previous.cancel()) {
+            pending.remove(tokenId, previous);
+            return previous instanceof CreateTask ? ((DeleteTask) task).collapse() : task;
+        }
+        return task;
+    }
+
+    /**
+     * Signals that the task returned by {@link #coalesce(String, Task)} has been queued.
+     *
+     * @param tokenId Non null Token ID the task is for.
+     * @param task Non null task which was queued.
+     */
+    public void queued(String tokenId, Task task) {
+        if (task instanceof TokenWriteTask) {
+            pending.put(tokenId, (TokenWriteTask) task);
+        } else {
+            pending.remove(tokenId);
+        }
+    }
+
+    /**
+     * Signals that a queued task has been dispatched from the queue, and so can no longer be coalesced.
+     *
+     * @param tokenId Non null Token ID the task is for.
+     * @param task Non null task which was dispatched.
+     */
+    public void started(String tokenId, Task task) {
+        if (task instanceof TokenWriteTask) {
+            ((TokenWriteTask) task).dispatched();
+        }
+        pending.remove(tokenId, task);
+    }
+}
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 package com.iplanet.dpro.session.service;
 
@@ -136,4 +136,64 @@ public class InternalSessionCacheTest {
         assertThat(cache.getByRestrictedID(oldRestriction)).isNull();
         assertThat(cache.getByRestrictedID(newRestriction)).isEqualTo(session);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldCacheAllRestrictedTokens() {
+        // Given
+        SessionID first = mock(SessionID.class);
+        SessionID second = mock(SessionID.class);
+        given(session.getRestrictedTokens()).willReturn(new HashSet<SessionID>(Arrays.asList(first, second)));
+
+        // When
+        cache.put(session);
+
+        // Then
+        assertThat(cache.getByRestrictedID(first)).isEqualTo(session);
+        assertThat(cache.getByRestrictedID(second)).isEqualTo(session);
+    }
+
+    @Test
+    public void shouldNotRemoveHandleClaimedByAnotherSession() {
+        // Given
+        String sharedHandle = "badger";
+        given(session.getSessionHandle()).willReturn(sharedHandle);
+        cache.put(session);
+
+        InternalSession other = mock(InternalSession.class);
+        given(other.getID()).willReturn(mock(SessionID.class));
+        given(other.getSessionHandle()).willReturn(sharedHandle);
+        cache.put(other);
+
+        // When
+        cache.remove(session);
+
+        // Then
+        assertThat(cache.getByHandle(sharedHandle)).isEqualTo(other);
+    }
+
+    @Test
+    public void shouldReturnAllCachedSessions() {
+        // Given
+        InternalSession other = mock(InternalSession.class);
+        given(other.getID()).willReturn(mock(SessionID.class));
+
+        // When
+        cache.put(session);
+        cache.put(other);
+
+        // Then
+        assertThat(cache.getAllSessions()).containsOnly(session, other);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldCountUpdates() {
+        // When
+        cache.put(session);
+        cache.remove(session);
+
+        // Then
+        assertThat(cache.getUpdateCount()).isEqualTo(2);
+        assertThat(cache.getContendedUpdateCount()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.iplanet.dpro.session.service;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.BDDMockito.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+import com.sun.identity.shared.debug.Debug;
+import org.forgerock.openam.utils.Time;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ExecutorService;
+
+public class SessionExpirySchedulerTest {
+
+    private static final long TICK = 1000L;
+
+    private SessionExpiryScheduler scheduler;
+    private long now;
+
+    @BeforeMethod
+    public void setup() {
+        ExecutorService executor = mock(ExecutorService.class);
+        willAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).given(executor).execute(any(Runnable.class));
+        scheduler = new SessionExpiryScheduler(TICK, 4, executor, mock(Debug.class));
+        now = Time.currentTimeMillis();
+    }
+
+    @Test
+    public void shouldRunSessionOnceItHasExpired() {
+        // Given
+        InternalSession session = mock(InternalSession.class);
+        scheduler.schedule(new SessionExpiryScheduler.Entry(session), now + 2 * TICK);
+
+        // When
+        scheduler.advance(now + TICK);
+        verify(session, never()).run();
+        scheduler.advance(now + 3 * TICK);
+
+        // Then
+        verify(session).run();
+        assertThat(scheduler.getScheduledCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldMoveEntryWhenRescheduled() {
+        // Given
+        InternalSession session = mock(InternalSession.class);
+        SessionExpiryScheduler.Entry entry = new SessionExpiryScheduler.Entry(session);
+        scheduler.schedule(entry, now + 2 * TICK);
+
+        // When
+        scheduler.schedule(entry, now + 3 * TICK);
+        scheduler.advance(now + 2 * TICK);
+
+        // Then
+        verify(session, never()).run();
+        assertThat(entry.scheduledExecutionTime()).isEqualTo(now + 3 * TICK);
+        assertThat(scheduler.getScheduledCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotRunCancelledEntry() {
+        // Given
+        InternalSession session = mock(InternalSession.class);
+        SessionExpiryScheduler.Entry entry = new SessionExpiryScheduler.Entry(session);
+        scheduler.schedule(entry, now + TICK);
+
+        // When
+        scheduler.cancel(entry);
+        scheduler.advance(now + 2 * TICK);
+
+        // Then
+        verify(session, never()).run();
+        assertThat(entry.scheduledExecutionTime()).isEqualTo(-1);
+        assertThat(scheduler.getScheduledCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldKeepEntriesBeyondOneRevolutionOfTheWheel() {
+        // Given
+        InternalSession session = mock(InternalSession.class);
+        scheduler.schedule(new SessionExpiryScheduler.Entry(session), now + 10 * TICK);
+
+        // When
+        scheduler.advance(now + 6 * TICK);
+        verify(session, never()).run();
+        scheduler.advance(now + 11 * TICK);
+
+        // Then
+        verify(session).run();
+    }
+
+    @Test
+    public void shouldExpireEntriesDueInTheSameTickAsOneBatch() {
+        // Given
+        InternalSession first = mock(InternalSession.class);
+        InternalSession second = mock(InternalSession.class);
+        scheduler.schedule(new SessionExpiryScheduler.Entry(first), now + TICK);
+        scheduler.schedule(new SessionExpiryScheduler.Entry(second), now + TICK);
+
+        // When
+        scheduler.advance(now + 2 * TICK);
+
+        // Then
+        verify(first).run();
+        verify(second).run();
+        assertThat(scheduler.getExpiredCount()).isEqualTo(2);
+        assertThat(scheduler.getBatchCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldScheduleOverdueEntryForNextTick() {
+        // Given
+        InternalSession session = mock(InternalSession.class);
+        scheduler.advance(now + 2 * TICK);
+
+        // When
+        scheduler.schedule(new SessionExpiryScheduler.Entry(session), now - TICK);
+        scheduler.advance(now + 4 * TICK);
+
+        // Then
+        verify(session).run();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.iplanet.dpro.session.service;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.iplanet.dpro.session.SessionID;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class UserSessionIndexTest {
+
+    private static final String USER = "id=demo,ou=user,dc=openam,dc=forgerock,dc=org";
+    private static final String OTHER_USER = "id=other,ou=user,dc=openam,dc=forgerock,dc=org";
+
+    private UserSessionIndex index;
+
+    @BeforeMethod
+    public void setup() {
+        index = new UserSessionIndex(true);
+    }
+
+    @Test
+    public void shouldIncrementCountWhenSessionIsCreated() {
+        // Given
+        SessionID first = mock(SessionID.class);
+        SessionID second = mock(SessionID.class);
+
+        // When
+        index.add(USER, first);
+        index.add(USER, second);
+        index.add(OTHER_USER, mock(SessionID.class));
+
+        // Then
+        assertThat(index.getSessions(USER)).containsOnly(first, second);
+        assertThat(index.getUserCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldDecrementCountWhenSessionIsDestroyed() {
+        // Given
+        SessionID destroyed = mock(SessionID.class);
+        SessionID remaining = mock(SessionID.class);
+        index.add(USER, destroyed);
+        index.add(USER, remaining);
+
+        // When
+        index.remove(USER, destroyed);
+
+        // Then
+        assertThat(index.getSessions(USER)).containsOnly(remaining);
+    }
+
+    @Test
+    public void shouldOnlyDecrementCountOnceWhenTimedOutSessionIsDestroyed() {
+        // Given
+        SessionID timedOut = mock(SessionID.class);
+        SessionID remaining = mock(SessionID.class);
+        index.add(USER, timedOut);
+        index.add(USER, remaining);
+
+        // When
+        index.remove(USER, timedOut);
+        index.remove(USER, timedOut);
+
+        // Then
+        assertThat(index.getSessions(USER)).containsOnly(remaining);
+    }
+
+    @Test
+    public void shouldDropUserWhenLastSessionIsRemoved() {
+        // Given
+        SessionID sid = mock(SessionID.class);
+        index.add(USER, sid);
+
+        // When
+        index.remove(USER, sid);
+
+        // Then
+        assertThat(index.getSessions(USER)).isEmpty();
+        assertThat(index.getUserCount()).isZero();
+    }
+
+    @Test
+    public void shouldAllowSessionWithoutSearchWhenUnderQuota() {
+        // Given
+        index.add(USER, mock(SessionID.class));
+
+        // When
+        boolean underQuota = index.hasFewerSessionsThan(USER, 2);
+
+        // Then
+        assertThat(underQuota).isTrue();
+        assertThat(index.hasFewerSessionsThan(OTHER_USER, 1)).isTrue();
+    }
+
+    @Test
+    public void shouldRequireSearchWhenQuotaIsReached() {
+        // Given
+        index.add(USER, mock(SessionID.class));
+        index.add(USER, mock(SessionID.class));
+
+        // When
+        boolean underQuota = index.hasFewerSessionsThan(USER, 2);
+
+        // Then
+        assertThat(underQuota).isFalse();
+    }
+
+    @Test
+    public void shouldRequireSearchWhenSessionsAreNotTrackedLocally() {
+        // Given
+        index = new UserSessionIndex(false);
+        index.add(USER, mock(SessionID.class));
+
+        // When
+        boolean underQuota = index.hasFewerSessionsThan(USER, 2);
+
+        // Then
+        assertThat(underQuota).isFalse();
+        assertThat(index.isEnabled()).isFalse();
+        assertThat(index.getSessions(USER)).isEmpty();
+        assertThat(index.getUserCount()).isZero();
+    }
+
+    @Test
+    public void shouldNotLoseSessionsAddedWhileOthersAreRemoved() throws Exception {
+        // Given
+        final int sessionsPerThread = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<SessionID> kept = new ArrayList<SessionID>();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < 4; i++) {
+            final SessionID keep = mock(SessionID.class);
+            kept.add(keep);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int j = 0; j < sessionsPerThread; j++) {
+                        SessionID temporary = mock(SessionID.class);
+                        index.add(USER, temporary);
+                        index.remove(USER, temporary);
+                    }
+                    index.add(USER, keep);
+                    return null;
+                }
+            });
+        }
+
+        // When
+        try {
+            for (Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Then
+        assertThat(index.getSessions(USER)).containsOnly(kept.toArray(new SessionID[kept.size()]));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.authentication.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class AuthThreadManagerTest {
+
+    private AuthThreadManager manager;
+    private Thread waiting;
+    private CountDownLatch interrupted;
+
+    @BeforeMethod
+    public void setup() {
+        manager = new AuthThreadManager();
+        // each thread has its own latch, as the interrupt from tearDown may be handled after the next setup
+        final CountDownLatch latch = new CountDownLatch(1);
+        interrupted = latch;
+        waiting = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    latch.countDown();
+                }
+            }
+        });
+        waiting.setDaemon(true);
+        waiting.start();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        manager.shutdown();
+        waiting.interrupt();
+    }
+
+    @Test
+    public void shouldInterruptThreadOncePageTimeoutHasPassed() throws Exception {
+        // Given
+        long lastCallbackSent = currentTimeMillis() - 500;
+
+        // When
+        manager.setHash(waiting, 4, lastCallbackSent);
+
+        // Then
+        assertThat(manager.isTimedOut(waiting)).isFalse();
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(manager.isTimedOut(waiting)).isTrue();
+    }
+
+    @Test
+    public void shouldNotInterruptThreadBeforeFirstCallbackIsSent() throws Exception {
+        // When
+        manager.setHash(waiting, 4, 0);
+
+        // Then
+        assertThat(interrupted.await(500, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(manager.isTimedOut(waiting)).isFalse();
+    }
+
+    @Test
+    public void shouldTimeOutFromNowWhenLastCallbackWasSentLongAgo() throws Exception {
+        // Given
+        long lastCallbackSent = currentTimeMillis() - 60000;
+
+        // When
+        manager.setHash(waiting, 4, lastCallbackSent);
+
+        // Then
+        assertThat(interrupted.await(500, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(manager.isTimedOut(waiting)).isTrue();
+    }
+
+    @Test
+    public void shouldForgetTimedOutThreadWhenRemoved() throws Exception {
+        // Given
+        manager.setHash(waiting, 0, currentTimeMillis());
+        interrupted.await(5, TimeUnit.SECONDS);
+
+        // When
+        manager.removeFromHash(waiting, "timedOutHash");
+
+        // Then
+        assertThat(manager.isTimedOut(waiting)).isFalse();
+    }
+
+    @Test
+    public void shouldNotInterruptThreadWhichStoppedWaiting() throws Exception {
+        // Given
+        manager.setHash(waiting, 4, currentTimeMillis());
+
+        // When
+        manager.removeFromHash(waiting, "timeoutHash");
+
+        // Then
+        assertThat(interrupted.await(1500, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(manager.isTimedOut(waiting)).isFalse();
+    }
+
+    @Test
+    public void shouldWaitAgainAfterTimedOutThreadIsRemoved() throws Exception {
+        // Given
+        manager.setHash(waiting, 0, currentTimeMillis());
+        interrupted.await(5, TimeUnit.SECONDS);
+        manager.removeFromHash(waiting, "timedOutHash");
+
+        // When
+        manager.setHash(waiting, 600, currentTimeMillis());
+
+        // Then
+        assertThat(manager.isTimedOut(waiting)).isFalse();
+        manager.removeFromHash(waiting, "timeoutHash");
+    }
+
+    @Test
+    public void shouldNotRescheduleThreadAlreadyWaiting() throws Exception {
+        // Given
+        manager.setHash(waiting, 0, currentTimeMillis());
+
+        // When
+        manager.setHash(waiting, 600, currentTimeMillis());
+
+        // Then
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void shouldReportLoginTimeoutOnceTimeoutHasPassed() {
+        // Given
+        long now = currentTimeMillis();
+
+        // Then
+        assertThat(manager.isLoginTimeout(now - 10000, 5)).isTrue();
+        assertThat(manager.isLoginTimeout(now, 60)).isFalse();
+    }
+}
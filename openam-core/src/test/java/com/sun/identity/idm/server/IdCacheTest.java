@@ -0,0 +1,187 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.idm.server;
+
+import static java.util.Collections.singleton;
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.iplanet.am.sdk.AMEvent;
+import com.iplanet.am.sdk.AMHashMap;
+import com.sun.identity.idm.common.IdCacheBlock;
+import org.forgerock.guava.common.cache.RemovalListener;
+import org.forgerock.guava.common.cache.RemovalNotification;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class IdCacheTest {
+
+    private static final String PEOPLE = "ou=people,dc=example,dc=com";
+    private static final String DEMO = "uid=demo," + PEOPLE;
+    private static final String OTHER = "uid=other," + PEOPLE;
+    private static final String AGENT = "uid=agent,ou=agents,dc=example,dc=com";
+    private static final String PRINCIPAL = "uid=amadmin,ou=people,dc=example,dc=com";
+    private static final Set<String> ATTRIBUTE_NAMES = new HashSet<>(Arrays.asList("cn", "mail"));
+
+    private AtomicInteger evictions;
+    private IdCache cache;
+
+    @BeforeMethod
+    public void setup() {
+        evictions = new AtomicInteger();
+        cache = newCache(100);
+    }
+
+    @Test
+    public void shouldMissUntilEntryIsCached() {
+        // Given
+        assertThat(cache.get(DEMO)).isNull();
+
+        // When
+        IdCacheBlock created = cache.getOrCreate(DEMO);
+
+        // Then
+        assertThat(cache.get(DEMO)).isSameAs(created);
+        assertThat(cache.getOrCreate(DEMO)).isSameAs(created);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldFindEntryCachedWithoutAmsdkDN() {
+        // Given
+        IdCacheBlock cb = cache.getOrCreate(DEMO);
+
+        // When
+        IdCacheBlock found = cache.find(DEMO + ",amsdkdn=uid=demo,ou=people,o=amsdk");
+
+        // Then
+        assertThat(found).isSameAs(cb);
+    }
+
+    @Test
+    public void shouldRemoveEntryWhenRemovedEventIsReceived() {
+        // Given
+        givenCachedAttributes(DEMO);
+        givenCachedAttributes(OTHER);
+
+        // When
+        cache.dirty(DEMO, AMEvent.OBJECT_REMOVED, false, false, null);
+
+        // Then
+        assertThat(cache.get(DEMO)).isNull();
+        assertThat(cache.get(OTHER).hasCompleteSet(PRINCIPAL)).isTrue();
+    }
+
+    @Test
+    public void shouldClearEntryWhenChangedEventIsReceived() {
+        // Given
+        givenCachedAttributes(DEMO);
+        givenCachedAttributes(OTHER);
+
+        // When
+        cache.dirty(DEMO, AMEvent.OBJECT_CHANGED, false, false, null);
+
+        // Then
+        assertThat(cache.get(DEMO).hasCache(PRINCIPAL)).isFalse();
+        assertThat(cache.get(OTHER).hasCompleteSet(PRINCIPAL)).isTrue();
+    }
+
+    @Test
+    public void shouldClearEntriesBelowDNWhenAciChangeIsReceived() {
+        // Given
+        givenCachedAttributes(DEMO);
+        givenCachedAttributes(OTHER);
+        givenCachedAttributes(AGENT);
+
+        // When
+        cache.dirty(PEOPLE, AMEvent.OBJECT_CHANGED, false, true, null);
+
+        // Then
+        assertThat(cache.get(DEMO).hasCache(PRINCIPAL)).isFalse();
+        assertThat(cache.get(OTHER).hasCache(PRINCIPAL)).isFalse();
+        assertThat(cache.get(AGENT).hasCompleteSet(PRINCIPAL)).isTrue();
+    }
+
+    @Test
+    public void shouldRemoveOnlyChangedAttributesWhenCosChangeIsReceived() {
+        // Given
+        givenCachedAttributes(DEMO);
+        givenCachedAttributes(AGENT);
+
+        // When
+        cache.dirty(PEOPLE, AMEvent.OBJECT_CHANGED, true, false, singleton("mail"));
+
+        // Then
+        Map demo = cache.get(DEMO).getAttributes(PRINCIPAL, ATTRIBUTE_NAMES, false);
+        assertThat(demo).containsKey("cn").doesNotContainKey("mail");
+        Map agent = cache.get(AGENT).getAttributes(PRINCIPAL, ATTRIBUTE_NAMES, false);
+        assertThat(agent).containsKey("cn").containsKey("mail");
+    }
+
+    @Test
+    public void shouldRemoveAllEntriesWhenCleared() {
+        // Given
+        givenCachedAttributes(DEMO);
+        givenCachedAttributes(AGENT);
+
+        // When
+        cache.clear();
+
+        // Then
+        assertThat(cache.size()).isZero();
+        assertThat(cache.get(DEMO)).isNull();
+        assertThat(evictions.get()).isZero();
+    }
+
+    @Test
+    public void shouldEvictEntriesToStayWithinMaximumSize() {
+        // Given
+        cache = newCache(10);
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            cache.getOrCreate("uid=user" + i + "," + PEOPLE);
+        }
+
+        // Then
+        assertThat(cache.size()).isLessThanOrEqualTo(10);
+        assertThat(evictions.get()).isEqualTo(100 - cache.size());
+    }
+
+    private IdCache newCache(int maxSize) {
+        return new IdCache(maxSize, 0, new RemovalListener<Object, Object>() {
+            @Override
+            public void onRemoval(RemovalNotification<Object, Object> notification) {
+                if (notification.wasEvicted()) {
+                    evictions.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    private void givenCachedAttributes(String dn) {
+        AMHashMap attributes = new AMHashMap(false);
+        attributes.put("cn", singleton("name"));
+        attributes.put("mail", singleton("name@example.com"));
+        cache.getOrCreate(dn).putAttributes(PRINCIPAL, attributes, null, true, false);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.log.handlers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FileHandlerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String HEADER = "#Fields: message\n";
+    private static final String LOG_NAME = "amAuthentication.access";
+    private static final long MAX_FILE_SIZE = 200;
+    // Nine characters taking two bytes each in UTF-8
+    private static final String MULTI_BYTE = "\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9";
+
+    private File location;
+    private FileHandler handler;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        location = Files.createTempDirectory("FileHandlerTest").toFile();
+        handler = new FileHandler(location.getPath(), LOG_NAME, MAX_FILE_SIZE, 2, 1000);
+        handler.setEncoding("UTF-8");
+        handler.setFormatter(new Formatter() {
+            @Override
+            public String format(LogRecord record) {
+                return record.getMessage() + "\n";
+            }
+
+            @Override
+            public String getHead(Handler h) {
+                return HEADER;
+            }
+        });
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        handler.close();
+        File[] files = location.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        location.delete();
+    }
+
+    @Test
+    public void shouldRotateBeforeMultiByteRecordsExceedMaximumSize() throws Exception {
+        // Given
+        publish(20, MULTI_BYTE);
+
+        // When
+        handler.flush();
+
+        // Then
+        assertThat(logFile(1)).exists();
+        for (File file : location.listFiles()) {
+            assertThat(file.length()).isLessThan(MAX_FILE_SIZE);
+        }
+    }
+
+    @Test
+    public void shouldWriteHeaderAtStartOfEachRotatedFile() throws Exception {
+        // Given
+        publish(30, "record");
+
+        // When
+        handler.flush();
+
+        // Then
+        assertThat(logFile(1)).exists();
+        for (File file : location.listFiles()) {
+            assertThat(read(file)).startsWith(HEADER);
+        }
+    }
+
+    @Test
+    public void shouldKeepPublishedOrderAcrossRotationsInOneBatch() throws Exception {
+        // Given
+        List<String> published = publish(25, "record");
+
+        // When
+        handler.flush();
+
+        // Then
+        List<String> logged = new ArrayList<String>();
+        for (int i = 2; i >= 0; i--) {
+            File file = logFile(i);
+            if (file.exists()) {
+                for (String line : read(file).substring(HEADER.length()).split("\n")) {
+                    logged.add(line);
+                }
+            }
+        }
+        assertThat(logged).isEqualTo(published.subList(published.size() - logged.size(), published.size()));
+        assertThat(logged.get(logged.size() - 1)).isEqualTo("record24");
+    }
+
+    @Test
+    public void shouldKeepOnlyConfiguredNumberOfHistoryFiles() throws Exception {
+        // When
+        for (int batch = 0; batch < 10; batch++) {
+            publish(10, "batch" + batch + "-record");
+            handler.flush();
+        }
+
+        // Then
+        assertThat(logFile(0)).exists();
+        assertThat(logFile(1)).exists();
+        assertThat(logFile(2)).exists();
+        assertThat(logFile(3)).doesNotExist();
+        assertThat(location.listFiles()).hasSize(3);
+    }
+
+    private List<String> publish(int count, String prefix) {
+        List<String> messages = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            String message = prefix + i;
+            handler.publish(new LogRecord(Level.INFO, message));
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private File logFile(int history) {
+        return new File(location, history == 0 ? LOG_NAME : LOG_NAME + "-" + history);
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), UTF_8);
+    }
+}
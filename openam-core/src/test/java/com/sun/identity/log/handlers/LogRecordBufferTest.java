@@ -0,0 +1,136 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.log.handlers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+public class LogRecordBufferTest {
+
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    @Test
+    public void shouldRoundCapacityUpToPowerOfTwo() {
+        assertThat(new LogRecordBuffer<String>(1000, LogRecordBuffer.Backpressure.BLOCK, NOTHING).capacity())
+                .isEqualTo(1024);
+        assertThat(new LogRecordBuffer<String>(1024, LogRecordBuffer.Backpressure.BLOCK, NOTHING).capacity())
+                .isEqualTo(1024);
+    }
+
+    @Test
+    public void shouldDrainRecordsInPublishedOrder() {
+        // Given
+        LogRecordBuffer<String> buffer = new LogRecordBuffer<String>(4, LogRecordBuffer.Backpressure.BLOCK, NOTHING);
+        List<String> drained = new ArrayList<String>();
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            buffer.offer("record" + i);
+            if (i % 3 == 2) {
+                buffer.drainTo(drained);
+            }
+        }
+        buffer.drainTo(drained);
+
+        // Then
+        assertThat(drained).hasSize(10);
+        for (int i = 0; i < 10; i++) {
+            assertThat(drained.get(i)).isEqualTo("record" + i);
+        }
+        assertThat(buffer.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldDropAndCountRecordsWhenFull() {
+        // Given
+        final AtomicInteger fullCount = new AtomicInteger();
+        LogRecordBuffer<String> buffer = new LogRecordBuffer<String>(4, LogRecordBuffer.Backpressure.DROP,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        fullCount.incrementAndGet();
+                    }
+                });
+
+        // When
+        for (int i = 0; i < 6; i++) {
+            buffer.offer("record" + i);
+        }
+
+        // Then
+        assertThat(buffer.size()).isEqualTo(4);
+        assertThat(buffer.getDroppedCount()).isEqualTo(2);
+        assertThat(fullCount.get()).isEqualTo(2);
+        assertThat(buffer.offer("another")).isFalse();
+    }
+
+    @Test
+    public void shouldNotLoseRecordsFromManyBlockedProducers() throws Exception {
+        // Given
+        final int producers = 64;
+        final int recordsPerProducer = 2000;
+        final LogRecordBuffer<int[]> buffer =
+                new LogRecordBuffer<int[]>(256, LogRecordBuffer.Backpressure.BLOCK, NOTHING);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < recordsPerProducer; i++) {
+                        buffer.offer(new int[] {producer, i});
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        // When
+        start.countDown();
+        List<int[]> drained = new ArrayList<int[]>();
+        while (drained.size() < producers * recordsPerProducer) {
+            buffer.drainTo(drained);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Then
+        int[] next = new int[producers];
+        for (int[] record : drained) {
+            assertThat(record[1]).isEqualTo(next[record[0]]);
+            next[record[0]]++;
+        }
+        assertThat(buffer.getDroppedCount()).isEqualTo(0);
+        assertThat(buffer.size()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.log.secure;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.identity.security.keystore.AMPassword;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SecureLogHelperTest {
+
+    private static final String LOGGER_STORE = "logger";
+    private static final String VERIFIER_STORE = "verifier";
+    private static final byte[] INITIAL_KEY = {1, 2, 3, 4, 5, 6, 7, 8};
+
+    private InMemorySecureLogHelper helper;
+
+    @BeforeMethod
+    public void setup() {
+        helper = new InMemorySecureLogHelper();
+        helper.logFileName = LOGGER_STORE;
+        helper.verifierFileName = VERIFIER_STORE;
+        helper.store.put(LOGGER_STORE + SecureLogHelper.currentKey, INITIAL_KEY.clone());
+        helper.store.put(VERIFIER_STORE + SecureLogHelper.currentKey, INITIAL_KEY.clone());
+        helper.currentLoggerKey = INITIAL_KEY.clone();
+    }
+
+    @Test
+    public void shouldGenerateSameMACsInBatchAndStoreKeyOnce() throws Exception {
+        // Given
+        List<byte[]> unbatched = new ArrayList<byte[]>();
+        for (int i = 0; i < 5; i++) {
+            unbatched.add(helper.generateLogEntryMAC("entry" + i));
+        }
+        byte[] unbatchedKey = helper.currentLoggerKey;
+        setup();
+
+        // When
+        List<byte[]> batched = new ArrayList<byte[]>();
+        helper.startLogEntryBatch();
+        for (int i = 0; i < 5; i++) {
+            batched.add(helper.generateLogEntryMAC("entry" + i));
+        }
+        helper.endLogEntryBatch();
+
+        // Then
+        for (int i = 0; i < 5; i++) {
+            assertThat(batched.get(i)).isEqualTo(unbatched.get(i));
+        }
+        assertThat(helper.store.get(LOGGER_STORE + SecureLogHelper.currentKey)).isEqualTo(unbatchedKey);
+        assertThat(helper.writes).isEqualTo(1);
+    }
+
+    @Test(expectedExceptions = Exception.class)
+    public void shouldDetectChangedKeyWhenStartingBatch() throws Exception {
+        // Given
+        helper.store.put(LOGGER_STORE + SecureLogHelper.currentKey, new byte[] {9, 9, 9});
+
+        // When
+        helper.startLogEntryBatch();
+    }
+
+    @Test
+    public void shouldVerifyMACsInBatchAndStoreKeyOnce() throws Exception {
+        // Given
+        List<byte[]> macs = new ArrayList<byte[]>();
+        helper.startLogEntryBatch();
+        for (int i = 0; i < 5; i++) {
+            macs.add(helper.generateLogEntryMAC("entry" + i));
+        }
+        helper.endLogEntryBatch();
+        helper.writes = 0;
+
+        // When
+        helper.startVerifierBatch();
+        boolean verified = true;
+        for (int i = 0; i < 5; i++) {
+            verified &= helper.verifyMAC("entry" + i, macs.get(i));
+        }
+        helper.endVerifierBatch();
+
+        // Then
+        assertThat(verified).isTrue();
+        assertThat(helper.store.get(VERIFIER_STORE + SecureLogHelper.currentKey))
+                .isEqualTo(helper.currentLoggerKey);
+        assertThat(helper.writes).isEqualTo(1);
+    }
+
+    private static final class InMemorySecureLogHelper extends SecureLogHelper {
+
+        private final Map<String, byte[]> store = new HashMap<String, byte[]>();
+        private int writes;
+
+        @Override
+        public byte[] signMAC(byte[] mac) {
+            return mac;
+        }
+
+        @Override
+        byte[] readFromSecretStore(String filename, String dataType, AMPassword password) {
+            return store.get(filename + dataType);
+        }
+
+        @Override
+        void writeToSecretStore(byte[] cryptoMaterial, String filename, AMPassword password, String dataType) {
+            writes++;
+            store.put(filename + dataType, cryptoMaterial);
+        }
+
+        @Override
+        public boolean verifySignature(byte[] signedObject, byte[] mac) {
+            return true;
+        }
+
+        @Override
+        void initializeKeyStoreManager(AMPassword passwd) {
+        }
+    }
+}
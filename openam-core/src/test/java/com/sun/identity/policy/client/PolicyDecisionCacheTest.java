@@ -0,0 +1,270 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.policy.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.iplanet.sso.SSOException;
+import com.sun.identity.policy.PolicyException;
+import com.sun.identity.policy.ResourceResult;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class PolicyDecisionCacheTest {
+
+    private static final String SERVICE = "iPlanetAMWebAgentService";
+    private static final long TTL = 60000;
+
+    private PolicyDecisionCache cache;
+
+    @BeforeMethod
+    public void setup() {
+        cache = new PolicyDecisionCache(100);
+    }
+
+    @Test
+    public void shouldReturnLoadedDecision() throws Exception {
+        // Given
+        PolicyDecisionCache.Key key = key("http://a/", "token1");
+
+        // When
+        PolicyDecisionCache.Entry loaded = cache.load(key, null, null, TTL, true, fetcher(2, new AtomicInteger()));
+
+        // Then
+        assertThat(cache.get(key)).isSameAs(loaded);
+        assertThat(loaded.getResourceResults()).hasSize(2);
+        assertThat(cache.getWeight()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldNotReturnExpiredDecision() throws Exception {
+        // Given
+        PolicyDecisionCache.Key key = key("http://a/", "token1");
+        cache.load(key, null, null, -1, true, fetcher(1, new AtomicInteger()));
+
+        // When
+        PolicyDecisionCache.Entry entry = cache.get(key);
+
+        // Then
+        assertThat(entry).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.getWeight()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldEvictOldestDecisionsWhenOverWeight() throws Exception {
+        // Given
+        cache.setMaxWeight(10);
+        AtomicInteger fetches = new AtomicInteger();
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            cache.load(key("http://a/" + i, "token1"), null, null, TTL, true, fetcher(2, fetches));
+        }
+
+        // Then
+        assertThat(cache.getWeight()).isLessThanOrEqualTo(10);
+        assertThat(cache.get(key("http://a/0", "token1"))).isNull();
+        assertThat(cache.get(key("http://a/1", "token1"))).isNull();
+        assertThat(cache.get(key("http://a/4", "token1"))).isNotNull();
+    }
+
+    @Test
+    public void shouldRemoveOnlyDecisionsForToken() throws Exception {
+        // Given
+        AtomicInteger fetches = new AtomicInteger();
+        cache.load(key("http://a/", "token1"), null, null, TTL, true, fetcher(1, fetches));
+        cache.load(key("http://b/", "token1"), null, null, TTL, true, fetcher(1, fetches));
+        cache.load(key("http://a/", "token2"), null, null, TTL, true, fetcher(1, fetches));
+
+        // When
+        cache.removeToken("token1");
+
+        // Then
+        assertThat(cache.get(key("http://a/", "token1"))).isNull();
+        assertThat(cache.get(key("http://b/", "token1"))).isNull();
+        assertThat(cache.get(key("http://a/", "token2"))).isNotNull();
+        assertThat(cache.getWeight()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRemoveOnlyDecisionsForResource() throws Exception {
+        // Given
+        AtomicInteger fetches = new AtomicInteger();
+        cache.load(key("http://a/", "token1"), null, null, TTL, true, fetcher(1, fetches));
+        cache.load(key("http://a/", "token2"), null, null, TTL, true, fetcher(1, fetches));
+        cache.load(key("http://b/", "token1"), null, null, TTL, true, fetcher(1, fetches));
+
+        // When
+        cache.removeResource(SERVICE, "http://a/");
+
+        // Then
+        assertThat(cache.get(key("http://a/", "token1"))).isNull();
+        assertThat(cache.get(key("http://a/", "token2"))).isNull();
+        assertThat(cache.get(key("http://b/", "token1"))).isNotNull();
+        assertThat(cache.getResourceNames(SERVICE)).containsOnly("http://b/");
+    }
+
+    @Test
+    public void shouldDropIndexesAndQueuedDecisionsOnceInvalidated() throws Exception {
+        // Given
+        cache.setMaxWeight(1000);
+        AtomicInteger fetches = new AtomicInteger();
+        for (int i = 0; i < 100; i++) {
+            cache.load(key("http://r" + i + "/", "token" + i), null, null, TTL, true, fetcher(1, fetches));
+        }
+
+        // When
+        for (int i = 0; i < 50; i++) {
+            cache.removeToken("token" + i);
+        }
+        for (int i = 50; i < 100; i++) {
+            cache.removeResource(SERVICE, "http://r" + i + "/");
+        }
+
+        // Then
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.getIndexedTokenCount()).isEqualTo(0);
+        assertThat(cache.getResourceNames(SERVICE)).isEmpty();
+        assertThat(cache.getInsertionOrderLength()).isLessThanOrEqualTo(16);
+    }
+
+    @Test
+    public void shouldNotQueueReplacedDecisionsIndefinitely() throws Exception {
+        // Given
+        cache.setMaxWeight(1000);
+        AtomicInteger fetches = new AtomicInteger();
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            cache.load(key("http://a/", "token1"), null, null, TTL, true, fetcher(1, fetches));
+        }
+
+        // Then
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getInsertionOrderLength()).isLessThanOrEqualTo(2 + 16);
+    }
+
+    @Test
+    public void shouldCoalesceConcurrentLoadsOfSameDecision() throws Exception {
+        // Given
+        final PolicyDecisionCache.Key key = key("http://a/", "token1");
+        final CountDownLatch fetching = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger fetches = new AtomicInteger();
+        final PolicyDecisionCache.Fetcher slowFetcher = new PolicyDecisionCache.Fetcher() {
+            @Override
+            public Set fetch() throws PolicyException, SSOException {
+                fetches.incrementAndGet();
+                fetching.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new PolicyException(e.getMessage());
+                }
+                return Collections.singleton(new ResourceResult());
+            }
+        };
+        final PolicyDecisionCache.Entry[] loaded = new PolicyDecisionCache.Entry[4];
+        Thread[] threads = new Thread[loaded.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        loaded[index] = cache.load(key, null, null, TTL, true, slowFetcher);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+        }
+
+        // When
+        threads[0].start();
+        assertThat(fetching.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 1; i < threads.length; i++) {
+            threads[i].start();
+        }
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Then
+        assertThat(fetches.get()).isEqualTo(1);
+        for (PolicyDecisionCache.Entry entry : loaded) {
+            assertThat(entry).isSameAs(loaded[0]);
+        }
+    }
+
+    @Test
+    public void shouldNotCacheDecisionInvalidatedWhileLoading() throws Exception {
+        // Given
+        final PolicyDecisionCache.Key key = key("http://a/", "token1");
+
+        // When
+        PolicyDecisionCache.Entry loaded = cache.load(key, null, null, TTL, true,
+                new PolicyDecisionCache.Fetcher() {
+                    @Override
+                    public Set fetch() {
+                        cache.removeToken("token1");
+                        return Collections.singleton(new ResourceResult());
+                    }
+                });
+
+        // Then
+        assertThat(loaded).isNotNull();
+        assertThat(cache.get(key)).isNull();
+    }
+
+    @Test(expectedExceptions = PolicyException.class)
+    public void shouldPropagateFetchFailure() throws Exception {
+        cache.load(key("http://a/", "token1"), null, null, TTL, true, new PolicyDecisionCache.Fetcher() {
+            @Override
+            public Set fetch() throws PolicyException {
+                throw new PolicyException("failed");
+            }
+        });
+    }
+
+    private static PolicyDecisionCache.Key key(String resourceName, String tokenID) {
+        return new PolicyDecisionCache.Key(SERVICE, resourceName, tokenID, ResourceResult.SELF_SCOPE);
+    }
+
+    private static PolicyDecisionCache.Fetcher fetcher(final int results, final AtomicInteger fetches) {
+        return new PolicyDecisionCache.Fetcher() {
+            @Override
+            public Set fetch() {
+                fetches.incrementAndGet();
+                Set<ResourceResult> resourceResults = new HashSet<ResourceResult>();
+                for (int i = 0; i < results; i++) {
+                    resourceResults.add(new ResourceResult());
+                }
+                return resourceResults;
+            }
+        };
+    }
+}
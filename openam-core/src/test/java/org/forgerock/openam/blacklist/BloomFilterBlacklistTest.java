@@ -22,8 +22,10 @@ import static org.mockito.BDDMockito.willDoNothing;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 
+import java.util.concurrent.TimeUnit;
+
 import com.iplanet.dpro.session.Session;
-import org.forgerock.bloomfilter.BloomFilter;
+import org.forgerock.util.time.TimeService;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -37,7 +39,7 @@ public class BloomFilterBlacklistTest {
     private Blacklist<Blacklistable> mockDelegate;
 
     @Mock
-    private BloomFilter<BloomFilterBlacklist.BlacklistEntry> mockBloomFilter;
+    private TimePartitionedBloomFilter mockBloomFilter;
 
     @Mock
     private Session mockSession;
@@ -70,7 +72,7 @@ public class BloomFilterBlacklistTest {
         listener.onBlacklisted(id, expiryTime);
 
         // Then
-        verify(mockBloomFilter).add(new BloomFilterBlacklist.BlacklistEntry(id, expiryTime));
+        verify(mockBloomFilter).add(id, expiryTime + PURGE_DELAY);
     }
 
     @Test
@@ -86,8 +88,7 @@ public class BloomFilterBlacklistTest {
         long expiryTime = 1234l;
         given(mockSession.getStableStorageID()).willReturn(id);
         given(mockSession.getBlacklistExpiryTime()).willReturn(expiryTime);
-        given(mockBloomFilter.mightContain(new BloomFilterBlacklist.BlacklistEntry(id, expiryTime)))
-                .willReturn(false);
+        given(mockBloomFilter.mightContain(id)).willReturn(false);
 
         // When
         boolean result = testBlacklist.isBlacklisted(mockSession);
@@ -104,8 +105,7 @@ public class BloomFilterBlacklistTest {
         long expiryTime = 1234L;
         given(mockSession.getStableStorageID()).willReturn(id);
         given(mockSession.getBlacklistExpiryTime()).willReturn(expiryTime);
-        given(mockBloomFilter.mightContain(new BloomFilterBlacklist.BlacklistEntry(id, expiryTime + PURGE_DELAY)))
-                .willReturn(true);
+        given(mockBloomFilter.mightContain(id)).willReturn(true);
         given(mockDelegate.isBlacklisted(mockSession)).willReturn(true);
 
         // When
@@ -116,6 +116,66 @@ public class BloomFilterBlacklistTest {
         verify(mockDelegate).isBlacklisted(mockSession);
     }
 
+    @Test
+    public void shouldStillBlacklistSessionWhoseTimeLeftHasChanged() throws Exception {
+        // Given
+        ArgumentCaptor<Blacklist.Listener> listenerArgumentCaptor
+                = ArgumentCaptor.forClass(Blacklist.Listener.class);
+        willDoNothing().given(mockDelegate).subscribe(listenerArgumentCaptor.capture());
+        long now = TimeUnit.HOURS.toMillis(1000);
+        TimeService clock = mock(TimeService.class);
+        given(clock.now()).willReturn(now);
+        testBlacklist = new BloomFilterBlacklist<>(mockDelegate, PURGE_DELAY,
+                new TimePartitionedBloomFilter(TimeUnit.MINUTES.toMillis(5), 100, 0.001d, 2, 0.6d, clock));
+        given(mockSession.getStableStorageID()).willReturn("testSession");
+        given(mockSession.getBlacklistExpiryTime()).willReturn(now + TimeUnit.MINUTES.toMillis(10));
+        given(mockDelegate.isBlacklisted(mockSession)).willReturn(true);
+        listenerArgumentCaptor.getValue().onBlacklisted("testSession", mockSession.getBlacklistExpiryTime());
+
+        // When
+        given(mockSession.getBlacklistExpiryTime()).willReturn(now + TimeUnit.MINUTES.toMillis(120));
+        boolean result = testBlacklist.isBlacklisted(mockSession);
+
+        // Then
+        assertThat(result).isTrue();
+    }
+
+    @Test
+    public void shouldReportFalsePositiveRateAndMemoryOfEveryGeneration() throws Exception {
+        // Given
+        ArgumentCaptor<Blacklist.Listener> listenerArgumentCaptor
+                = ArgumentCaptor.forClass(Blacklist.Listener.class);
+        willDoNothing().given(mockDelegate).subscribe(listenerArgumentCaptor.capture());
+        long partition = TimeUnit.MINUTES.toMillis(5);
+        long now = TimeUnit.HOURS.toMillis(1000);
+        TimeService clock = mock(TimeService.class);
+        given(clock.now()).willReturn(now);
+        testBlacklist = new BloomFilterBlacklist<>(mockDelegate, PURGE_DELAY,
+                new TimePartitionedBloomFilter(partition, 100, 0.001d, 2, 0.6d, clock));
+        Blacklist.Listener listener = listenerArgumentCaptor.getValue();
+        listener.onBlacklisted("badger", now + partition);
+        listener.onBlacklisted("ferret", now + 3 * partition);
+        long memory = testBlacklist.getMemoryUsage();
+        double expected = testBlacklist.getExpectedFalsePositiveProbability();
+
+        // When
+        Session miss = mock(Session.class);
+        given(miss.getStableStorageID()).willReturn("weasel");
+        testBlacklist.isBlacklisted(miss);
+        given(mockSession.getStableStorageID()).willReturn("badger");
+        given(mockDelegate.isBlacklisted(mockSession)).willReturn(false);
+        testBlacklist.isBlacklisted(mockSession);
+        given(clock.now()).willReturn(now + 2 * partition);
+
+        // Then
+        assertThat(testBlacklist.getObservedFalsePositiveRate()).isEqualTo(0.5d);
+        assertThat(memory).isGreaterThan(0L);
+        assertThat(expected).isGreaterThan(0d);
+        assertThat(testBlacklist.getEntryCount()).isEqualTo(1L);
+        assertThat(testBlacklist.getMemoryUsage()).isEqualTo(memory / 2);
+        assertThat(testBlacklist.getExpectedFalsePositiveProbability()).isLessThan(expected);
+    }
+
     @Test
     public void shouldDelegateSubscriptions() {
         // Given
@@ -0,0 +1,124 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.blacklist;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import org.forgerock.util.time.TimeService;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TimePartitionedBloomFilterTest {
+    private static final long PARTITION = 60000L;
+    private static final long NOW = 100 * PARTITION;
+
+    private TimeService mockClock;
+    private TimePartitionedBloomFilter testFilter;
+
+    @BeforeMethod
+    public void setup() {
+        mockClock = mock(TimeService.class);
+        given(mockClock.now()).willReturn(NOW);
+        testFilter = new TimePartitionedBloomFilter(PARTITION, 100, 0.01d, 2, 0.6d, mockClock);
+    }
+
+    @Test
+    public void shouldContainAddedEntries() {
+        // Given
+        for (int i = 0; i < 1000; i++) {
+            testFilter.add("entry" + i, NOW + i * 1000L);
+        }
+
+        // When / Then
+        for (int i = 0; i < 1000; i++) {
+            assertThat(testFilter.mightContain("entry" + i)).isTrue();
+        }
+    }
+
+    @Test
+    public void shouldFindEntriesInAnyGeneration() {
+        // Given
+        testFilter.add("badger", NOW + PARTITION);
+        testFilter.add("ferret", NOW + 5 * PARTITION);
+
+        // When / Then
+        assertThat(testFilter.mightContain("badger")).isTrue();
+        assertThat(testFilter.mightContain("ferret")).isTrue();
+        assertThat(testFilter.mightContain("weasel")).isFalse();
+    }
+
+    @Test
+    public void shouldKeepFalsePositiveRateNearConfiguredProbabilityAsItGrows() {
+        // Given
+        for (int i = 0; i < 1000; i++) {
+            testFilter.add("entry" + i, NOW + PARTITION);
+        }
+
+        // When
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (testFilter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // Then
+        assertThat(falsePositives).isLessThan(300);
+        assertThat(testFilter.getExpectedFalsePositiveProbability()).isLessThan(0.03d);
+        assertThat(testFilter.getEntryCount()).isGreaterThan(950L).isLessThanOrEqualTo(1000L);
+    }
+
+    @Test
+    public void shouldNotCountDuplicateEntries() {
+        // Given
+        for (int i = 0; i < 5; i++) {
+            testFilter.add("badger", NOW + PARTITION);
+        }
+
+        // When / Then
+        assertThat(testFilter.getEntryCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void shouldDiscardGenerationsOnceAllTheirEntriesHaveExpired() {
+        // Given
+        testFilter.add("badger", NOW + PARTITION);
+        testFilter.add("ferret", NOW + 3 * PARTITION);
+        long memory = testFilter.getMemoryUsage();
+
+        // When
+        given(mockClock.now()).willReturn(NOW + 2 * PARTITION);
+
+        // Then
+        assertThat(testFilter.getMemoryUsage()).isEqualTo(memory / 2);
+        assertThat(testFilter.mightContain("badger")).isFalse();
+        assertThat(testFilter.mightContain("ferret")).isTrue();
+        assertThat(testFilter.getGenerationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldIgnoreExpiredEntries() {
+        // Given
+        testFilter.add("badger", NOW - 1);
+
+        // When / Then
+        assertThat(testFilter.getGenerationCount()).isEqualTo(0);
+        assertThat(testFilter.mightContain("badger")).isFalse();
+    }
+}
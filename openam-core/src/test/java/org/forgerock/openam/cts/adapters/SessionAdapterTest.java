@@ -27,6 +27,7 @@ import org.forgerock.openam.cts.api.fields.SessionTokenField;
 import org.forgerock.openam.cts.api.tokens.Token;
 import org.forgerock.openam.cts.api.tokens.TokenIdFactory;
 import org.forgerock.openam.cts.exceptions.CoreTokenException;
+import org.forgerock.openam.cts.utils.BinarySerialisation;
 import org.forgerock.openam.cts.utils.JSONSerialisation;
 import org.forgerock.openam.cts.utils.blob.TokenBlobUtils;
 import org.forgerock.openam.utils.TimeUtils;
@@ -48,6 +49,7 @@ public class SessionAdapterTest {
     private TokenIdFactory tokenIdFactory;
     private CoreTokenConfig coreTokenConfig;
     private JSONSerialisation jsonSerialisation;
+    private BinarySerialisation binarySerialisation;
     private TokenBlobUtils blobUtils;
 
     @BeforeMethod
@@ -55,8 +57,10 @@ public class SessionAdapterTest {
         tokenIdFactory = mock(TokenIdFactory.class);
         coreTokenConfig = mock(CoreTokenConfig.class);
         jsonSerialisation = mock(JSONSerialisation.class);
+        binarySerialisation = mock(BinarySerialisation.class);
         blobUtils = new TokenBlobUtils();
-        adapter = new SessionAdapter(tokenIdFactory, coreTokenConfig, jsonSerialisation, blobUtils);
+        adapter = new SessionAdapter(tokenIdFactory, coreTokenConfig, jsonSerialisation, binarySerialisation,
+                blobUtils);
     }
 
     @Test
@@ -93,7 +97,7 @@ public class SessionAdapterTest {
         adapter = new SessionAdapter(
                 tokenIdFactory,
                 coreTokenConfig ,
-                jsonSerialisation, blobUtils);
+                jsonSerialisation, binarySerialisation, blobUtils);
 
         Token token = new Token(sessionId, TokenType.SESSION);
         token.setUserId(userId);
@@ -121,15 +125,8 @@ public class SessionAdapterTest {
         token.setBlob("{\"clientDomain\":null,\"creationTime\":1376307674,\"isISStored\":true,\"maxCachingTime\":3}".getBytes());
 
         // need a real JSONSerialisation for this test
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.setVisibilityChecker(mapper.getSerializationConfig().getDefaultVisibilityChecker()
-                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
-                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
-                .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE)
-                .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
-                .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
-        JSONSerialisation serialisation = new JSONSerialisation(mapper);
-        adapter = new SessionAdapter(tokenIdFactory, coreTokenConfig, serialisation, blobUtils);
+        JSONSerialisation serialisation = new JSONSerialisation(fieldMapper());
+        adapter = new SessionAdapter(tokenIdFactory, coreTokenConfig, serialisation, binarySerialisation, blobUtils);
 
         // When
         InternalSession session = adapter.fromToken(token);
@@ -142,6 +139,59 @@ public class SessionAdapterTest {
 
     }
 
+    @Test
+    public void shouldRestoreLatestAccessTimeFromAttributeOfBinaryBlob() throws Exception {
+        // Given
+        String latestAccessTime = "12345";
+        ObjectMapper mapper = fieldMapper();
+        BinarySerialisation serialisation = new BinarySerialisation(mapper);
+
+        Token token = new Token("badger", TokenType.SESSION);
+        token.setAttribute(SessionTokenField.LATEST_ACCESS_TIME.getField(), latestAccessTime);
+
+        // blob contents are missing the latestAccessTime value
+        token.setBlob(serialisation.encode(mapper.readTree(
+                "{\"clientDomain\":null,\"creationTime\":1376307674,\"isISStored\":true,\"maxCachingTime\":3}")));
+
+        adapter = new SessionAdapter(tokenIdFactory, coreTokenConfig, jsonSerialisation, serialisation, blobUtils);
+
+        // When
+        InternalSession session = adapter.fromToken(token);
+
+        // Then
+        // if latestAccessTime was zero, this would fail
+        long epochedSeconds = currentTimeMillis() / 1000;
+        assertTrue(session.getIdleTime() < epochedSeconds);
+        verifyZeroInteractions(jsonSerialisation);
+    }
+
+    @Test
+    public void shouldMoveLatestAccessTimeFromBinaryBlobToAttribute() throws Exception {
+        // Given
+        ObjectMapper mapper = fieldMapper();
+        BinarySerialisation serialisation = spy(new BinarySerialisation(mapper));
+        InternalSession mockSession = mock(InternalSession.class);
+        SessionID mockSessionID = mock(SessionID.class);
+
+        given(mockSessionID.toString()).willReturn("badger");
+        given(mockSession.getID()).willReturn(mockSessionID);
+        given(tokenIdFactory.toSessionTokenId(eq(mockSession))).willReturn("badger");
+        given(coreTokenConfig.isSessionBinarySerialised()).willReturn(true);
+        doReturn(mapper.readTree("{\"creationTime\":1376307674,\"latestAccessTime\":1376308558}"))
+                .when(serialisation).toTree(mockSession);
+
+        adapter = new SessionAdapter(tokenIdFactory, coreTokenConfig, jsonSerialisation, serialisation, blobUtils);
+
+        // When
+        Token token = adapter.toToken(mockSession);
+
+        // Then
+        assertThat(BinarySerialisation.isBinary(token.getBlob())).isTrue();
+        assertEquals(token.<String>getValue(SessionTokenField.LATEST_ACCESS_TIME.getField()), "1376308558");
+        assertEquals(serialisation.decode(token.getBlob()), mapper.readTree("{\"creationTime\":1376307674}"));
+        verifyZeroInteractions(jsonSerialisation);
+    }
+
     @Test
     public void shouldAssignAttributeFromSessionLatestAccessTime() {
         // Given
@@ -280,4 +330,15 @@ public class SessionAdapterTest {
     public void shouldIndicateNoValidFieldsInJSON() {
         assertEquals(-1, adapter.findIndexOfValidField(""));
     }
+
+    private static ObjectMapper fieldMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setVisibilityChecker(mapper.getSerializationConfig().getDefaultVisibilityChecker()
+                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
+                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
+        return mapper;
+    }
 }
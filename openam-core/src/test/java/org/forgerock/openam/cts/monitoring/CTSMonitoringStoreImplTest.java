@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.cts.monitoring;
@@ -23,6 +23,7 @@ import org.forgerock.openam.cts.api.tokens.Token;
 import org.forgerock.openam.cts.monitoring.impl.CTSMonitoringStoreImpl;
 import org.forgerock.openam.cts.monitoring.impl.connections.ConnectionStore;
 import org.forgerock.openam.cts.monitoring.impl.operations.TokenOperationsStore;
+import org.forgerock.openam.cts.monitoring.impl.queue.TaskQueueStore;
 import org.forgerock.openam.cts.monitoring.impl.reaper.ReaperMonitor;
 import org.mockito.Matchers;
 import org.mockito.invocation.InvocationOnMock;
@@ -46,6 +47,7 @@ public class CTSMonitoringStoreImplTest {
     private TokenOperationsStore tokenOperationsStore;
     private ReaperMonitor reaperMonitor;
     private ConnectionStore connectionStore;
+    private TaskQueueStore taskQueueStore;
 
     @BeforeMethod
     public void setUp() {
@@ -55,12 +57,14 @@ public class CTSMonitoringStoreImplTest {
         final Debug debug = mock(Debug.class);
         reaperMonitor = mock(ReaperMonitor.class);
         connectionStore = mock(ConnectionStore.class);
+        taskQueueStore = mock(TaskQueueStore.class);
 
         ctsOperationsMonitoringStore = new CTSMonitoringStoreImpl(
                 executorService,
                 tokenOperationsStore,
                 reaperMonitor,
                 connectionStore,
+                taskQueueStore,
                 debug);
         ctsReaperMonitoringStore = (CTSReaperMonitoringStore) ctsOperationsMonitoringStore;
 
@@ -0,0 +1,89 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.cts.monitoring.impl.queue;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TaskQueueStoreTest {
+
+    private TaskQueueStore store;
+
+    @BeforeMethod
+    public void setUp() {
+        store = new TaskQueueStore();
+    }
+
+    @Test
+    public void shouldReportNothingBeforeAnyTaskIsRecorded() {
+        //Given
+
+        //When
+        long waitTime = store.getWaitTimeAtPercentile(99);
+
+        //Then
+        assertThat(waitTime).isEqualTo(0);
+        assertThat(store.getTaskCount()).isEqualTo(0);
+        assertThat(store.getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldSumLatestDepthOfEachQueue() {
+        //Given
+        store.addTask(0, 5, 10, 10);
+        store.addTask(0, 2, 10, 10);
+
+        //When
+        store.addTask(1, 3, 10, 10);
+
+        //Then
+        assertThat(store.getQueueDepth()).isEqualTo(5);
+        assertThat(store.getTaskCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldReportPercentilesAcrossAllQueues() {
+        //Given
+        for (int i = 0; i < 99; i++) {
+            store.addTask(0, 0, 100, 1000);
+        }
+
+        //When
+        store.addTask(1, 0, 50000, 200000);
+
+        //Then
+        assertThat(store.getWaitTimeAtPercentile(50)).isEqualTo(100);
+        assertThat(store.getServiceTimeAtPercentile(50)).isBetween(990L, 1010L);
+        assertThat(store.getWaitTimeAtPercentile(100)).isBetween(49500L, 50500L);
+        assertThat(store.getServiceTimeAtPercentile(100)).isBetween(198000L, 202000L);
+    }
+
+    @Test
+    public void shouldCountCoalescedTasksOfAllQueues() {
+        //Given
+        store.addCoalescedTask(0);
+        store.addCoalescedTask(0);
+
+        //When
+        store.addCoalescedTask(2);
+
+        //Then
+        assertThat(store.getCoalescedTaskCount()).isEqualTo(3);
+    }
+}
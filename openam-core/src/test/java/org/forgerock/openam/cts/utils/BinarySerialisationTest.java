@@ -0,0 +1,176 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.cts.utils;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class BinarySerialisationTest {
+
+    private static final String SESSION_JSON = "{\"clientDomain\":\"dc=openam,dc=forgerock,dc=org\","
+            + "\"clientID\":\"id=amadmin,ou=user,dc=openam,dc=forgerock,dc=org\",\"cookieStr\":null,"
+            + "\"creationTime\":1375353841,\"isISStored\":true,\"latestAccessTime\":1375353841,"
+            + "\"maxCachingTime\":3,\"maxIdleTime\":30,\"maxSessionTime\":120,\"reschedulePossible\":false,"
+            + "\"restrictedTokensBySid\":{},\"sessionEventURLs\":{},\"sessionID\":{\"comingFromAuth\":false,"
+            + "\"cookieMode\":null,\"encryptedString\":\"AQIC5wM2LY4SfcxjU9TuISV5pcZVBhh8fA2kRtHPX065uzE.*AAJTSQ"
+            + "ACMDIAAlNLABM4NjE3NjM5MTc2NTIyMzc3Mzg1AAJTMQACMDE.*\",\"sessionServer\":\"openam.example.com\","
+            + "\"sessionServerID\":\"01\",\"sessionServerPort\":\"8080\",\"sessionServerProtocol\":\"http\","
+            + "\"sessionServerURI\":\"/openam\"},\"sessionProperties\":{\"CharSet\":\"UTF-8\",\"UserId\":"
+            + "\"amadmin\",\"AuthLevel\":\"0\",\"UserToken\":\"amadmin\",\"Principals\":\"amadmin\","
+            + "\"sun.am.UniversalIdentifier\":\"id=amadmin,ou=user,dc=openam,dc=forgerock,dc=org\","
+            + "\"Organization\":\"dc=openam,dc=forgerock,dc=org\",\"Locale\":\"en_US\",\"AuthType\":"
+            + "\"DataStore\",\"Principal\":\"id=amadmin,ou=user,dc=openam,dc=forgerock,dc=org\"},"
+            + "\"sessionState\":1,\"sessionType\":0,\"timedOutAt\":0,\"willExpireFlag\":true}";
+
+    private ObjectMapper mapper;
+    private BinarySerialisation serialisation;
+
+    @BeforeMethod
+    public void setup() {
+        mapper = new ObjectMapper();
+        serialisation = new BinarySerialisation(mapper);
+    }
+
+    @Test
+    public void shouldRoundTripSessionJson() throws Exception {
+        // Given
+        JsonNode tree = mapper.readTree(SESSION_JSON);
+        // When
+        JsonNode result = serialisation.decode(serialisation.encode(tree));
+        // Then
+        assertThat(result).isEqualTo(tree);
+    }
+
+    @Test
+    public void shouldBeSmallerThanJson() throws Exception {
+        // Given
+        JsonNode tree = mapper.readTree(SESSION_JSON);
+        // When
+        byte[] result = serialisation.encode(tree);
+        // Then
+        assertThat(result.length).isLessThan(SESSION_JSON.getBytes("UTF-8").length / 2);
+    }
+
+    @Test
+    public void shouldRoundTripScalars() {
+        // Given
+        JsonNodeFactory factory = JsonNodeFactory.instance;
+        ObjectNode tree = factory.objectNode();
+        tree.put("int", -7);
+        tree.put("long", Long.MIN_VALUE);
+        tree.put("double", 3.25d);
+        tree.set("bigInteger", factory.numberNode(new BigInteger("123456789012345678901234567890")));
+        tree.put("bigDecimal", new BigDecimal("1.50"));
+        tree.put("binary", new byte[] {1, 2, 3});
+        tree.put("text", "\u00e9t\u00e9 \u2603");
+        tree.put("empty", "");
+        tree.putNull("null");
+        tree.put("true", true);
+        tree.put("false", false);
+        tree.putArray("array").add(1).add("two").addNull();
+        // When
+        JsonNode result = serialisation.decode(serialisation.encode(tree));
+        // Then
+        assertThat(result).isEqualTo(tree);
+    }
+
+    @Test
+    public void shouldRoundTripRepeatedNamesAndStrings() {
+        // Given
+        JsonNodeFactory factory = JsonNodeFactory.instance;
+        ObjectNode tree = factory.objectNode();
+        for (int i = 0; i < 3; i++) {
+            ObjectNode child = tree.putObject("badger" + i);
+            child.put("ferret", "weasel");
+            child.put("stoat", "weasel");
+        }
+        // When
+        byte[] encoded = serialisation.encode(tree);
+        JsonNode result = serialisation.decode(encoded);
+        // Then
+        assertThat(result).isEqualTo(tree);
+        assertThat(occurrences(encoded, "ferret")).isEqualTo(1);
+        assertThat(occurrences(encoded, "weasel")).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldSerialiseAndDeserialiseObjects() {
+        // Given
+        Map<String, Object> test = new HashMap<String, Object>();
+        test.put("badger", 1234);
+        test.put("ferret", Arrays.asList("weasel", "stoat"));
+        // When
+        Map<?, ?> result = serialisation.deserialise(serialisation.serialise(test), Map.class);
+        // Then
+        assertThat(result).isEqualTo(test);
+    }
+
+    @Test
+    public void shouldIdentifyBinaryBlobs() throws Exception {
+        // Given
+        byte[] binary = serialisation.encode(mapper.readTree(SESSION_JSON));
+        // When / Then
+        assertThat(BinarySerialisation.isBinary(binary)).isTrue();
+        assertThat(BinarySerialisation.isBinary(SESSION_JSON.getBytes("UTF-8"))).isFalse();
+        assertThat(BinarySerialisation.isBinary(null)).isFalse();
+        assertThat(BinarySerialisation.isBinary(new byte[0])).isFalse();
+    }
+
+    @Test (expectedExceptions = IllegalStateException.class)
+    public void shouldRejectJsonBlob() throws Exception {
+        serialisation.decode(SESSION_JSON.getBytes("UTF-8"));
+    }
+
+    @Test (expectedExceptions = IllegalStateException.class)
+    public void shouldRejectUnknownVersion() throws Exception {
+        // Given
+        byte[] blob = serialisation.encode(mapper.readTree(SESSION_JSON));
+        blob[1] = BinarySerialisation.VERSION + 1;
+        // When
+        serialisation.decode(blob);
+    }
+
+    @Test (expectedExceptions = IllegalStateException.class)
+    public void shouldRejectTruncatedBlob() throws Exception {
+        // Given
+        byte[] blob = serialisation.encode(mapper.readTree(SESSION_JSON));
+        // When
+        serialisation.decode(Arrays.copyOf(blob, blob.length / 2));
+    }
+
+    private static int occurrences(byte[] data, String text) {
+        String contents = new String(data, StandardCharsets.ISO_8859_1);
+        int count = 0;
+        for (int index = contents.indexOf(text); index != -1; index = contents.indexOf(text, index + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
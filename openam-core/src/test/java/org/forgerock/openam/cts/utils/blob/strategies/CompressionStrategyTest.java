@@ -18,10 +18,12 @@ package org.forgerock.openam.cts.utils.blob.strategies;
 import org.HdrHistogram.AbstractHistogram;
 import org.HdrHistogram.AtomicHistogram;
 import org.forgerock.openam.cts.utils.blob.TokenStrategyFailedException;
+import org.forgerock.openam.cts.utils.blob.strategies.compression.CompressionCodecs;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.nio.charset.Charset;
 import java.util.Collection;
@@ -32,6 +34,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.forgerock.openam.utils.Time.*;
@@ -98,6 +101,99 @@ public class CompressionStrategyTest {
         assertThat(compression.reverse(compression.perform(data))).isEqualTo(data);
     }
 
+    @DataProvider
+    public Object[][] codecs() {
+        return new Object[][]{
+                { CompressionCodecs.GZIP },
+                { CompressionCodecs.DEFLATE },
+                { CompressionCodecs.SESSION_DICTIONARY },
+                { CompressionCodecs.NONE }
+        };
+    }
+
+    @Test(dataProvider = "codecs")
+    public void shouldDecompressContentsCompressedWithCodec(String codec) throws TokenStrategyFailedException {
+        // Given
+        CompressionStrategy strategy = new CompressionStrategy(CompressionCodecs.getCodec(codec));
+
+        // When
+        byte[] result = strategy.reverse(strategy.perform(data));
+
+        // Then
+        assertThat(result).isEqualTo(data);
+    }
+
+    @Test(dataProvider = "codecs")
+    public void shouldDecompressContentsCompressedWithOtherCodec(String codec) throws TokenStrategyFailedException {
+        // Given
+        CompressionStrategy strategy = new CompressionStrategy(CompressionCodecs.getCodec(codec));
+        byte[] blob = new CompressionStrategy(CompressionCodecs.getCodec(CompressionCodecs.DEFLATE)).perform(data);
+
+        // When
+        byte[] result = strategy.reverse(blob);
+
+        // Then
+        assertThat(result).isEqualTo(data);
+    }
+
+    @Test(dataProvider = "codecs")
+    public void shouldDecompressLargeContents(String codec) throws TokenStrategyFailedException {
+        // Given
+        CompressionStrategy strategy = new CompressionStrategy(CompressionCodecs.getCodec(codec));
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            builder.append(JSON_SAMPLE).append(i);
+        }
+        byte[] large = builder.toString().getBytes(Charset.forName("UTF-8"));
+
+        // When
+        byte[] result = strategy.reverse(strategy.perform(large));
+
+        // Then
+        assertThat(result).isEqualTo(large);
+    }
+
+    @Test
+    public void shouldDecompressGzipContentsWrittenByEarlierVersions() throws Exception {
+        // Given
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bout);
+        out.write(data);
+        out.close();
+
+        // When
+        byte[] result = compression.reverse(bout.toByteArray());
+
+        // Then
+        assertThat(result).isEqualTo(data);
+    }
+
+    @Test
+    public void shouldCompressSessionsSmallerWithDictionary() throws TokenStrategyFailedException {
+        // Given
+        CompressionStrategy deflate = new CompressionStrategy(CompressionCodecs.getCodec(CompressionCodecs.DEFLATE));
+        CompressionStrategy dictionary =
+                new CompressionStrategy(CompressionCodecs.getCodec(CompressionCodecs.SESSION_DICTIONARY));
+
+        // When / Then
+        assertThat(dictionary.perform(data).length).isLessThan(deflate.perform(data).length);
+    }
+
+    @Test(expectedExceptions = TokenStrategyFailedException.class)
+    public void shouldRejectBlobOfUnknownCodec() throws TokenStrategyFailedException {
+        compression.reverse(new byte[]{ 0x7f, 1, 2, 3 });
+    }
+
+    @Test(expectedExceptions = TokenStrategyFailedException.class)
+    public void shouldRejectCorruptGzipBlob() throws TokenStrategyFailedException {
+        // Given
+        byte[] blob = compression.perform(data);
+        blob[blob.length - 5]++;
+
+        // When
+        compression.reverse(blob);
+    }
+
     @DataProvider
     public Object[][] numThreads() {
         return new Object[][]{
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.sm.datalayer.impl;
@@ -19,6 +19,8 @@ package org.forgerock.openam.sm.datalayer.impl;
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.BDDMockito.*;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -26,11 +28,15 @@ import static org.mockito.Mockito.verify;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 
+import org.forgerock.openam.cts.api.tokens.Token;
 import org.forgerock.openam.cts.impl.queue.config.CTSQueueConfiguration;
+import org.forgerock.openam.cts.monitoring.CTSOperationsMonitoringStore;
 import org.forgerock.openam.shared.concurrency.ThreadMonitor;
 import org.forgerock.openam.sm.datalayer.api.DataLayerException;
 import org.forgerock.openam.sm.datalayer.api.Task;
+import org.forgerock.openam.sm.datalayer.api.ResultHandler;
 import org.forgerock.openam.sm.datalayer.impl.tasks.CreateTask;
+import org.forgerock.openam.sm.datalayer.impl.tasks.UpdateTask;
 import org.mockito.ArgumentCaptor;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -44,6 +50,7 @@ public class SeriesTaskExecutorTest {
     private SeriesTaskExecutorThreadFactory processorFactory;
     private ThreadMonitor monitor;
     private CTSQueueConfiguration configuration;
+    private CTSOperationsMonitoringStore monitoringStore;
 
     @BeforeMethod
     public void setup() throws Exception {
@@ -53,7 +60,10 @@ public class SeriesTaskExecutorTest {
         configuration = mock(CTSQueueConfiguration.class);
         given(configuration.getQueueSize()).willReturn(10);
 
-        executor = new SeriesTaskExecutor(executorService, processorFactory, monitor, configuration, mock(Debug.class));
+        monitoringStore = mock(CTSOperationsMonitoringStore.class);
+
+        executor = new SeriesTaskExecutor(executorService, processorFactory, monitor, configuration,
+                monitoringStore, mock(Debug.class));
     }
 
     @Test
@@ -119,4 +129,88 @@ public class SeriesTaskExecutorTest {
         // Then
         assertThat(result).isNotNull();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldPlaceQueryOnShorterQueue() throws Exception {
+        // Given
+        ArgumentCaptor<BlockingQueue> captor = ArgumentCaptor.forClass(BlockingQueue.class);
+        given(processorFactory.create(captor.capture())).willReturn(mock(SeriesTaskExecutorThread.class));
+        given(configuration.getProcessors()).willReturn(2);
+        given(configuration.getQueueTimeout()).willReturn(0);
+
+        executor.start();
+        BlockingQueue first = captor.getAllValues().get(0);
+        BlockingQueue second = captor.getAllValues().get(1);
+        for (int i = 0; i < 5; i++) {
+            first.offer(mock(Task.class));
+        }
+
+        // When
+        for (int i = 0; i < 4; i++) {
+            executor.execute(null, mock(Task.class));
+        }
+
+        // Then
+        assertThat(first.size()).isEqualTo(5);
+        assertThat(second.size()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldResizeQueuesWhenConfigurationChanges() throws Exception {
+        // Given
+        ArgumentCaptor<BlockingQueue> captor = ArgumentCaptor.forClass(BlockingQueue.class);
+        given(processorFactory.create(captor.capture())).willReturn(mock(SeriesTaskExecutorThread.class));
+        given(configuration.getProcessors()).willReturn(1);
+        given(configuration.getQueueSize()).willReturn(1);
+        executor.start();
+
+        // When
+        given(configuration.getQueueSize()).willReturn(3);
+        executor.notifyChanges();
+
+        // Then
+        assertThat(captor.getValue().remainingCapacity()).isEqualTo(3);
+        verify(configuration).addQueueSizeListener(executor);
+    }
+
+    @Test
+    public void shouldCoalesceQueuedUpdatesOfTheSameToken() throws Exception {
+        // Given
+        ArgumentCaptor<BlockingQueue> captor = ArgumentCaptor.forClass(BlockingQueue.class);
+        given(processorFactory.create(captor.capture())).willReturn(mock(SeriesTaskExecutorThread.class));
+        given(configuration.getProcessors()).willReturn(1);
+        executor.start();
+
+        Token token = mock(Token.class);
+        given(token.getTokenId()).willReturn("123");
+
+        // When
+        executor.execute("123", new UpdateTask(token, mock(ResultHandler.class)));
+        executor.execute("123", new UpdateTask(token, mock(ResultHandler.class)));
+
+        // Then
+        assertThat(captor.getValue().size()).isEqualTo(1);
+        verify(monitoringStore).addCoalescedTask(0);
+    }
+
+    @Test
+    public void shouldRecordQueueDepthWhenTaskWasQueued() throws Exception {
+        // Given
+        ArgumentCaptor<BlockingQueue> captor = ArgumentCaptor.forClass(BlockingQueue.class);
+        given(processorFactory.create(captor.capture())).willReturn(mock(SeriesTaskExecutorThread.class));
+        given(configuration.getProcessors()).willReturn(1);
+        executor.start();
+
+        executor.execute("123", mock(Task.class));
+        executor.execute("456", mock(Task.class));
+        BlockingQueue<Task> queue = captor.getValue();
+        queue.take();
+        Task second = queue.take();
+
+        // When
+        second.execute(null, null);
+
+        // Then
+        verify(monitoringStore).addQueuedTask(eq(0), eq(1), anyLong(), anyLong());
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.sm.datalayer.impl.tasks;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.BDDMockito.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import org.forgerock.openam.cts.api.tokens.Token;
+import org.forgerock.openam.sm.datalayer.api.ResultHandler;
+import org.forgerock.openam.sm.datalayer.api.Task;
+import org.forgerock.openam.sm.datalayer.api.TokenStorageAdapter;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class WriteCoalescerTest {
+
+    private static final String TOKEN_ID = "badger";
+
+    private WriteCoalescer coalescer;
+    private TokenStorageAdapter<Object> adapter;
+    private Object connection;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        coalescer = new WriteCoalescer();
+        adapter = mock(TokenStorageAdapter.class);
+        connection = new Object();
+    }
+
+    @Test
+    public void shouldMergeLaterUpdateIntoQueuedUpdate() throws Exception {
+        // Given
+        Token first = token();
+        Token second = token();
+        ResultHandler<Token, ?> firstHandler = mock(ResultHandler.class);
+        ResultHandler<Token, ?> secondHandler = mock(ResultHandler.class);
+        UpdateTask queued = new UpdateTask(first, firstHandler);
+        queue(queued);
+        given(adapter.read(connection, TOKEN_ID)).willReturn(first);
+
+        // When
+        Task result = coalescer.coalesce(TOKEN_ID, new UpdateTask(second, secondHandler));
+        queued.execute(connection, adapter);
+
+        // Then
+        assertThat(result).isNull();
+        verify(adapter).update(connection, first, second);
+        verify(firstHandler).processResults(second);
+        verify(secondHandler).processResults(second);
+    }
+
+    @Test
+    public void shouldCollapseCreateFollowedByDelete() throws Exception {
+        // Given
+        ResultHandler<Token, ?> createHandler = mock(ResultHandler.class);
+        ResultHandler<String, ?> deleteHandler = mock(ResultHandler.class);
+        CreateTask create = new CreateTask(token(), createHandler);
+        queue(create);
+
+        // When
+        Task result = coalescer.coalesce(TOKEN_ID, new DeleteTask(TOKEN_ID, deleteHandler));
+        create.execute(connection, adapter);
+        result.execute(connection, adapter);
+
+        // Then
+        verifyZeroInteractions(adapter);
+        verify(createHandler).processResults(any(Token.class));
+        verify(deleteHandler).processResults(TOKEN_ID);
+    }
+
+    @Test
+    public void shouldCancelUpdateFollowedByDelete() throws Exception {
+        // Given
+        UpdateTask update = new UpdateTask(token(), mock(ResultHandler.class));
+        queue(update);
+        DeleteTask delete = new DeleteTask(TOKEN_ID, mock(ResultHandler.class));
+
+        // When
+        Task result = coalescer.coalesce(TOKEN_ID, delete);
+        update.execute(connection, adapter);
+
+        // Then
+        assertThat(result).isSameAs(delete);
+        verifyZeroInteractions(adapter);
+    }
+
+    @Test
+    public void shouldNotMergeUpdateAcrossRead() throws Exception {
+        // Given
+        queue(new UpdateTask(token(), mock(ResultHandler.class)));
+        queue(new ReadTask(TOKEN_ID, mock(ResultHandler.class)));
+        UpdateTask update = new UpdateTask(token(), mock(ResultHandler.class));
+
+        // When
+        Task result = coalescer.coalesce(TOKEN_ID, update);
+
+        // Then
+        assertThat(result).isSameAs(update);
+    }
+
+    @Test
+    public void shouldNotMergeUpdateIntoStartedTask() throws Exception {
+        // Given
+        UpdateTask queued = new UpdateTask(token(), mock(ResultHandler.class));
+        queue(queued);
+        coalescer.started(TOKEN_ID, queued);
+        UpdateTask update = new UpdateTask(token(), mock(ResultHandler.class));
+
+        // When
+        Task result = coalescer.coalesce(TOKEN_ID, update);
+
+        // Then
+        assertThat(result).isSameAs(update);
+    }
+
+    @Test
+    public void shouldNotMergeUpdateIntoDispatchedCreate() throws Exception {
+        // Given
+        Token created = token();
+        CreateTask create = new CreateTask(created, mock(ResultHandler.class));
+        queue(create);
+        coalescer.started(TOKEN_ID, create);
+        UpdateTask update = new UpdateTask(token(), mock(ResultHandler.class));
+
+        // When
+        Task result = coalescer.coalesce(TOKEN_ID, update);
+        create.execute(connection, adapter);
+
+        // Then
+        assertThat(result).isSameAs(update);
+        assertThat(create.merge(update)).isFalse();
+        verify(adapter).create(connection, created);
+    }
+
+    @Test
+    public void shouldNotMergeUpdateIntoExecutingTask() throws Exception {
+        // Given
+        UpdateTask queued = new UpdateTask(token(), mock(ResultHandler.class));
+        queue(queued);
+        queued.execute(connection, adapter);
+        UpdateTask update = new UpdateTask(token(), mock(ResultHandler.class));
+
+        // When
+        Task result = coalescer.coalesce(TOKEN_ID, update);
+
+        // Then
+        assertThat(result).isSameAs(update);
+    }
+
+    private void queue(Task task) {
+        Task queued = coalescer.coalesce(TOKEN_ID, task);
+        assertThat(queued).isSameAs(task);
+        coalescer.queued(TOKEN_ID, queued);
+    }
+
+    private static Token token() {
+        Token token = mock(Token.class);
+        given(token.getTokenId()).willReturn(TOKEN_ID);
+        return token;
+    }
+}
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2014 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 package org.forgerock.openam.entitlement.indextree;
 
@@ -28,16 +28,18 @@ import org.forgerock.openam.entitlement.indextree.events.IndexChangeEvent;
 import org.forgerock.openam.entitlement.indextree.events.IndexChangeObserver;
 import org.forgerock.openam.entitlement.indextree.events.ModificationEvent;
 import org.forgerock.openam.entitlement.indextree.events.ModificationEventType;
+import org.forgerock.openam.entitlement.utils.indextree.CompiledIndexRuleTree;
 import org.forgerock.openam.entitlement.utils.indextree.IndexRuleTree;
-import org.forgerock.openam.entitlement.utils.indextree.SimpleReferenceTree;
 import org.forgerock.util.thread.listener.ShutdownListener;
 import org.forgerock.util.thread.listener.ShutdownManager;
 
 import javax.inject.Inject;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -156,7 +158,8 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
         SSOToken token = AccessController.doPrivileged(adminAction);
 
         if (smDAO.checkIfEntryExists(baseDN, token)) {
-            indexTree = new SimpleReferenceTree();
+            indexTree = new CompiledIndexRuleTree();
+            List<String> indexRules = new ArrayList<String>();
 
             try {
                 Set<String> excludes = Collections.emptySet();
@@ -170,9 +173,12 @@ public class IndexTreeServiceImpl implements IndexTreeService, IndexChangeObserv
                     @SuppressWarnings("unchecked")
                     Set<String> policyPathIndexes = e.getAttributeValues(INDEX_PATH_ATT);
 
-                    indexTree.addIndexRules(policyPathIndexes);
+                    indexRules.addAll(policyPathIndexes);
                 }
 
+                // Compile the tree once with all of the rules.
+                indexTree.addIndexRules(indexRules);
+
             } catch (SMSException smsE) {
                 throw new EntitlementException(52, new Object[] {baseDN}, smsE);
             }
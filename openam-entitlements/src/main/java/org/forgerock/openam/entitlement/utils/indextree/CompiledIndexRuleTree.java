@@ -0,0 +1,457 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.entitlement.utils.indextree;
+
+import org.forgerock.openam.entitlement.utils.indextree.treenodes.MultiWildcardNode;
+import org.forgerock.openam.entitlement.utils.indextree.treenodes.SingleWildcardNode;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An index rule tree which compiles its rules into an immutable matching automaton, with the same matching semantics
+ * as {@link SimpleReferenceTree}.
+ * <p/>
+ * Each state of the automaton represents a prefix of one or more rules. Its literal transitions are held in a sorted
+ * array, so the next state for a character is found by binary search rather than by asking every child in turn, and
+ * its multi level ('*') and single level ('^') wildcard transitions are held separately. A search walks the resource
+ * once, tracking the set of active states, and the rules ending at the final active states are the matching rules.
+ * <p/>
+ * States are never modified once created. Adding or removing a single rule creates new states along the path of the
+ * rule only, sharing the rest of the automaton, and adding a collection of rules compiles the automaton afresh. The
+ * new automaton is then swapped in atomically, so searches never lock and always see a consistent set of rules.
+ */
+public class CompiledIndexRuleTree implements IndexRuleTree {
+
+    private static final State EMPTY = new State(State.ROOT, State.NO_LABELS, State.NO_TARGETS, null, null, null, 0);
+
+    // Guarded by this; used to recompile the automaton when rules are added in bulk.
+    private final Map<String, Integer> ruleCounts = new HashMap<String, Integer>();
+    private volatile State root = EMPTY;
+
+    @Override
+    public synchronized void addIndexRule(String indexRule) {
+        if (indexRule == null) {
+            throw new IllegalArgumentException("Pattern must not be null");
+        }
+
+        Integer count = ruleCounts.get(indexRule);
+        ruleCounts.put(indexRule, count == null ? 1 : count + 1);
+        root = root.update(indexRule, 0, 1);
+    }
+
+    @Override
+    public synchronized void addIndexRules(Collection<String> indexRules) {
+        for (String indexRule : indexRules) {
+            if (indexRule == null) {
+                throw new IllegalArgumentException("Pattern must not be null");
+            }
+        }
+
+        for (String indexRule : indexRules) {
+            Integer count = ruleCounts.get(indexRule);
+            ruleCounts.put(indexRule, count == null ? 1 : count + 1);
+        }
+        root = compile(ruleCounts);
+    }
+
+    @Override
+    public synchronized void removeIndexRule(String indexRule) {
+        if (indexRule == null) {
+            throw new IllegalArgumentException("Pattern must not be null");
+        }
+
+        Integer count = ruleCounts.get(indexRule);
+        if (count == null) {
+            return;
+        }
+        if (count == 1) {
+            ruleCounts.remove(indexRule);
+        } else {
+            ruleCounts.put(indexRule, count - 1);
+        }
+        root = root.update(indexRule, 0, -1);
+    }
+
+    @Override
+    public Set<String> searchTree(String resource) {
+        if (resource == null) {
+            throw new IllegalArgumentException("The search term must not be null");
+        }
+
+        Candidates candidates = new Candidates();
+        Candidates elected = new Candidates();
+        candidates.add(root);
+
+        for (int i = 0, l = resource.length(); i < l && candidates.size > 0; i++) {
+            char searchTerm = resource.charAt(i);
+            boolean last = i == l - 1;
+            elected.clear();
+
+            for (int c = 0; c < candidates.size; c++) {
+                State candidate = candidates.states[c];
+                // Reelect any previous wildcard candidates.
+                State reelected = candidate.accept(searchTerm, last);
+                if (reelected != null) {
+                    elected.add(reelected);
+                }
+                // Evaluate previous candidates children.
+                electChildren(candidate, searchTerm, last, elected);
+            }
+
+            Candidates previous = candidates;
+            candidates = elected;
+            elected = previous;
+        }
+
+        Set<String> results = new HashSet<String>();
+        for (int c = 0; c < candidates.size; c++) {
+            if (candidates.states[c].rule != null) {
+                results.add(candidates.states[c].rule);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Elects the transitions from the given state which accept the search term. Wildcard transitions may also match
+     * zero characters, so the transitions beyond them are evaluated too.
+     */
+    private void electChildren(State state, char searchTerm, boolean last, Candidates elected) {
+        State literal = state.literal(searchTerm);
+        if (literal != null) {
+            elect(literal, searchTerm, last, elected);
+        }
+
+        if (state.multiWildcard != null) {
+            electWildcard(state.multiWildcard, searchTerm, last, elected);
+        }
+
+        if (state.singleWildcard != null) {
+            electWildcard(state.singleWildcard, searchTerm, last, elected);
+        }
+    }
+
+    private void electWildcard(State wildcard, char searchTerm, boolean last, Candidates elected) {
+        State accepted = wildcard.accept(searchTerm, last);
+        if (accepted != null) {
+            elect(accepted, searchTerm, last, elected);
+        }
+        // This scenario handles zero characters.
+        electChildren(wildcard, searchTerm, last, elected);
+    }
+
+    /**
+     * Elects the state. Given the last character of the resource, a wildcard which immediately follows the state
+     * matches zero characters and so is also elected.
+     */
+    private void elect(State state, char searchTerm, boolean last, Candidates elected) {
+        elected.add(state);
+
+        if (last) {
+            if (state.multiWildcard != null) {
+                addIfAccepted(state.multiWildcard, searchTerm, elected);
+            }
+            if (state.singleWildcard != null) {
+                addIfAccepted(state.singleWildcard, searchTerm, elected);
+            }
+        }
+    }
+
+    private void addIfAccepted(State wildcard, char searchTerm, Candidates elected) {
+        State accepted = wildcard.accept(searchTerm, true);
+        if (accepted != null) {
+            elected.add(accepted);
+        }
+    }
+
+    /**
+     * Compiles the given rules into a new automaton.
+     *
+     * @param rules
+     *         The rules and the number of times each has been added.
+     * @return The root state of the automaton.
+     */
+    private static State compile(Map<String, Integer> rules) {
+        String[] sorted = rules.keySet().toArray(new String[rules.size()]);
+        if (sorted.length == 0) {
+            return EMPTY;
+        }
+        Arrays.sort(sorted);
+        return compile(State.ROOT, sorted, 0, sorted.length, 0, rules);
+    }
+
+    /**
+     * Compiles the state for the common prefix, of the given length, of a range of sorted rules.
+     */
+    private static State compile(int type, String[] rules, int from, int to, int depth, Map<String, Integer> counts) {
+        String rule = null;
+        int count = 0;
+        if (rules[from].length() == depth) {
+            // The shortest rule sorts first, and ends at this state.
+            rule = rules[from];
+            count = counts.get(rule);
+            from++;
+        }
+
+        int children = 0;
+        for (int i = from; i < to; i++) {
+            if (i == from || rules[i].charAt(depth) != rules[i - 1].charAt(depth)) {
+                children++;
+            }
+        }
+
+        char[] labels = new char[children];
+        State[] targets = new State[children];
+        int literals = 0;
+        State multiWildcard = null;
+        State singleWildcard = null;
+
+        while (from < to) {
+            char value = rules[from].charAt(depth);
+            int end = from + 1;
+            while (end < to && rules[end].charAt(depth) == value) {
+                end++;
+            }
+
+            State child = compile(State.typeOf(value), rules, from, end, depth + 1, counts);
+            if (value == MultiWildcardNode.WILDCARD) {
+                multiWildcard = child;
+            } else if (value == SingleWildcardNode.WILDCARD) {
+                singleWildcard = child;
+            } else {
+                labels[literals] = value;
+                targets[literals++] = child;
+            }
+            from = end;
+        }
+
+        if (literals == 0) {
+            labels = State.NO_LABELS;
+            targets = State.NO_TARGETS;
+        } else if (literals < children) {
+            labels = Arrays.copyOf(labels, literals);
+            targets = Arrays.copyOf(targets, literals);
+        }
+        return new State(type, labels, targets, multiWildcard, singleWildcard, rule, count);
+    }
+
+    @Override
+    public String toString() {
+        return new TreeMap<String, Integer>(ruleCounts).toString();
+    }
+
+    /**
+     * The states active during a search. Candidates are few, so duplicates are found by a linear scan.
+     */
+    private static final class Candidates {
+
+        private State[] states = new State[8];
+        private int size;
+
+        void add(State state) {
+            for (int i = 0; i < size; i++) {
+                if (states[i] == state) {
+                    return;
+                }
+            }
+            if (size == states.length) {
+                states = Arrays.copyOf(states, size * 2);
+            }
+            states[size++] = state;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * An immutable state of the automaton.
+     */
+    private static final class State {
+
+        static final int ROOT = 0;
+        static final int LITERAL = 1;
+        static final int MULTI_WILDCARD = 2;
+        static final int SINGLE_WILDCARD = 3;
+        // A single level wildcard which has just matched the end of a URL level, and so matches nothing further.
+        static final int LEVEL_REACHED = 4;
+
+        static final char[] NO_LABELS = new char[0];
+        static final State[] NO_TARGETS = new State[0];
+
+        final int type;
+        final char[] labels;
+        final State[] targets;
+        final State multiWildcard;
+        final State singleWildcard;
+        final String rule;
+        final int count;
+        final State levelReached;
+        // Most states have a single literal transition, which is held directly to save searching the arrays.
+        final char label;
+        final State next;
+
+        State(int type, char[] labels, State[] targets, State multiWildcard, State singleWildcard,
+              String rule, int count) {
+            this.type = type;
+            this.labels = labels;
+            this.targets = targets;
+            this.multiWildcard = multiWildcard;
+            this.singleWildcard = singleWildcard;
+            this.rule = count > 0 ? rule : null;
+            this.count = count;
+            this.label = labels.length == 1 ? labels[0] : 0;
+            this.next = labels.length == 1 ? targets[0] : null;
+            this.levelReached = type == SINGLE_WILDCARD
+                    ? new State(LEVEL_REACHED, labels, targets, multiWildcard, singleWildcard, rule, count)
+                    : null;
+        }
+
+        /**
+         * @return The state reached when this wildcard state consumes the search term, or null if it does not.
+         */
+        State accept(char searchTerm, boolean last) {
+            if (type == ROOT || type == LITERAL) {
+                return null;
+            }
+
+            if (searchTerm == '?' || searchTerm == '#') {
+                // Ignore illegal character unless it is the last character.
+                return last ? this : null;
+            }
+
+            switch (type) {
+                case SINGLE_WILDCARD:
+                    // Make a note that the end of a URL level has been reached.
+                    return searchTerm == '/' ? levelReached : this;
+                case LEVEL_REACHED:
+                    // Next URL level reached, so no longer interested.
+                    return null;
+                default:
+                    return this;
+            }
+        }
+
+        State literal(char value) {
+            if (next != null) {
+                return label == value ? next : null;
+            }
+            if (labels.length == 0) {
+                return null;
+            }
+            int index = Arrays.binarySearch(labels, value);
+            return index < 0 ? null : targets[index];
+        }
+
+        State child(char value) {
+            switch (value) {
+                case MultiWildcardNode.WILDCARD:
+                    return multiWildcard;
+                case SingleWildcardNode.WILDCARD:
+                    return singleWildcard;
+                default:
+                    return literal(value);
+            }
+        }
+
+        boolean isEmpty() {
+            return count == 0 && labels.length == 0 && multiWildcard == null && singleWildcard == null;
+        }
+
+        /**
+         * Creates a copy of this state with the count of the given rule adjusted, copying only the states along the
+         * path of the rule and discarding any states left empty.
+         */
+        State update(String indexRule, int index, int delta) {
+            if (index == indexRule.length()) {
+                return new State(type, labels, targets, multiWildcard, singleWildcard, indexRule,
+                        Math.max(0, count + delta));
+            }
+
+            char value = indexRule.charAt(index);
+            State child = child(value);
+            if (child == null) {
+                if (delta < 0) {
+                    return this;
+                }
+                child = new State(typeOf(value), NO_LABELS, NO_TARGETS, null, null, null, 0);
+            }
+
+            State updated = child.update(indexRule, index + 1, delta);
+            return withChild(value, updated.isEmpty() ? null : updated);
+        }
+
+        private State withChild(char value, State child) {
+            switch (value) {
+                case MultiWildcardNode.WILDCARD:
+                    return new State(type, labels, targets, child, singleWildcard, rule, count);
+                case SingleWildcardNode.WILDCARD:
+                    return new State(type, labels, targets, multiWildcard, child, rule, count);
+                default:
+                    break;
+            }
+
+            int index = Arrays.binarySearch(labels, value);
+            char[] newLabels;
+            State[] newTargets;
+            if (index >= 0 && child != null) {
+                newLabels = labels;
+                newTargets = targets.clone();
+                newTargets[index] = child;
+            } else if (index >= 0) {
+                newLabels = new char[labels.length - 1];
+                newTargets = new State[targets.length - 1];
+                System.arraycopy(labels, 0, newLabels, 0, index);
+                System.arraycopy(labels, index + 1, newLabels, index, labels.length - index - 1);
+                System.arraycopy(targets, 0, newTargets, 0, index);
+                System.arraycopy(targets, index + 1, newTargets, index, targets.length - index - 1);
+            } else if (child != null) {
+                int insert = -index - 1;
+                newLabels = new char[labels.length + 1];
+                newTargets = new State[targets.length + 1];
+                System.arraycopy(labels, 0, newLabels, 0, insert);
+                System.arraycopy(labels, insert, newLabels, insert + 1, labels.length - insert);
+                System.arraycopy(targets, 0, newTargets, 0, insert);
+                System.arraycopy(targets, insert, newTargets, insert + 1, targets.length - insert);
+                newLabels[insert] = value;
+                newTargets[insert] = child;
+            } else {
+                return this;
+            }
+
+            return new State(type, newLabels, newTargets, multiWildcard, singleWildcard, rule, count);
+        }
+
+        static int typeOf(char value) {
+            switch (value) {
+                case MultiWildcardNode.WILDCARD:
+                    return MULTI_WILDCARD;
+                case SingleWildcardNode.WILDCARD:
+                    return SINGLE_WILDCARD;
+                default:
+                    return LITERAL;
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.entitlement.utils.indextree;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Unit test for CompiledIndexRuleTree.
+ */
+public class CompiledIndexRuleTreeTest {
+
+    private static final List<String> RULES = Arrays.asList(
+            "*", "^", "abc", "http://www.endurl.com/*", "http://www.endurl.com/^", "http://www.example.com",
+            "http://www.example.com/", "http://www.middleurl.com/*/home", "http://www.middleurl.com/^/home",
+            "http://www.substringurl.com/a*b/", "http://www.substringurl.com/a^b/", "http://www.test.com/abc",
+            "http://www.test1.com/#", "http://www.test1.com/?", "http://www.test2.com/*#", "http://www.test2.com/*?",
+            "http://www.test2.com/^#", "http://www.test2.com/^?", "http://www.test3.com/#*", "http://www.test3.com/#^",
+            "http://www.test3.com/?*", "http://www.test3.com/?^", "http://www.test4.com/*#*", "http://www.test4.com/*?*",
+            "http://www.test4.com/^#^", "http://www.test4.com/^?^", "http*://*:*/*?*", "*://^.example.com/^/*");
+
+    private CompiledIndexRuleTree tree;
+
+    @BeforeMethod
+    public void setUp() {
+        tree = new CompiledIndexRuleTree();
+    }
+
+    @DataProvider(name = "resources")
+    public Object[][] resources() {
+        return new Object[][] {
+                {"http://www.endurl.com"}, {"http://www.endurl.com/"}, {"http://www.endurl.com/a/b/c/d"},
+                {"http://www.endurl.com/home"}, {"http://www.example.com"}, {"http://www.example.com/"},
+                {"http://www.middleurl.com//home"}, {"http://www.middleurl.com/a/b/c/home"},
+                {"http://www.middleurl.com/abc"}, {"http://www.middleurl.com/abc/home"},
+                {"http://www.middleurl.com/home"}, {"http://www.someotherurl.com"}, {"http://www.substringurl.com/"},
+                {"http://www.substringurl.com/a/c/d/e/b/"}, {"http://www.substringurl.com/ab/"},
+                {"http://www.substringurl.com/ahellob/"}, {"http://www.test.com/abc"}, {"http://www.test1.com/#"},
+                {"http://www.test1.com/?"}, {"http://www.test2.com/#"}, {"http://www.test2.com/?"},
+                {"http://www.test2.com/a/b/c#"}, {"http://www.test2.com/a/b/c?"}, {"http://www.test2.com/abc#"},
+                {"http://www.test2.com/abc?"}, {"http://www.test3.com/#"}, {"http://www.test3.com/#a/b/c"},
+                {"http://www.test3.com/#abc"}, {"http://www.test3.com/?"}, {"http://www.test3.com/?a/b/c"},
+                {"http://www.test3.com/?abc"}, {"http://www.test4.com/#"}, {"http://www.test4.com/#abc"},
+                {"http://www.test4.com/?"}, {"http://www.test4.com/?abc"}, {"http://www.test4.com/a/b/c#d/e/f"},
+                {"http://www.test4.com/a/b/c?d/e/f"}, {"http://www.test4.com/abc#def"},
+                {"http://www.test4.com/abc?def"}, {"https://www.example.com:443/index.html?a=b"},
+                {"https://www.example.com/a/b"}, {"www.someurl.com"}, {"abc"}, {"ab"}, {"a"}, {"/"}
+        };
+    }
+
+    /**
+     * The compiled tree must match each rule exactly when the reference tree holding only that rule does. The
+     * reference tree is given one rule at a time, as its single level wildcards share state during a search and so
+     * can miss matches when the tree holds several of them.
+     */
+    @Test(dataProvider = "resources")
+    public void shouldMatchSameRulesAsSimpleReferenceTree(String resource) {
+        // Given
+        tree.addIndexRules(RULES);
+        Set<String> expectedResults = new HashSet<String>();
+        for (String rule : RULES) {
+            IndexRuleTree referenceTree = new SimpleReferenceTree();
+            referenceTree.addIndexRule(rule);
+            expectedResults.addAll(referenceTree.searchTree(resource));
+        }
+
+        // When
+        Set<String> results = tree.searchTree(resource);
+
+        // Then
+        assertEquals(results, expectedResults);
+    }
+
+    @Test(dataProvider = "resources")
+    public void shouldMatchSameRulesWhenAddedIndividually(String resource) {
+        // Given
+        IndexRuleTree bulkTree = new CompiledIndexRuleTree();
+        bulkTree.addIndexRules(RULES);
+        List<String> rules = new ArrayList<String>(RULES);
+        Collections.reverse(rules);
+        for (String rule : rules) {
+            tree.addIndexRule(rule);
+        }
+
+        // When
+        Set<String> results = tree.searchTree(resource);
+
+        // Then
+        assertEquals(results, bulkTree.searchTree(resource));
+    }
+
+    @Test
+    public void removalOfRules() {
+        tree.addIndexRule("http://www.test1.com");
+        tree.addIndexRule("http://www.test1.com/*");
+        tree.addIndexRules(Arrays.asList("http://www.test2.com", "http://www.test1.com"));
+
+        // Rules are counted, so removal of one of two additions leaves the rule in place.
+        tree.removeIndexRule("http://www.test1.com");
+        assertEquals(tree.searchTree("http://www.test1.com"), Collections.singleton("http://www.test1.com"));
+
+        tree.removeIndexRule("http://www.test1.com");
+        assertTrue(tree.searchTree("http://www.test1.com").isEmpty());
+        assertEquals(tree.searchTree("http://www.test1.com/a"), Collections.singleton("http://www.test1.com/*"));
+        assertEquals(tree.searchTree("http://www.test2.com"), Collections.singleton("http://www.test2.com"));
+
+        // Removing a rule which was never added has no effect.
+        tree.removeIndexRule("http://www.test2.com/a");
+        assertEquals(tree.searchTree("http://www.test2.com"), Collections.singleton("http://www.test2.com"));
+    }
+
+    @Test
+    public void searchesSeeSnapshotOfRules() throws Exception {
+        // Given
+        final int ruleCount = 2000;
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ruleCount; i++) {
+                    tree.addIndexRule("http://www.example" + i + ".com/*");
+                }
+            }
+        });
+
+        // When
+        writer.start();
+        Set<String> seen = new HashSet<String>();
+        while (writer.isAlive()) {
+            seen.addAll(tree.searchTree("http://www.example1.com/index.html"));
+        }
+        writer.join();
+
+        // Then
+        assertEquals(tree.searchTree("http://www.example" + (ruleCount - 1) + ".com/a"),
+                Collections.singleton("http://www.example" + (ruleCount - 1) + ".com/*"));
+        assertTrue(seen.isEmpty() || seen.equals(Collections.singleton("http://www.example1.com/*")));
+    }
+}
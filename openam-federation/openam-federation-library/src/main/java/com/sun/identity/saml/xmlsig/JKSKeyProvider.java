@@ -44,16 +44,25 @@ import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * The class <code>JKSKeyProvider</code> is a class
  * that is implemented to retrieve X509Certificates and Private Keys from
  * user data store.  
  * <p>
+ * Private keys are recovered from the key store once per alias, and the aliases of trusted certificates once per
+ * certificate, as every signature made or verified would otherwise decrypt the key or scan the key store again.
  */
 public class JKSKeyProvider implements KeyProvider {
 
     private final AMKeyProvider keyProvider;
+    private final ConcurrentMap<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<String>, PrivateKey> privateKeysByKeyPass = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Certificate, String> certificateAliases = new ConcurrentHashMap<>();
 
     /**
      * Constructor
@@ -73,6 +82,14 @@ public class JKSKeyProvider implements KeyProvider {
         keyProvider.setLogger(SAMLUtilsCommon.debug);
     }
 
+    /**
+     * Constructor
+     * @param keyProvider the key provider to read keys and certificates from
+     */
+    JKSKeyProvider(AMKeyProvider keyProvider) {
+        this.keyProvider = keyProvider;
+    }
+
     /**
      * Set the key to access key store database. This method will only need to 
      * be calles once if the key could not be obtained by other means. 
@@ -81,6 +98,7 @@ public class JKSKeyProvider implements KeyProvider {
      */
     public void setKey(String storepass, String keypass) {
         keyProvider.setKey(storepass, keypass);
+        privateKeys.clear();
     }
 
     /**
@@ -110,7 +128,17 @@ public class JKSKeyProvider implements KeyProvider {
            the private key could not be found.
      */
     public java.security.PrivateKey getPrivateKey (String certAlias) {
-        return keyProvider.getPrivateKey(certAlias);
+        if (certAlias == null) {
+            return keyProvider.getPrivateKey(certAlias);
+        }
+        PrivateKey key = privateKeys.get(certAlias);
+        if (key == null) {
+            key = keyProvider.getPrivateKey(certAlias);
+            if (key != null) {
+                privateKeys.put(certAlias, key);
+            }
+        }
+        return key;
     }
 
     @Override
@@ -125,7 +153,15 @@ public class JKSKeyProvider implements KeyProvider {
      * @return PrivateKey which matches the certAlias, return null if the private key could not be found.
      */
     public PrivateKey getPrivateKey (String certAlias, String encryptedKeyPass) {
-        return keyProvider.getPrivateKey(certAlias, encryptedKeyPass);
+        List<String> cacheKey = Arrays.asList(certAlias, encryptedKeyPass);
+        PrivateKey key = privateKeysByKeyPass.get(cacheKey);
+        if (key == null) {
+            key = keyProvider.getPrivateKey(certAlias, encryptedKeyPass);
+            if (key != null) {
+                privateKeysByKeyPass.put(cacheKey, key);
+            }
+        }
+        return key;
     }
 
     /**
@@ -137,7 +173,17 @@ public class JKSKeyProvider implements KeyProvider {
      *       has not been loaded properly, return null as well. 
      */
     public String getCertificateAlias(Certificate cert) {
-        return keyProvider.getCertificateAlias(cert);
+        if (cert == null) {
+            return keyProvider.getCertificateAlias(cert);
+        }
+        String alias = certificateAliases.get(cert);
+        if (alias == null) {
+            alias = keyProvider.getCertificateAlias(cert);
+            if (alias != null) {
+                certificateAliases.put(cert, alias);
+            }
+        }
+        return alias;
     }
     
     /**
@@ -182,6 +228,8 @@ public class JKSKeyProvider implements KeyProvider {
             keyProvider.setCertificateEntry(certAlias, cert);
         } catch (KeyStoreException e) {
             throw new SAMLException(e.getMessage());
+        } finally {
+            certificateAliases.clear();
         }
     }
     
@@ -1209,6 +1209,14 @@ public interface SAML2Constants {
     // default Cache cleanup interval in seconds
     public int CACHE_CLEANUP_INTERVAL_DEFAULT = 3600;
 
+    // Maximum number of entries in each SAML2 cache attribute name in
+    // AMConfig.properties.
+    public String CACHE_MAX_ENTRIES =
+                "com.sun.identity.saml2.cacheMaxEntries";
+
+    // default maximum number of entries in each SAML2 cache
+    public int CACHE_MAX_ENTRIES_DEFAULT = 100000;
+
     // IDP SLO parameter name for logout all sessions
     public String LOGOUT_ALL = "logoutAll";
 
@@ -69,6 +69,7 @@ import com.sun.identity.saml2.jaxb.metadata.IDPSSODescriptorElement;
 import com.sun.identity.saml2.jaxb.metadata.SPSSODescriptorElement;
 import com.sun.identity.saml2.key.KeyUtil;
 import com.sun.identity.saml2.logging.LogUtil;
+import com.sun.identity.saml2.meta.SAML2EntityIndex;
 import com.sun.identity.saml2.meta.SAML2MetaException;
 import com.sun.identity.saml2.meta.SAML2MetaManager;
 import com.sun.identity.saml2.meta.SAML2MetaUtils;
@@ -2155,25 +2156,13 @@ public class SAML2Utils extends SAML2SDKUtils {
             debug.message(method + "attrName - " + attrName);
         }
         try {
-            BaseConfigType config = null;
-            if (entityRole.equalsIgnoreCase(SAML2Constants.SP_ROLE)) {
-                config = saml2MetaManager.getSPSSOConfig(realm, hostEntityId);
-            } else if (entityRole.equalsIgnoreCase(SAML2Constants.IDP_ROLE)) {
-                config = saml2MetaManager.getIDPSSOConfig(realm, hostEntityId);
-            } else if (entityRole.equalsIgnoreCase(
-                    SAML2Constants.ATTR_AUTH_ROLE)) {
-                config = saml2MetaManager.getAttributeAuthorityConfig(realm,
-                        hostEntityId);
-            } else if (entityRole.equalsIgnoreCase(
-                    SAML2Constants.AUTHN_AUTH_ROLE)) {
-                config = saml2MetaManager.getAuthnAuthorityConfig(realm,
-                        hostEntityId);
-            } else if (entityRole.equalsIgnoreCase(
-                    SAML2Constants.ATTR_QUERY_ROLE)) {
-                config = saml2MetaManager.getAttributeQueryConfig(realm,
-                        hostEntityId);
+            SAML2EntityIndex index = saml2MetaManager.getEntityIndex(realm, hostEntityId);
+            if (index != null) {
+                SAML2EntityIndex.Role role = index.getRole(entityRole);
+                return role == null ? null : role.getAttribute(attrName);
             }
-
+            // An entity with extended configuration but no standard metadata has no index
+            BaseConfigType config = getSSOConfig(realm, hostEntityId, entityRole);
             if (config == null) {
                 return null;
             }
@@ -2188,6 +2177,22 @@ public class SAML2Utils extends SAML2SDKUtils {
         return null;
     }
 
+    private static BaseConfigType getSSOConfig(String realm, String hostEntityId, String entityRole)
+            throws SAML2MetaException {
+        if (entityRole.equalsIgnoreCase(SAML2Constants.SP_ROLE)) {
+            return saml2MetaManager.getSPSSOConfig(realm, hostEntityId);
+        } else if (entityRole.equalsIgnoreCase(SAML2Constants.IDP_ROLE)) {
+            return saml2MetaManager.getIDPSSOConfig(realm, hostEntityId);
+        } else if (entityRole.equalsIgnoreCase(SAML2Constants.ATTR_AUTH_ROLE)) {
+            return saml2MetaManager.getAttributeAuthorityConfig(realm, hostEntityId);
+        } else if (entityRole.equalsIgnoreCase(SAML2Constants.AUTHN_AUTH_ROLE)) {
+            return saml2MetaManager.getAuthnAuthorityConfig(realm, hostEntityId);
+        } else if (entityRole.equalsIgnoreCase(SAML2Constants.ATTR_QUERY_ROLE)) {
+            return saml2MetaManager.getAttributeQueryConfig(realm, hostEntityId);
+        }
+        return null;
+    }
+
     /**
      * Returns the role of host entity.
      *
@@ -298,8 +298,8 @@ public class KeyUtil {
             );
             return null;
         }
-        java.security.cert.X509Certificate cert = getCert(kd);
-        if (cert == null) {
+        encInfo = createEncInfo(kd);
+        if (encInfo == null) {
             SAML2SDKUtils.debug.error(
                 classMethod +
                 "No encryption cert for entityID=" +
@@ -307,6 +307,24 @@ public class KeyUtil {
             );
             return null;
         }
+        encHash.put(index, encInfo);
+        return encInfo;
+    }
+
+    /**
+     * Returns the encryption information described by an encryption
+     * <code>KeyDescriptor</code>, without caching it.
+     * @param kd encryption <code>KeyDescriptorType</code> of the partner entity
+     * @return <code>EncInfo</code> which includes the public key of the
+     * descriptor's certificate, data encryption algorithm, and data
+     * encryption strength; or <code>null</code> if the descriptor holds no
+     * certificate
+     */
+    public static EncInfo createEncInfo(KeyDescriptorType kd) {
+        java.security.cert.X509Certificate cert = getCert(kd);
+        if (cert == null) {
+            return null;
+        }
         List emList = kd.getEncryptionMethod();
         EncryptionMethodType em = null;
         String algorithm = null;
@@ -335,13 +353,7 @@ public class KeyUtil {
             keySize = 128;
         }
         PublicKey pk = cert.getPublicKey();
-        if (pk != null) {
-            encInfo = new EncInfo(pk, algorithm, keySize);
-        }
-        if (encInfo != null) {
-            encHash.put(index, encInfo);
-        }
-        return encInfo;
+        return pk == null ? null : new EncInfo(pk, algorithm, keySize);
     }
 
     /**
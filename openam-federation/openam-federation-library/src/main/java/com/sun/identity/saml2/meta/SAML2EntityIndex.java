@@ -0,0 +1,320 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.saml2.meta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.sun.identity.saml2.common.SAML2Constants;
+import com.sun.identity.saml2.jaxb.entityconfig.AttributeAuthorityConfigElement;
+import com.sun.identity.saml2.jaxb.entityconfig.AttributeQueryConfigElement;
+import com.sun.identity.saml2.jaxb.entityconfig.AuthnAuthorityConfigElement;
+import com.sun.identity.saml2.jaxb.entityconfig.BaseConfigType;
+import com.sun.identity.saml2.jaxb.entityconfig.EntityConfigElement;
+import com.sun.identity.saml2.jaxb.entityconfig.IDPSSOConfigElement;
+import com.sun.identity.saml2.jaxb.entityconfig.SPSSOConfigElement;
+import com.sun.identity.saml2.jaxb.metadata.EndpointType;
+import com.sun.identity.saml2.jaxb.metadata.EntityDescriptorElement;
+import com.sun.identity.saml2.jaxb.metadata.IDPSSODescriptorElement;
+import com.sun.identity.saml2.jaxb.metadata.IndexedEndpointType;
+import com.sun.identity.saml2.jaxb.metadata.KeyDescriptorType;
+import com.sun.identity.saml2.jaxb.metadata.RoleDescriptorType;
+import com.sun.identity.saml2.jaxb.metadata.SPSSODescriptorElement;
+import com.sun.identity.saml2.key.EncInfo;
+import com.sun.identity.saml2.key.KeyUtil;
+
+/**
+ * An immutable, indexed view of the metadata of one SAML2 entity.
+ * <p>
+ * The view is built once from the entity's standard metadata and extended configuration, and holds, for each role
+ * of the entity, its decoded encryption key and the attributes of its extended configuration, and for a service
+ * provider its assertion consumer service endpoints indexed by binding, index and location. It is cached by
+ * {@link SAML2MetaCache} for as long as the metadata it was built from, and is rebuilt and replaced as a whole when
+ * the metadata changes.
+ *
+ * @see SAML2MetaManager#getEntityIndex(String, String)
+ */
+public final class SAML2EntityIndex {
+
+    /** The assertion consumer service endpoints of a service provider. */
+    public static final String ASSERTION_CONSUMER_SERVICE = "AssertionConsumerService";
+
+    private final EntityDescriptorElement descriptor;
+    private final EntityConfigElement config;
+    private final Map<String, Role> roles;
+
+    private SAML2EntityIndex(EntityDescriptorElement descriptor, EntityConfigElement config,
+            Map<String, Role> roles) {
+        this.descriptor = descriptor;
+        this.config = config;
+        this.roles = roles;
+    }
+
+    /**
+     * Builds the index of an entity.
+     *
+     * @param descriptor The standard metadata of the entity.
+     * @param config The extended configuration of the entity, or {@code null} if it has none.
+     * @return The index.
+     */
+    public static SAML2EntityIndex build(EntityDescriptorElement descriptor, EntityConfigElement config) {
+        Map<String, Role> roles = new HashMap<>();
+        SPSSODescriptorElement spDescriptor = SAML2MetaUtils.getSPSSODescriptor(descriptor);
+        IDPSSODescriptorElement idpDescriptor = SAML2MetaUtils.getIDPSSODescriptor(descriptor);
+        addRole(roles, SAML2Constants.SP_ROLE, spDescriptor, getConfig(config, SPSSOConfigElement.class));
+        addRole(roles, SAML2Constants.IDP_ROLE, idpDescriptor, getConfig(config, IDPSSOConfigElement.class));
+        addRole(roles, SAML2Constants.ATTR_AUTH_ROLE, null,
+                getConfig(config, AttributeAuthorityConfigElement.class));
+        addRole(roles, SAML2Constants.AUTHN_AUTH_ROLE, null, getConfig(config, AuthnAuthorityConfigElement.class));
+        addRole(roles, SAML2Constants.ATTR_QUERY_ROLE, null, getConfig(config, AttributeQueryConfigElement.class));
+
+        if (spDescriptor != null) {
+            roles.get(key(SAML2Constants.SP_ROLE)).endpoints.put(ASSERTION_CONSUMER_SERVICE,
+                    new Endpoints(spDescriptor.getAssertionConsumerService()));
+        }
+        return new SAML2EntityIndex(descriptor, config, Collections.unmodifiableMap(roles));
+    }
+
+    /**
+     * Checks whether this index was built from the given metadata, so that it still describes the entity.
+     *
+     * @param descriptor The current standard metadata of the entity.
+     * @param config The current extended configuration of the entity.
+     * @return Whether the index was built from exactly these elements.
+     */
+    boolean isBuiltFrom(EntityDescriptorElement descriptor, EntityConfigElement config) {
+        return this.descriptor == descriptor && this.config == config;
+    }
+
+    /**
+     * @return The standard metadata the index was built from.
+     */
+    public EntityDescriptorElement getEntityDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * @return The extended configuration the index was built from, or {@code null}.
+     */
+    public EntityConfigElement getEntityConfig() {
+        return config;
+    }
+
+    /**
+     * Returns the indexed metadata of one role of the entity.
+     *
+     * @param role The role, such as {@link SAML2Constants#SP_ROLE}, matched ignoring case.
+     * @return The role, or {@code null} if the entity has neither a descriptor nor a configuration for it.
+     */
+    public Role getRole(String role) {
+        return role == null ? null : roles.get(key(role));
+    }
+
+    private static void addRole(Map<String, Role> roles, String role, RoleDescriptorType descriptor,
+            BaseConfigType config) {
+        if (descriptor != null || config != null) {
+            roles.put(key(role), new Role(descriptor, config));
+        }
+    }
+
+    private static <T extends BaseConfigType> T getConfig(EntityConfigElement config, Class<T> type) {
+        if (config == null) {
+            return null;
+        }
+        for (Object element : config.getIDPSSOConfigOrSPSSOConfigOrAuthnAuthorityConfig()) {
+            if (type.isInstance(element)) {
+                return type.cast(element);
+            }
+        }
+        return null;
+    }
+
+    private static String key(String role) {
+        return role.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * The indexed metadata of one role of an entity.
+     */
+    public static final class Role {
+
+        private final RoleDescriptorType descriptor;
+        private final Map<String, List<String>> attributes;
+        private final Map<String, Endpoints> endpoints = new HashMap<>();
+        private final EncInfo encInfo;
+
+        private Role(RoleDescriptorType descriptor, BaseConfigType config) {
+            this.descriptor = descriptor;
+            this.attributes = config == null ? Collections.<String, List<String>>emptyMap()
+                    : Collections.unmodifiableMap(SAML2MetaUtils.getAttributes(config));
+            KeyDescriptorType encryption = descriptor == null ? null
+                    : KeyUtil.getKeyDescriptor(descriptor, SAML2Constants.ENCRYPTION);
+            this.encInfo = encryption == null ? null : KeyUtil.createEncInfo(encryption);
+        }
+
+        /**
+         * @return The standard metadata of the role, or {@code null} if the role is only configured.
+         */
+        public RoleDescriptorType getDescriptor() {
+            return descriptor;
+        }
+
+        /**
+         * Returns the attributes of the role's extended configuration. The map may not be modified.
+         *
+         * @return The attribute values by attribute name.
+         */
+        public Map<String, List<String>> getAttributes() {
+            return attributes;
+        }
+
+        /**
+         * Returns the values of one attribute of the role's extended configuration.
+         *
+         * @param name The name of the attribute.
+         * @return The values, or {@code null} if the attribute is not configured.
+         */
+        public List<String> getAttribute(String name) {
+            return attributes.get(name);
+        }
+
+        /**
+         * Returns the endpoints of one service of the role.
+         *
+         * @param service The service, such as {@link #ASSERTION_CONSUMER_SERVICE}.
+         * @return The endpoints, or {@code null} if the role has no descriptor for the service.
+         */
+        public Endpoints getEndpoints(String service) {
+            return endpoints.get(service);
+        }
+
+        /**
+         * @return The decoded key and algorithm used to encrypt messages for the role, or {@code null}.
+         */
+        public EncInfo getEncInfo() {
+            return encInfo;
+        }
+    }
+
+    /**
+     * The endpoints of one service, indexed by binding, index and location.
+     */
+    public static final class Endpoints {
+
+        private final List<EndpointType> endpoints;
+        private final Map<String, EndpointType> byBinding = new HashMap<>();
+        private final Map<Integer, EndpointType> byIndex = new HashMap<>();
+        private final Map<String, String> bindingsByLocation = new HashMap<>();
+        private final Set<String> locationsIgnoringCase = new HashSet<>();
+        private final EndpointType defaultEndpoint;
+
+        private Endpoints(List<?> elements) {
+            List<EndpointType> list = new ArrayList<>(elements.size());
+            EndpointType defaultEndpoint = null;
+            for (Object element : elements) {
+                EndpointType endpoint = (EndpointType) element;
+                list.add(endpoint);
+                putFirst(byBinding, endpoint.getBinding(), endpoint);
+                putFirst(bindingsByLocation, endpoint.getLocation(), endpoint.getBinding());
+                if (endpoint.getLocation() != null) {
+                    locationsIgnoringCase.add(endpoint.getLocation().toLowerCase(Locale.ENGLISH));
+                }
+                if (endpoint instanceof IndexedEndpointType) {
+                    IndexedEndpointType indexed = (IndexedEndpointType) endpoint;
+                    putFirst(byIndex, indexed.getIndex(), endpoint);
+                    if (indexed.isIsDefault()) {
+                        defaultEndpoint = endpoint;
+                    }
+                }
+            }
+            this.endpoints = Collections.unmodifiableList(list);
+            this.defaultEndpoint = defaultEndpoint;
+        }
+
+        private static <K, V> void putFirst(Map<K, V> map, K key, V value) {
+            if (key != null && !map.containsKey(key)) {
+                map.put(key, value);
+            }
+        }
+
+        /**
+         * @return All of the endpoints, in metadata order.
+         */
+        public List<EndpointType> getAll() {
+            return endpoints;
+        }
+
+        /**
+         * @return The first endpoint, or {@code null} if there are none.
+         */
+        public EndpointType getFirst() {
+            return endpoints.isEmpty() ? null : endpoints.get(0);
+        }
+
+        /**
+         * @return The last endpoint marked as the default, or {@code null} if none is marked.
+         */
+        public EndpointType getDefault() {
+            return defaultEndpoint;
+        }
+
+        /**
+         * Returns the first endpoint with the given binding.
+         *
+         * @param binding The binding.
+         * @return The endpoint, or {@code null}.
+         */
+        public EndpointType getByBinding(String binding) {
+            return binding == null ? null : byBinding.get(binding);
+        }
+
+        /**
+         * Returns the first indexed endpoint with the given index.
+         *
+         * @param index The index.
+         * @return The endpoint, or {@code null}.
+         */
+        public EndpointType getByIndex(int index) {
+            return byIndex.get(index);
+        }
+
+        /**
+         * Returns the binding of the first endpoint at the given location.
+         *
+         * @param location The location, matched exactly.
+         * @return The binding, or {@code null} if no endpoint is at the location.
+         */
+        public String getBinding(String location) {
+            return location == null ? null : bindingsByLocation.get(location);
+        }
+
+        /**
+         * Checks whether an endpoint is at the given location.
+         *
+         * @param location The location, matched ignoring case.
+         * @return Whether an endpoint is at the location.
+         */
+        public boolean containsLocationIgnoringCase(String location) {
+            return location != null && locationsIgnoringCase.contains(location.toLowerCase(Locale.ENGLISH));
+        }
+    }
+}
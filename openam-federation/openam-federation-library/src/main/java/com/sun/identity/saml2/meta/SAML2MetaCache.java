@@ -28,11 +28,14 @@
 
  /*
  * Portions Copyrighted [2010] [ForgeRock AS]
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 
 package com.sun.identity.saml2.meta;
 
 import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.sun.identity.shared.debug.Debug;
 
@@ -51,6 +54,8 @@ class SAML2MetaCache
 
     private static Hashtable descriptorCache = new Hashtable();
     private static Hashtable configCache = new Hashtable();
+    private static Map<String, SAML2EntityIndex> indexCache =
+        new ConcurrentHashMap<String, SAML2EntityIndex>();
 
     private SAML2MetaCache() {
     }
@@ -92,6 +97,7 @@ class SAML2MetaCache
                     cacheKey);
             }
             descriptorCache.put(cacheKey, descriptor);
+            indexCache.remove(cacheKey);
         } else {
             if (debug.messageEnabled()) {
                 debug.message(
@@ -100,6 +106,7 @@ class SAML2MetaCache
             }
             descriptorCache.remove(cacheKey);
             configCache.remove(cacheKey);
+            indexCache.remove(cacheKey);
         }
     }
 
@@ -146,6 +153,39 @@ class SAML2MetaCache
             }
             configCache.remove(cacheKey);
         }
+        indexCache.remove(cacheKey);
+    }
+
+    /**
+     * Returns the index of an entity under the realm, building it if the
+     * cached index was not built from the given metadata. The index is
+     * replaced as a whole, so readers never see one partly rebuilt.
+     * @param realm The realm under which the entity resides.
+     * @param entityId ID of the entity.
+     * @param descriptor The current <code>EntityDescriptorElement</code> of
+     *     the entity.
+     * @param config The current <code>EntityConfigElement</code> of the
+     *     entity, or null.
+     * @return <code>SAML2EntityIndex</code> for the entity.
+     */
+    static SAML2EntityIndex getEntityIndex(String realm, String entityId,
+        EntityDescriptorElement descriptor, EntityConfigElement config) {
+        String cacheKey = buildCacheKey(realm, entityId);
+        SAML2EntityIndex index = indexCache.get(cacheKey);
+        if (index != null && index.isBuiltFrom(descriptor, config)) {
+            return index;
+        }
+        if (debug.messageEnabled()) {
+            debug.message("SAML2MetaCache.getEntityIndex: building index " +
+                "for cacheKey = " + cacheKey);
+        }
+        index = SAML2EntityIndex.build(descriptor, config);
+        // Only cache the index while the metadata it was built from is held
+        if (descriptorCache.get(cacheKey) == descriptor &&
+            configCache.get(cacheKey) == config) {
+            indexCache.put(cacheKey, index);
+        }
+        return index;
     }
 
     /**
@@ -157,6 +197,7 @@ class SAML2MetaCache
         }
 	descriptorCache.clear();
 	configCache.clear();
+	indexCache.clear();
     }
 
     /**
@@ -24,7 +24,7 @@
  *
  * $Id: SAML2MetaManager.java,v 1.18 2009/10/28 23:58:58 exu Exp $
  *
- * Portions Copyrighted 2010-2015 ForgeRock AS.
+ * Portions Copyrighted 2010-2016 ForgeRock AS.
  */
 
 package com.sun.identity.saml2.meta;
@@ -227,6 +227,60 @@ public class SAML2MetaManager {
         }
     }
 
+    /**
+     * Returns the indexed view of an entity's metadata under the realm. The
+     * view is built once for each change to the entity's metadata, and
+     * holds its endpoints, decoded keys and extended configuration
+     * attributes. A manager with a caller session checks that the caller
+     * may read the entity, then uses the cached metadata and index rather
+     * than parsing the metadata again.
+     * @param realm The realm under which the entity resides.
+     * @param entityId ID of the entity to be retrieved.
+     * @return <code>SAML2EntityIndex</code> for the entity or null if not
+     *         found.
+     * @throws SAML2MetaException if unable to retrieve the entity metadata.
+     */
+    public SAML2EntityIndex getEntityIndex(String realm, String entityId)
+        throws SAML2MetaException {
+        if (entityId == null) {
+            return null;
+        }
+        if (realm == null) {
+            realm = "/";
+        }
+        EntityDescriptorElement descriptor = null;
+        EntityConfigElement config = null;
+        if (callerSession != null && isEntityReadable(realm, entityId)) {
+            descriptor = SAML2MetaCache.getEntityDescriptor(realm, entityId);
+            config = SAML2MetaCache.getEntityConfig(realm, entityId);
+        }
+        if (descriptor == null) {
+            descriptor = getEntityDescriptor(realm, entityId);
+            if (descriptor == null) {
+                return null;
+            }
+        }
+        if (config == null) {
+            config = getEntityConfig(realm, entityId);
+        }
+        return SAML2MetaCache.getEntityIndex(realm, entityId, descriptor,
+            config);
+    }
+
+    /**
+     * Checks with the caller's permissions that the entity's configuration
+     * exists, without parsing its metadata.
+     */
+    private boolean isEntityReadable(String realm, String entityId)
+        throws SAML2MetaException {
+        try {
+            return configInst.getConfiguration(realm, entityId) != null;
+        } catch (ConfigurationException e) {
+            debug.error("SAML2MetaManager.isEntityReadable", e);
+            throw new SAML2MetaException(e);
+        }
+    }
+
     /**
      * Returns first service provider's SSO descriptor in an entity under the
      * realm.
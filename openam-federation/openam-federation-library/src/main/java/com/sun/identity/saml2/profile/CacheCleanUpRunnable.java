@@ -23,6 +23,8 @@
  * "Portions Copyrighted [year] [name of copyright owner]"
  *
  * $Id: CacheCleanUpRunnable.java,v 1.2 2008/11/10 22:57:03 veiming Exp $
+ *
+ * Portions Copyrighted 2016 ForgeRock AS.
  */
 
 
@@ -78,28 +80,31 @@ public class CacheCleanUpRunnable extends GeneralTaskRunnable {
             SAML2Utils.debug.message("CacheCleanUpRunnable.run:");
         }
 
-        synchronized(IDPCache.assertionCache) {
-            for(Iterator iter = IDPCache.assertionCache.keySet().iterator();
-                iter.hasNext(); ) {
+        SAML2Cache.purgeAll();
 
-                String userName = (String)iter.next();
-                List assertions = (List)IDPCache.assertionCache.get(userName);
-                if ((assertions == null) || (assertions.isEmpty())) {
-                    continue;
-                }
-                for(Iterator iterA = assertions.iterator(); iterA.hasNext();) {
-                    Assertion assertion = (Assertion)iterA.next();
+        for (String userName : IDPCache.assertionCache.keySet()) {
+            List<Assertion> assertions = IDPCache.assertionCache.get(userName);
+            if (assertions == null) {
+                continue;
+            }
+            synchronized (assertions) {
+                for (Iterator<Assertion> iterA = assertions.iterator(); iterA.hasNext();) {
+                    Assertion assertion = iterA.next();
                     if (!assertion.isTimeValid()) {
                         if (SAML2Utils.debug.messageEnabled()) {
                             SAML2Utils.debug.message(
                                 "CacheCleanUpRunnable.run: remove assertion." +
                                 "ID = " + assertion.getID() + ", userName = " +
                                 userName);
-			}
+                        }
                         iterA.remove();
                         IDPCache.assertionByIDCache.remove(assertion.getID());
                     }
                 }
+                if (assertions.isEmpty()) {
+                    // Assertions are only added while holding the list, so it can be dropped while still empty
+                    IDPCache.assertionCache.remove(userName, assertions);
+                }
             }
         }
 
@@ -24,14 +24,15 @@
  *
  * $Id: IDPCache.java,v 1.18 2009/05/14 17:23:45 exu Exp $
  *
- * Portions Copyrighted 2010-2015 ForgeRock AS.
+ * Portions Copyrighted 2010-2016 ForgeRock AS.
  */
 package com.sun.identity.saml2.profile;
 
-import com.sun.identity.common.PeriodicCleanUpMap;
+import com.sun.identity.saml2.assertion.Assertion;
 import java.util.Collections;
 import java.util.Hashtable;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -55,8 +56,8 @@ public class IDPCache {
      * TODO : handle the case when assertion effective time is different
      *        from cleanup interval
      */
-    public static PeriodicCleanUpMap authnRequestCache = new PeriodicCleanUpMap(
-        SPCache.interval * 1000, SPCache.interval * 1000); 
+    public static SAML2Cache<String, Object> authnRequestCache =
+        new SAML2Cache<>("IDPCache.authnRequestCache", SPCache.interval * 1000L, SPCache.maxEntries, false);
 
     /**
      * Cache saves the authn context objects before IDP redirects user to 
@@ -64,33 +65,32 @@ public class IDPCache {
      * Key : request ID String
      * Value : AuthnContext object
      */
-    public static PeriodicCleanUpMap idpAuthnContextCache = 
-        new PeriodicCleanUpMap(
-            SPCache.interval * 1000, SPCache.interval * 1000); 
+    public static SAML2Cache<String, Object> idpAuthnContextCache =
+        new SAML2Cache<>("IDPCache.idpAuthnContextCache", SPCache.interval * 1000L, SPCache.maxEntries, false);
 
     /**
      * Cache saves the assertion objects.
      * Key : user ID String
      * Value : list of assertion objects
      */
-    public static Hashtable assertionCache = new Hashtable();
+    public static SAML2Cache<String, List<Assertion>> assertionCache =
+        new SAML2Cache<>("IDPCache.assertionCache", 0, SPCache.maxEntries, true);
 
     /**
      * Cache saves the assertion objects.
      * Key : assertion ID String
      * Value : assertion object
      */
-    public static PeriodicCleanUpMap assertionByIDCache =
-        new PeriodicCleanUpMap(SPCache.interval * 1000,
-        SPCache.interval * 1000); 
+    public static SAML2Cache<String, Object> assertionByIDCache =
+        new SAML2Cache<>("IDPCache.assertionByIDCache", SPCache.interval * 1000L, SPCache.maxEntries, true);
 
     /**
      * Cache saves the relay state strings.
      * Key : request ID String
      * Value : relay state string
      */
-    public static PeriodicCleanUpMap relayStateCache = new PeriodicCleanUpMap(
-        SPCache.interval * 1000, SPCache.interval * 1000); 
+    public static SAML2Cache<String, Object> relayStateCache =
+        new SAML2Cache<>("IDPCache.relayStateCache", SPCache.interval * 1000L, SPCache.maxEntries, false);
 
     /**
      * Cache saves the idp sessions.
@@ -99,7 +99,8 @@ public class IDPCache {
      * IDP: used in SingleSignOnService and SingleLogoutService
      *      to invalidate a specific session
      */
-    public static Hashtable<String, IDPSession> idpSessionsByIndices = new Hashtable<String, IDPSession>();
+    public static SAML2Cache<String, IDPSession> idpSessionsByIndices =
+        new SAML2Cache<>("IDPCache.idpSessionsByIndices", 0, SPCache.maxEntries, true);
 
     /**
      * Cache saves Responses to be used by ArtifactResolutionService.
@@ -109,16 +110,16 @@ public class IDPCache {
      * TODO : handle the case when artifact expiration time is different
      *        from cleanup interval
      */
-    public static PeriodicCleanUpMap responsesByArtifacts = 
-       new PeriodicCleanUpMap(SPCache.interval * 1000, SPCache.interval * 1000);
+    public static SAML2Cache<String, Object> responsesByArtifacts =
+        new SAML2Cache<>("IDPCache.responsesByArtifacts", SPCache.interval * 1000L, SPCache.maxEntries, true);
 
     /**
      * Hashtable saves the MNI request info.
      * Key   :   requestID String
      * Value : ManageNameIDRequestInfo object
      */
-    public static PeriodicCleanUpMap mniRequestHash = new PeriodicCleanUpMap(
-        SPCache.interval * 1000, SPCache.interval * 1000);
+    public static SAML2Cache<String, Object> mniRequestHash =
+        new SAML2Cache<>("IDPCache.mniRequestHash", SPCache.interval * 1000L, SPCache.maxEntries, false);
 
     /**
      * Cache saves the idp attribute mapper.
@@ -168,8 +169,8 @@ public class IDPCache {
      * value --- Response Information List (ArrayList of size 9)
      * IDP: used in SingleSignOnService and ArtifactResolutionService
      */
-    public static PeriodicCleanUpMap responseCache = new PeriodicCleanUpMap(
-        SPCache.interval * 1000, SPCache.interval * 1000);
+    public static SAML2Cache<String, Object> responseCache =
+        new SAML2Cache<>("IDPCache.responseCache", SPCache.interval * 1000L, SPCache.maxEntries, false);
  
     /**
      * Cache saves informate needed to determine the Authentication
@@ -200,9 +201,8 @@ public class IDPCache {
       * key   : requestID (String) 
       * value : AuthnRequest 
       */ 
-    public static PeriodicCleanUpMap proxySPAuthnReqCache =
-         new PeriodicCleanUpMap(
-         SPCache.interval * 1000, SPCache.interval * 1000); 
+    public static SAML2Cache<String, Object> proxySPAuthnReqCache =
+        new SAML2Cache<>("IDPCache.proxySPAuthnReqCache", SPCache.interval * 1000L, SPCache.maxEntries, false);
 
     /** 
       * Cache saves the IDPSession per session ID.
@@ -223,18 +223,16 @@ public class IDPCache {
       * key   : requestID (String) 
       * value : LogoutRequest
       */
-    public static PeriodicCleanUpMap proxySPLogoutReqCache =
-        new PeriodicCleanUpMap(
-        SPCache.interval * 1000, SPCache.interval * 1000); 
+    public static SAML2Cache<String, Object> proxySPLogoutReqCache =
+        new SAML2Cache<>("IDPCache.proxySPLogoutReqCache", SPCache.interval * 1000L, SPCache.maxEntries, false);
     
     /** 
       * Cache saves the SOAPMessage created by proxy IDP to the original SP
       * key   : requestID (String) 
       * value : SOAPMessage
       */
-    public static PeriodicCleanUpMap SOAPMessageByLogoutRequestID =
-         new PeriodicCleanUpMap(
-         SPCache.interval * 1000, SPCache.interval * 1000); 
+    public static SAML2Cache<String, Object> SOAPMessageByLogoutRequestID =
+        new SAML2Cache<>("IDPCache.SOAPMessageByLogoutRequestID", SPCache.interval * 1000L, SPCache.maxEntries, false);
     
     /**
       * Cache saves the SAML2 Session Partner's providerID 
@@ -250,9 +248,8 @@ public class IDPCache {
       * value : Map keeping LogoutResponse, sending location, 
       *         spEntityID and idpEntityID. 
       */
-     public static PeriodicCleanUpMap logoutResponseCache =
-          new PeriodicCleanUpMap(
-          SPCache.interval * 1000, SPCache.interval * 1000); 
+     public static SAML2Cache<String, Object> logoutResponseCache =
+        new SAML2Cache<>("IDPCache.logoutResponseCache", SPCache.interval * 1000L, SPCache.maxEntries, false);
     /**
      * Hashtable saves AuthnContextClassRef to auth schems mapping
      * key  : hostEntityID + "|" + realmName
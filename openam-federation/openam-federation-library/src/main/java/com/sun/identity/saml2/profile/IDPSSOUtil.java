@@ -75,12 +75,13 @@ import com.sun.identity.saml2.jaxb.entityconfig.IDPSSOConfigElement;
 import com.sun.identity.saml2.jaxb.entityconfig.SPSSOConfigElement;
 import com.sun.identity.saml2.jaxb.metadata.AffiliationDescriptorType;
 import com.sun.identity.saml2.jaxb.metadata.ArtifactResolutionServiceElement;
-import com.sun.identity.saml2.jaxb.metadata.AssertionConsumerServiceElement;
+import com.sun.identity.saml2.jaxb.metadata.EndpointType;
 import com.sun.identity.saml2.jaxb.metadata.IDPSSODescriptorElement;
 import com.sun.identity.saml2.jaxb.metadata.SPSSODescriptorElement;
 import com.sun.identity.saml2.logging.LogUtil;
 import com.sun.identity.saml2.key.EncInfo;
 import com.sun.identity.saml2.key.KeyUtil;
+import com.sun.identity.saml2.meta.SAML2EntityIndex;
 import com.sun.identity.saml2.meta.SAML2MetaException;
 import com.sun.identity.saml2.meta.SAML2MetaManager;
 import com.sun.identity.saml2.meta.SAML2MetaUtils;
@@ -106,6 +107,7 @@ import com.sun.identity.saml2.plugins.SAML2IdentityProviderAdapter;
 import org.forgerock.openam.federation.saml2.SAML2TokenRepositoryException;
 import org.forgerock.openam.saml2.audit.SAML2EventLogger;
 import org.forgerock.openam.utils.ClientUtils;
+import org.forgerock.openam.utils.StringUtils;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -1078,18 +1080,23 @@ public class IDPSSOUtil {
 
             String cacheKey = userName.toLowerCase();
 
-            List assertions = (List) IDPCache.assertionCache.get(cacheKey);
-            if (assertions == null) {
-                synchronized (IDPCache.assertionCache) {
-                    assertions = (List) IDPCache.assertionCache.get(cacheKey);
+            boolean added = false;
+            while (!added) {
+                List<Assertion> assertions = IDPCache.assertionCache.get(cacheKey);
+                if (assertions == null) {
+                    List<Assertion> newAssertions = new ArrayList<Assertion>();
+                    assertions = IDPCache.assertionCache.putIfAbsent(cacheKey, newAssertions);
                     if (assertions == null) {
-                        assertions = new ArrayList();
-                        IDPCache.assertionCache.put(cacheKey, assertions);
+                        assertions = newAssertions;
+                    }
+                }
+                synchronized (assertions) {
+                    // The clean up drops lists once empty, so only add to the list while it is still cached
+                    if (IDPCache.assertionCache.get(cacheKey) == assertions) {
+                        assertions.add(assertion);
+                        added = true;
                     }
                 }
-            }
-            synchronized (assertions) {
-                assertions.add(assertion);
             }
 
             IDPCache.assertionByIDCache.put(assertionID, assertion);
@@ -1822,35 +1829,20 @@ public class IDPSSOUtil {
             String realm,
             StringBuffer returnedBinding) throws SAML2Exception {
         String classMethod = "IDPSSOUtil.getDefaultACSurl: ";
-        SPSSODescriptorElement spSSODescriptorElement = getSPSSODescriptor(
+        SAML2EntityIndex.Endpoints acsEndpoints = getAssertionConsumerServices(
                 realm, spEntityID, classMethod);
-        List acsList = spSSODescriptorElement.getAssertionConsumerService();
-        AssertionConsumerServiceElement acs = null;
-        String acsURL = null;
-        String binding = null;
-        String firstAcsURL = null;
-        String firstBinding = null;
-        for (int i = 0; i < acsList.size(); i++) {
-            acs = (AssertionConsumerServiceElement) acsList.get(i);
-            if (acs.isIsDefault()) {
-                acsURL = acs.getLocation();
-                binding = acs.getBinding();
-            }
-            if (i == 0) {
-                firstAcsURL = acs.getLocation();
-                firstBinding = acs.getBinding();
-            }
+        EndpointType acs = acsEndpoints.getDefault();
+        if (acs == null || acs.getLocation() == null) {
+            acs = acsEndpoints.getFirst();
         }
-
-        if (acsURL == null) {
-            acsURL = firstAcsURL;
-            binding = firstBinding;
+        if (acs == null) {
+            return null;
         }
 
-        if (binding != null) {
-            returnedBinding.append(binding);
+        if (acs.getBinding() != null) {
+            returnedBinding.append(acs.getBinding());
         }
-        return acsURL;
+        return acs.getLocation();
     }
 
     /**
@@ -1867,19 +1859,7 @@ public class IDPSSOUtil {
             String realm,
             String acsURL) throws SAML2Exception {
         String classMethod = "IDPSSOUtil.getBindingForAcsUrl: ";
-        SPSSODescriptorElement spSSODescriptorElement = getSPSSODescriptor(
-                realm, spEntityID, classMethod);
-        List acsList = spSSODescriptorElement.getAssertionConsumerService();
-        AssertionConsumerServiceElement acs = null;
-        String binding = null;
-        for (int i = 0; i < acsList.size(); i++) {
-            acs = (AssertionConsumerServiceElement) acsList.get(i);
-            String location = acs.getLocation();
-            if (location != null && location.equals(acsURL)) {
-                return acs.getBinding();
-            }
-        }
-        return null;
+        return getAssertionConsumerServices(realm, spEntityID, classMethod).getBinding(acsURL);
     }
 
     /**
@@ -1902,52 +1882,23 @@ public class IDPSSOUtil {
             throws SAML2Exception {
 
         String classMethod = "IDPSSOUtil.getACSurlFromMetaByBinding: ";
-        SPSSODescriptorElement spSSODescriptorElement = getSPSSODescriptor(
+        SAML2EntityIndex.Endpoints acsEndpoints = getAssertionConsumerServices(
                 realm, spEntityID, classMethod);
-        List acsList = spSSODescriptorElement.getAssertionConsumerService();
-        String acsURL = null;
-        String binding = null;
-        String defaultAcsURL = null;
-        String defaultBinding = null;
-        String firstAcsURL = null;
-        String firstBinding = null;
-        AssertionConsumerServiceElement acs = null;
-        for (int i = 0; i < acsList.size(); i++) {
-            acs = (AssertionConsumerServiceElement) acsList.get(i);
-
-            binding = acs.getBinding();
-            if (binding.equals(desiredBinding)) {
-                acsURL = acs.getLocation();
-                break;
-            }
-            if (acs.isIsDefault()) {
-                defaultAcsURL = acs.getLocation();
-                defaultBinding = acs.getBinding();
-            }
-            if (i == 0) {
-                firstAcsURL = acs.getLocation();
-                firstBinding = acs.getBinding();
-            }
-        }
-        if (acsURL == null || acsURL.length() == 0) {
-            acsURL = defaultAcsURL;
-            if (acsURL == null || acsURL.length() == 0) {
-                acsURL = firstAcsURL;
-                if (acsURL == null || acsURL.length() == 0) {
-                    acsURL = null;
+        EndpointType acs = acsEndpoints.getByBinding(desiredBinding);
+        if (acs == null || StringUtils.isEmpty(acs.getLocation())) {
+            acs = acsEndpoints.getDefault();
+            if (acs == null || StringUtils.isEmpty(acs.getLocation())) {
+                acs = acsEndpoints.getFirst();
+                if (acs == null || StringUtils.isEmpty(acs.getLocation())) {
                     SAML2Utils.debug.error(classMethod +
                             "Unable to get valid Assertion " +
                             "Consumer Service URL");
                     return null;
                 }
-                returnedBinding.append(firstBinding);
-            } else {
-                returnedBinding.append(defaultBinding);
             }
-        } else {
-            returnedBinding.append(binding);
         }
-        return acsURL;
+        returnedBinding.append(acs.getBinding());
+        return acs.getLocation();
     }
 
 
@@ -1971,56 +1922,23 @@ public class IDPSSOUtil {
             throws SAML2Exception {
 
         String classMethod = "IDPSSOUtil.getACSurlFromMetaByIndex: ";
-
-        SPSSODescriptorElement spSSODescriptorElement = getSPSSODescriptor(
+        SAML2EntityIndex.Endpoints acsEndpoints = getAssertionConsumerServices(
                 realm, spEntityID, classMethod);
-        List acsList = spSSODescriptorElement.getAssertionConsumerService();
-        int index;
-        String acsURL = null;
-        String binding = null;
-        String defaultAcsURL = null;
-        String defaultBinding = null;
-        String firstAcsURL = null;
-        String firstBinding = null;
-        AssertionConsumerServiceElement acs = null;
-        for (int i = 0; i < acsList.size(); i++) {
-            acs = (AssertionConsumerServiceElement) acsList.get(i);
-
-            index = acs.getIndex();
-            binding = acs.getBinding();
-            if (index == acsIndex) {
-                acsURL = acs.getLocation();
-                binding = acs.getBinding();
-                break;
-            }
-            if (acs.isIsDefault()) {
-                defaultAcsURL = acs.getLocation();
-                defaultBinding = acs.getBinding();
-            }
-            if (i == 0) {
-                firstAcsURL = acs.getLocation();
-                firstBinding = acs.getBinding();
-            }
-        }
-        if (acsURL == null || acsURL.length() == 0) {
-            acsURL = defaultAcsURL;
-            if (acsURL == null || acsURL.length() == 0) {
-                acsURL = firstAcsURL;
-                if (acsURL == null || acsURL.length() == 0) {
-                    acsURL = null;
+        EndpointType acs = acsEndpoints.getByIndex(acsIndex);
+        if (acs == null || StringUtils.isEmpty(acs.getLocation())) {
+            acs = acsEndpoints.getDefault();
+            if (acs == null || StringUtils.isEmpty(acs.getLocation())) {
+                acs = acsEndpoints.getFirst();
+                if (acs == null || StringUtils.isEmpty(acs.getLocation())) {
                     SAML2Utils.debug.error(classMethod +
                             "Unable to get valid Assertion " +
                             "Consumer Service URL");
                     return null;
                 }
-                returnedBinding.append(firstBinding);
-            } else {
-                returnedBinding.append(defaultBinding);
             }
-        } else {
-            returnedBinding.append(binding);
         }
-        return acsURL;
+        returnedBinding.append(acs.getBinding());
+        return acs.getLocation();
     }
 
     /**
@@ -2554,11 +2472,8 @@ public class IDPSSOUtil {
             }
             return;
         }
-        SPSSODescriptorElement spSSODescriptorElement = getSPSSODescriptor(
-                realm, spEntityID, classMethod);
-        // get the encryption information
-        EncInfo encInfo = KeyUtil.getEncInfo(spSSODescriptorElement,
-                spEntityID, SAML2Constants.SP_ROLE);
+        // get the encryption information, decoded once for each change to the SP metadata
+        EncInfo encInfo = getSPIndex(realm, spEntityID, classMethod).getEncInfo();
         if (encInfo == null) {
             SAML2Utils.debug.error(classMethod +
                     "failed to get service provider encryption key info.");
@@ -2946,25 +2861,13 @@ public class IDPSSOUtil {
                                                      String spEntityID, String realm)
             throws SAML2Exception {
 
-        boolean isValidACSurl = false;
         String classMethod = "IDPSSOUtil.isACSurlValidInMetadataSP: ";
-        SPSSODescriptorElement spSSODescriptorElement = getSPSSODescriptor(
-                realm, spEntityID, classMethod);
-
-        List acsList = spSSODescriptorElement.getAssertionConsumerService();
-        AssertionConsumerServiceElement acs = null;
-
-        for (int i = 0; i < acsList.size(); i++) {
-            acs = (AssertionConsumerServiceElement) acsList.get(i);
-            String acsInMeta = acs.getLocation();
-            if (acsInMeta.equalsIgnoreCase(acsURL)) {
-                isValidACSurl = true;
-                SAML2Utils.debug.message(classMethod + " acsURL=" + acsURL +
-                        "Found in the metadata");
-                break;
-            }
+        boolean isValidACSurl = getAssertionConsumerServices(realm, spEntityID, classMethod)
+                .containsLocationIgnoringCase(acsURL);
+        if (isValidACSurl) {
+            SAML2Utils.debug.message(classMethod + " acsURL=" + acsURL +
+                    "Found in the metadata");
         }
-
         return isValidACSurl;
     }
     
@@ -3021,6 +2924,36 @@ public class IDPSSOUtil {
         return spSSODescriptor;
     }
 
+    private static SAML2EntityIndex.Role getSPIndex(String realm, String spEntityID, String classMethod)
+            throws SAML2Exception {
+
+        if (metaManager == null) {
+            SAML2Utils.debug.error(classMethod + "Unable to get meta manager.");
+            throw new SAML2Exception(SAML2Utils.bundle.getString("errorMetaManager"));
+        }
+        SAML2EntityIndex.Role spIndex = null;
+        try {
+            SAML2EntityIndex index = metaManager.getEntityIndex(realm, spEntityID);
+            if (index != null) {
+                spIndex = index.getRole(SAML2Constants.SP_ROLE);
+            }
+        } catch (SAML2MetaException sme) {
+            SAML2Utils.debug.error(classMethod + "Unable to get SP SSO Descriptor from metadata.", sme);
+        }
+        if (spIndex == null || spIndex.getDescriptor() == null) {
+            SAML2Utils.debug.error(classMethod + "Unable to get SP SSO Descriptor from metadata, descriptor is null.");
+            String[] data = { spEntityID };
+            LogUtil.error(Level.INFO, LogUtil.SP_METADATA_ERROR, data, null);
+            throw new SAML2Exception(SAML2Utils.bundle.getString("metaDataError"));
+        }
+        return spIndex;
+    }
+
+    private static SAML2EntityIndex.Endpoints getAssertionConsumerServices(String realm, String spEntityID,
+            String classMethod) throws SAML2Exception {
+        return getSPIndex(realm, spEntityID, classMethod).getEndpoints(SAML2EntityIndex.ASSERTION_CONSUMER_SERVICE);
+    }
+
     /**
      * Check that the authenticated session belongs to the same realm where the IDP is defined.
      *
@@ -0,0 +1,367 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.saml2.profile;
+
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.identity.saml2.common.SAML2FailoverUtils;
+
+/**
+ * A concurrent cache of SAML2 protocol state, bounded by the age and the number of its entries.
+ * <p>
+ * Entries older than the maximum age are not returned, and are removed by {@link #purge()}, which
+ * {@link CacheCleanUpRunnable} calls periodically. Once the cache holds more than the maximum number of entries, the
+ * oldest are evicted. A cache of entries that SAML2 failover also saves to the SAML2 token repository is marked as
+ * failover backed: its entries are only evicted for size when failover is enabled, as its users then read evicted
+ * entries back from the repository, and are otherwise kept so that no SAML2 flow in progress is lost.
+ * <p>
+ * Unlike a {@code Hashtable}, the cache accepts {@code null} values; {@code null} keys are ignored.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class SAML2Cache<K, V> {
+
+    /** Rough size, in bytes, of the map and queue nodes and the entry held for each key. */
+    private static final long ENTRY_OVERHEAD = 128;
+    /** Rough size, in bytes, of a value whose size is not otherwise estimated. */
+    private static final long DEFAULT_VALUE_SIZE = 512;
+
+    private static final List<SAML2Cache<?, ?>> CACHES = new CopyOnWriteArrayList<>();
+
+    private final String name;
+    private final long maxAge;
+    private final int maxEntries;
+    private final boolean failoverBacked;
+    private final ConcurrentHashMap<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    /** Entries in the order they were put, including entries since removed or replaced. */
+    private final ConcurrentLinkedQueue<Entry<K, V>> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * Constructs a new SAML2Cache, and adds it to the caches purged by {@link CacheCleanUpRunnable}.
+     *
+     * @param name The name of the cache, as shown in monitoring.
+     * @param maxAge The time, in milliseconds, entries are held for; zero or less to hold them until removed.
+     * @param maxEntries The number of entries held before the oldest are evicted; zero or less for no limit.
+     * @param failoverBacked Whether SAML2 failover saves the entries to the SAML2 token repository.
+     */
+    public SAML2Cache(String name, long maxAge, int maxEntries, boolean failoverBacked) {
+        this.name = name;
+        this.maxAge = maxAge;
+        this.maxEntries = maxEntries;
+        this.failoverBacked = failoverBacked;
+        CACHES.add(this);
+    }
+
+    /**
+     * Returns all of the SAML2 caches that have been constructed.
+     *
+     * @return The caches.
+     */
+    public static List<SAML2Cache<?, ?>> getCaches() {
+        return Collections.unmodifiableList(CACHES);
+    }
+
+    /**
+     * Purges all of the SAML2 caches of their expired entries.
+     */
+    static void purgeAll() {
+        for (SAML2Cache<?, ?> cache : CACHES) {
+            cache.purge();
+        }
+    }
+
+    /**
+     * Returns the value held for the key.
+     *
+     * @param key The key.
+     * @return The value, or {@code null} if none is held or it has expired.
+     */
+    public V get(Object key) {
+        Entry<K, V> entry = getEntry(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Checks whether a value is held for the key.
+     *
+     * @param key The key.
+     * @return Whether a value that has not expired is held.
+     */
+    public boolean containsKey(Object key) {
+        return getEntry(key) != null;
+    }
+
+    /**
+     * Holds a value for the key, replacing any value held for it.
+     *
+     * @param key The key.
+     * @param value The value.
+     * @return The value previously held for the key, or {@code null}.
+     */
+    public V put(K key, V value) {
+        if (key == null) {
+            return null;
+        }
+        Entry<K, V> entry = new Entry<>(key, value, currentTimeMillis());
+        Entry<K, V> previous = entries.put(key, entry);
+        added(entry);
+        return previous == null ? null : previous.value;
+    }
+
+    /**
+     * Holds a value for the key, unless one is already held.
+     *
+     * @param key The key.
+     * @param value The value.
+     * @return The value already held for the key, or {@code null} if the given value is now held.
+     */
+    public V putIfAbsent(K key, V value) {
+        if (key == null) {
+            return null;
+        }
+        long now = currentTimeMillis();
+        Entry<K, V> entry = new Entry<>(key, value, now);
+        while (true) {
+            Entry<K, V> existing = entries.putIfAbsent(key, entry);
+            if (existing == null) {
+                added(entry);
+                return null;
+            }
+            if (!existing.isExpired(now, maxAge)) {
+                return existing.value;
+            }
+            if (entries.remove(key, existing)) {
+                expirations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes the value held for the key.
+     *
+     * @param key The key.
+     * @return The value that was held, or {@code null}.
+     */
+    public V remove(Object key) {
+        if (key == null) {
+            return null;
+        }
+        Entry<K, V> entry = entries.remove(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Removes the key, if it is held for the given value.
+     *
+     * @param key The key.
+     * @param value The value.
+     * @return Whether the key was removed.
+     */
+    public boolean remove(Object key, Object value) {
+        if (key == null) {
+            return false;
+        }
+        Entry<K, V> entry = entries.get(key);
+        return entry != null && entry.value == value && entries.remove(key, entry);
+    }
+
+    /**
+     * Removes all of the entries.
+     */
+    public void clear() {
+        entries.clear();
+        insertionOrder.clear();
+        queued.set(0);
+    }
+
+    /**
+     * Returns the number of entries held, which may include expired entries that have not yet been purged.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Checks whether no entries are held.
+     *
+     * @return Whether the cache is empty.
+     */
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Returns a weakly consistent, unmodifiable view of the keys held.
+     *
+     * @return The keys.
+     */
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Returns a weakly consistent enumeration of the keys held.
+     *
+     * @return The keys.
+     */
+    public Enumeration<K> keys() {
+        return entries.keys();
+    }
+
+    /**
+     * Removes the entries which have expired, and forgets the order of entries since removed.
+     */
+    public void purge() {
+        long now = currentTimeMillis();
+        for (Iterator<Entry<K, V>> iterator = insertionOrder.iterator(); iterator.hasNext();) {
+            Entry<K, V> entry = iterator.next();
+            if (entries.get(entry.key) != entry) {
+                // Removed or replaced since it was put
+                iterator.remove();
+                queued.decrementAndGet();
+            } else if (entry.isExpired(now, maxAge)) {
+                iterator.remove();
+                queued.decrementAndGet();
+                if (entries.remove(entry.key, entry)) {
+                    expirations.incrementAndGet();
+                }
+            } else if (maxAge > 0 && queued.get() <= 2 * entries.size()) {
+                // Later entries were put later, so have not expired either
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return The name of the cache.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The number of entries evicted because the cache was full.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return The number of entries removed because they had expired.
+     */
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    /**
+     * Estimates the memory, in bytes, held by the entries of the cache. Strings are estimated from their length and
+     * collections from their size; other values are given a fixed size, so the estimate is only a rough guide.
+     *
+     * @return The estimated memory.
+     */
+    public long estimateMemory() {
+        long total = 0;
+        for (Entry<K, V> entry : entries.values()) {
+            total += ENTRY_OVERHEAD + estimateSize(entry.key) + estimateSize(entry.value);
+        }
+        return total;
+    }
+
+    private static long estimateSize(Object object) {
+        if (object == null) {
+            return 0;
+        } else if (object instanceof String) {
+            return 40 + 2L * ((String) object).length();
+        } else if (object instanceof Collection) {
+            return 64 + DEFAULT_VALUE_SIZE * ((Collection<?>) object).size();
+        }
+        return DEFAULT_VALUE_SIZE;
+    }
+
+    private Entry<K, V> getEntry(Object key) {
+        if (key == null) {
+            return null;
+        }
+        Entry<K, V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(currentTimeMillis(), maxAge)) {
+            if (entries.remove(key, entry)) {
+                expirations.incrementAndGet();
+            }
+            return null;
+        }
+        return entry;
+    }
+
+    private void added(Entry<K, V> entry) {
+        insertionOrder.add(entry);
+        queued.incrementAndGet();
+        if (maxEntries > 0 && entries.size() > maxEntries && mayEvict()) {
+            evictOldest();
+        }
+    }
+
+    private boolean mayEvict() {
+        return !failoverBacked || SAML2FailoverUtils.isSAML2FailoverEnabled();
+    }
+
+    private void evictOldest() {
+        Entry<K, V> oldest;
+        while (entries.size() > maxEntries && (oldest = insertionOrder.poll()) != null) {
+            queued.decrementAndGet();
+            if (entries.remove(oldest.key, oldest)) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class Entry<K, V> {
+
+        private final K key;
+        private final V value;
+        private final long created;
+
+        private Entry(K key, V value, long created) {
+            this.key = key;
+            this.value = value;
+            this.created = created;
+        }
+
+        private boolean isExpired(long now, long maxAge) {
+            return maxAge > 0 && now - created >= maxAge;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.saml2.profile;
+
+import com.sun.identity.shared.stats.Stats;
+import com.sun.identity.shared.stats.StatsListener;
+
+/**
+ * Prints the number of entries, the estimated memory and the evictions of each {@link SAML2Cache} to the
+ * {@value #STATS_NAME} stats file.
+ */
+public class SAML2CacheStats implements StatsListener {
+
+    /** The name of the stats file. */
+    public static final String STATS_NAME = "amSAML2Cache";
+
+    /**
+     * Adds the statistics as a listener of the stats service, if it is enabled.
+     */
+    static void register() {
+        Stats stats = Stats.getInstance(STATS_NAME);
+        if (stats.isEnabled()) {
+            stats.addStatsListener(new SAML2CacheStats());
+        }
+    }
+
+    @Override
+    public void printStats() {
+        StringBuilder buffer = new StringBuilder("SAML2 Cache Statistics\n--------------------");
+        for (SAML2Cache<?, ?> cache : SAML2Cache.getCaches()) {
+            buffer.append("\n").append(cache.getName())
+                    .append(": entries ").append(cache.size())
+                    .append(", estimated memory ").append(cache.estimateMemory())
+                    .append(" bytes, evicted ").append(cache.getEvictionCount())
+                    .append(", expired ").append(cache.getExpirationCount());
+        }
+        Stats.getInstance(STATS_NAME).record(buffer.toString());
+    }
+}
@@ -24,7 +24,7 @@
  *
  * $Id: SPCache.java,v 1.17 2009/06/09 20:28:32 exu Exp $
  *
- * Portions Copyrighted 2015 ForgeRock AS.
+ * Portions Copyrighted 2015-2016 ForgeRock AS.
  */
 
 
@@ -32,7 +32,6 @@ package com.sun.identity.saml2.profile;
 
 import java.util.Hashtable;
 
-import com.sun.identity.common.PeriodicCleanUpMap;
 import com.sun.identity.saml2.common.SAML2Constants;
 import com.sun.identity.saml2.common.SAML2Utils;
 import com.sun.identity.shared.configuration.SystemPropertiesManager;
@@ -45,9 +44,22 @@ import com.sun.identity.shared.configuration.SystemPropertiesManager;
 public class SPCache {
 
     public static int interval = SAML2Constants.CACHE_CLEANUP_INTERVAL_DEFAULT;
+    public static int maxEntries = SAML2Constants.CACHE_MAX_ENTRIES_DEFAULT;
     public static boolean isFedlet = false; 
     
     static {
+        String maxEntriesStr = SystemPropertiesManager.get(
+            SAML2Constants.CACHE_MAX_ENTRIES);
+        try {
+            if (maxEntriesStr != null && maxEntriesStr.length() != 0) {
+                maxEntries = Integer.parseInt(maxEntriesStr);
+            }
+        } catch (NumberFormatException e) {
+            if (SAML2Utils.debug.messageEnabled()) {
+                SAML2Utils.debug.message("SPCache.constructor: "
+                    + "invalid maximum cache entries. Using default.");
+            }
+        }
         String intervalStr = SystemPropertiesManager.get(
             SAML2Constants.CACHE_CLEANUP_INTERVAL);
         try {
@@ -84,40 +96,40 @@ public class SPCache {
      * Key   :   A unique key String value
      * Value : AuthnRequest object
      */
-    final public static PeriodicCleanUpMap authnRequestHash = new PeriodicCleanUpMap(
-            interval * 1000, interval * 1000);
+    final public static SAML2Cache<String, Object> authnRequestHash =
+        new SAML2Cache<>("SPCache.authnRequestHash", interval * 1000L, maxEntries, false);
 
     /**
      * Map saves data on whether the account was federated.
      * Key   :   A unique key String value
      * Value : String representing boolean val
      */
-    final public static PeriodicCleanUpMap fedAccountHash = new PeriodicCleanUpMap(
-            interval * 1000, interval * 1000);
+    final public static SAML2Cache<String, Object> fedAccountHash =
+        new SAML2Cache<>("SPCache.fedAccountHash", interval * 1000L, maxEntries, false);
 
     /**
      * Map saves the request info.
      * Key   :   requestID String
      * Value : AuthnRequestInfo object
      */
-    final public static PeriodicCleanUpMap requestHash = new PeriodicCleanUpMap(
-        interval * 1000, interval * 1000); 
+    final public static SAML2Cache<String, Object> requestHash =
+        new SAML2Cache<>("SPCache.requestHash", interval * 1000L, maxEntries, true);
 
     /**
      * Map saves the MNI request info.
      * Key   :   requestID String
      * Value : ManageNameIDRequestInfo object
      */
-    final protected static PeriodicCleanUpMap mniRequestHash = new PeriodicCleanUpMap(
-        interval * 1000, interval * 1000);
+    final protected static SAML2Cache<String, Object> mniRequestHash =
+        new SAML2Cache<>("SPCache.mniRequestHash", interval * 1000L, maxEntries, false);
 
     /**
      * Map to save the relayState URL.
      * Key  : a String the relayStateID 
      * Value: a String the RelayState Value 
      */
-    final public static PeriodicCleanUpMap relayStateHash= new PeriodicCleanUpMap(
-        interval * 1000, interval * 1000);
+    final public static SAML2Cache<String, Object> relayStateHash =
+        new SAML2Cache<>("SPCache.relayStateHash", interval * 1000L, maxEntries, true);
 
     /**
      * Hashtable stores information required for LogoutRequest consumption.
@@ -135,16 +147,16 @@ public class SPCache {
      * key : request ID (String)
      * value : original logout request object  (LogotRequest)
      */
-    final public static PeriodicCleanUpMap logoutRequestIDHash =
-        new PeriodicCleanUpMap(interval * 1000, interval * 1000);
+    final public static SAML2Cache<String, Object> logoutRequestIDHash =
+        new SAML2Cache<>("SPCache.logoutRequestIDHash", interval * 1000L, maxEntries, false);
 
     /**
      * Map saves response info for local auth.
      * Key: requestID String
      * Value: ResponseInfo object
      */
-    final protected static PeriodicCleanUpMap responseHash = new PeriodicCleanUpMap(
-        interval * 1000, interval * 1000);
+    final protected static SAML2Cache<String, Object> responseHash =
+        new SAML2Cache<>("SPCache.responseHash", interval * 1000L, maxEntries, false);
 
     /**
      * Hashtable saves AuthnContext Mapper object.
@@ -167,8 +179,8 @@ public class SPCache {
      * Key: requestID a String
      * Value : Request Parameters Map , a Map
      */
-    final public static PeriodicCleanUpMap reqParamHash = new PeriodicCleanUpMap(
-        SPCache.interval * 1000, SPCache.interval * 1000);
+    final public static SAML2Cache<String, Object> reqParamHash =
+        new SAML2Cache<>("SPCache.reqParamHash", interval * 1000L, maxEntries, false);
 
 
     /**
@@ -206,9 +218,8 @@ public class SPCache {
      * Key : assertion ID String
      * Value : Constant  
      */
-    final public static PeriodicCleanUpMap assertionByIDCache =
-        new PeriodicCleanUpMap(interval * 1000,
-        interval * 1000);
+    final public static SAML2Cache<String, Object> assertionByIDCache =
+        new SAML2Cache<>("SPCache.assertionByIDCache", interval * 1000L, maxEntries, true);
     
     /**
      * Clears the auth context object hash table.
@@ -470,15 +470,11 @@ public class UtilProxySAMLAuthenticator extends SAMLBase implements SAMLAuthenti
 
         // save the AuthnRequest in the IDPCache so that it can be
         // retrieved later when the user successfully authenticates
-        synchronized (IDPCache.authnRequestCache) {
-            IDPCache.authnRequestCache.put(data.getRequestID(), new CacheObject(data.getAuthnRequest()));
-        }
+        IDPCache.authnRequestCache.put(data.getRequestID(), new CacheObject(data.getAuthnRequest()));
 
         // save the AuthnContext in the IDPCache so that it can be
         // retrieved later when the user successfully authenticates
-        synchronized (IDPCache.idpAuthnContextCache) {
-            IDPCache.idpAuthnContextCache.put(data.getRequestID(), new CacheObject(data.getMatchingAuthnContext()));
-        }
+        IDPCache.idpAuthnContextCache.put(data.getRequestID(), new CacheObject(data.getMatchingAuthnContext()));
 
         // save the relay state in the IDPCache so that it can be
         // retrieved later when the user successfully authenticates
@@ -517,15 +513,11 @@ public class UtilProxySAMLAuthenticator extends SAMLBase implements SAMLAuthenti
 
         // save the AuthnRequest in the IDPCache so that it can be
         // retrieved later when the user successfully authenticates
-        synchronized (IDPCache.authnRequestCache) {
-            IDPCache.authnRequestCache.put(data.getRequestID(), new CacheObject(data.getAuthnRequest()));
-        }
+        IDPCache.authnRequestCache.put(data.getRequestID(), new CacheObject(data.getAuthnRequest()));
 
         // save the AuthnContext in the IDPCache so that it can be
         // retrieved later when the user successfully authenticates
-        synchronized (IDPCache.idpAuthnContextCache) {
-            IDPCache.idpAuthnContextCache.put(data.getRequestID(), new CacheObject(data.getMatchingAuthnContext()));
-        }
+        IDPCache.idpAuthnContextCache.put(data.getRequestID(), new CacheObject(data.getMatchingAuthnContext()));
 
         // save the relay state in the IDPCache so that it can be
         // retrieved later when the user successfully authenticates
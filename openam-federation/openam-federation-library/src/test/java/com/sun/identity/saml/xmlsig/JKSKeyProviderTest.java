@@ -0,0 +1,117 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.saml.xmlsig;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+
+import org.forgerock.openam.utils.AMKeyProvider;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class JKSKeyProviderTest {
+
+    private static final String ALIAS = "test";
+
+    private AMKeyProvider amKeyProvider;
+    private JKSKeyProvider keyProvider;
+
+    @BeforeMethod
+    public void setup() {
+        amKeyProvider = mock(AMKeyProvider.class);
+        keyProvider = new JKSKeyProvider(amKeyProvider);
+    }
+
+    @Test
+    public void shouldRecoverPrivateKeyOnce() {
+        // Given
+        PrivateKey key = mock(PrivateKey.class);
+        when(amKeyProvider.getPrivateKey(ALIAS)).thenReturn(key);
+
+        // When
+        keyProvider.getPrivateKey(ALIAS);
+        PrivateKey result = keyProvider.getPrivateKey(ALIAS);
+
+        // Then
+        assertThat(result).isSameAs(key);
+        verify(amKeyProvider, times(1)).getPrivateKey(ALIAS);
+    }
+
+    @Test
+    public void shouldRecoverPrivateKeyAgainWhenKeyPasswordIsSet() {
+        // Given
+        when(amKeyProvider.getPrivateKey(ALIAS)).thenReturn(mock(PrivateKey.class));
+        keyProvider.getPrivateKey(ALIAS);
+
+        // When
+        keyProvider.setKey("storepass", "keypass");
+        keyProvider.getPrivateKey(ALIAS);
+
+        // Then
+        verify(amKeyProvider, times(2)).getPrivateKey(ALIAS);
+    }
+
+    @Test
+    public void shouldNotCacheMissingPrivateKey() {
+        // When
+        keyProvider.getPrivateKey(ALIAS);
+        keyProvider.getPrivateKey(ALIAS);
+
+        // Then
+        verify(amKeyProvider, times(2)).getPrivateKey(ALIAS);
+    }
+
+    @Test
+    public void shouldCachePrivateKeyPerKeyPassword() {
+        // Given
+        PrivateKey key = mock(PrivateKey.class);
+        when(amKeyProvider.getPrivateKey(ALIAS, "pass1")).thenReturn(key);
+        when(amKeyProvider.getPrivateKey(ALIAS, "pass2")).thenReturn(mock(PrivateKey.class));
+
+        // When
+        keyProvider.getPrivateKey(ALIAS, "pass1");
+        PrivateKey result = keyProvider.getPrivateKey(ALIAS, "pass1");
+        PrivateKey other = keyProvider.getPrivateKey(ALIAS, "pass2");
+
+        // Then
+        assertThat(result).isSameAs(key);
+        assertThat(other).isNotSameAs(key);
+        verify(amKeyProvider, times(1)).getPrivateKey(ALIAS, "pass1");
+    }
+
+    @Test
+    public void shouldLookUpCertificateAliasAgainWhenCertificatesChange() throws Exception {
+        // Given
+        Certificate certificate = mock(Certificate.class);
+        when(amKeyProvider.getCertificateAlias(certificate)).thenReturn(ALIAS);
+        keyProvider.getCertificateAlias(certificate);
+        String cached = keyProvider.getCertificateAlias(certificate);
+
+        // When
+        keyProvider.setCertificateEntry("other", mock(Certificate.class));
+        keyProvider.getCertificateAlias(certificate);
+
+        // Then
+        assertThat(cached).isEqualTo(ALIAS);
+        verify(amKeyProvider, times(2)).getCertificateAlias(certificate);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.saml2.meta;
+
+import static java.util.Arrays.asList;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.util.Collections;
+
+import com.sun.identity.saml2.common.SAML2Constants;
+import com.sun.identity.saml2.jaxb.entityconfig.AttributeType;
+import com.sun.identity.saml2.jaxb.entityconfig.EntityConfigElement;
+import com.sun.identity.saml2.jaxb.entityconfig.SPSSOConfigElement;
+import com.sun.identity.saml2.jaxb.metadata.AssertionConsumerServiceElement;
+import com.sun.identity.saml2.jaxb.metadata.EntityDescriptorElement;
+import com.sun.identity.saml2.jaxb.metadata.SPSSODescriptorElement;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SAML2EntityIndexTest {
+
+    private static final String POST = SAML2Constants.HTTP_POST;
+    private static final String ARTIFACT = SAML2Constants.HTTP_ARTIFACT;
+
+    private AssertionConsumerServiceElement postAcs;
+    private AssertionConsumerServiceElement artifactAcs;
+    private AssertionConsumerServiceElement secondPostAcs;
+    private EntityDescriptorElement descriptor;
+    private EntityConfigElement config;
+
+    @BeforeMethod
+    public void setup() {
+        postAcs = acs(POST, "https://sp.example.com/post", 0, false);
+        artifactAcs = acs(ARTIFACT, "https://sp.example.com/artifact", 1, true);
+        secondPostAcs = acs(POST, "https://sp.example.com/post2", 2, false);
+
+        SPSSODescriptorElement spDescriptor = mock(SPSSODescriptorElement.class);
+        given(spDescriptor.getAssertionConsumerService()).willReturn(asList(postAcs, artifactAcs, secondPostAcs));
+        given(spDescriptor.getKeyDescriptor()).willReturn(Collections.emptyList());
+        descriptor = mock(EntityDescriptorElement.class);
+        given(descriptor.getRoleDescriptorOrIDPSSODescriptorOrSPSSODescriptor()).willReturn(asList(spDescriptor));
+
+        AttributeType attribute = mock(AttributeType.class);
+        given(attribute.getName()).willReturn(SAML2Constants.SP_ACCOUNT_MAPPER);
+        given(attribute.getValue()).willReturn(asList("com.example.Mapper"));
+        SPSSOConfigElement spConfig = mock(SPSSOConfigElement.class);
+        given(spConfig.getAttribute()).willReturn(asList(attribute));
+        config = mock(EntityConfigElement.class);
+        given(config.getIDPSSOConfigOrSPSSOConfigOrAuthnAuthorityConfig()).willReturn(asList(spConfig));
+    }
+
+    @Test
+    public void shouldIndexEndpointsByBindingAndIndex() {
+        // When
+        SAML2EntityIndex.Endpoints endpoints = SAML2EntityIndex.build(descriptor, config)
+                .getRole(SAML2Constants.SP_ROLE).getEndpoints(SAML2EntityIndex.ASSERTION_CONSUMER_SERVICE);
+
+        // Then
+        assertThat(endpoints.getAll()).hasSize(3);
+        assertThat(endpoints.getByBinding(POST)).isSameAs(postAcs);
+        assertThat(endpoints.getByIndex(2)).isSameAs(secondPostAcs);
+        assertThat(endpoints.getByIndex(3)).isNull();
+        assertThat(endpoints.getDefault()).isSameAs(artifactAcs);
+        assertThat(endpoints.getFirst()).isSameAs(postAcs);
+    }
+
+    @Test
+    public void shouldIndexEndpointsByLocation() {
+        // When
+        SAML2EntityIndex.Endpoints endpoints = SAML2EntityIndex.build(descriptor, config)
+                .getRole(SAML2Constants.SP_ROLE).getEndpoints(SAML2EntityIndex.ASSERTION_CONSUMER_SERVICE);
+
+        // Then
+        assertThat(endpoints.getBinding("https://sp.example.com/artifact")).isEqualTo(ARTIFACT);
+        assertThat(endpoints.getBinding("https://SP.example.com/artifact")).isNull();
+        assertThat(endpoints.containsLocationIgnoringCase("https://SP.example.com/artifact")).isTrue();
+        assertThat(endpoints.containsLocationIgnoringCase("https://idp.example.com")).isFalse();
+    }
+
+    @Test
+    public void shouldIndexConfigurationAttributesIgnoringRoleCase() {
+        // When
+        SAML2EntityIndex index = SAML2EntityIndex.build(descriptor, config);
+
+        // Then
+        assertThat(index.getRole("sprole").getAttribute(SAML2Constants.SP_ACCOUNT_MAPPER))
+                .containsOnly("com.example.Mapper");
+        assertThat(index.getRole(SAML2Constants.IDP_ROLE)).isNull();
+    }
+
+    @Test
+    public void shouldOnlyDescribeMetadataItWasBuiltFrom() {
+        // When
+        SAML2EntityIndex index = SAML2EntityIndex.build(descriptor, config);
+
+        // Then
+        assertThat(index.isBuiltFrom(descriptor, config)).isTrue();
+        assertThat(index.isBuiltFrom(descriptor, mock(EntityConfigElement.class))).isFalse();
+    }
+
+    private static AssertionConsumerServiceElement acs(String binding, String location, int index,
+            boolean isDefault) {
+        AssertionConsumerServiceElement acs = mock(AssertionConsumerServiceElement.class);
+        given(acs.getBinding()).willReturn(binding);
+        given(acs.getLocation()).willReturn(location);
+        given(acs.getIndex()).willReturn(index);
+        given(acs.isIsDefault()).willReturn(isDefault);
+        return acs;
+    }
+}
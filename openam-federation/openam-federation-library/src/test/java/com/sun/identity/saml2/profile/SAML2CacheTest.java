@@ -0,0 +1,150 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.saml2.profile;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.testng.annotations.Test;
+
+public class SAML2CacheTest {
+
+    @Test
+    public void shouldReturnValueUntilRemoved() {
+        // Given
+        SAML2Cache<String, Object> cache = new SAML2Cache<>("test", 60000, 0, false);
+        cache.put("request", "relayState");
+
+        // When
+        Object removed = cache.remove("request");
+
+        // Then
+        assertThat(removed).isEqualTo("relayState");
+        assertThat(cache.get("request")).isNull();
+        assertThat(cache.containsKey("request")).isFalse();
+    }
+
+    @Test
+    public void shouldHoldNullValuesAndIgnoreNullKeys() {
+        // Given
+        SAML2Cache<String, Object> cache = new SAML2Cache<>("test", 60000, 0, false);
+
+        // When
+        cache.put("request", null);
+        cache.put(null, "relayState");
+
+        // Then
+        assertThat(cache.containsKey("request")).isTrue();
+        assertThat(cache.get(null)).isNull();
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotReturnExpiredValues() throws Exception {
+        // Given
+        SAML2Cache<String, Object> cache = new SAML2Cache<>("test", 1, 0, false);
+        cache.put("request1", "relayState1");
+        cache.put("request2", "relayState2");
+        Thread.sleep(10);
+
+        // When
+        Object value = cache.get("request1");
+        cache.purge();
+
+        // Then
+        assertThat(value).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.getExpirationCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldEvictOldestEntriesWhenFull() {
+        // Given
+        SAML2Cache<String, Object> cache = new SAML2Cache<>("test", 0, 3, false);
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            cache.put("request" + i, "relayState" + i);
+        }
+
+        // Then
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.containsKey("request0")).isFalse();
+        assertThat(cache.containsKey("request1")).isFalse();
+        assertThat(cache.get("request4")).isEqualTo("relayState4");
+        assertThat(cache.getEvictionCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotEvictEntryReplacedSinceItWasFirstPut() {
+        // Given
+        SAML2Cache<String, Object> cache = new SAML2Cache<>("test", 0, 2, false);
+        cache.put("request0", "relayState0");
+        cache.put("request1", "relayState1");
+        cache.put("request0", "relayState0b");
+
+        // When
+        cache.put("request2", "relayState2");
+
+        // Then
+        assertThat(cache.get("request0")).isEqualTo("relayState0b");
+        assertThat(cache.containsKey("request1")).isFalse();
+    }
+
+    @Test
+    public void shouldOnlyPutIfAbsent() {
+        // Given
+        SAML2Cache<String, Object> cache = new SAML2Cache<>("test", 60000, 0, false);
+        cache.put("user", "first");
+
+        // When
+        Object existing = cache.putIfAbsent("user", "second");
+
+        // Then
+        assertThat(existing).isEqualTo("first");
+        assertThat(cache.get("user")).isEqualTo("first");
+    }
+
+    @Test
+    public void shouldOnlyRemoveKeyHeldForValue() {
+        // Given
+        SAML2Cache<String, Object> cache = new SAML2Cache<>("test", 60000, 0, false);
+        Object value = new Object();
+        cache.put("user", value);
+
+        // When
+        boolean removedOther = cache.remove("user", new Object());
+        boolean removed = cache.remove("user", value);
+
+        // Then
+        assertThat(removedOther).isFalse();
+        assertThat(removed).isTrue();
+        assertThat(cache.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldEstimateMemoryOfEntries() {
+        // Given
+        SAML2Cache<String, Object> cache = new SAML2Cache<>("test", 60000, 0, false);
+        long empty = cache.estimateMemory();
+
+        // When
+        cache.put("request", "relayState");
+
+        // Then
+        assertThat(empty).isEqualTo(0);
+        assertThat(cache.estimateMemory()).isGreaterThan(0);
+    }
+}
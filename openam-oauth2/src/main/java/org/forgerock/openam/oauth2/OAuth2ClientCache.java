@@ -0,0 +1,343 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.oauth2;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.iplanet.sso.SSOException;
+import com.iplanet.sso.SSOToken;
+import com.sun.identity.common.CaseInsensitiveHashMap;
+import com.sun.identity.idm.AMIdentity;
+import com.sun.identity.idm.AMIdentityRepository;
+import com.sun.identity.idm.IdEventListener;
+import com.sun.identity.idm.IdRepoException;
+import com.sun.identity.idm.IdSearchControl;
+import com.sun.identity.idm.IdSearchResults;
+import com.sun.identity.idm.IdType;
+import com.sun.identity.shared.debug.Debug;
+import com.sun.identity.sm.DNMapper;
+import org.forgerock.oauth2.core.OAuth2ProviderSettings;
+import org.forgerock.openam.identity.idm.AMIdentityRepositoryFactory;
+import org.forgerock.openam.ldap.LDAPUtils;
+import org.forgerock.util.annotations.VisibleForTesting;
+
+/**
+ * Caches the OAuth2 client agents of each realm, so that looking up a client does not search the identity
+ * repository on every request.
+ * <p>
+ * Clients are loaded when first looked up, or all at once in the background when the OAuth2 provider of their realm
+ * first starts, and are held until the identity repository notifies that the client's agent has changed, been renamed
+ * or been deleted. Clients are cached under the name of their agent, so a lookup by a search pattern that happens to
+ * match a single agent is not cached.
+ *
+ * @since 14.0.0
+ */
+@Singleton
+public class OAuth2ClientCache {
+
+    /** The name of the executor binding that realms' clients are loaded on when their provider starts. */
+    public static final String EXECUTOR_BINDING_NAME = "OAuth2ClientCacheWarmUp";
+
+    private static final String AGENT_TYPE = "AgentType";
+    private static final String OAUTH2_CLIENT = "OAuth2Client";
+    private static final String STATUS = "sunIdentityServerDeviceStatus";
+    private static final String ACTIVE = "Active";
+
+    private final Debug logger = Debug.getInstance("OAuth2Provider");
+    private final ConcurrentMap<String, RealmClients> realms = new ConcurrentHashMap<>();
+    private final AMIdentityRepositoryFactory idRepoFactory;
+    private final ExecutorService warmUpExecutor;
+    private final PrivilegedAction<SSOToken> adminTokenAction;
+
+    /**
+     * Constructs a new OAuth2ClientCache.
+     *
+     * @param idRepoFactory The factory of identity repositories to load clients from.
+     * @param warmUpExecutor The executor that realms' clients are loaded on when their provider starts.
+     * @param adminTokenAction The action to get the admin token with which the identity repositories are read.
+     */
+    @Inject
+    public OAuth2ClientCache(AMIdentityRepositoryFactory idRepoFactory,
+            @Named(EXECUTOR_BINDING_NAME) ExecutorService warmUpExecutor,
+            PrivilegedAction<SSOToken> adminTokenAction) {
+        this.idRepoFactory = idRepoFactory;
+        this.warmUpExecutor = warmUpExecutor;
+        this.adminTokenAction = adminTokenAction;
+    }
+
+    /**
+     * Returns the client agent with the given name, loading it from the realm's identity repository if it is not
+     * cached.
+     *
+     * @param realm The realm of the client.
+     * @param clientId The name of the client.
+     * @return The client, or {@code null} if there is no agent, or more than one agent, with the name. A client
+     * found by a name that is not its agent's own name, such as a search pattern, is returned but not cached.
+     * @throws IdRepoException If the client cannot be read from the identity repository.
+     * @throws SSOException If the admin token is not valid.
+     */
+    @SuppressWarnings("unchecked")
+    CachedClient get(String realm, String clientId) throws IdRepoException, SSOException {
+        RealmClients clients = getRealmClients(realm);
+        String key = clientId.toLowerCase();
+        CachedClient client = clients.clients.get(key);
+        if (client != null) {
+            return client;
+        }
+
+        long generation = clients.generation.get();
+        AMIdentityRepository repo = idRepoFactory.create(realm, getAdminToken());
+        IdSearchResults searchResults = repo.searchIdentities(IdType.AGENTONLY, clientId, createSearchControl());
+        Set<AMIdentity> results = searchResults == null ? null : searchResults.getSearchResults();
+        if (results == null || results.size() != 1) {
+            return null;
+        }
+        AMIdentity identity = results.iterator().next();
+        client = new CachedClient(identity, readAttributes(identity, searchResults.getResultAttributes()));
+        // Invalidations are keyed by the agent's name, so anything cached under another key would never be evicted.
+        if (key.equals(identity.getName().toLowerCase())) {
+            clients.put(key, client, generation);
+        }
+        return client;
+    }
+
+    /**
+     * Loads all of the OAuth2 clients of a realm in the background, so that the first requests made by them need not
+     * search the identity repository. Each realm is only loaded once, however often its provider is started, and
+     * failures are logged, leaving the clients to be loaded when they are first looked up.
+     *
+     * @param realm The realm.
+     */
+    public void warmUp(final String realm) {
+        final RealmClients clients = getRealmClients(realm);
+        if (!clients.warmUpScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            warmUpExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    loadClients(realm, clients);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warning("OAuth2ClientCache.warmUp(): Unable to schedule loading clients of realm " + realm, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadClients(String realm, RealmClients clients) {
+        long generation = clients.generation.get();
+        try {
+            AMIdentityRepository repo = idRepoFactory.create(realm, getAdminToken());
+            IdSearchResults searchResults = repo.searchIdentities(IdType.AGENTONLY, "*", createSearchControl());
+            if (searchResults == null) {
+                return;
+            }
+            Map<AMIdentity, Map<String, Set<String>>> resultAttributes = searchResults.getResultAttributes();
+            int loaded = 0;
+            for (AMIdentity identity : (Set<AMIdentity>) searchResults.getSearchResults()) {
+                Map<String, Set<String>> attributes = readAttributes(identity, resultAttributes);
+                Set<String> agentType = attributes.get(AGENT_TYPE);
+                if (agentType != null && agentType.contains(OAUTH2_CLIENT)) {
+                    clients.put(identity.getName().toLowerCase(), new CachedClient(identity, attributes), generation);
+                    loaded++;
+                }
+            }
+            if (logger.messageEnabled()) {
+                logger.message("OAuth2ClientCache.warmUp(): Loaded " + loaded + " clients of realm " + realm);
+            }
+        } catch (IdRepoException | SSOException e) {
+            logger.warning("OAuth2ClientCache.warmUp(): Unable to load clients of realm " + realm, e);
+        }
+    }
+
+    /**
+     * Removes a client from the cache, for when it has been changed through this server.
+     *
+     * @param realm The realm of the client.
+     * @param clientId The name of the client.
+     */
+    void remove(String realm, String clientId) {
+        getRealmClients(realm).remove(clientId);
+    }
+
+    private RealmClients getRealmClients(String realm) {
+        String realmDN = getRealmDN(realm);
+        RealmClients clients = realms.get(realmDN);
+        if (clients == null) {
+            RealmClients newClients = new RealmClients();
+            clients = realms.putIfAbsent(realmDN, newClients);
+            if (clients == null) {
+                clients = newClients;
+                // Identity repository listeners are held per organisation, so listen once for each realm.
+                idRepoFactory.create(realm, getAdminToken()).addEventListener(clients);
+            }
+        }
+        return clients;
+    }
+
+    /**
+     * Returns the DN that the realm's clients are held under, so that the different names of a realm share them.
+     *
+     * @param realm The realm.
+     * @return The realm's DN, in lower case.
+     */
+    @VisibleForTesting
+    String getRealmDN(String realm) {
+        return DNMapper.orgNameToDN(realm == null ? "/" : realm).toLowerCase();
+    }
+
+    private static IdSearchControl createSearchControl() {
+        IdSearchControl idsc = new IdSearchControl();
+        idsc.setRecursive(true);
+        idsc.setAllReturnAttributes(true);
+        idsc.setMaxResults(0);
+        return idsc;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Set<String>> readAttributes(AMIdentity identity, Map resultAttributes)
+            throws IdRepoException, SSOException {
+        Map<String, Set<String>> attributes = resultAttributes == null
+                ? null : (Map<String, Set<String>>) resultAttributes.get(identity);
+        if (attributes == null || attributes.isEmpty()) {
+            attributes = identity.getAttributes();
+        }
+        Map<String, Set<String>> snapshot = new CaseInsensitiveHashMap();
+        for (Map.Entry<String, Set<String>> attribute : attributes.entrySet()) {
+            snapshot.put(attribute.getKey(), attribute.getValue() == null
+                    ? null : Collections.unmodifiableSet(attribute.getValue()));
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    private SSOToken getAdminToken() {
+        return AccessController.doPrivileged(adminTokenAction);
+    }
+
+    /**
+     * The cached clients of one realm, which are invalidated by changes to the realm's agents.
+     */
+    private final class RealmClients implements IdEventListener {
+
+        private final ConcurrentMap<String, CachedClient> clients = new ConcurrentHashMap<>();
+        /** Incremented on every invalidation, so clients loaded while one happens are not cached. */
+        private final AtomicLong generation = new AtomicLong();
+        private final AtomicBoolean warmUpScheduled = new AtomicBoolean();
+
+        private void put(String key, CachedClient client, long loadGeneration) {
+            clients.put(key, client);
+            if (generation.get() != loadGeneration) {
+                clients.remove(key, client);
+            }
+        }
+
+        private void remove(String clientId) {
+            generation.incrementAndGet();
+            clients.remove(clientId.toLowerCase());
+        }
+
+        private void removeIdentity(String universalId) {
+            try {
+                remove(LDAPUtils.rdnValueFromDn(universalId));
+            } catch (IllegalArgumentException e) {
+                logger.warning("OAuth2ClientCache: Unable to parse changed identity " + universalId, e);
+                allIdentitiesChanged();
+            }
+        }
+
+        @Override
+        public void identityChanged(String universalId) {
+            removeIdentity(universalId);
+        }
+
+        @Override
+        public void identityDeleted(String universalId) {
+            removeIdentity(universalId);
+        }
+
+        @Override
+        public void identityRenamed(String universalId) {
+            removeIdentity(universalId);
+        }
+
+        @Override
+        public void allIdentitiesChanged() {
+            generation.incrementAndGet();
+            clients.clear();
+        }
+    }
+
+    /**
+     * A cached client agent: its identity, and an unmodifiable snapshot of its attributes.
+     */
+    static final class CachedClient {
+
+        private final AMIdentity identity;
+        private final Map<String, Set<String>> attributes;
+        private final boolean active;
+        private volatile OpenAMClientRegistration registration;
+
+        private CachedClient(AMIdentity identity, Map<String, Set<String>> attributes) {
+            this.identity = identity;
+            this.attributes = attributes;
+            Set<String> status = attributes.get(STATUS);
+            this.active = status == null || status.isEmpty() || ACTIVE.equalsIgnoreCase(status.iterator().next());
+        }
+
+        AMIdentity getIdentity() {
+            return identity;
+        }
+
+        Map<String, Set<String>> getAttributes() {
+            return attributes;
+        }
+
+        boolean isActive() {
+            return active;
+        }
+
+        /**
+         * Returns the registration last built from this client, if it was built for the given provider settings.
+         *
+         * @param providerSettings The current OAuth2 provider settings of the client's realm.
+         * @return The registration, or {@code null}.
+         */
+        OpenAMClientRegistration getRegistration(OAuth2ProviderSettings providerSettings) {
+            OpenAMClientRegistration current = registration;
+            return current != null && current.getProviderSettings() == providerSettings ? current : null;
+        }
+
+        void setRegistration(OpenAMClientRegistration registration) {
+            this.registration = registration;
+        }
+    }
+}
@@ -71,10 +71,12 @@ public class OpenAMClientDAO implements ClientDAO {
     private final Debug logger = Debug.getInstance("OAuth2Provider");
 
     private final AMIdentityRepositoryFactory idRepoFactory;
+    private final OAuth2ClientCache clientCache;
 
     @Inject
-    public OpenAMClientDAO(AMIdentityRepositoryFactory idRepoFactory) {
+    public OpenAMClientDAO(AMIdentityRepositoryFactory idRepoFactory, OAuth2ClientCache clientCache) {
         this.idRepoFactory = idRepoFactory;
+        this.clientCache = clientCache;
     }
 
     /**
@@ -87,6 +89,7 @@ public class OpenAMClientDAO implements ClientDAO {
             final String realm = request.getParameter(OAuth2Constants.Custom.REALM);
             AMIdentityRepository repo = idRepoFactory.create(realm, token);
             repo.createIdentity(IdType.AGENTONLY, client.getClientID(), attrs);
+            clientCache.remove(realm, client.getClientID());
         } catch (Exception e) {
             logger.error("ConnectClientRegistration.Validate(): Unable to create client", e);
             throw new InvalidClientMetadata();
@@ -99,33 +102,17 @@ public class OpenAMClientDAO implements ClientDAO {
     public Client read(String clientId, OAuth2Request request) throws UnauthorizedClientException {
         Map<String, Set<String>> clientAttributes = new HashMap<String, Set<String>>();
         try {
-            AMIdentity theID = null;
-            final SSOToken token = AccessController.doPrivileged(AdminTokenAction.getInstance());
             final String realm = request.getParameter(OAuth2Constants.Custom.REALM);
-            AMIdentityRepository repo = idRepoFactory.create(realm, token);
-
-            IdSearchControl idsc = new IdSearchControl();
-            idsc.setRecursive(true);
-            idsc.setAllReturnAttributes(true);
-            // search for the identity
-            Set<AMIdentity> results;
-            idsc.setMaxResults(0);
-            IdSearchResults searchResults =
-                    repo.searchIdentities(IdType.AGENTONLY, clientId, idsc);
-            results = searchResults.getSearchResults();
+            OAuth2ClientCache.CachedClient cachedClient = clientCache.get(realm, clientId);
 
-            if (results == null || results.size() != 1) {
+            if (cachedClient == null) {
                 logger.error("OpenAMClientDAO.read(): No client profile or more than one profile found.");
                 throw new UnauthorizedClientException("Not able to get client from OpenAM");
             }
 
-            theID = results.iterator().next();
-
             //if the client is deactivated return null
-            if (!theID.isActive()) {
-                theID = null;
-            } else {
-                clientAttributes = theID.getAttributes();
+            if (cachedClient.isActive()) {
+                clientAttributes = cachedClient.getAttributes();
             }
         } catch (UnauthorizedClientException e) {
             logger.error("OpenAMClientDAO.read(): Unable to get client AMIdentity: ", e);
@@ -188,6 +175,7 @@ public class OpenAMClientDAO implements ClientDAO {
             Set<AMIdentity> identities = new HashSet<AMIdentity>();
             identities.add(theID);
             repo.deleteIdentities(identities);
+            clientCache.remove(realm, clientId);
         } catch (SSOException e) {
             logger.error("OpenAMClientDAO.delete(): Unable to delete client", e);
             throw new UnauthorizedClientException();
@@ -92,30 +92,39 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     };
     private final Debug logger = Debug.getInstance("OAuth2Provider");
     private final AMIdentity amIdentity;
+    private final Map<String, Set<String>> attributes;
     private final SigningManager signingManager = new SigningManager();
     private final PEMDecoder pemDecoder;
     private final OpenIdResolverService resolverService;
-    private final MessageDigest digest;
     private final OAuth2ProviderSettings providerSettings;
 
 
     /**
-     * Constructs a new OpenAMClientRegistration.
+     * Constructs a new OpenAMClientRegistration which reads the client's attributes from its identity.
      *
      * @param amIdentity The client's identity.
      * @param pemDecoder A {@code PEMDecoder} instance.
      */
     OpenAMClientRegistration(AMIdentity amIdentity, PEMDecoder pemDecoder, OpenIdResolverService resolverService,
             OAuth2ProviderSettings providerSettings, ClientAuthenticationFailureFactory failureFactory) throws InvalidClientException {
+        this(amIdentity, null, pemDecoder, resolverService, providerSettings);
+    }
+
+    /**
+     * Constructs a new OpenAMClientRegistration which reads the client's attributes from the given snapshot of them,
+     * so may be shared between requests.
+     *
+     * @param amIdentity The client's identity.
+     * @param attributes The client's attributes, or {@code null} to read them from its identity.
+     * @param pemDecoder A {@code PEMDecoder} instance.
+     */
+    OpenAMClientRegistration(AMIdentity amIdentity, Map<String, Set<String>> attributes, PEMDecoder pemDecoder,
+            OpenIdResolverService resolverService, OAuth2ProviderSettings providerSettings) {
         this.amIdentity = amIdentity;
+        this.attributes = attributes;
         this.pemDecoder = pemDecoder;
         this.resolverService = resolverService;
         this.providerSettings = providerSettings;
-        try {
-            this.digest = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            throw failureFactory.getException("SHA-256 algorithm MessageDigest not available");
-        }
     }
 
     /**
@@ -124,7 +133,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     public Set<URI> getRedirectUris() {
         Set<URI> redirectionURIs;
         try {
-            Set<String> redirectionURIsSet = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.REDIRECT_URI);
+            Set<String> redirectionURIsSet = getAttributeValues(OAuth2Constants.OAuth2Client.REDIRECT_URI);
             redirectionURIsSet = convertAttributeValues(redirectionURIsSet);
             redirectionURIs = new HashSet<URI>();
             for (String uri : redirectionURIsSet){
@@ -144,7 +153,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
         try {
             @SuppressWarnings("unchecked")
             Set<String> redirectionURIsSet = convertAttributeValues(
-                    amIdentity.getAttribute(OAuth2Constants.OAuth2Client.POST_LOGOUT_URI));
+                    getAttributeValues(OAuth2Constants.OAuth2Client.POST_LOGOUT_URI));
             for (String uri : redirectionURIsSet){
                 redirectionURIs.add(URI.create(uri));
             }
@@ -162,7 +171,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     public Set<String> getAllowedResponseTypes() {
         Set<String> set = null;
         try {
-            set = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.RESPONSE_TYPES);
+            set = getAttributeValues(OAuth2Constants.OAuth2Client.RESPONSE_TYPES);
         } catch (Exception e){
             logger.error("Unable to get {} from repository", OAuth2Constants.OAuth2Client.RESPONSE_TYPES, e);
             throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
@@ -177,7 +186,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     public String getClientSecret() {
         Set<String> set;
         try {
-            set = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.USERPASSWORD);
+            set = getAttributeValues(OAuth2Constants.OAuth2Client.USERPASSWORD);
         } catch (Exception e) {
             logger.error("Unable to get {} from repository", OAuth2Constants.OAuth2Client.USERPASSWORD, e);
             throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
@@ -202,7 +211,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
 
     private List<String[]> getDisplayName(String attributeName) {
         try {
-            Set<String> displayName = amIdentity.getAttribute(attributeName);
+            Set<String> displayName = getAttributeValues(attributeName);
             return splitPipeDelimited(convertAttributeValues(displayName), "name").get("name");
         } catch (Exception e){
             logger.error("Unable to get {} from repository", OAuth2Constants.OAuth2Client.NAME, e);
@@ -246,7 +255,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
 
     private List<String[]> getDisplayDescription() {
         try {
-            Set<String> displayDescription = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.DESCRIPTION);
+            Set<String> displayDescription = getAttributeValues(OAuth2Constants.OAuth2Client.DESCRIPTION);
             return splitPipeDelimited(convertAttributeValues(displayDescription), "name").get("name");
         } catch (Exception e){
             logger.error("Unable to get {} from repository", OAuth2Constants.OAuth2Client.DESCRIPTION, e);
@@ -285,7 +294,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     private Set<String> getAllowedGrantScopes() {
         Set<String> scopes = null;
         try {
-            scopes = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.SCOPES);
+            scopes = getAttributeValues(OAuth2Constants.OAuth2Client.SCOPES);
         } catch (Exception e) {
             logger.error("Unable to get {} from repository", OAuth2Constants.OAuth2Client.SCOPES, e);
             throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
@@ -297,7 +306,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     private Set<String> getClaimStrings() {
         Set<String> scopes = null;
         try {
-            scopes = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.CLAIMS);
+            scopes = getAttributeValues(OAuth2Constants.OAuth2Client.CLAIMS);
         } catch (Exception e) {
             logger.error("Unable to get {} from repository", OAuth2Constants.OAuth2Client.SCOPES, e);
             throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
@@ -408,7 +417,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     private Set<String> getDefaultGrantScopes() {
         Set<String> scopes = null;
         try {
-            scopes = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.DEFAULT_SCOPES);
+            scopes = getAttributeValues(OAuth2Constants.OAuth2Client.DEFAULT_SCOPES);
         } catch (Exception e){
             logger.error("Unable to get {} from repository", OAuth2Constants.OAuth2Client.DEFAULT_SCOPES, e);
             throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
@@ -458,7 +467,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     public String getClientSessionURI() {
         Set<String> set;
         try {
-            set = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.CLIENT_SESSION_URI);
+            set = getAttributeValues(OAuth2Constants.OAuth2Client.CLIENT_SESSION_URI);
         } catch (Exception e) {
             logger.error("Unable to get {} from repository", OAuth2Constants.OAuth2Client.CLIENT_SESSION_URI, e);
             throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
@@ -475,7 +484,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     public ClientType getClientType() {
         final ClientType clientType;
         try {
-            Set<String> clientTypeSet = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.CLIENT_TYPE);
+            Set<String> clientTypeSet = getAttributeValues(OAuth2Constants.OAuth2Client.CLIENT_TYPE);
             if (clientTypeSet.iterator().next().equalsIgnoreCase("CONFIDENTIAL")){
                 clientType = ClientType.CONFIDENTIAL;
             } else {
@@ -524,7 +533,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     private long getTokenLifeTime(String tokenLifeTimeProperty, long defaultLifeTime) {
         long tokenLifeTime = 0L;
         try {
-            Set<String> lifeTimeSet = amIdentity.getAttribute(tokenLifeTimeProperty);
+            Set<String> lifeTimeSet = getAttributeValues(tokenLifeTimeProperty);
             if (lifeTimeSet != null && !lifeTimeSet.isEmpty()) {
                 tokenLifeTime = Long.parseLong(lifeTimeSet.iterator().next());
             }
@@ -560,7 +569,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     public String getIDTokenSignedResponseAlgorithm() {
         final Set<String> set;
         try {
-            set = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.IDTOKEN_SIGNED_RESPONSE_ALG);
+            set = getAttributeValues(OAuth2Constants.OAuth2Client.IDTOKEN_SIGNED_RESPONSE_ALG);
         } catch (Exception e) {
             logger.error("Unable to get {} from repository", OAuth2Constants.OAuth2Client.IDTOKEN_SIGNED_RESPONSE_ALG, e);
             throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
@@ -575,7 +584,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     @Override
     public boolean isIDTokenEncryptionEnabled() {
         try {
-            Set<String> attribute = amIdentity.getAttribute("idTokenEncryptionEnabled");
+            Set<String> attribute = getAttributeValues("idTokenEncryptionEnabled");
             if (attribute == null || attribute.isEmpty()) {
                 return false;
             }
@@ -600,7 +609,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     @Override
     public PublicKey getIDTokenEncryptionPublicKey() {
         try {
-            Set<String> set = amIdentity.getAttribute("idTokenPublicEncryptionKey");
+            Set<String> set = getAttributeValues("idTokenPublicEncryptionKey");
             if (set == null || set.isEmpty()) {
                 return null;
             }
@@ -620,7 +629,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
         final String tokenEndpointAuthMethod;
         Set<String> authMethodSet;
         try {
-            authMethodSet = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.TOKEN_ENDPOINT_AUTH_METHOD);
+            authMethodSet = getAttributeValues(OAuth2Constants.OAuth2Client.TOKEN_ENDPOINT_AUTH_METHOD);
         } catch (Exception e) {
             logger.error("Unable to get {} from repository", OAuth2Constants.OAuth2Client.TOKEN_ENDPOINT_AUTH_METHOD, e);
             throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
@@ -643,7 +652,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
         final String subjectType;
         Set<String> subjectTypeSet;
         try {
-            subjectTypeSet = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.SUBJECT_TYPE);
+            subjectTypeSet = getAttributeValues(OAuth2Constants.OAuth2Client.SUBJECT_TYPE);
         } catch (Exception e) {
             logger.error("Unable to get {} from repository", OAuth2Constants.OAuth2Client.SUBJECT_TYPE, e);
             throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
@@ -709,7 +718,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
 
     private boolean byJWKs(OAuth2Jwt jwt) throws IdRepoException, SSOException,
             MalformedURLException, FailedToLoadJWKException {
-        Set<String> set = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.JWKS);
+        Set<String> set = getAttributeValues(OAuth2Constants.OAuth2Client.JWKS);
 
         final String jwkSetStr = CollectionUtils.getFirstItem(set);
         if (jwkSetStr == null) {
@@ -749,7 +758,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
 
 
     private boolean byJWKsURI(OAuth2Jwt jwt) throws IdRepoException, SSOException, MalformedURLException {
-        final Set<String> set = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.JWKS_URI);
+        final Set<String> set = getAttributeValues(OAuth2Constants.OAuth2Client.JWKS_URI);
 
         if (set == null || set.isEmpty()) {
             throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
@@ -781,7 +790,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
 
     private boolean byX509Key(OAuth2Jwt jwt) throws IdRepoException, SSOException, CertificateException {
 
-        Set<String> set = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.CLIENT_JWT_PUBLIC_KEY);
+        Set<String> set = getAttributeValues(OAuth2Constants.OAuth2Client.CLIENT_JWT_PUBLIC_KEY);
 
         if (set == null || set.isEmpty()) {
             throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
@@ -803,7 +812,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     private Client.PublicKeySelector getClientPublicKeySelector() {
         Set<String> set;
         try {
-            set = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.PUBLIC_KEY_SELECTOR);
+            set = getAttributeValues(OAuth2Constants.OAuth2Client.PUBLIC_KEY_SELECTOR);
         } catch (SSOException e) {
             logger.error("Unable to get {} from repository", OAuth2Constants.OAuth2Client.PUBLIC_KEY_SELECTOR, e);
             throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
@@ -823,7 +832,7 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     public URI getSectorIdentifierUri() {
         final Set<String> set;
         try {
-            set = amIdentity.getAttribute(OAuth2Constants.OAuth2Client.SECTOR_IDENTIFIER_URI);
+            set = getAttributeValues(OAuth2Constants.OAuth2Client.SECTOR_IDENTIFIER_URI);
 
             if (set.iterator().hasNext()){
                 return new URI(set.iterator().next());
@@ -869,9 +878,9 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     private String subValueFromHost(String host, String resourceOwnerId, OAuth2ProviderSettings providerSettings) {
         try {
             final String concat = host + resourceOwnerId + providerSettings.getHashSalt();
-            byte[] hash = digest.digest(concat.getBytes("UTF-8"));
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(concat.getBytes("UTF-8"));
             return Base64.encode(hash);
-        } catch (UnsupportedEncodingException e) {
+        } catch (UnsupportedEncodingException | NoSuchAlgorithmException e) {
             logger.message("Unable to encrypt the sub value for user.");
             return null;
         } catch (ServerException e) {
@@ -891,10 +900,24 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
         return true;
     }
 
+    /**
+     * @return The OAuth2 provider settings this registration was built with.
+     */
+    OAuth2ProviderSettings getProviderSettings() {
+        return providerSettings;
+    }
+
+    private Set<String> getAttributeValues(String attributeName) throws IdRepoException, SSOException {
+        if (attributes == null) {
+            return amIdentity.getAttribute(attributeName);
+        }
+        return attributes.get(attributeName);
+    }
+
     private String getAttribute(String attributeName) {
         final Set<String> set;
         try {
-            set = amIdentity.getAttribute(attributeName);
+            set = getAttributeValues(attributeName);
         } catch (Exception e) {
             logger.error("Unable to get {} from repository", attributeName, e);
             throw OAuthProblemException.OAuthError.SERVER_ERROR.handle(Request.getCurrent(),
@@ -20,21 +20,12 @@ package org.forgerock.openam.oauth2;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
-import java.security.AccessController;
-import java.util.Collections;
-import java.util.Set;
 
 import com.iplanet.sso.SSOException;
-import com.iplanet.sso.SSOToken;
-import com.sun.identity.idm.AMIdentity;
-import com.sun.identity.idm.AMIdentityRepository;
 import com.sun.identity.idm.IdRepoException;
-import com.sun.identity.idm.IdSearchControl;
-import com.sun.identity.idm.IdSearchResults;
-import com.sun.identity.idm.IdType;
-import com.sun.identity.security.AdminTokenAction;
 import com.sun.identity.shared.debug.Debug;
 import org.forgerock.jaspi.modules.openid.resolvers.service.OpenIdResolverService;
+import org.forgerock.oauth2.core.OAuth2ProviderSettings;
 import org.forgerock.oauth2.core.OAuth2ProviderSettingsFactory;
 import org.forgerock.oauth2.core.OAuth2Request;
 import org.forgerock.oauth2.core.PEMDecoder;
@@ -60,22 +51,26 @@ public class OpenAMClientRegistrationStore implements OpenIdConnectClientRegistr
     private final OpenIdResolverService resolverService;
     private final OAuth2ProviderSettingsFactory providerSettingsFactory;
     private final ClientAuthenticationFailureFactory failureFactory;
+    private final OAuth2ClientCache clientCache;
 
     /**
      * Constructs a new OpenAMClientRegistrationStore.
      * @param realmNormaliser An instance of the RealmNormaliser.
      * @param pemDecoder A {@code PEMDecoder} instance.
      * @param failureFactory
+     * @param clientCache The cache of OAuth2 client agents.
      */
     @Inject
     public OpenAMClientRegistrationStore(RealmNormaliser realmNormaliser, PEMDecoder pemDecoder,
             @Named(OAuth2Constants.Custom.JWK_RESOLVER) OpenIdResolverService resolverService,
-            OAuth2ProviderSettingsFactory providerSettingsFactory, ClientAuthenticationFailureFactory failureFactory) {
+            OAuth2ProviderSettingsFactory providerSettingsFactory, ClientAuthenticationFailureFactory failureFactory,
+            OAuth2ClientCache clientCache) {
         this.realmNormaliser = realmNormaliser;
         this.pemDecoder = pemDecoder;
         this.resolverService = resolverService;
         this.providerSettingsFactory = providerSettingsFactory;
         this.failureFactory = failureFactory;
+        this.clientCache = clientCache;
     }
 
     /**
@@ -85,8 +80,7 @@ public class OpenAMClientRegistrationStore implements OpenIdConnectClientRegistr
             throws InvalidClientException, NotFoundException {
         try {
             final String realm = realmNormaliser.normalise(request.<String>getParameter(OAuth2Constants.Custom.REALM));
-            return new OpenAMClientRegistration(getIdentity(clientId, realm, request), pemDecoder, resolverService,
-                    providerSettingsFactory.get(request), failureFactory);
+            return getRegistration(getClient(clientId, realm, request), providerSettingsFactory.get(request));
         } catch (org.forgerock.json.resource.NotFoundException e) {
             throw new NotFoundException(e.getMessage());
         }
@@ -99,50 +93,34 @@ public class OpenAMClientRegistrationStore implements OpenIdConnectClientRegistr
             throws InvalidClientException, NotFoundException {
         try {
             final String normalisedRealm = realmNormaliser.normalise(realm);
-            return new OpenAMClientRegistration(getIdentity(clientId, normalisedRealm), pemDecoder, resolverService,
-                    providerSettingsFactory.get(normalisedRealm), failureFactory);
+            return getRegistration(getClient(clientId, normalisedRealm, null),
+                    providerSettingsFactory.get(normalisedRealm));
         } catch (org.forgerock.json.resource.NotFoundException e) {
             throw new NotFoundException(e.getMessage());
         }
     }
 
-    private AMIdentity getIdentity(String uName, String realm) throws InvalidClientException {
-        return getIdentity(uName, realm, null);
+    private OpenAMClientRegistration getRegistration(OAuth2ClientCache.CachedClient client,
+            OAuth2ProviderSettings providerSettings) {
+        OpenAMClientRegistration registration = client.getRegistration(providerSettings);
+        if (registration == null) {
+            registration = new OpenAMClientRegistration(client.getIdentity(), client.getAttributes(), pemDecoder,
+                    resolverService, providerSettings);
+            client.setRegistration(registration);
+        }
+        return registration;
     }
 
-    @SuppressWarnings("unchecked")
-    private AMIdentity getIdentity(String uName, String realm, OAuth2Request request) throws InvalidClientException {
-        final SSOToken token = AccessController.doPrivileged(AdminTokenAction.getInstance());
-        final AMIdentity theID;
-
+    private OAuth2ClientCache.CachedClient getClient(String uName, String realm, OAuth2Request request)
+            throws InvalidClientException {
         try {
-            final AMIdentityRepository amIdRepo = new AMIdentityRepository(token, realm);
-
-            final IdSearchControl idsc = new IdSearchControl();
-            idsc.setRecursive(true);
-            idsc.setAllReturnAttributes(true);
-            // search for the identity
-            Set<AMIdentity> results = Collections.emptySet();
-            idsc.setMaxResults(0);
-            IdSearchResults searchResults =
-                    amIdRepo.searchIdentities(IdType.AGENT, uName, idsc);
-            if (searchResults != null) {
-                results = searchResults.getSearchResults();
-            }
-
-            if (results == null || results.size() != 1) {
-                throw failureFactory.getException(request, "Client authentication failed");
-
-            }
-
-            theID = results.iterator().next();
+            OAuth2ClientCache.CachedClient client = clientCache.get(realm, uName);
 
-            //if the client is deactivated throw InvalidClientException
-            if (theID.isActive()){
-                return theID;
-            } else {
+            //if the client is not found or is deactivated throw InvalidClientException
+            if (client == null || !client.isActive()) {
                 throw failureFactory.getException(request, "Client authentication failed");
             }
+            return client;
         } catch (SSOException e) {
             logger.error("ClientVerifierImpl::Unable to get client AMIdentity: ", e);
             throw failureFactory.getException(request, "Client authentication failed");
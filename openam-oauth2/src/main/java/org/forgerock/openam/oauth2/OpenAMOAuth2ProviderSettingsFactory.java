@@ -49,6 +49,7 @@ public class OpenAMOAuth2ProviderSettingsFactory implements OAuth2ProviderSettin
     private final CookieExtractor cookieExtractor;
     private final ResourceSetStoreFactory resourceSetStoreFactory;
     private final OAuth2RealmResolver realmResolver;
+    private final OAuth2ClientCache clientCache;
 
     /**
      * Constructs a new OpenAMOAuth2ProviderSettingsFactory.
@@ -56,13 +57,16 @@ public class OpenAMOAuth2ProviderSettingsFactory implements OAuth2ProviderSettin
      * @param cookieExtractor An instance of the CookieExtractor.
      * @param resourceSetStoreFactory An instance of the ResourceSetStoreFactory.
      * @param realmResolver An instance of the RealmResolver
+     * @param clientCache The cache of OAuth2 clients, which is warmed up when a realm's provider starts.
      */
     @Inject
     public OpenAMOAuth2ProviderSettingsFactory(CookieExtractor cookieExtractor,
-            ResourceSetStoreFactory resourceSetStoreFactory, OAuth2RealmResolver realmResolver) {
+            ResourceSetStoreFactory resourceSetStoreFactory, OAuth2RealmResolver realmResolver,
+            OAuth2ClientCache clientCache) {
         this.cookieExtractor = cookieExtractor;
         this.resourceSetStoreFactory = resourceSetStoreFactory;
         this.realmResolver = realmResolver;
+        this.clientCache = clientCache;
         addServiceListener();
     }
 
@@ -108,6 +112,8 @@ public class OpenAMOAuth2ProviderSettingsFactory implements OAuth2ProviderSettin
                 providerSettings = new OpenAMOAuth2ProviderSettings(realm, resourceSetStore, cookieExtractor);
                 if (providerSettings.exists()) {
                     providerSettingsMap.put(realm, providerSettings);
+                    // The realm's provider has started, so load its clients in the background.
+                    clientCache.warmUp(realm);
                 } else {
                     throw new NotFoundException("No OpenID Connect provider for realm " + realm);
                 }
@@ -0,0 +1,151 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.oauth2;
+
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.forgerock.json.jose.jws.SignedJwt;
+import org.forgerock.json.jose.jws.handlers.SigningHandler;
+import org.forgerock.util.encode.Base64;
+
+/**
+ * A bounded cache of stateless tokens whose signatures have been verified, keyed by a digest of the token string.
+ * <p>
+ * Each token is held until it expires, and is only returned for the signing handler it was verified with, so a
+ * token is verified again once the realm's signing key or algorithm changes.
+ */
+final class StatelessTokenCache {
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    /**
+     * Constructs a new StatelessTokenCache.
+     *
+     * @param maxSize The maximum number of tokens held; zero or less disables the cache.
+     */
+    StatelessTokenCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cached token, if it was verified with the given signing handler and has not expired.
+     *
+     * @param tokenId The token string.
+     * @param verificationHandler The signing handler the token must have been verified with.
+     * @return The token, or {@code null}.
+     */
+    SignedJwt get(String tokenId, SigningHandler verificationHandler) {
+        if (maxSize <= 0) {
+            return null;
+        }
+        String digest = digest(tokenId);
+        Entry entry = entries.get(digest);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(currentTimeMillis())) {
+            entries.remove(digest, entry);
+            return null;
+        }
+        return entry.verificationHandler == verificationHandler ? entry.jwt : null;
+    }
+
+    /**
+     * Caches a token whose signature has been verified.
+     *
+     * @param tokenId The token string.
+     * @param jwt The token.
+     * @param verificationHandler The signing handler the token was verified with.
+     * @param expiryTime The time, in milliseconds, the token expires at.
+     */
+    void put(String tokenId, SignedJwt jwt, SigningHandler verificationHandler, long expiryTime) {
+        long now = currentTimeMillis();
+        if (maxSize <= 0 || expiryTime <= now) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            makeSpace(now);
+        }
+        entries.put(digest(tokenId), new Entry(jwt, verificationHandler, expiryTime));
+    }
+
+    /**
+     * Removes a token from the cache.
+     *
+     * @param tokenId The token string.
+     */
+    void remove(String tokenId) {
+        if (maxSize > 0) {
+            entries.remove(digest(tokenId));
+        }
+    }
+
+    /**
+     * @return The number of tokens held.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    private void makeSpace(long now) {
+        for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+            }
+        }
+        // Still full of live tokens, so drop arbitrary ones; they are verified again when next read.
+        for (Iterator<Entry> iterator = entries.values().iterator();
+                entries.size() >= maxSize && iterator.hasNext();) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static String digest(String tokenId) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.encode(digest.digest(tokenId.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private static final class Entry {
+
+        private final SignedJwt jwt;
+        private final SigningHandler verificationHandler;
+        private final long expiryTime;
+
+        private Entry(SignedJwt jwt, SigningHandler verificationHandler, long expiryTime) {
+            this.jwt = jwt;
+            this.verificationHandler = verificationHandler;
+            this.expiryTime = expiryTime;
+        }
+
+        private boolean isExpired(long now) {
+            return expiryTime <= now;
+        }
+    }
+}
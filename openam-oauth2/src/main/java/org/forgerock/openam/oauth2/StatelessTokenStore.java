@@ -32,14 +32,20 @@ import static org.forgerock.openam.utils.Time.newDate;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.security.PublicKey;
 import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.ECPublicKey;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
 
+import com.iplanet.am.util.SystemProperties;
 import com.sun.identity.shared.debug.Debug;
 import org.forgerock.json.JsonValue;
 import org.forgerock.json.jose.builders.JwtBuilderFactory;
@@ -81,6 +87,14 @@ import org.joda.time.Duration;
  */
 public class StatelessTokenStore implements TokenStore {
 
+    /**
+     * The maximum number of verified stateless tokens to cache; zero disables the cache.
+     */
+    public static final String TOKEN_CACHE_SIZE = "org.forgerock.openam.oauth2.stateless.tokenCacheSize";
+    private static final int DEFAULT_TOKEN_CACHE_SIZE = 10000;
+    // How often the signing key of a realm is read again to see whether it has changed.
+    private static final long VERIFIER_REFRESH_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
     private final Debug logger;
     private final TokenStore statefulTokenStore;
     private final JwtBuilderFactory jwtBuilder;
@@ -88,7 +102,8 @@ public class StatelessTokenStore implements TokenStore {
     private final OpenIdConnectClientRegistrationStore clientRegistrationStore;
     private final RealmNormaliser realmNormaliser;
     private final OAuth2UrisFactory<RealmInfo> oAuth2UrisFactory;
-
+    private final StatelessTokenCache tokenCache;
+    private final Map<OAuth2ProviderSettings, TokenVerifier> tokenVerifiers = new WeakHashMap<>();
 
     /**
      * Constructs a new StatelessTokenStore.
@@ -113,6 +128,8 @@ public class StatelessTokenStore implements TokenStore {
         this.clientRegistrationStore = clientRegistrationStore;
         this.realmNormaliser = realmNormaliser;
         this.oAuth2UrisFactory = oAuth2UrisFactory;
+        this.tokenCache = new StatelessTokenCache(
+                SystemProperties.getAsInt(TOKEN_CACHE_SIZE, DEFAULT_TOKEN_CACHE_SIZE));
     }
 
     @Override
@@ -210,21 +227,38 @@ public class StatelessTokenStore implements TokenStore {
         }
     }
 
-    private SigningHandler getTokenVerificationHandler(OAuth2ProviderSettings providerSettings, JwsAlgorithm signingAlgorithm)
-            throws NotFoundException, ServerException {
+    private Object getTokenVerificationKey(OAuth2ProviderSettings providerSettings, JwsAlgorithm signingAlgorithm)
+            throws ServerException {
         try {
             switch (signingAlgorithm.getAlgorithmType()) {
                 case HMAC: {
-                    return new SigningManager().newHmacSigningHandler(
-                            Base64.decode(providerSettings.getTokenHmacSharedSecret()));
+                    return providerSettings.getTokenHmacSharedSecret();
+                }
+                case RSA:
+                case ECDSA: {
+                    return providerSettings.getSigningKeyPair(signingAlgorithm).getPublic();
+                }
+                default: {
+                    throw new ServerException("Unsupported Token signing algorithm");
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ServerException("Invalid Token signing algorithm");
+        }
+    }
+
+    private SigningHandler getTokenVerificationHandler(JwsAlgorithm signingAlgorithm, Object verificationKey)
+            throws ServerException {
+        try {
+            switch (signingAlgorithm.getAlgorithmType()) {
+                case HMAC: {
+                    return new SigningManager().newHmacSigningHandler(Base64.decode((String) verificationKey));
                 }
                 case RSA: {
-                    return new SigningManager().newRsaSigningHandler(
-                            providerSettings.getSigningKeyPair(signingAlgorithm).getPublic());
+                    return new SigningManager().newRsaSigningHandler((PublicKey) verificationKey);
                 }
                 case ECDSA: {
-                    return new SigningManager().newEcdsaVerificationHandler(
-                            (ECPublicKey) providerSettings.getSigningKeyPair(signingAlgorithm).getPublic());
+                    return new SigningManager().newEcdsaVerificationHandler((ECPublicKey) verificationKey);
                 }
                 default: {
                     throw new ServerException("Unsupported Token signing algorithm");
@@ -235,6 +269,37 @@ public class StatelessTokenStore implements TokenStore {
         }
     }
 
+    /**
+     * Returns the signing handler to verify tokens with for the realm. The handler is reused until the realm's
+     * signing algorithm or key changes, which is checked at most once every {@link #VERIFIER_REFRESH_INTERVAL}ms.
+     */
+    private SigningHandler getTokenVerificationHandler(OAuth2ProviderSettings providerSettings)
+            throws ServerException, NotFoundException {
+        JwsAlgorithm signingAlgorithm = getSigningAlgorithm(providerSettings);
+        long now = currentTimeMillis();
+        TokenVerifier verifier;
+        synchronized (tokenVerifiers) {
+            verifier = tokenVerifiers.get(providerSettings);
+        }
+        if (verifier != null && verifier.algorithm == signingAlgorithm && now < verifier.refreshTime) {
+            return verifier.handler;
+        }
+        Object verificationKey = getTokenVerificationKey(providerSettings, signingAlgorithm);
+        SigningHandler handler;
+        if (verifier != null && verifier.algorithm == signingAlgorithm
+                && Objects.equals(verifier.key, verificationKey)) {
+            // keep the same handler, so that tokens verified with it stay cached
+            handler = verifier.handler;
+        } else {
+            handler = getTokenVerificationHandler(signingAlgorithm, verificationKey);
+        }
+        synchronized (tokenVerifiers) {
+            tokenVerifiers.put(providerSettings, new TokenVerifier(signingAlgorithm, verificationKey, handler,
+                    now + VERIFIER_REFRESH_INTERVAL));
+        }
+        return handler;
+    }
+
     private JwsAlgorithm getSigningAlgorithm(OAuth2Request request) throws ServerException, NotFoundException {
         try {
             OAuth2ProviderSettings providerSettings = providerSettingsFactory.get(request);
@@ -407,11 +472,10 @@ public class StatelessTokenStore implements TokenStore {
     @Override
     public void deleteAccessToken(OAuth2Request request, String tokenId) throws ServerException {
         try {
-            SignedJwt jwt = new JwtReconstruction().reconstructJwt(tokenId, SignedJwt.class);
-            verifySignature(request, jwt);
+            SignedJwt jwt = readVerifiedJwt(request, tokenId);
             verifyTokenType(OAUTH_ACCESS_TOKEN, jwt);
             validateTokenRealm(jwt.getClaimsSet().getClaim("realm", String.class), request);
-            // No-op
+            tokenCache.remove(tokenId);
         } catch (InvalidJwtException | NotFoundException | InvalidGrantException e) {
             throw new ServerException("token id is not a JWT");
         }
@@ -421,11 +485,10 @@ public class StatelessTokenStore implements TokenStore {
     public void deleteRefreshToken(OAuth2Request request, String tokenId) throws InvalidRequestException,
             ServerException {
         try {
-            SignedJwt jwt = new JwtReconstruction().reconstructJwt(tokenId, SignedJwt.class);
-            verifySignature(request, jwt);
+            SignedJwt jwt = readVerifiedJwt(request, tokenId);
             verifyTokenType(OAUTH_REFRESH_TOKEN, jwt);
             validateTokenRealm(jwt.getClaimsSet().getClaim("realm", String.class), request);
-            // No-op
+            tokenCache.remove(tokenId);
         } catch (InvalidJwtException | NotFoundException | InvalidGrantException e) {
             throw new InvalidRequestException("token id is not a JWT");
         }
@@ -435,8 +498,7 @@ public class StatelessTokenStore implements TokenStore {
     public AccessToken readAccessToken(OAuth2Request request, String tokenId) throws ServerException,
             InvalidGrantException, NotFoundException {
         try {
-            SignedJwt jwt = new JwtReconstruction().reconstructJwt(tokenId, SignedJwt.class);
-            verifySignature(request, jwt);
+            SignedJwt jwt = readVerifiedJwt(request, tokenId);
             verifyTokenType(OAUTH_ACCESS_TOKEN, jwt);
             validateTokenRealm(jwt.getClaimsSet().getClaim("realm", String.class), request);
             StatelessAccessToken accessToken = new StatelessAccessToken(jwt, tokenId);
@@ -451,8 +513,7 @@ public class StatelessTokenStore implements TokenStore {
     public RefreshToken readRefreshToken(OAuth2Request request, String tokenId) throws ServerException,
             InvalidGrantException, NotFoundException {
         try {
-            SignedJwt jwt = new JwtReconstruction().reconstructJwt(tokenId, SignedJwt.class);
-            verifySignature(request, jwt);
+            SignedJwt jwt = readVerifiedJwt(request, tokenId);
             verifyTokenType(OAUTH_REFRESH_TOKEN, jwt);
             validateTokenRealm(jwt.getClaimsSet().getClaim("realm", String.class), request);
             return new StatelessRefreshToken(jwt, tokenId);
@@ -501,7 +562,7 @@ public class StatelessTokenStore implements TokenStore {
 
     @Override
     public void delete(String realm, String tokenId) throws ServerException, NotFoundException {
-        // No-op
+        tokenCache.remove(tokenId);
     }
 
     @Override
@@ -524,17 +585,25 @@ public class StatelessTokenStore implements TokenStore {
         }
     }
 
-    private void verifySignature(OAuth2Request request, SignedJwt jwt) throws InvalidGrantException, ServerException,
-            NotFoundException {
-        verifySignature(providerSettingsFactory.get(request), jwt);
-    }
-
-    private void verifySignature(OAuth2ProviderSettings providerSettings, SignedJwt jwt) throws InvalidGrantException, ServerException,
-            NotFoundException {
-        JwsAlgorithm signingAlgorithm = getSigningAlgorithm(providerSettings);
-        if(!jwt.verify(getTokenVerificationHandler(providerSettings, signingAlgorithm))) {
-            throw new InvalidGrantException();
+    /**
+     * Reconstructs the token and verifies its signature, or returns the token from the cache if it has already been
+     * verified with the realm's current signing key.
+     */
+    private SignedJwt readVerifiedJwt(OAuth2Request request, String tokenId) throws InvalidGrantException,
+            ServerException, NotFoundException {
+        SigningHandler verificationHandler = getTokenVerificationHandler(providerSettingsFactory.get(request));
+        SignedJwt jwt = tokenCache.get(tokenId, verificationHandler);
+        if (jwt == null) {
+            jwt = new JwtReconstruction().reconstructJwt(tokenId, SignedJwt.class);
+            if (!jwt.verify(verificationHandler)) {
+                throw new InvalidGrantException();
+            }
+            Date expirationTime = jwt.getClaimsSet().getExpirationTime();
+            if (expirationTime != null) {
+                tokenCache.put(tokenId, jwt, verificationHandler, expirationTime.getTime());
+            }
         }
+        return jwt;
     }
 
     private void verifyTokenType(String requiredTokenType, SignedJwt jwt) throws InvalidGrantException {
@@ -569,4 +638,19 @@ public class StatelessTokenStore implements TokenStore {
         map.put(AUTH_GRANT_ID, token.getAuthGrantId());
         return json(map);
     }
+
+    private static final class TokenVerifier {
+
+        private final JwsAlgorithm algorithm;
+        private final Object key;
+        private final SigningHandler handler;
+        private final long refreshTime;
+
+        private TokenVerifier(JwsAlgorithm algorithm, Object key, SigningHandler handler, long refreshTime) {
+            this.algorithm = algorithm;
+            this.key = key;
+            this.handler = handler;
+            this.refreshTime = refreshTime;
+        }
+    }
 }
@@ -35,6 +35,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import com.google.inject.AbstractModule;
@@ -112,6 +113,7 @@ import org.forgerock.openam.oauth2.AccessTokenProtectionFilter;
 import org.forgerock.openam.oauth2.ClientAuthenticatorImpl;
 import org.forgerock.openam.oauth2.CookieExtractor;
 import org.forgerock.openam.oauth2.OAuth2AuditLogger;
+import org.forgerock.openam.oauth2.OAuth2ClientCache;
 import org.forgerock.openam.oauth2.OAuth2Constants;
 import org.forgerock.openam.oauth2.OAuthTokenStore;
 import org.forgerock.openam.oauth2.OpenAMClientDAO;
@@ -157,6 +159,7 @@ import org.forgerock.openidconnect.SubjectTypeValidator;
 import org.forgerock.openidconnect.UserInfoService;
 import org.forgerock.openidconnect.UserInfoServiceImpl;
 import org.forgerock.openidconnect.restlet.LoginHintHook;
+import org.forgerock.util.thread.ExecutorServiceFactory;
 import org.restlet.Request;
 import org.restlet.Restlet;
 
@@ -301,6 +304,14 @@ public class OAuth2GuiceModule extends AbstractModule {
         }
     }
 
+    @Provides
+    @Inject
+    @Singleton
+    @Named(OAuth2ClientCache.EXECUTOR_BINDING_NAME)
+    ExecutorService getClientCacheWarmUpExecutorService(ExecutorServiceFactory esf) {
+        return esf.createFixedThreadPool(1, OAuth2ClientCache.EXECUTOR_BINDING_NAME);
+    }
+
     @Provides
     @Singleton
     @Named(OAuth2Constants.Custom.JWK_RESOLVER)
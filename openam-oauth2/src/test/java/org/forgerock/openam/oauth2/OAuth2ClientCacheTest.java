@@ -0,0 +1,200 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.oauth2;
+
+import static java.util.Collections.singleton;
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.security.PrivilegedAction;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import com.iplanet.sso.SSOToken;
+import com.sun.identity.idm.AMIdentity;
+import com.sun.identity.idm.AMIdentityRepository;
+import com.sun.identity.idm.IdEventListener;
+import com.sun.identity.idm.IdSearchControl;
+import com.sun.identity.idm.IdSearchResults;
+import com.sun.identity.idm.IdType;
+import org.forgerock.openam.identity.idm.AMIdentityRepositoryFactory;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class OAuth2ClientCacheTest {
+
+    private static final String REALM = "o=realm,ou=services,dc=openam";
+
+    private AMIdentityRepository repo;
+    private ExecutorService executor;
+    private OAuth2ClientCache cache;
+
+    @BeforeMethod
+    public void setup() {
+        AMIdentityRepositoryFactory idRepoFactory = mock(AMIdentityRepositoryFactory.class);
+        repo = mock(AMIdentityRepository.class);
+        executor = mock(ExecutorService.class);
+        final SSOToken adminToken = mock(SSOToken.class);
+        given(idRepoFactory.create(eq(REALM), any(SSOToken.class))).willReturn(repo);
+        cache = new OAuth2ClientCache(idRepoFactory, executor, new PrivilegedAction<SSOToken>() {
+            @Override
+            public SSOToken run() {
+                return adminToken;
+            }
+        }) {
+            @Override
+            String getRealmDN(String realm) {
+                return realm;
+            }
+        };
+    }
+
+    @Test
+    public void shouldOnlySearchForClientOnCacheMiss() throws Exception {
+        // Given
+        AMIdentity client = givenSearchResults("myClient", agent("myClient", "OAuth2Client"));
+
+        // When
+        OAuth2ClientCache.CachedClient miss = cache.get(REALM, "myClient");
+        OAuth2ClientCache.CachedClient hit = cache.get(REALM, "MYCLIENT");
+
+        // Then
+        assertThat(miss.getIdentity()).isSameAs(client);
+        assertThat(hit).isSameAs(miss);
+        verify(repo, times(1)).searchIdentities(eq(IdType.AGENTONLY), anyString(), any(IdSearchControl.class));
+    }
+
+    @Test
+    public void shouldReturnNullWhenClientIsNotFound() throws Exception {
+        // Given
+        givenSearchResults("myClient");
+
+        // When
+        OAuth2ClientCache.CachedClient client = cache.get(REALM, "myClient");
+
+        // Then
+        assertThat(client).isNull();
+    }
+
+    @Test
+    public void shouldSearchAgainAfterClientHasChanged() throws Exception {
+        // Given
+        givenSearchResults("myClient", agent("myClient", "OAuth2Client"));
+        OAuth2ClientCache.CachedClient original = cache.get(REALM, "myClient");
+        AMIdentity changed = givenSearchResults("myClient", agent("myClient", "OAuth2Client"));
+
+        // When
+        getListener().identityChanged("id=myClient,ou=agent," + REALM);
+        OAuth2ClientCache.CachedClient reloaded = cache.get(REALM, "myClient");
+
+        // Then
+        assertThat(reloaded).isNotSameAs(original);
+        assertThat(reloaded.getIdentity()).isSameAs(changed);
+    }
+
+    @Test
+    public void shouldKeepOtherClientsWhenOneHasChanged() throws Exception {
+        // Given
+        givenSearchResults("myClient", agent("myClient", "OAuth2Client"));
+        givenSearchResults("otherClient", agent("otherClient", "OAuth2Client"));
+        OAuth2ClientCache.CachedClient other = cache.get(REALM, "otherClient");
+        cache.get(REALM, "myClient");
+
+        // When
+        getListener().identityDeleted("id=myClient,ou=agent," + REALM);
+
+        // Then
+        assertThat(cache.get(REALM, "otherClient")).isSameAs(other);
+        verify(repo, times(1)).searchIdentities(eq(IdType.AGENTONLY), eq("otherClient"),
+                any(IdSearchControl.class));
+    }
+
+    @Test
+    public void shouldNotCacheClientFoundBySearchPattern() throws Exception {
+        // Given
+        AMIdentity client = givenSearchResults("my*", agent("myClient", "OAuth2Client"));
+        givenSearchResults("myClient", client);
+
+        // When
+        OAuth2ClientCache.CachedClient byPattern = cache.get(REALM, "my*");
+        cache.get(REALM, "my*");
+        cache.get(REALM, "myClient");
+
+        // Then
+        assertThat(byPattern.getIdentity()).isSameAs(client);
+        verify(repo, times(2)).searchIdentities(eq(IdType.AGENTONLY), eq("my*"), any(IdSearchControl.class));
+        verify(repo).searchIdentities(eq(IdType.AGENTONLY), eq("myClient"), any(IdSearchControl.class));
+    }
+
+    @Test
+    public void shouldLoadRealmsClientsInBackgroundOnlyOnce() throws Exception {
+        // Given
+        AMIdentity client = agent("myClient", "OAuth2Client");
+        givenSearchResults("*", client, agent("webAgent", "WebAgent"));
+        ArgumentCaptor<Runnable> warmUp = ArgumentCaptor.forClass(Runnable.class);
+
+        // When
+        cache.warmUp(REALM);
+        cache.warmUp(REALM);
+
+        // Then
+        verify(executor, times(1)).execute(warmUp.capture());
+        verify(repo, never()).searchIdentities(any(IdType.class), anyString(), any(IdSearchControl.class));
+
+        warmUp.getValue().run();
+        givenSearchResults("webAgent", agent("webAgent", "WebAgent"));
+        assertThat(cache.get(REALM, "myClient").getIdentity()).isSameAs(client);
+        cache.get(REALM, "webAgent");
+        verify(repo, never()).searchIdentities(eq(IdType.AGENTONLY), eq("myClient"), any(IdSearchControl.class));
+        verify(repo).searchIdentities(eq(IdType.AGENTONLY), eq("webAgent"), any(IdSearchControl.class));
+    }
+
+    private IdEventListener getListener() {
+        ArgumentCaptor<IdEventListener> listener = ArgumentCaptor.forClass(IdEventListener.class);
+        verify(repo).addEventListener(listener.capture());
+        return listener.getValue();
+    }
+
+    private AMIdentity givenSearchResults(String pattern, AMIdentity... identities) throws Exception {
+        IdSearchResults results = mock(IdSearchResults.class);
+        Map<AMIdentity, Map<String, Set<String>>> attributes = new HashMap<>();
+        for (AMIdentity identity : identities) {
+            attributes.put(identity, identity.getAttributes());
+        }
+        given(results.getSearchResults()).willReturn(new HashSet<>(attributes.keySet()));
+        given(results.getResultAttributes()).willReturn(attributes);
+        given(repo.searchIdentities(eq(IdType.AGENTONLY), eq(pattern), any(IdSearchControl.class)))
+                .willReturn(results);
+        return identities.length == 0 ? null : identities[0];
+    }
+
+    private AMIdentity agent(String name, String agentType) throws Exception {
+        AMIdentity identity = mock(AMIdentity.class);
+        Map<String, Set<String>> attributes = new HashMap<>();
+        attributes.put("AgentType", singleton(agentType));
+        attributes.put("sunIdentityServerDeviceStatus", singleton("Active"));
+        given(identity.getName()).willReturn(name);
+        given(identity.getAttributes()).willReturn(attributes);
+        return identity;
+    }
+}
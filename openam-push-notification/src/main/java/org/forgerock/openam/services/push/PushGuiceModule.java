@@ -18,9 +18,11 @@ package org.forgerock.openam.services.push;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.name.Names;
+import com.iplanet.am.util.SystemProperties;
 import com.iplanet.sso.SSOException;
 import com.sun.identity.security.AdminTokenAction;
 import com.sun.identity.shared.debug.Debug;
+import com.sun.identity.shared.stats.Stats;
 import com.sun.identity.sm.SMSException;
 import com.sun.identity.sm.ServiceConfigManager;
 import java.security.AccessController;
@@ -28,8 +30,11 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import javax.inject.Named;
+import javax.inject.Singleton;
 import org.forgerock.guava.common.cache.Cache;
 import org.forgerock.guava.common.cache.CacheBuilder;
+import org.forgerock.guava.common.cache.RemovalListener;
+import org.forgerock.guava.common.cache.RemovalNotification;
 import org.forgerock.guice.core.GuiceModule;
 import org.forgerock.openam.services.push.dispatch.MessagePromise;
 
@@ -39,24 +44,65 @@ import org.forgerock.openam.services.push.dispatch.MessagePromise;
 @GuiceModule
 public class PushGuiceModule extends AbstractModule {
 
+    /** System property for the maximum number of messages awaiting a response across all realms. */
+    public static final String MAX_PENDING_MESSAGES_PROPERTY = "org.forgerock.openam.push.maxPendingMessages";
+
+    private static final int DEFAULT_MAX_PENDING_MESSAGES = 100000;
+    private static final int DISPATCH_CONCURRENCY_LEVEL = 64;
+
     @Override
     protected void configure() {
         bind(Debug.class).annotatedWith(Names.named("frPush")).toInstance(Debug.getInstance("frPush"));
     }
 
     /**
-     * Generates a new Cache for the MessageDispatcher.
+     * Generates a new Cache for the MessageDispatcher. The cache is split into segments by the hash of the
+     * messageId, each with its own lock, and holds as many promises as the
+     * {@value #MAX_PENDING_MESSAGES_PROPERTY} system property allows.
+     *
+     * @param stats to count the promises which expire or are evicted before being completed.
      * @return a newly constructed Cache.
      */
     @Provides
-    public Cache<String, MessagePromise> getMessageDispatchCache() {
+    public Cache<String, MessagePromise> getMessageDispatchCache(final PushNotificationStats stats) {
         return CacheBuilder.newBuilder()
-                .concurrencyLevel(16)
-                .maximumSize(10000)
+                .concurrencyLevel(DISPATCH_CONCURRENCY_LEVEL)
+                .maximumSize(SystemProperties.getAsInt(MAX_PENDING_MESSAGES_PROPERTY, DEFAULT_MAX_PENDING_MESSAGES))
                 .expireAfterWrite(2, TimeUnit.MINUTES)
+                .removalListener(new RemovalListener<String, MessagePromise>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, MessagePromise> notification) {
+                        switch (notification.getCause()) {
+                        case EXPIRED:
+                            stats.promiseExpired();
+                            break;
+                        case SIZE:
+                            stats.promiseEvicted();
+                            break;
+                        default:
+                            break;
+                        }
+                    }
+                })
                 .build();
     }
 
+    /**
+     * Generates the push notification statistics, registered with the stats file when it is enabled.
+     *
+     * @return the push notification statistics.
+     */
+    @Provides
+    @Singleton
+    PushNotificationStats getPushNotificationStats() {
+        PushNotificationStats pushNotificationStats = new PushNotificationStats();
+        Stats stats = Stats.getInstance(PushNotificationStats.STATS_NAME);
+        if (stats.isEnabled()) {
+            stats.addStatsListener(pushNotificationStats);
+        }
+        return pushNotificationStats;
+    }
+
     @Provides
     ConcurrentMap<String, PushNotificationDelegate> getPushNotificationDelegateMap() {
         return new ConcurrentHashMap<>();
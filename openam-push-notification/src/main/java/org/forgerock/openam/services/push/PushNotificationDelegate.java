@@ -43,10 +43,13 @@ public interface PushNotificationDelegate extends Closeable {
     void startServices() throws PushNotificationException;
 
     /**
-     * Used to send a message out to the PushNotificationDelegate to be delivered.
+     * Used to send a message out to the PushNotificationDelegate to be delivered. Implementations may deliver
+     * the message asynchronously, after this method has returned.
+     *
      * @param message The message to send.
+     * @throws PushNotificationException if the message could not be accepted for delivery.
      */
-    void send(PushMessage message);
+    void send(PushMessage message) throws PushNotificationException;
 
     /**
      * Returns whether or not the new config is so different from the old that the existing delegate
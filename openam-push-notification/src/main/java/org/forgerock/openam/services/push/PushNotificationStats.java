@@ -0,0 +1,149 @@
+/*
+* The contents of this file are subject to the terms of the Common Development and
+* Distribution License (the License). You may not use this file except in compliance with the
+* License.
+*
+* You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+* specific language governing permission and limitations under the License.
+*
+* When distributing Covered Software, include this CDDL Header Notice in each file and include
+* the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+* Header, with the fields enclosed by brackets [] replaced by your own identifying
+* information: "Portions copyright [year] [name of copyright owner]".
+*
+* Copyright 2016 ForgeRock AS.
+*/
+package org.forgerock.openam.services.push;
+
+import com.sun.identity.shared.stats.Stats;
+import com.sun.identity.shared.stats.StatsListener;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Singleton;
+
+/**
+ * Counters describing the delivery of push notifications and the promises awaiting their responses, shared by all
+ * realms' delegates and printed to the {@value #STATS_NAME} stats file when it is enabled.
+ *
+ * @since 14.0.0
+ */
+@Singleton
+public class PushNotificationStats implements StatsListener {
+
+    /** The name of the stats file the statistics are printed to. */
+    public static final String STATS_NAME = "amPushNotification";
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong sendTime = new AtomicLong();
+    private final AtomicLong promisesExpired = new AtomicLong();
+    private final AtomicLong promisesEvicted = new AtomicLong();
+
+    /**
+     * Records a message submitted for delivery.
+     */
+    public void messageQueued() {
+        queued.incrementAndGet();
+    }
+
+    /**
+     * Records a submitted message refused because too many messages were awaiting delivery.
+     */
+    public void messageRejected() {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * Records the delivery of a message to the provider.
+     *
+     * @param nanos The time taken to send the message, in nanoseconds.
+     */
+    public void messageSent(long nanos) {
+        sendTime.addAndGet(nanos);
+        sent.incrementAndGet();
+    }
+
+    /**
+     * Records a message which could not be sent to the provider.
+     *
+     * @param nanos The time taken by the failed attempt, in nanoseconds.
+     */
+    public void messageFailed(long nanos) {
+        sendTime.addAndGet(nanos);
+        failed.incrementAndGet();
+    }
+
+    /**
+     * Records a promise which expired before a response to its message was received.
+     */
+    public void promiseExpired() {
+        promisesExpired.incrementAndGet();
+    }
+
+    /**
+     * Records a promise dropped before it expired because too many promises were outstanding.
+     */
+    public void promiseEvicted() {
+        promisesEvicted.incrementAndGet();
+    }
+
+    /**
+     * @return The number of messages queued or being sent.
+     */
+    public long getQueueDepth() {
+        return queued.get() - rejected.get() - sent.get() - failed.get();
+    }
+
+    /**
+     * @return The number of messages sent to the provider.
+     */
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    /**
+     * @return The number of messages which could not be sent to the provider.
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return The number of messages refused because too many were awaiting delivery.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return The average time taken to send a message, in milliseconds.
+     */
+    public long getAverageSendTime() {
+        long attempts = sent.get() + failed.get();
+        return attempts == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(sendTime.get() / attempts);
+    }
+
+    /**
+     * @return The number of promises which expired before a response to their message was received.
+     */
+    public long getExpiredPromiseCount() {
+        return promisesExpired.get();
+    }
+
+    /**
+     * @return The number of promises dropped before they expired because too many were outstanding.
+     */
+    public long getEvictedPromiseCount() {
+        return promisesEvicted.get();
+    }
+
+    @Override
+    public void printStats() {
+        Stats.getInstance(STATS_NAME).record("Push notifications: queue depth " + getQueueDepth()
+                + ", sent " + getSentCount() + ", failed " + getFailedCount() + ", rejected " + getRejectedCount()
+                + ", average send time " + getAverageSendTime() + " ms, promises expired " + getExpiredPromiseCount()
+                + ", promises evicted " + getEvictedPromiseCount());
+    }
+}
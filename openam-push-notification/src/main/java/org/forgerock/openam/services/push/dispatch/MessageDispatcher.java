@@ -115,11 +115,24 @@ public class MessageDispatcher {
      * the cache.
      */
     public boolean forget(String messageId) {
-        MessagePromise messagePromise = cache.getIfPresent(messageId);
-        if (messagePromise != null) {
-            cache.invalidate(messageId);
-            return true;
+        return cache.asMap().remove(messageId) != null;
+    }
+
+    /**
+     * Fails any promise returned by this cache for the provided messageId, and removes it from the cache, as no
+     * response to the message will arrive, e.g. because the message could not be sent.
+     *
+     * @param messageId The messageId to fail.
+     * @param cause The reason no response will arrive. May not be null.
+     * @return True if the promise was failed by this call, false if the provided messageId was not found.
+     */
+    public boolean fail(String messageId, Exception cause) {
+        Reject.ifNull(cause);
+        MessagePromise messagePromise = cache.asMap().remove(messageId);
+        if (messagePromise == null) {
+            return false;
         }
-        return false;
+        messagePromise.getPromise().tryHandleException(cause);
+        return true;
     }
 }
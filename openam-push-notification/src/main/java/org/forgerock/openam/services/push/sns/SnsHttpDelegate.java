@@ -25,16 +25,25 @@ import com.sun.identity.shared.debug.Debug;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import org.forgerock.json.resource.Router;
 import org.forgerock.openam.services.push.PushMessage;
 import org.forgerock.openam.services.push.PushNotificationDelegate;
 import org.forgerock.openam.services.push.PushNotificationException;
 import org.forgerock.openam.services.push.PushNotificationServiceConfig;
+import org.forgerock.openam.services.push.PushNotificationStats;
+import org.forgerock.openam.services.push.dispatch.MessageDispatcher;
 import org.forgerock.openam.services.push.dispatch.Predicate;
 import org.forgerock.services.routing.RouteMatcher;
 
 /**
- * Delegate for communicating with SNS over HTTP.
+ * Delegate for communicating with SNS over HTTP. Messages are published by a bounded pool of sender threads
+ * sharing the client's keep-alive connections, so that callers are not held up by the round trip to SNS. A message
+ * which cannot be published fails the promise awaiting its response.
+ *
+ * Each message is published on its own: SNS delivers every message to a single endpoint, and the SNS client has no
+ * operation to publish several messages at once.
  */
 public class SnsHttpDelegate implements PushNotificationDelegate {
 
@@ -47,6 +56,9 @@ public class SnsHttpDelegate implements PushNotificationDelegate {
     private final Router router;
     private final SnsMessageResource messageEndpoint;
     private final SnsPushMessageConverter pushMessageConverter;
+    private final ExecutorService sender;
+    private final PushNotificationStats stats;
+    private final MessageDispatcher messageDispatcher;
 
     private PushNotificationServiceConfig config;
 
@@ -59,23 +71,54 @@ public class SnsHttpDelegate implements PushNotificationDelegate {
      * @param router to attach a newly generate GcmMessageEndpoint upon this delegate's initialization.
      * @param messageEndpoint the endpoint to attach to the router upon initialisation.
      * @param pushMessageConverter a mesage converter, to ensure the message sent is of the correct format.
+     * @param sender bounded executor used to publish messages, shut down when this delegate is closed.
+     * @param stats to record the delivery of messages.
+     * @param messageDispatcher to fail the promises of messages which could not be published.
      * @param debug for logging purposes.
      */
     public SnsHttpDelegate(AmazonSNSClient client, PushNotificationServiceConfig config, Router router,
                            SnsMessageResource messageEndpoint, SnsPushMessageConverter pushMessageConverter,
+                           ExecutorService sender, PushNotificationStats stats, MessageDispatcher messageDispatcher,
                            Debug debug) {
         this.client = client;
         this.config = config;
         this.router = router;
         this.messageEndpoint = messageEndpoint;
         this.pushMessageConverter = pushMessageConverter;
+        this.sender = sender;
+        this.stats = stats;
+        this.messageDispatcher = messageDispatcher;
         this.debug = debug;
     }
 
     @Override
-    public void send(PushMessage message) {
-        PublishRequest request = convertToSns(message);
-        client.publish(request);
+    public void send(PushMessage message) throws PushNotificationException {
+        final PublishRequest request = convertToSns(message);
+        final String messageId = message.getMessageId();
+        stats.messageQueued();
+        try {
+            sender.execute(new Runnable() {
+                @Override
+                public void run() {
+                    publish(request, messageId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            stats.messageRejected();
+            throw new PushNotificationException("Unable to queue Push Notification with messageId " + messageId, e);
+        }
+    }
+
+    private void publish(PublishRequest request, String messageId) {
+        long start = System.nanoTime();
+        try {
+            client.publish(request);
+            stats.messageSent(System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            stats.messageFailed(System.nanoTime() - start);
+            debug.error("Unable to transmit Push Notification with messageId {}", messageId, e);
+            messageDispatcher.fail(messageId, e);
+        }
     }
 
     @Override
@@ -118,6 +161,7 @@ public class SnsHttpDelegate implements PushNotificationDelegate {
     @Override
     public void close() throws IOException {
         router.removeRoute(routeMatcher);
+        sender.shutdown();
     }
 
     private PublishRequest convertToSns(PushMessage message) {
@@ -15,30 +15,48 @@
 */
 package org.forgerock.openam.services.push.sns;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.sns.AmazonSNSClient;
 import com.google.inject.Key;
 import com.google.inject.name.Names;
+import com.iplanet.am.util.SystemProperties;
 import com.sun.identity.shared.debug.Debug;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.forgerock.guice.core.InjectorHolder;
 import org.forgerock.json.resource.Router;
 import org.forgerock.openam.services.push.PushNotificationDelegateFactory;
 import org.forgerock.openam.services.push.PushNotificationException;
 import org.forgerock.openam.services.push.PushNotificationServiceConfig;
+import org.forgerock.openam.services.push.PushNotificationStats;
+import org.forgerock.openam.services.push.dispatch.MessageDispatcher;
+import org.forgerock.util.thread.ExecutorServiceFactory;
 
 /**
  * Produces SnsHttpDelegates matching the PushNotificationServiceFactory interface.
  */
 public class SnsHttpDelegateFactory implements PushNotificationDelegateFactory {
 
+    /** System property for the number of threads, and connections, each delegate uses to publish messages. */
+    public static final String SENDER_THREADS_PROPERTY = "org.forgerock.openam.push.sns.senderThreads";
+    /** System property for the number of messages each delegate holds while waiting for a sender thread. */
+    public static final String QUEUE_SIZE_PROPERTY = "org.forgerock.openam.push.sns.queueSize";
+
     private final static Key<Router> KEY = Key.get(Router.class, Names.named("CrestRealmRouter"));
+    private final static int DEFAULT_SENDER_THREADS = 16;
+    private final static int DEFAULT_QUEUE_SIZE = 10000;
 
     private final Debug debug;
     private final SnsMessageResource messageResource;
     private final SnsPushMessageConverter pushMessageConverter;
     private final Router router;
+    private final ExecutorServiceFactory executorServiceFactory;
+    private final PushNotificationStats stats;
+    private final MessageDispatcher messageDispatcher;
 
     /**
      * Default constructor sets the debug for passing into produced delegates.
@@ -48,14 +66,24 @@ public class SnsHttpDelegateFactory implements PushNotificationDelegateFactory {
         messageResource = InjectorHolder.getInstance(SnsMessageResource.class);
         pushMessageConverter  = InjectorHolder.getInstance(SnsPushMessageConverter.class);
         router = InjectorHolder.getInstance(KEY);
+        executorServiceFactory = InjectorHolder.getInstance(ExecutorServiceFactory.class);
+        stats = InjectorHolder.getInstance(PushNotificationStats.class);
+        messageDispatcher = InjectorHolder.getInstance(MessageDispatcher.class);
     }
 
     @Override
     public SnsHttpDelegate produceDelegateFor(PushNotificationServiceConfig config) throws PushNotificationException {
+        int senderThreads = Math.max(SystemProperties.getAsInt(SENDER_THREADS_PROPERTY, DEFAULT_SENDER_THREADS), 1);
+        int queueSize = Math.max(SystemProperties.getAsInt(QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE), 1);
+
         AmazonSNSClient service = new AmazonSNSClient(
-                new BasicAWSCredentials(config.getAccessKey(), config.getSecret()));
+                new BasicAWSCredentials(config.getAccessKey(), config.getSecret()),
+                new ClientConfiguration().withMaxConnections(senderThreads).withTcpKeepAlive(true));
         service.setRegion(Region.getRegion(Regions.US_WEST_2));
-        return new SnsHttpDelegate(service, config, router, messageResource, pushMessageConverter, debug);
+        ExecutorService sender = executorServiceFactory.createThreadPool(senderThreads, senderThreads,
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize));
+        return new SnsHttpDelegate(service, config, router, messageResource, pushMessageConverter, sender, stats,
+                messageDispatcher, debug);
     }
 
 }
@@ -0,0 +1,79 @@
+/*
+* The contents of this file are subject to the terms of the Common Development and
+* Distribution License (the License). You may not use this file except in compliance with the
+* License.
+*
+* You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+* specific language governing permission and limitations under the License.
+*
+* When distributing Covered Software, include this CDDL Header Notice in each file and include
+* the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+* Header, with the fields enclosed by brackets [] replaced by your own identifying
+* information: "Portions copyright [year] [name of copyright owner]".
+*
+* Copyright 2016 ForgeRock AS.
+*/
+package org.forgerock.openam.services.push;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class PushNotificationStatsTest {
+
+    PushNotificationStats stats;
+
+    @BeforeMethod
+    public void theSetUp() {
+        stats = new PushNotificationStats();
+    }
+
+    @Test
+    public void shouldCountQueuedMessagesUntilSentOrFailed() {
+        //given
+        stats.messageQueued();
+        stats.messageQueued();
+        stats.messageQueued();
+
+        //when
+        stats.messageSent(TimeUnit.MILLISECONDS.toNanos(10));
+        stats.messageFailed(TimeUnit.MILLISECONDS.toNanos(30));
+
+        //then
+        assertThat(stats.getQueueDepth()).isEqualTo(1);
+        assertThat(stats.getSentCount()).isEqualTo(1);
+        assertThat(stats.getFailedCount()).isEqualTo(1);
+        assertThat(stats.getAverageSendTime()).isEqualTo(20);
+    }
+
+    @Test
+    public void shouldNotCountRejectedMessagesAsQueued() {
+        //given
+        stats.messageQueued();
+
+        //when
+        stats.messageRejected();
+
+        //then
+        assertThat(stats.getQueueDepth()).isEqualTo(0);
+        assertThat(stats.getRejectedCount()).isEqualTo(1);
+        assertThat(stats.getAverageSendTime()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldCountExpiredAndEvictedPromises() {
+        //given
+
+        //when
+        stats.promiseExpired();
+        stats.promiseExpired();
+        stats.promiseEvicted();
+
+        //then
+        assertThat(stats.getExpiredPromiseCount()).isEqualTo(2);
+        assertThat(stats.getEvictedPromiseCount()).isEqualTo(1);
+    }
+}
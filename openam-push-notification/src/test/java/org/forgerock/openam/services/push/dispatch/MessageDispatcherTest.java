@@ -130,4 +130,29 @@ public class MessageDispatcherTest {
         //then
         assertThat(result).isFalse();
     }
+
+    @Test
+    public void shouldFailPromiseAndForgetMessageIdWhenFailed() {
+        //given
+        MessagePromise promise = messageDispatcher.expect("toFail", new HashSet<Predicate>());
+
+        //when
+        boolean result = messageDispatcher.fail("toFail", new IllegalStateException());
+
+        //then
+        assertThat(result).isTrue();
+        assertThat(promise.getPromise().isDone()).isTrue();
+        assertThat(cache.getIfPresent("toFail")).isNull();
+    }
+
+    @Test
+    public void shouldReturnFalseFailWhenNotExpected() {
+        //given
+
+        //when
+        boolean result = messageDispatcher.fail("notexpectedFail", new IllegalStateException());
+
+        //then
+        assertThat(result).isFalse();
+    }
 }
@@ -0,0 +1,127 @@
+/*
+* The contents of this file are subject to the terms of the Common Development and
+* Distribution License (the License). You may not use this file except in compliance with the
+* License.
+*
+* You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+* specific language governing permission and limitations under the License.
+*
+* When distributing Covered Software, include this CDDL Header Notice in each file and include
+* the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+* Header, with the fields enclosed by brackets [] replaced by your own identifying
+* information: "Portions copyright [year] [name of copyright owner]".
+*
+* Copyright 2016 ForgeRock AS.
+*/
+package org.forgerock.openam.services.push.sns;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.BDDMockito.*;
+import static org.mockito.Mockito.*;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.sns.AmazonSNSClient;
+import com.amazonaws.services.sns.model.PublishRequest;
+import com.sun.identity.shared.debug.Debug;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import org.forgerock.json.resource.Router;
+import org.forgerock.openam.services.push.PushMessage;
+import org.forgerock.openam.services.push.PushNotificationException;
+import org.forgerock.openam.services.push.PushNotificationStats;
+import org.forgerock.openam.services.push.dispatch.MessageDispatcher;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SnsHttpDelegateTest {
+
+    AmazonSNSClient mockClient;
+    SnsPushMessageConverter mockConverter;
+    ExecutorService mockSender;
+    MessageDispatcher mockDispatcher;
+    PushNotificationStats stats;
+    PushMessage message;
+
+    SnsHttpDelegate delegate;
+
+    @BeforeMethod
+    public void theSetUp() {
+        mockClient = mock(AmazonSNSClient.class);
+        mockConverter = mock(SnsPushMessageConverter.class);
+        mockSender = mock(ExecutorService.class);
+        mockDispatcher = mock(MessageDispatcher.class);
+        stats = new PushNotificationStats();
+        message = new PushMessage("recipient", "body", "subject", "messageId");
+        given(mockConverter.toTransferFormat(message)).willReturn("{}");
+
+        delegate = new SnsHttpDelegate(mockClient, null, mock(Router.class), mock(SnsMessageResource.class),
+                mockConverter, mockSender, stats, mockDispatcher, mock(Debug.class));
+    }
+
+    @Test
+    public void shouldQueueMessageAndPublishItFromSender() throws PushNotificationException {
+        //given
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+
+        //when
+        delegate.send(message);
+
+        //then
+        verify(mockSender).execute(task.capture());
+        verify(mockClient, never()).publish(any(PublishRequest.class));
+        assertThat(stats.getQueueDepth()).isEqualTo(1);
+
+        task.getValue().run();
+
+        verify(mockClient).publish(any(PublishRequest.class));
+        assertThat(stats.getQueueDepth()).isEqualTo(0);
+        assertThat(stats.getSentCount()).isEqualTo(1);
+        verifyZeroInteractions(mockDispatcher);
+    }
+
+    @Test
+    public void shouldThrowAndCountRejectionWhenQueueIsFull() {
+        //given
+        willThrow(new RejectedExecutionException()).given(mockSender).execute(any(Runnable.class));
+
+        //when
+        try {
+            delegate.send(message);
+            failBecauseExceptionWasNotThrown(PushNotificationException.class);
+        } catch (PushNotificationException e) {
+            //then
+            assertThat(stats.getRejectedCount()).isEqualTo(1);
+            assertThat(stats.getQueueDepth()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void shouldFailPromiseWhenMessageCannotBePublished() throws PushNotificationException {
+        //given
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        AmazonClientException failure = new AmazonClientException("unreachable");
+        given(mockClient.publish(any(PublishRequest.class))).willThrow(failure);
+        delegate.send(message);
+        verify(mockSender).execute(task.capture());
+
+        //when
+        task.getValue().run();
+
+        //then
+        verify(mockDispatcher).fail("messageId", failure);
+        assertThat(stats.getFailedCount()).isEqualTo(1);
+        assertThat(stats.getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldShutDownSenderWhenClosed() throws Exception {
+        //given
+
+        //when
+        delegate.close();
+
+        //then
+        verify(mockSender).shutdown();
+    }
+}
@@ -27,11 +27,12 @@
  */
 
 /*
- * Portions Copyrighted 2011 ForgeRock AS
+ * Portions Copyrighted 2011-2016 ForgeRock AS
  * Portions Copyrighted 2015 Intellectual Reserve, Inc (IRI)
  */
 package org.forgerock.openam.radius.common;
 
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Vector;
 
@@ -46,12 +47,31 @@ public class AttributeSet {
      */
     private final Vector attrs = new Vector();
 
+    /**
+     * The on-the-wire octets of received attributes that have not yet been decoded into attribute instances, or null
+     * once they have been.
+     */
+    private byte[] undecoded;
+
     /**
      * Constructor.
      */
     public AttributeSet() {
     }
 
+    /**
+     * Constructs a set holding the attributes found in the on-the-wire octets of a received packet. The octets are
+     * only decoded into attribute instances when the attributes are first accessed, so packets that are dropped
+     * without being looked at never have their attributes decoded.
+     *
+     * @param octets
+     *            the on-the-wire octets of the attribute fields of a packet, whose attribute lengths have already been
+     *            checked to fit the array. They must not be modified afterwards.
+     */
+    AttributeSet(byte[] octets) {
+        this.undecoded = octets;
+    }
+
     /**
      * Adds an attribute instance to the container.
      *
@@ -59,6 +79,7 @@ public class AttributeSet {
      *            an attribute instance to be appended to the set
      */
     public void addAttribute(Attribute attr) {
+        decode();
         attrs.addElement(attr);
     }
 
@@ -68,6 +89,7 @@ public class AttributeSet {
      * @return the number of contained attribute instances
      */
     public int size() {
+        decode();
         return attrs.size();
     }
 
@@ -77,6 +99,7 @@ public class AttributeSet {
      * @return an {@link java.util.Enumeration} object for enumerating over the set of attribute instances.
      */
     public Enumeration getAttributes() {
+        decode();
         return attrs.elements();
     }
 
@@ -88,6 +111,7 @@ public class AttributeSet {
      * @return the first attribute instance incurred having the given type code or null if none is found.
      */
     public Attribute getAttributeByType(AttributeType type) {
+        decode();
         final int l = attrs.size();
         for (int i = 0; i < l; i++) {
             final Attribute attr = getAttributeAt(i);
@@ -106,6 +130,35 @@ public class AttributeSet {
      * @return the instance of the attribute being retrieved
      */
     public Attribute getAttributeAt(int pos) {
+        decode();
         return (Attribute) attrs.elementAt(pos);
     }
+
+    /**
+     * Decodes any attribute octets held since construction into attribute instances, in on-the-wire order. The
+     * attributes are only added once all of them have been decoded, so an attribute whose value cannot be decoded
+     * fails every access to the set rather than leaving it holding the attributes before it.
+     *
+     * @throws IllegalArgumentException
+     *             if an attribute's value is malformed for its type.
+     */
+    private synchronized void decode() {
+        if (undecoded == null) {
+            return;
+        }
+        final Vector decoded = new Vector();
+        int offset = 0;
+        while (offset < undecoded.length) {
+            final int length = undecoded[offset + 1] & 0xFF;
+            try {
+                decoded.addElement(AttributeFactory.createAttribute(
+                        Arrays.copyOfRange(undecoded, offset, offset + length)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Attribute at offset " + offset + " has an invalid value", e);
+            }
+            offset += length;
+        }
+        attrs.addAll(decoded);
+        undecoded = null;
+    }
 }
@@ -27,7 +27,7 @@
  */
 
 /*
- * Portions Copyrighted 2011 ForgeRock AS
+ * Portions Copyrighted 2011-2016 ForgeRock AS
  * Portions Copyrighted 2015 Intellectual Reserve, Inc (IRI)
  */
 package org.forgerock.openam.radius.common;
@@ -141,6 +141,17 @@ public abstract class Packet {
         return attrs;
     }
 
+    /**
+     * Replaces the attributes of this packet with those of the given set, which is used when unmarshalling a received
+     * packet.
+     *
+     * @param attrs
+     *            the attribute set.
+     */
+    void setAttributeSet(AttributeSet attrs) {
+        this.attrs = attrs;
+    }
+
     /**
      * Returns the attribute instance at the indicated insertion order or location order on the wire.
      *
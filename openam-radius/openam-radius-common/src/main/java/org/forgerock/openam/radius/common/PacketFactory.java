@@ -27,7 +27,7 @@
  */
 
 /*
- * Portions Copyrighted 2011 ForgeRock AS
+ * Portions Copyrighted 2011-2016 ForgeRock AS
  * Portions Copyrighted 2015 Intellectual Reserve, Inc (IRI)
  */
 package org.forgerock.openam.radius.common;
@@ -122,15 +122,38 @@ public final class PacketFactory {
         }
         pkt.setIdentifier(id);
 
-        // now pull out the set of octets for each attribute and instantiate the corresponding attribute type and
-        // inject into the packet object
-        Attribute a = null;
-        while ((a = PacketFactory.nextAttribute(data)) != null) {
-            pkt.addAttribute(a);
-        }
+        // copy out the octets of all attributes at once, so the buffer can be reused as soon as we return, and leave
+        // the packet to instantiate the corresponding attribute types when they are first accessed
+        final byte[] attrData = new byte[data.remaining()];
+        data.get(attrData);
+        checkAttributeLengths(attrData);
+        pkt.setAttributeSet(new AttributeSet(attrData));
         return pkt;
     }
 
+    /**
+     * Verifies that the attributes in the on-the-wire octets each have a length covering at least their type and
+     * length octets and ending within the octets, so that they can be decoded later without running off the end.
+     *
+     * @param attrData
+     *            the octets of the attribute fields of a packet.
+     * @throws IllegalArgumentException
+     *             if an attribute is malformed.
+     */
+    private static void checkAttributeLengths(byte[] attrData) {
+        int offset = 0;
+        while (offset < attrData.length) {
+            if (offset + 1 == attrData.length) {
+                throw new IllegalArgumentException("Attribute at offset " + offset + " has no length octet");
+            }
+            final int length = attrData[offset + 1] & 0xFF;
+            if (length < 2 || offset + length > attrData.length) {
+                throw new IllegalArgumentException("Attribute at offset " + offset + " has invalid length " + length);
+            }
+            offset += length;
+        }
+    }
+
     /**
      * Reads the next attribute out of the buffer or null if there is no more content.
      *
@@ -12,6 +12,7 @@
  * information: "Portions copyright [year] [name of copyright owner]".
  *
  * Copyrighted 2015 Intellectual Reserve, Inc (IRI)
+ * Portions Copyright 2016 ForgeRock AS.
  */
 package org.forgerock.openam.radius.common;
 
@@ -67,6 +68,65 @@ public class TestPacketFactory {
 
     }
 
+    /**
+     * Test that attributes added to a received packet follow those received with it.
+     */
+    @Test
+    public void testAddAttributeToReceivedPacket() {
+        final String hex = "01 00 00 1a 0f 40 3f 94 73 97 80 57 bd 83 d5 cb"
+                + "98 f4 22 7a 01 06 6e 65 6d 6f";
+
+        final Packet pkt = PacketFactory.toPacket(Utils.toBuffer(hex));
+        pkt.addAttribute(new NASPortAttribute(3));
+
+        Assert.assertEquals(pkt.getAttributeSet().size(), 2, "packet attributes contained");
+        Assert.assertEquals(((UserNameAttribute) pkt.getAttributeAt(0)).getName(), "nemo", "user name");
+        Assert.assertEquals(((NASPortAttribute) pkt.getAttributeAt(1)).getPort(), 3, "NAS port");
+    }
+
+    /**
+     * Test that a packet whose last attribute runs past the end of the packet is rejected.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testAttributeLengthBeyondPacket() {
+        final String hex = "01 00 00 1a 0f 40 3f 94 73 97 80 57 bd 83 d5 cb"
+                + "98 f4 22 7a 01 07 6e 65 6d 6f";
+
+        PacketFactory.toPacket(Utils.toBuffer(hex));
+    }
+
+    /**
+     * Test that a packet with an attribute too short to hold its own type and length octets is rejected.
+     */
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testAttributeLengthTooShort() {
+        final String hex = "01 00 00 1a 0f 40 3f 94 73 97 80 57 bd 83 d5 cb"
+                + "98 f4 22 7a 01 00 6e 65 6d 6f";
+
+        PacketFactory.toPacket(Utils.toBuffer(hex));
+    }
+
+    /**
+     * Test that a received attribute whose value is too short for its type fails every access to the attributes,
+     * rather than leaving the packet holding only the attributes before it.
+     */
+    @Test
+    public void testAttributeValueTooShortForType() {
+        final String hex = "01 00 00 1d 0f 40 3f 94 73 97 80 57 bd 83 d5 cb"
+                + "98 f4 22 7a 01 06 6e 65 6d 6f 05 03 00";
+
+        final Packet pkt = PacketFactory.toPacket(Utils.toBuffer(hex));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                pkt.getAttributeSet().size();
+                Assert.fail("truncated NAS port should not be decoded");
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue(e.getMessage().contains("offset 6"), "offset of truncated attribute");
+            }
+        }
+    }
+
     /**
      * dumps to std out in sets of 16 hex bytes separated by spaces and prefixed with '0' for bytes having value less
      * than 0x10. The buffer is returned as was meaning ready to read from the same point as when it was passed to this
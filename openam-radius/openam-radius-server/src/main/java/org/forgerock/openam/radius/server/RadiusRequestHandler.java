@@ -14,7 +14,7 @@
  * Copyrighted 2015 Intellectual Reserve, Inc (IRI)
  */
 /*
- * Portions copyright 2015 ForgeRock AS
+ * Portions copyright 2015-2016 ForgeRock AS
  */
 package org.forgerock.openam.radius.server;
 
@@ -53,6 +53,11 @@ public class RadiusRequestHandler implements Runnable {
      */
     private final ByteBuffer buffer;
 
+    /**
+     * The pool to which the buffer is returned once the request has been parsed, or null if it is not pooled.
+     */
+    private final ReceiveBufferPool bufferPool;
+
     /**
      * The ResponseContext object providing access to client handlerConfig, receiving channel, and remote user identity.
      */
@@ -102,9 +107,32 @@ public class RadiusRequestHandler implements Runnable {
             final ResultHandler<RadiusResponse> resultHandler,
             final ExceptionHandler<RadiusProcessingException> errorHandler,
             final EventBus eventBus) {
+        this(accessRequestHandlerFactory, reqCtx, buffer, null, resultHandler, errorHandler, eventBus);
+    }
+
+    /**
+     * Constructs a request handler for a request received into a pooled buffer, which is returned to the pool as soon
+     * as the request has been parsed.
+     *
+     * @param accessRequestHandlerFactory - a factory object that will construct access request handlers used to handle
+     *            the radius requests.
+     * @param reqCtx a <code>RadiusRequestContext</code> object. Must be non-null.
+     * @param buffer an {@code ByteBuffer} containing the bytes received by a radius handler.
+     * @param bufferPool the pool from which the buffer was taken, or null if it was not.
+     * @param resultHandler - a promise handler that this class can use to notify calling threads of the results of
+     *            processing.
+     * @param errorHandler used to notify the calling thread if an exception occurs during processing.
+     * @param eventBus used to notify interested parties of events occurring during the processing of radius requests.
+     */
+    RadiusRequestHandler(AccessRequestHandlerFactory accessRequestHandlerFactory,
+            final RadiusRequestContext reqCtx, final ByteBuffer buffer, final ReceiveBufferPool bufferPool,
+            final ResultHandler<RadiusResponse> resultHandler,
+            final ExceptionHandler<RadiusProcessingException> errorHandler,
+            final EventBus eventBus) {
         LOG.message("Entering RadiusRequestHandler.RadiusRequestHandler()");
         this.requestContext = reqCtx;
         this.buffer = buffer;
+        this.bufferPool = bufferPool;
         this.resultHandler = resultHandler;
         this.errorHandler = errorHandler;
         this.eventBus = eventBus;
@@ -125,7 +153,15 @@ public class RadiusRequestHandler implements Runnable {
     public void run() {
         try {
             LOG.message("Entering RadiusRequestHandler.run();");
-            final Packet requestPacket = getValidPacket(buffer);
+            final Packet requestPacket;
+            try {
+                requestPacket = getValidPacket(buffer);
+            } finally {
+                // the packet holds copies of everything it needs from the buffer
+                if (bufferPool != null) {
+                    bufferPool.release(buffer);
+                }
+            }
             if (requestPacket == null) {
                 LOG.message("Leaving RadiusRequestHandler.run(); no requestPacket");
                 return;
@@ -248,6 +284,9 @@ public class RadiusRequestHandler implements Runnable {
 
         try {
             requestPacket = PacketFactory.toPacket(buffer2);
+            // attributes are decoded lazily; decode them now so that a packet with a malformed attribute is dropped
+            // here rather than rejected by the handler, which reads them all anyway
+            requestPacket.getAttributeSet().size();
 
             // log packet if client handlerConfig indicates
             if (requestContext.getClientConfig().isLogPackets()) {
@@ -260,6 +299,7 @@ public class RadiusRequestHandler implements Runnable {
             }
         } catch (final Exception e) {
             LOG.error("Unable to parse packet received from RADIUS client '" + getClientName() + "'. Dropping.", e);
+            requestPacket = null;
         }
         LOG.message("Leaving RadiusRequestHandler.getValidPacket()");
         return requestPacket;
@@ -12,6 +12,7 @@
  * information: "Portions copyright [year] [name of copyright owner]".
  *
  * Copyrighted 2015 Intellectual Reserve, Inc (IRI)
+ * Portions Copyright 2016 ForgeRock AS.
  */
 package org.forgerock.openam.radius.server;
 
@@ -22,7 +23,6 @@ import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.DatagramChannel;
 import java.text.MessageFormat;
@@ -33,9 +33,12 @@ import org.forgerock.guava.common.eventbus.EventBus;
 import org.forgerock.openam.radius.server.config.ClientConfig;
 import org.forgerock.openam.radius.server.config.RadiusServerConstants;
 import org.forgerock.openam.radius.server.config.RadiusServiceConfig;
+import org.forgerock.openam.radius.server.config.ThreadPoolConfig;
 import org.forgerock.openam.radius.server.events.PacketProcessedEvent;
 import org.forgerock.openam.radius.server.events.PacketReceivedEvent;
+import org.forgerock.util.promise.ExceptionHandler;
 import org.forgerock.util.promise.PromiseImpl;
+import org.forgerock.util.promise.ResultHandler;
 
 import com.sun.identity.shared.debug.Debug;
 
@@ -96,6 +99,33 @@ public class RadiusRequestListener implements Runnable {
      */
     private AccessRequestHandlerFactory accessRequestHandlerFactory;
 
+    /**
+     * The buffers into which requests are received, returned by the request handlers once parsed.
+     */
+    private final ReceiveBufferPool bufferPool;
+
+    /**
+     * Notified on the handler's thread when a request has been handled, so that the listener can go straight back to
+     * receiving rather than waiting for each request in turn.
+     */
+    private final ResultHandler<RadiusResponse> processedHandler = new ResultHandler<RadiusResponse>() {
+        @Override
+        public void handleResult(RadiusResponse result) {
+            eventBus.post(new PacketProcessedEvent());
+        }
+    };
+
+    /**
+     * Notified on the handler's thread when a request could not be handled.
+     */
+    private final ExceptionHandler<RadiusProcessingException> failedHandler =
+            new ExceptionHandler<RadiusProcessingException>() {
+                @Override
+                public void handleException(RadiusProcessingException e) {
+                    handleProcessingException(e);
+                }
+            };
+
     /**
      * Construct listener, opens the DatagramChannel to receive requests, sets up the thread pool, and launches the
      * listener's thread which will capture the requests, drop unauthorized clients, and spool to the thread pool.
@@ -117,6 +147,10 @@ public class RadiusRequestListener implements Runnable {
         this.executorService = executorService;
         this.eventBus = eventBus;
         this.accessRequestHandlerFactory = accessRequestHandlerFactory;
+        // enough buffers for every request that may be queued or in progress, plus the one being received into
+        final ThreadPoolConfig poolConfig = config.getThreadPoolConfig();
+        this.bufferPool = new ReceiveBufferPool(RadiusServerConstants.MAX_PACKET_SIZE,
+                poolConfig.getMaxThreads() + poolConfig.getQueueSize() + 1);
 
         // lets get our inbound channel opened and bound
         try {
@@ -236,10 +270,10 @@ public class RadiusRequestListener implements Runnable {
         dumpBannerToLog();
 
         while (!terminated && !interrupted) {
+            // take a big-endian (network) byte order buffer from the pool; the request handler returns it
+            final ByteBuffer bfr = bufferPool.acquire();
+            boolean handedOff = false;
             try {
-                // assure big-endian (network) byte order for our buffer
-                final ByteBuffer bfr = ByteBuffer.allocate(RadiusServerConstants.MAX_PACKET_SIZE);
-                bfr.order(ByteOrder.BIG_ENDIAN);
                 InetSocketAddress iAddr = null;
 
                 // see if we have a datagram packet waiting for us
@@ -282,37 +316,19 @@ public class RadiusRequestListener implements Runnable {
                 final RadiusRequestContext reqCtx = new RadiusRequestContext(clientConfig, channel, iAddr);
 
                 final PromiseImpl<RadiusResponse, RadiusProcessingException> promise = PromiseImpl.create();
+                promise.thenOnResult(processedHandler).thenOnException(failedHandler);
                 final RadiusRequestHandler requestHandler = new RadiusRequestHandler(accessRequestHandlerFactory,
-                        reqCtx, bfr, promise, promise,
+                        reqCtx, bfr, bufferPool, promise, promise,
                         eventBus);
 
                 executorService.execute(requestHandler);
-
-                try {
-                    final RadiusResponse result = promise.getOrThrow();
-                    eventBus.post(new PacketProcessedEvent());
-
-                } catch (final RadiusProcessingException e) {
-                    final RadiusProcessingExceptionNature nature = e.getNature();
-                    switch (nature) {
-                    case CATASTROPHIC:
-                        LOG.error("Catestrophic error processing a RADIUS request.", e);
-                        terminated = true;
-                        break;
-                    case INVALID_RESPONSE:
-                        LOG.error("Failed to handle request. This request will be ignored.", e);
-                        break;
-                    case TEMPORARY_FAILURE:
-                        final String errStr = "Failed to handle request. This request could be retried, but that is"
-                                + " currently not implemented.";
-                        LOG.error(errStr, e);
-                        break;
-                    default:
-                        break;
-                    }
-                }
+                handedOff = true;
             } catch (final Exception t) {
                 LOG.error("Error receiving request.", t);
+            } finally {
+                if (!handedOff) {
+                    bufferPool.release(bfr);
+                }
             }
         } // End of while loop
 
@@ -330,6 +346,31 @@ public class RadiusRequestListener implements Runnable {
         this.listenerThread = null;
     }
 
+    /**
+     * Acts upon a request that could not be handled, terminating the listener if the failure is catastrophic.
+     *
+     * @param e the exception with which the request handler failed.
+     */
+    private void handleProcessingException(RadiusProcessingException e) {
+        final RadiusProcessingExceptionNature nature = e.getNature();
+        switch (nature) {
+        case CATASTROPHIC:
+            LOG.error("Catestrophic error processing a RADIUS request.", e);
+            terminated = true;
+            break;
+        case INVALID_RESPONSE:
+            LOG.error("Failed to handle request. This request will be ignored.", e);
+            break;
+        case TEMPORARY_FAILURE:
+            final String errStr = "Failed to handle request. This request could be retried, but that is"
+                    + " currently not implemented.";
+            LOG.error(errStr, e);
+            break;
+        default:
+            break;
+        }
+    }
+
     private void dumpBannerToLog() {
         final StringWriter sw = new StringWriter();
         final PrintWriter pw = new PrintWriter(sw);
@@ -12,6 +12,7 @@
  * information: "Portions copyright [year] [name of copyright owner]".
  *
  * Copyrighted 2015 Intellectual Reserve, Inc (IRI)
+ * Portions Copyright 2016 ForgeRock AS.
  */
 package org.forgerock.openam.radius.server;
 
@@ -30,6 +31,8 @@ import org.forgerock.openam.radius.server.config.RadiusServerConstants;
 import org.forgerock.openam.radius.server.config.RadiusServerManager;
 import org.forgerock.openam.radius.server.monitoring.RadiusServerEventRegistrar;
 import org.forgerock.openam.radius.server.monitoring.RadiusServerEventRegistrator;
+import org.forgerock.openam.radius.server.spi.handlers.amhandler.ContextCacheSize;
+import org.forgerock.openam.radius.server.spi.handlers.amhandler.ContextHolderCache;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
@@ -111,4 +114,20 @@ public class RadiusServerGuiceModule extends AbstractModule {
     public RadiusServerEventRegistrator getRadiusServerEventRegistrator() {
         return eventRegistrar;
     }
+
+    /**
+     * Get the cache of authentication contexts held between the requests of multi-step authentications, whose state
+     * is reported by the event registrar.
+     *
+     * @param contextCacheSize - determines the maximum number of contexts held.
+     * @return the ContextHolderCache.
+     */
+    @Provides
+    @Singleton
+    @Inject
+    public ContextHolderCache getContextHolderCache(ContextCacheSize contextCacheSize) {
+        final ContextHolderCache cache = new ContextHolderCache(contextCacheSize);
+        eventRegistrar.setContextHolderCache(cache);
+        return cache;
+    }
 }
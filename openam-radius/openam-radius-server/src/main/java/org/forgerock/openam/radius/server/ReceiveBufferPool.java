@@ -0,0 +1,75 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.radius.server;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A pool of direct buffers into which the <code>RadiusRequestListener</code> receives packets. A buffer is taken from
+ * the pool for each received packet and returned by the <code>RadiusRequestHandler</code> once the packet has been
+ * parsed, so that bursts of requests do not allocate a buffer per packet. Buffers that are never returned, such as
+ * those of requests dropped by the thread pool, are simply replaced by newly allocated ones.
+ */
+class ReceiveBufferPool {
+
+    /**
+     * The size of each buffer.
+     */
+    private final int bufferSize;
+
+    /**
+     * The buffers available for reuse.
+     */
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    /**
+     * Constructs an empty pool.
+     *
+     * @param bufferSize the size of each buffer, which must hold the largest packet that can be received.
+     * @param maxPooled the maximum number of unused buffers held for reuse, which should be the number of packets that
+     *            may be waiting for or being handled at once.
+     */
+    ReceiveBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<ByteBuffer>(Math.max(maxPooled, 1));
+    }
+
+    /**
+     * Takes a cleared, big-endian (network byte order) buffer from the pool, allocating one if none are available.
+     *
+     * @return the buffer.
+     */
+    ByteBuffer acquire() {
+        final ByteBuffer buffer = buffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        return ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used by the caller afterwards.
+     *
+     * @param buffer the buffer, as obtained from {@link #acquire()}.
+     */
+    void release(ByteBuffer buffer) {
+        buffer.clear();
+        buffers.offer(buffer);
+    }
+}
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.radius.server.monitoring;
@@ -58,4 +58,28 @@ public interface RadiusServerEventMonitorMXBean {
      * @return a <code>long</code> indicating the number of requests that resulted in rejection.
      */
     long getNumberOfAuthRequestsRejected();
+
+    /**
+     * get the number of authentication contexts currently held for RADIUS clients that are part way through a
+     * multi-step authentication, awaiting the response to an Access-Challenge.
+     *
+     * @return an <code>int</code> indicating the number of authentication contexts held.
+     */
+    int getNumberOfCachedAuthContexts();
+
+    /**
+     * get the number of authentication contexts that have been dropped because the client did not respond to the
+     * Access-Challenge within the timeout of the callbacks being answered.
+     *
+     * @return a <code>long</code> indicating the number of authentication contexts that expired.
+     */
+    long getNumberOfExpiredAuthContexts();
+
+    /**
+     * get the number of authentication contexts that have been dropped before expiring to keep the number held within
+     * its limit.
+     *
+     * @return a <code>long</code> indicating the number of authentication contexts evicted.
+     */
+    long getNumberOfEvictedAuthContexts();
 }
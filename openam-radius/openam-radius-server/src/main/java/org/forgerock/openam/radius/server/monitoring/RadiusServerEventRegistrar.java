@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 /**
  *
@@ -34,6 +34,7 @@ import org.forgerock.openam.radius.server.events.AuthRequestReceivedEvent;
 import org.forgerock.openam.radius.server.events.AuthRequestRejectedEvent;
 import org.forgerock.openam.radius.server.events.PacketProcessedEvent;
 import org.forgerock.openam.radius.server.events.PacketReceivedEvent;
+import org.forgerock.openam.radius.server.spi.handlers.amhandler.ContextHolderCache;
 
 import com.sun.identity.shared.debug.Debug;
 
@@ -51,6 +52,11 @@ public class RadiusServerEventRegistrar implements RadiusServerEventRegistrator,
     private final AtomicLong noOfAuthRequestsAccepted = new AtomicLong();
     private final AtomicLong noOfAuthRequestsRejected = new AtomicLong();
 
+    /**
+     * The cache of authentication contexts whose state is reported, once it has been created.
+     */
+    private volatile ContextHolderCache contextHolderCache;
+
     /**
      * Constructor. Registers this class with the radius events bus, such that it will be a subscriber to radius events.
      * So that the radius packet and request statistics can be reported to JMX clients such as visualvm this class
@@ -267,4 +273,50 @@ public class RadiusServerEventRegistrar implements RadiusServerEventRegistrator,
     public long getNumberOfAuthRequestsRejected() {
         return noOfAuthRequestsRejected.get();
     }
+
+    ////////////////////////////
+    // Cached auth contexts.
+
+    /**
+     * Sets the cache of authentication contexts held between the requests of multi-step authentications, whose state
+     * is then reported by this bean.
+     *
+     * @param contextHolderCache - the cache of authentication contexts.
+     */
+    public void setContextHolderCache(ContextHolderCache contextHolderCache) {
+        this.contextHolderCache = contextHolderCache;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see
+     * org.forgerock.openam.radius.server.monitoring.RadiusServerEventMonitorMXBean#getNumberOfCachedAuthContexts()
+     */
+    @Override
+    public int getNumberOfCachedAuthContexts() {
+        final ContextHolderCache cache = contextHolderCache;
+        return cache == null ? 0 : cache.size();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see
+     * org.forgerock.openam.radius.server.monitoring.RadiusServerEventMonitorMXBean#getNumberOfExpiredAuthContexts()
+     */
+    @Override
+    public long getNumberOfExpiredAuthContexts() {
+        final ContextHolderCache cache = contextHolderCache;
+        return cache == null ? 0 : cache.getExpiredCount();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see
+     * org.forgerock.openam.radius.server.monitoring.RadiusServerEventMonitorMXBean#getNumberOfEvictedAuthContexts()
+     */
+    @Override
+    public long getNumberOfEvictedAuthContexts() {
+        final ContextHolderCache cache = contextHolderCache;
+        return cache == null ? 0 : cache.getEvictedCount();
+    }
 }
@@ -126,7 +126,7 @@ public class ContextHolder {
      * set of callbacks has its own declared number of seconds allows for response and that value will be set here when
      * that callback set is incurred.
      */
-    private Long millisExpiryPoint = currentTimeMillis() + millisExpiryForCurrentCallbacks;
+    private volatile Long millisExpiryPoint = currentTimeMillis() + millisExpiryForCurrentCallbacks;
 
     /**
      * The key for this object in the server-side cache.
@@ -11,40 +11,61 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 /**
  *
  */
 package org.forgerock.openam.radius.server.spi.handlers.amhandler;
 
+import static org.forgerock.openam.utils.Time.*;
+
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.forgerock.openam.radius.server.config.RadiusServerConstants;
-import org.forgerock.openam.utils.collections.LeastRecentlyUsed;
+import org.forgerock.util.annotations.VisibleForTesting;
 
 import com.sun.identity.shared.debug.Debug;
 /**
  * A thread safe cache for ContextHolder objects.
+ * <p/>
+ * Entries are held in a concurrent map so that concurrent Access-Challenge round trips do not contend on a single
+ * lock. An entry expires at its holder's expiry point, which tracks the timeout of the callbacks the user is being
+ * asked to answer, and the number of entries is bounded: when the bound is reached the entries that were put longest
+ * ago are evicted.
  */
-@SuppressWarnings("deprecation")
-// Deprecated due to move to org.apache.commons.collections.map.LRUMap in v4
 @Singleton
 public class ContextHolderCache {
 
     private static Debug logger = Debug.getInstance(RadiusServerConstants.RADIUS_SERVER_LOGGER);
 
     /**
-     * This class is really a synchronization wrapper around a LeastRecentlyUsed cache. It also prevents inappropriate
-     * access to the cache methods (hence the use of encapsulation rather than inheritance).
+     * The minimum interval between sweeps of the cache for expired entries, which are made as entries are added.
      */
-    private LeastRecentlyUsed<String, ContextHolder> cache;
+    private static final long SWEEP_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * The cached entries by key.
+     */
+    private final ConcurrentMap<String, QueuedEntry> cache = new ConcurrentHashMap<String, QueuedEntry>();
+
+    /**
+     * The entries in the order they were put, from which the oldest are evicted when the cache is full. An entry is
+     * dropped from the queue as soon as it is removed from the cache, so that the queue does not keep its holder, and
+     * the holder's AuthContext, reachable. Holders are removed in roughly the order they were added, since each is
+     * removed when its authentication completes or times out, so the entry is usually found close to the head.
+     */
+    private final Queue<QueuedEntry> insertionOrder = new ConcurrentLinkedQueue<QueuedEntry>();
 
     /**
      * The determination of cache size is also encapsulated so that the cache behaviour can be more easily tested, but
@@ -52,6 +73,19 @@ public class ContextHolderCache {
      */
     private final ContextCacheSize contextCacheSize;
 
+    /**
+     * The maximum number of entries held.
+     */
+    private volatile int maxSize;
+
+    /**
+     * The time after which the cache should next be swept for expired entries.
+     */
+    private final AtomicLong nextSweep = new AtomicLong();
+
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
     /**
      * Constructs a thread safe ContextHolderCache.
      *
@@ -60,19 +94,33 @@ public class ContextHolderCache {
      */
     @Inject
     public ContextHolderCache(ContextCacheSize contextCacheSize) {
-        cache = new LeastRecentlyUsed<String, ContextHolder>(contextCacheSize.getDesiredCacheSize());
         this.contextCacheSize = contextCacheSize;
+        this.maxSize = contextCacheSize.getDesiredCacheSize();
+        this.nextSweep.set(currentTimeMillis() + SWEEP_INTERVAL_MILLIS);
     }
 
     /**
-     * Returns the value to which the specified key is mapped, or null if this map contains no mapping for the key.
+     * Returns the value to which the specified key is mapped, or null if this map contains no mapping for the key or
+     * the mapped value has expired.
      *
      * @param key
      *            - the key whose associated value is to be returned.
-     * @return the cached value associated with the specified key, or null if no cache entry is held with the key.
+     * @return the cached value associated with the specified key, or null if no unexpired cache entry is held with the
+     *         key.
      */
-    public synchronized ContextHolder get(String key) {
-        return cache.get(key);
+    public ContextHolder get(String key) {
+        final QueuedEntry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (isExpired(entry.holder, currentTimeMillis())) {
+            if (cache.remove(key, entry)) {
+                insertionOrder.remove(entry);
+                expiredCount.incrementAndGet();
+            }
+            return null;
+        }
+        return entry.holder;
     }
 
     /**
@@ -82,8 +130,13 @@ public class ContextHolderCache {
      *            - the key whose mapping is to be removed from the cache.
      * @return The item removed from the cache, or null if there was no mapping for the key.
      */
-    public synchronized ContextHolder remove(String key) {
-        return cache.remove(key);
+    public ContextHolder remove(String key) {
+        final QueuedEntry entry = cache.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        insertionOrder.remove(entry);
+        return entry.holder;
     }
 
     /**
@@ -92,14 +145,15 @@ public class ContextHolderCache {
      *
      * @return the newly cached <code>ContextHolder</code> object.
      */
-    public synchronized ContextHolder createCachedContextHolder() {
+    public ContextHolder createCachedContextHolder() {
         updateCacheSize();
         while (true) {
             final String key = UUID.randomUUID().toString();
+            final ContextHolder holder = new ContextHolder(key);
+            final QueuedEntry entry = new QueuedEntry(key, holder);
 
-            if (!cache.containsKey(key)) {
-                final ContextHolder holder = new ContextHolder(key);
-                cache.put(key, holder);
+            if (cache.putIfAbsent(key, entry) == null) {
+                added(entry);
                 return holder;
             }
         }
@@ -116,9 +170,17 @@ public class ContextHolderCache {
      * @return the previous value associated with key, or null if there was no entry for key. (A null return can also
      *         indicate that the cache previously associated null with key.)
      */
-    public synchronized ContextHolder put(String key, ContextHolder contextHolder) {
+    public ContextHolder put(String key, ContextHolder contextHolder) {
         updateCacheSize();
-        return cache.put(key, contextHolder);
+        final QueuedEntry entry = new QueuedEntry(key, contextHolder);
+        final QueuedEntry previous = cache.put(key, entry);
+        if (previous == null) {
+            added(entry);
+            return null;
+        }
+        insertionOrder.remove(previous);
+        added(entry);
+        return previous.holder;
     }
 
     /**
@@ -126,62 +188,135 @@ public class ContextHolderCache {
      *
      * @return the number of key-ContextHolder entries in the cache.
      */
-    public synchronized int size() {
+    public int size() {
         return cache.size();
     }
 
     /**
      * Get the bounded size of the cache. This is the maximum number of entries that may be held. When the number of
-     * entries in the cache equals this max size, then adding more entries will result in the least recently used number
-     * of entries being removed to make space for the newly added entries.
+     * entries in the cache equals this max size, then adding more entries will result in the oldest entries being
+     * removed to make space for the newly added entries.
      *
      * @return the bounded size of the cache.
      */
-    public synchronized int getMaxSize() {
-        return cache.getMaxSize();
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of entries removed from the cache because they had expired.
+     *
+     * @return the number of expired entries.
+     */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**
+     * Returns the number of unexpired entries removed from the cache to keep it within its maximum size.
+     *
+     * @return the number of evicted entries.
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * Returns the number of entries in the insertion order queue.
+     *
+     * @return the number of queued entries.
+     */
+    @VisibleForTesting
+    int getQueuedCount() {
+        return insertionOrder.size();
+    }
+
+    /**
+     * Records the order of an added entry and brings the cache back within its bounds.
+     */
+    private void added(QueuedEntry entry) {
+        insertionOrder.add(entry);
+        sweepIfDue();
+        evictExcess();
+    }
+
+    /**
+     * Removes the entries that were put longest ago until the cache is within its maximum size.
+     */
+    private void evictExcess() {
+        while (cache.size() > maxSize) {
+            final QueuedEntry oldest = insertionOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            if (cache.remove(oldest.key, oldest)) {
+                evictedCount.incrementAndGet();
+            }
+        }
+        trimInsertionOrder();
+    }
+
+    /**
+     * Drops entries that are no longer cached from the head of the insertion order queue, which can be left behind
+     * when an entry is removed concurrently with being added.
+     */
+    private void trimInsertionOrder() {
+        QueuedEntry oldest;
+        while ((oldest = insertionOrder.peek()) != null && cache.get(oldest.key) != oldest) {
+            insertionOrder.remove(oldest);
+        }
     }
 
     /**
-     * Updates the maximum cache size. *** Warning - the least recently used cache entries may be lost if the size of
-     * the existing cache is greater than new cache size. ***
+     * Removes expired entries if the sweep interval has passed since the last sweep. Only one of the threads adding
+     * entries at that time performs the sweep.
+     */
+    private void sweepIfDue() {
+        final long now = currentTimeMillis();
+        final long due = nextSweep.get();
+        if (now < due || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_MILLIS)) {
+            return;
+        }
+        for (final Iterator<QueuedEntry> itr = cache.values().iterator(); itr.hasNext();) {
+            final QueuedEntry entry = itr.next();
+            if (isExpired(entry.holder, now) && cache.remove(entry.key, entry)) {
+                insertionOrder.remove(entry);
+                expiredCount.incrementAndGet();
+            }
+        }
+    }
+
+    private static boolean isExpired(ContextHolder holder, long now) {
+        final Long expiryPoint = holder.getMillisExpiryPoint();
+        return expiryPoint != null && expiryPoint < now;
+    }
+
+    /**
+     * Updates the maximum cache size. *** Warning - the oldest cache entries will be lost if the size of the existing
+     * cache is greater than new cache size. ***
      */
     private void updateCacheSize() {
         final int desiredMaxSize = contextCacheSize.getDesiredCacheSize();
-        final int actualMaxSize = cache.getMaxSize();
-        if (desiredMaxSize != actualMaxSize) {
-            final LeastRecentlyUsed<String, ContextHolder> newCache = new LeastRecentlyUsed<String, ContextHolder>(
-                    desiredMaxSize);
-
-            if (desiredMaxSize > cache.size()) {
-                for (final Entry<String, ContextHolder> entry : cache.entrySet()) {
-                    newCache.put(entry.getKey(), entry.getValue());
-                }
-            } else {
+        if (desiredMaxSize != maxSize) {
+            if (desiredMaxSize < cache.size()) {
                 logger.warning("Shrinking ContextHolderCache in response to change of system setting that determines "
-                        + "the maximum number of allowable concurrent sessions. Some cache entries will.");
-                // Bit of a faff this, but as there are too many entries in the existing cache to fit into the new
-                // cache we need to reverse the entries, copy the desiredSize number off the back (the most recently
-                // used), Then insert the entries we copied into the new cache, making sure to enter the least recently
-                // used first.
-                final LinkedList<Entry<String, ContextHolder>> entriesAsList =
-                        new LinkedList<Entry<String, ContextHolder>>(cache.entrySet());
-                final Iterator<Entry<String, ContextHolder>> itr = entriesAsList.descendingIterator();
-                final LinkedList<Entry<String, ContextHolder>> entriesToCopy =
-                        new LinkedList<Entry<String, ContextHolder>>();
-
-                int numberCopied = 0;
-                while (itr.hasNext() && numberCopied++ < desiredMaxSize) {
-                    final Entry<String, ContextHolder> entry = itr.next();
-                    entriesToCopy.add(entry);
-                }
-
-                final Iterator<Entry<String, ContextHolder>> toCopyRevItr = entriesToCopy.descendingIterator();
-                while (toCopyRevItr.hasNext()) {
-                    final Entry<String, ContextHolder> toCopy = toCopyRevItr.next();
-                    newCache.put(toCopy.getKey(), toCopy.getValue());
-                }
+                        + "the maximum number of allowable concurrent sessions. Some cache entries will be lost.");
             }
-            cache = newCache;
+            maxSize = desiredMaxSize;
+        }
+    }
+
+    /**
+     * A cache entry, held both in the map and in the insertion order queue.
+     */
+    private static final class QueuedEntry {
+
+        private final String key;
+        private final ContextHolder holder;
+
+        private QueuedEntry(String key, ContextHolder holder) {
+            this.key = key;
+            this.holder = holder;
         }
     }
 }
@@ -14,7 +14,7 @@
  * Copyrighted 2015 Intellectual Reserve, Inc (IRI)
  */
 /*
- * Portions copyright 2015 ForgeRock AS
+ * Portions copyright 2015-2016 ForgeRock AS
  */
 
 package org.forgerock.openam.radius.server;
@@ -35,6 +35,7 @@ import org.forgerock.openam.radius.common.Packet;
 import org.forgerock.openam.radius.common.PacketType;
 import org.forgerock.openam.radius.common.Utils;
 import org.forgerock.openam.radius.server.config.ClientConfig;
+import org.forgerock.openam.radius.server.config.RadiusServerConstants;
 import org.forgerock.openam.radius.server.spi.handlers.AcceptAllHandler;
 import org.forgerock.openam.radius.server.spi.handlers.RejectAllHandler;
 import org.forgerock.util.promise.PromiseImpl;
@@ -51,6 +52,11 @@ public class RadiusRequestHandlerTest {
             + "98 f4 22 7a 01 06 6e 65 6d 6f 02 12 0d be 70 8d " + "93 d4 13 ce 31 96 e4 3f 78 2a 0a ee 04 06 c0 a8 "
             + "01 10 05 06 00 00 00 03";
 
+    // the same request but with its NAS-Port attribute truncated to two octets of value
+    private final String truncatedNasPort = "01 00 00 36 0f 40 3f 94 73 97 80 57 bd 83 d5 cb "
+            + "98 f4 22 7a 01 06 6e 65 6d 6f 02 12 0d be 70 8d " + "93 d4 13 ce 31 96 e4 3f 78 2a 0a ee 04 06 c0 a8 "
+            + "01 10 05 04 00 03";
+
     /**
      * Test that when run is called with an AcceptAllHandler then the RadiusAuthResponse contains a success code and an
      * AcceptResponse is sent.
@@ -171,4 +177,91 @@ public class RadiusRequestHandlerTest {
         assertThat(result.getResponsePacket().getType()).isEqualTo(PacketType.ACCESS_REJECT);
         verify(reqCtx, never()).send(isA(Packet.class));
     }
+
+    /**
+     * Test that when run is called with a buffer taken from a pool then the buffer is returned to the pool, cleared,
+     * once the request has been handled.
+     *
+     * @throws InterruptedException - when an interrupt occurs.
+     * @throws RadiusProcessingException - when something goes wrong processing a RADIUS packet.
+     * @throws UnknownHostException - if the host can't be determined
+     */
+    @Test(enabled = true)
+    public void testRunReturnsPooledBuffer()
+            throws UnknownHostException, InterruptedException, RadiusProcessingException {
+
+        // given
+        final RadiusRequestContext reqCtx = mock(RadiusRequestContext.class);
+        final ClientConfig clientConfig = mock(ClientConfig.class);
+        String url = "forgerock.org";
+        InetSocketAddress socketAddress = new InetSocketAddress(Inet4Address.getByName(url), 6836);
+
+        when(reqCtx.getClientConfig()).thenReturn(clientConfig);
+        when(reqCtx.getSource()).thenReturn(socketAddress);
+        when(clientConfig.getName()).thenReturn("TestConfig");
+
+        final ReceiveBufferPool bufferPool = new ReceiveBufferPool(RadiusServerConstants.MAX_PACKET_SIZE, 1);
+        final ByteBuffer bfr = bufferPool.acquire();
+        bfr.put(Utils.toBuffer(res));
+        bfr.flip();
+        final PromiseImpl<RadiusResponse, RadiusProcessingException> promise = PromiseImpl.create();
+        EventBus eventBus = new EventBus();
+
+        AccessRequestHandlerFactory accessRequestHandlerFactory = mock(AccessRequestHandlerFactory.class);
+        when(accessRequestHandlerFactory.getAccessRequestHandler(reqCtx)).thenReturn(new AcceptAllHandler());
+        final RadiusRequestHandler handler = new RadiusRequestHandler(accessRequestHandlerFactory, reqCtx, bfr,
+                bufferPool, promise, promise, eventBus);
+
+        // when
+        handler.run();
+        final RadiusResponse result = promise.getOrThrow();
+
+        // then
+        assertThat(result.getResponsePacket().getType()).isEqualTo(PacketType.ACCESS_ACCEPT);
+        final ByteBuffer reused = bufferPool.acquire();
+        assertThat(reused).isSameAs(bfr);
+        assertThat(reused.position()).isEqualTo(0);
+        assertThat(reused.remaining()).isEqualTo(RadiusServerConstants.MAX_PACKET_SIZE);
+    }
+
+    /**
+     * Test that when run is called with a packet holding a malformed attribute value then the packet is dropped
+     * without being passed to the handler or answered.
+     *
+     * @throws InterruptedException - when an interrupt occurs.
+     * @throws RadiusProcessingException - when something goes wrong processing a RADIUS packet.
+     * @throws UnknownHostException - if the host can't be determined
+     */
+    @Test(enabled = true)
+    public void testRunDropsPacketWithMalformedAttribute()
+            throws UnknownHostException, InterruptedException, RadiusProcessingException {
+
+        // given
+        final RadiusRequestContext reqCtx = mock(RadiusRequestContext.class);
+        final ClientConfig clientConfig = mock(ClientConfig.class);
+        String url = "forgerock.org";
+        InetSocketAddress socketAddress = new InetSocketAddress(Inet4Address.getByName(url), 6836);
+
+        when(reqCtx.getClientConfig()).thenReturn(clientConfig);
+        when(reqCtx.getSource()).thenReturn(socketAddress);
+        when(clientConfig.getName()).thenReturn("TestConfig");
+        when(clientConfig.isLogPackets()).thenReturn(false);
+
+        final ByteBuffer bfr = Utils.toBuffer(truncatedNasPort);
+        final PromiseImpl<RadiusResponse, RadiusProcessingException> promise = PromiseImpl.create();
+        EventBus eventBus = new EventBus();
+
+        AccessRequestHandlerFactory accessRequestHandlerFactory = mock(AccessRequestHandlerFactory.class);
+        when(accessRequestHandlerFactory.getAccessRequestHandler(reqCtx)).thenReturn(new AcceptAllHandler());
+        final RadiusRequestHandler handler = new RadiusRequestHandler(accessRequestHandlerFactory, reqCtx, bfr, promise,
+                promise, eventBus);
+
+        // when
+        handler.run();
+
+        // then
+        verify(accessRequestHandlerFactory, never()).getAccessRequestHandler(reqCtx);
+        verify(reqCtx, never()).send(isA(Packet.class));
+        assertThat(promise.isDone()).isFalse();
+    }
 }
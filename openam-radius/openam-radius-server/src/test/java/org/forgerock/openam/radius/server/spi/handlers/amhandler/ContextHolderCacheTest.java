@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 package org.forgerock.openam.radius.server.spi.handlers.amhandler;
 
@@ -125,4 +125,83 @@ public class ContextHolderCacheTest {
             assertThat(cache.get(i.toString())).isNotNull();
         }
     }
+
+    /**
+     * Test that expired entries are not returned.
+     *
+     * @see org.forgerock.openam.radius.server.spi.handlers.amhandler.ContextHolderCache#get
+     */
+    @Test
+    public void getDoesNotReturnExpiredValue() {
+        // Given
+        final ContextCacheSize cacheSize = mock(ContextCacheSize.class);
+        when(cacheSize.getDesiredCacheSize()).thenReturn(5);
+        final ContextHolderCache cache = new ContextHolderCache(cacheSize);
+        final ContextHolder cachedContext = cache.createCachedContextHolder();
+        cachedContext.setMillisExpiryPoint(System.currentTimeMillis() - 1);
+
+        // When
+        final ContextHolder cachedEntry = cache.get(cachedContext.getCacheKey());
+
+        // Then
+        assertThat(cachedEntry).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.getExpiredCount()).isEqualTo(1);
+        assertThat(cache.getEvictedCount()).isEqualTo(0);
+    }
+
+    /**
+     * Test that the oldest entries are evicted when the cache is full, and that removed entries are not counted as
+     * evicted.
+     *
+     * @see org.forgerock.openam.radius.server.spi.handlers.amhandler.ContextHolderCache#put
+     */
+    @Test
+    public void putEvictsOldestEntriesWhenFull() {
+        // Given
+        final ContextCacheSize cacheSize = mock(ContextCacheSize.class);
+        when(cacheSize.getDesiredCacheSize()).thenReturn(2);
+        final ContextHolderCache cache = new ContextHolderCache(cacheSize);
+        cache.put("0", new ContextHolder("0"));
+        cache.put("1", new ContextHolder("1"));
+        cache.remove("0");
+        cache.put("2", new ContextHolder("2"));
+
+        // When
+        cache.put("3", new ContextHolder("3"));
+
+        // Then
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("1")).isNull();
+        assertThat(cache.get("2")).isNotNull();
+        assertThat(cache.get("3")).isNotNull();
+        assertThat(cache.getEvictedCount()).isEqualTo(1);
+        assertThat(cache.getExpiredCount()).isEqualTo(0);
+    }
+
+    /**
+     * Test for the following method;.
+     *
+     * @see org.forgerock.openam.radius.server.spi.handlers.amhandler.ContextHolderCache#remove
+     */
+    @Test
+    public void removeDropsEntryFromInsertionOrder() {
+        // Given
+        final ContextCacheSize cacheSize = mock(ContextCacheSize.class);
+        when(cacheSize.getDesiredCacheSize()).thenReturn(5);
+        final ContextHolderCache cache = new ContextHolderCache(cacheSize);
+        cache.put("0", new ContextHolder("0"));
+        cache.put("1", new ContextHolder("1"));
+        cache.put("2", new ContextHolder("2"));
+        cache.put("2", new ContextHolder("2"));
+
+        // When
+        cache.remove("1");
+
+        // Then
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getQueuedCount()).isEqualTo(2);
+        assertThat(cache.get("0")).isNotNull();
+        assertThat(cache.get("2")).isNotNull();
+    }
 }
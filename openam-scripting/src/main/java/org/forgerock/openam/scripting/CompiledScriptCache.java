@@ -0,0 +1,283 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.scripting;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import com.iplanet.am.util.SystemProperties;
+import com.sun.identity.shared.stats.Stats;
+import com.sun.identity.shared.stats.StatsListener;
+import org.forgerock.util.Reject;
+import org.forgerock.util.encode.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache of compiled scripts for the engines of one {@link StandardScriptEngineManager}, keyed by the
+ * script language and a digest of the script source. Changed scripts get new keys, so an entry never has to be
+ * refreshed; entries for scripts which are no longer used are evicted when the cache is full or the script is
+ * updated.
+ * <p>
+ * Compiled scripts are tied to the sandbox of the engine that compiled them, so the cache is cleared whenever the
+ * engine configuration changes. It must therefore be registered with the engine manager after the sandbox
+ * configuration listener, which {@link StandardScriptEngineManager} guarantees by notifying listeners in the order
+ * they were added.
+ *
+ * @since 14.0.0
+ */
+public final class CompiledScriptCache implements StandardScriptEngineManager.ConfigurationListener, StatsListener {
+
+    /** System property for the maximum number of compiled scripts held per script context; zero disables it. */
+    public static final String MAX_SIZE_PROPERTY = "org.forgerock.openam.scripting.compiledScriptCacheSize";
+    /** The name of the stats file the cache statistics are printed to. */
+    public static final String STATS_NAME = "amScriptCache";
+
+    private static final int DEFAULT_MAX_SIZE = 500;
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompiledScriptCache.class);
+
+    private final String name;
+    private final StandardScriptEngineManager scriptEngineManager;
+    private final int maxSize;
+    private final ConcurrentMap<Key, CompiledScript> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong compileTime = new AtomicLong();
+
+    /**
+     * Creates a cache sized from the {@value #MAX_SIZE_PROPERTY} system property, registers it with the script
+     * engine manager and, if enabled, with the {@value #STATS_NAME} stats file.
+     *
+     * @param name The name of the cache, used in the statistics. May not be null.
+     * @param scriptEngineManager The script engine manager whose engines compile the scripts. May not be null.
+     * @return The registered cache.
+     */
+    public static CompiledScriptCache create(String name, StandardScriptEngineManager scriptEngineManager) {
+        CompiledScriptCache cache = new CompiledScriptCache(name, scriptEngineManager,
+                SystemProperties.getAsInt(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE));
+        scriptEngineManager.addConfigurationListener(cache);
+        Stats stats = Stats.getInstance(STATS_NAME);
+        if (stats.isEnabled()) {
+            stats.addStatsListener(cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Constructs a cache which is not yet registered with the script engine manager.
+     *
+     * @param name The name of the cache, used in the statistics. May not be null.
+     * @param scriptEngineManager The script engine manager whose engines compile the scripts. May not be null.
+     * @param maxSize The maximum number of compiled scripts held; zero or less disables the cache.
+     */
+    CompiledScriptCache(String name, StandardScriptEngineManager scriptEngineManager, int maxSize) {
+        Reject.ifNull(name, scriptEngineManager);
+        this.name = name;
+        this.scriptEngineManager = scriptEngineManager;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the compiled form of the script, compiling and caching it if it has not been compiled since the
+     * engine configuration last changed.
+     *
+     * @param script The script to compile. May not be null.
+     * @return The compiled script, or {@code null} if the cache is disabled or the script engine for the language
+     * of the script cannot compile scripts.
+     * @throws ScriptException If the script does not compile.
+     */
+    public CompiledScript getCompiledScript(ScriptObject script) throws ScriptException {
+        Reject.ifNull(script);
+        if (maxSize <= 0) {
+            return null;
+        }
+        Key key = new Key(script.getLanguage(), digest(script.getScript()));
+        CompiledScript compiledScript = entries.get(key);
+        if (compiledScript != null) {
+            hitCount.incrementAndGet();
+            return compiledScript;
+        }
+        missCount.incrementAndGet();
+        // Read before the engine is created, so that a script compiled in a sandbox replaced meanwhile is not kept
+        long compiledGeneration = generation.get();
+        compiledScript = compile(script);
+        if (compiledScript == null) {
+            return null;
+        }
+        if (entries.size() >= maxSize) {
+            makeSpace();
+        }
+        CompiledScript existing = entries.putIfAbsent(key, compiledScript);
+        if (existing != null) {
+            return existing;
+        }
+        if (generation.get() != compiledGeneration) {
+            entries.remove(key, compiledScript);
+        }
+        return compiledScript;
+    }
+
+    /**
+     * Compiles the script into the cache ahead of its first evaluation.
+     *
+     * @param script The script to compile. May not be null.
+     * @throws ScriptException If the script does not compile.
+     */
+    public void warm(ScriptObject script) throws ScriptException {
+        getCompiledScript(script);
+    }
+
+    /**
+     * Removes the compiled form of the given script source, if held.
+     *
+     * @param language The language of the script. May not be null.
+     * @param script The script source. May not be null.
+     */
+    public void evict(ScriptingLanguage language, String script) {
+        Reject.ifNull(language, script);
+        entries.remove(new Key(language, digest(script)));
+    }
+
+    /**
+     * Removes all compiled scripts.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    /**
+     * Clears the cache, as scripts compiled by engines with the previous configuration must not be evaluated again.
+     *
+     * @param newConfiguration the new script engine configuration. Never null.
+     */
+    @Override
+    public void onConfigurationChange(ScriptEngineConfiguration newConfiguration) {
+        clear();
+    }
+
+    @Override
+    public void printStats() {
+        Stats.getInstance(STATS_NAME).record(name + " compiled scripts: entries " + size()
+                + ", hits " + getHitCount() + ", misses " + getMissCount()
+                + ", compile time " + TimeUnit.NANOSECONDS.toMillis(getCompileTime()) + " ms");
+    }
+
+    /**
+     * @return The number of compiled scripts held.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of lookups which found a compiled script.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return The number of lookups which had to compile the script.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return The total time spent compiling scripts, in nanoseconds.
+     */
+    public long getCompileTime() {
+        return compileTime.get();
+    }
+
+    private CompiledScript compile(ScriptObject script) throws ScriptException {
+        ScriptEngine engine = script.getLanguage().getScriptEngine(scriptEngineManager);
+        if (!(engine instanceof Compilable)) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            return ((Compilable) engine).compile(script.getScript());
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            compileTime.addAndGet(elapsed);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Compiled script " + script.getName() + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+            }
+        }
+    }
+
+    private void makeSpace() {
+        // Drop arbitrary scripts; they are compiled again on their next evaluation.
+        for (Iterator<CompiledScript> iterator = entries.values().iterator();
+                entries.size() >= maxSize && iterator.hasNext();) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static String digest(String script) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.encode(digest.digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private static final class Key {
+
+        private final ScriptingLanguage language;
+        private final String digest;
+
+        private Key(ScriptingLanguage language, String digest) {
+            this.language = language;
+            this.digest = digest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return language.equals(that.language) && digest.equals(that.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * language.hashCode() + digest.hashCode();
+        }
+    }
+}
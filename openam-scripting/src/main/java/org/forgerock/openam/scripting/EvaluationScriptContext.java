@@ -0,0 +1,175 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.scripting;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+
+import org.codehaus.groovy.control.io.NullWriter;
+import org.forgerock.util.Reject;
+
+/**
+ * The script context of a single script evaluation, with engine and global scopes and no input or output.
+ * <p>
+ * Behaves as a {@link javax.script.SimpleScriptContext} whose reader has been set to null and writers to
+ * {@link NullWriter}, without first creating readers and writers for the standard streams, which
+ * {@code SimpleScriptContext} does each time it is constructed.
+ */
+final class EvaluationScriptContext implements ScriptContext {
+
+    private static final List<Integer> SCOPES = Collections.unmodifiableList(
+            Arrays.asList(ENGINE_SCOPE, GLOBAL_SCOPE));
+
+    private Bindings engineScope;
+    private Bindings globalScope;
+    private Reader reader;
+    // Groovy expects these writers to be non-null, so use the Groovy-supplied NullWriter instance
+    private Writer writer = NullWriter.DEFAULT;
+    private Writer errorWriter = NullWriter.DEFAULT;
+
+    /**
+     * Constructs the context with the given scopes.
+     *
+     * @param engineScope the variable bindings to use for the engine scope. May not be null.
+     * @param globalScope the variable bindings to use for the global scope. May be null.
+     */
+    EvaluationScriptContext(Bindings engineScope, Bindings globalScope) {
+        Reject.ifNull(engineScope);
+        this.engineScope = engineScope;
+        this.globalScope = globalScope;
+    }
+
+    @Override
+    public void setBindings(Bindings bindings, int scope) {
+        switch (scope) {
+        case ENGINE_SCOPE:
+            Reject.ifNull(bindings, "Engine scope Bindings may not be null.");
+            engineScope = bindings;
+            break;
+        case GLOBAL_SCOPE:
+            globalScope = bindings;
+            break;
+        default:
+            throw new IllegalArgumentException("Invalid scope value.");
+        }
+    }
+
+    @Override
+    public Bindings getBindings(int scope) {
+        switch (scope) {
+        case ENGINE_SCOPE:
+            return engineScope;
+        case GLOBAL_SCOPE:
+            return globalScope;
+        default:
+            throw new IllegalArgumentException("Invalid scope value.");
+        }
+    }
+
+    @Override
+    public void setAttribute(String name, Object value, int scope) {
+        checkName(name);
+        Bindings bindings = getBindings(scope);
+        if (bindings != null) {
+            bindings.put(name, value);
+        }
+    }
+
+    @Override
+    public Object getAttribute(String name, int scope) {
+        checkName(name);
+        Bindings bindings = getBindings(scope);
+        return bindings == null ? null : bindings.get(name);
+    }
+
+    @Override
+    public Object removeAttribute(String name, int scope) {
+        checkName(name);
+        Bindings bindings = getBindings(scope);
+        return bindings == null ? null : bindings.remove(name);
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        checkName(name);
+        if (engineScope.containsKey(name)) {
+            return engineScope.get(name);
+        }
+        if (globalScope != null && globalScope.containsKey(name)) {
+            return globalScope.get(name);
+        }
+        return null;
+    }
+
+    @Override
+    public int getAttributesScope(String name) {
+        checkName(name);
+        if (engineScope.containsKey(name)) {
+            return ENGINE_SCOPE;
+        }
+        if (globalScope != null && globalScope.containsKey(name)) {
+            return GLOBAL_SCOPE;
+        }
+        return -1;
+    }
+
+    @Override
+    public Writer getWriter() {
+        return writer;
+    }
+
+    @Override
+    public Writer getErrorWriter() {
+        return errorWriter;
+    }
+
+    @Override
+    public void setWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void setErrorWriter(Writer writer) {
+        this.errorWriter = writer;
+    }
+
+    @Override
+    public Reader getReader() {
+        return reader;
+    }
+
+    @Override
+    public void setReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public List<Integer> getScopes() {
+        return SCOPES;
+    }
+
+    private static void checkName(String name) {
+        Reject.ifNull(name);
+        Reject.ifTrue(name.isEmpty(), "name cannot be empty");
+    }
+}
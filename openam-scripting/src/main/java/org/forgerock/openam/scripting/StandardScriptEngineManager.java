@@ -29,7 +29,7 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.script.ScriptEngineManager;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
@@ -60,11 +60,11 @@ public final class StandardScriptEngineManager extends ScriptEngineManager {
     private volatile ScriptEngineConfiguration configuration = DEFAULT_CONFIGURATION;
 
     /**
-     * Set of listeners registered to receive updates whenever the configuration changes. Synchronized to ensure a
-     * consistent view of the set is seen when publishing events.
+     * Set of listeners registered to receive updates whenever the configuration changes, in the order they were
+     * registered. Synchronized to ensure a consistent view of the set is seen when publishing events.
      */
     private final Set<ConfigurationListener> listeners
-            = Collections.synchronizedSet(new HashSet<ConfigurationListener>());
+            = Collections.synchronizedSet(new LinkedHashSet<ConfigurationListener>());
 
     /**
      * Constructs and configures the engine manager.
@@ -130,7 +130,8 @@ public final class StandardScriptEngineManager extends ScriptEngineManager {
 
     /**
      * Adds an observer to be called whenever the current script engine configuration changes. The listener will be
-     * called immediately after the configuration is updated and is guaranteed to be passed a consistent (immutable)
+     * called immediately after the configuration is updated, after all listeners registered before it, and is
+     * guaranteed to be passed a consistent (immutable)
      * object representing the new configuration. If the configuration is updated by multiple threads in quick
      * succession, then the final configuration is guaranteed to be the configuration that was most recently published
      * to any subscribers.
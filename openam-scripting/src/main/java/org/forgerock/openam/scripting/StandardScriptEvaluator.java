@@ -11,23 +11,22 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014-2015 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.scripting;
 
-import org.codehaus.groovy.control.io.NullWriter;
 import org.forgerock.util.Reject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.script.Bindings;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
 import javax.script.SimpleBindings;
-import javax.script.SimpleScriptContext;
 
 /**
  * Evaluates scripts using the standard JSR 223 script engine framework.
@@ -47,15 +46,32 @@ public class StandardScriptEvaluator implements ScriptEvaluator {
     private static final Logger LOGGER = LoggerFactory.getLogger(StandardScriptEvaluator.class);
 
     private final StandardScriptEngineManager scriptEngineManager;
+    private final CompiledScriptCache compiledScriptCache;
 
     /**
-     * Constructs the script evaluator using the given JSR 223 script engine manager instance.
+     * Constructs the script evaluator using the given JSR 223 script engine manager instance, compiling scripts
+     * into a cache of its own.
      *
      * @param scriptEngineManager the script engine manager to use for creating script engines. May not be null.
      */
     public StandardScriptEvaluator(StandardScriptEngineManager scriptEngineManager) {
-        Reject.ifNull(scriptEngineManager);
+        this(scriptEngineManager, CompiledScriptCache.create(StandardScriptEvaluator.class.getSimpleName(),
+                Reject.checkNotNull(scriptEngineManager)));
+    }
+
+    /**
+     * Constructs the script evaluator using the given JSR 223 script engine manager instance and cache of scripts
+     * compiled by its engines.
+     *
+     * @param scriptEngineManager the script engine manager to use for creating script engines. May not be null.
+     * @param compiledScriptCache the cache of scripts compiled by the engines of the script engine manager.
+     *                            May not be null.
+     */
+    public StandardScriptEvaluator(StandardScriptEngineManager scriptEngineManager,
+            CompiledScriptCache compiledScriptCache) {
+        Reject.ifNull(scriptEngineManager, compiledScriptCache);
         this.scriptEngineManager = scriptEngineManager;
+        this.compiledScriptCache = compiledScriptCache;
     }
 
     /**
@@ -70,7 +86,8 @@ public class StandardScriptEvaluator implements ScriptEvaluator {
     /**
      * Evaluates scripts immediately using the configured JSR-223 script engine manager. This implementation should
      * be wrapped with a {@link org.forgerock.openam.scripting.ThreadPoolScriptEvaluator} if script interruption or
-     * timeouts are required.
+     * timeouts are required. Scripts are only compiled on their first evaluation, or when the engine configuration
+     * has changed since, if the script engine supports compilation.
      *
      * @param script the script to evaluate.
      * @param bindings any additional variable bindings to set before running the script.
@@ -87,11 +104,14 @@ public class StandardScriptEvaluator implements ScriptEvaluator {
             LOGGER.debug("Evaluating script: " + script);
         }
 
-        final ScriptEngine engine = getScriptEngineFor(script);
         final Bindings variableBindings = mergeBindings(script.getBindings(), bindings);
         final ScriptContext context = buildScriptContext(variableBindings);
 
-        return (T) engine.eval(script.getScript(), context);
+        final CompiledScript compiledScript = compiledScriptCache.getCompiledScript(script);
+        if (compiledScript != null) {
+            return (T) compiledScript.eval(context);
+        }
+        return (T) getScriptEngineFor(script).eval(script.getScript(), context);
     }
 
     /**
@@ -135,15 +155,8 @@ public class StandardScriptEvaluator implements ScriptEvaluator {
      * @return the configured script context.
      */
     private ScriptContext buildScriptContext(Bindings engineScope) {
-        final ScriptContext context = new SimpleScriptContext();
-        context.setBindings(engineScope, ScriptContext.ENGINE_SCOPE);
-        context.setBindings(scriptEngineManager.getBindings(), ScriptContext.GLOBAL_SCOPE);
-        // Replace reader/writer instances with null versions
-        context.setReader(null);
-        // Groovy expects these writers to be non-null, so use the Groovy-supplied NullWriter instance
-        context.setWriter(NullWriter.DEFAULT);
-        context.setErrorWriter(NullWriter.DEFAULT);
-        return context;
+        // No reader, and null writers which Groovy expects to be non-null
+        return new EvaluationScriptContext(engineScope, scriptEngineManager.getBindings());
     }
 
 }
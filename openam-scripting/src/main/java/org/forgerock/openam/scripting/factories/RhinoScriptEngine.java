@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.scripting.factories;
@@ -21,7 +21,6 @@ import org.mozilla.javascript.Context;
 import org.mozilla.javascript.RhinoException;
 import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
-import org.mozilla.javascript.ScriptableObject;
 
 import javax.script.AbstractScriptEngine;
 import javax.script.Bindings;
@@ -196,8 +195,7 @@ class RhinoScriptEngine extends AbstractScriptEngine implements Compilable {
      */
     private Scriptable getScope(final Context context, final ScriptContext scriptContext) {
         final Scriptable scope = new ScriptContextScope(scriptContext);
-        final ScriptableObject topLevel = context.initStandardObjects();
-        scope.setPrototype(topLevel);
+        scope.setPrototype(factory.createTopLevelScope(context));
         scope.put("context", scope, scriptContext);
         return scope;
     }
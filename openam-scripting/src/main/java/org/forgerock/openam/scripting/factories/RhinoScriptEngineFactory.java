@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.scripting.factories;
@@ -21,6 +21,10 @@ import org.forgerock.util.Reject;
 import org.mozilla.javascript.ClassShutter;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.LazilyLoadedCtor;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
 
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
@@ -42,6 +46,16 @@ public class RhinoScriptEngineFactory implements ScriptEngineFactory {
      * Optimisation level constant indicating that scripts should be fully interpreted and not compiled.
      */
     public static final int INTERPRETED = -1;
+
+    /**
+     * The top-level names of the Java packages and classes made available to scripts, as defined by
+     * {@code org.mozilla.javascript.ScriptRuntime#initStandardObjects}.
+     */
+    private static final String[] JAVA_TOP_LEVEL_NAMES = {
+        "Packages", "getClass", "java", "javax", "org", "com", "edu", "net"
+    };
+    private static final String JAVA_TOP_PACKAGE_CLASS = "org.mozilla.javascript.NativeJavaTopPackage";
+
     private final ContextFactory contextFactory;
 
     private final String version;
@@ -49,6 +63,7 @@ public class RhinoScriptEngineFactory implements ScriptEngineFactory {
 
     private volatile ClassShutter classShutter;
     private volatile int optimisationLevel = INTERPRETED;
+    private volatile ScriptableObject sharedScope;
 
     /**
      * Constructs a script engine factory using the given context factory and class-shutter. If non-null, the given
@@ -216,6 +231,38 @@ public class RhinoScriptEngineFactory implements ScriptEngineFactory {
         return context;
     }
 
+    /**
+     * Creates the top-level scope for one evaluation. The standard objects are inherited from a sealed scope shared
+     * by all evaluations, so that they are only initialised once and cannot be changed by one script to affect
+     * another. The Java packages are initialised afresh in each scope when first used, as packages remember the
+     * classes they have looked up, and so would otherwise keep classes allowed by a previous class shutter.
+     *
+     * @param context the current context, configured by {@link #getContext()}.
+     * @return a new scope for evaluating a script.
+     */
+    Scriptable createTopLevelScope(Context context) {
+        final ScriptableObject scope = new NativeObject();
+        scope.setPrototype(getSharedScope(context));
+        for (String name : JAVA_TOP_LEVEL_NAMES) {
+            new LazilyLoadedCtor(scope, name, JAVA_TOP_PACKAGE_CLASS, false);
+        }
+        return scope;
+    }
+
+    private ScriptableObject getSharedScope(Context context) {
+        ScriptableObject scope = sharedScope;
+        if (scope == null) {
+            synchronized (this) {
+                scope = sharedScope;
+                if (scope == null) {
+                    scope = context.initStandardObjects(null, true);
+                    sharedScope = scope;
+                }
+            }
+        }
+        return scope;
+    }
+
     /**
      * Releases the given context object after use.
      *
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014-2015 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.scripting.guice;
@@ -22,6 +22,8 @@ import static org.forgerock.openam.scripting.ScriptConstants.ScriptContext.*;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -35,6 +37,7 @@ import org.forgerock.http.Client;
 import org.forgerock.http.HttpApplicationException;
 import org.forgerock.http.client.RestletHttpClient;
 import org.forgerock.http.handler.HttpClientHandler;
+import org.forgerock.openam.scripting.CompiledScriptCache;
 import org.forgerock.openam.scripting.ScriptConstants;
 import org.forgerock.openam.scripting.ScriptEngineConfiguration;
 import org.forgerock.openam.scripting.ScriptEvaluator;
@@ -117,6 +120,7 @@ public class ScriptingGuiceModule extends AbstractModule {
      * thread pool to evaluate scripts (supporting script interruption), delegating to a sandboxed script evaluator.
      *
      * @param scriptEngineManager the script engine manager to use.
+     * @param compiledScriptCache the cache of scripts compiled by the engines of the script engine manager.
      * @param executorServiceFactory the factory for creating managed thread pools for script execution.
      * @return an appropriately configured script evaluator for use with scripted authentication.
      */
@@ -126,9 +130,10 @@ public class ScriptingGuiceModule extends AbstractModule {
     @Named(AUTHENTICATION_SERVER_SIDE_NAME)
     ScriptEvaluator getAuthenticationServerSideScriptEvaluator(
             @Named(AUTHENTICATION_SERVER_SIDE_NAME) StandardScriptEngineManager scriptEngineManager,
+            @Named(AUTHENTICATION_SERVER_SIDE_NAME) CompiledScriptCache compiledScriptCache,
             ExecutorServiceFactory executorServiceFactory) {
 
-        return createEvaluator(scriptEngineManager, executorServiceFactory);
+        return createEvaluator(scriptEngineManager, compiledScriptCache, executorServiceFactory);
     }
 
     /**
@@ -136,6 +141,7 @@ public class ScriptingGuiceModule extends AbstractModule {
      * thread pool to evaluate scripts (supporting script interruption), delegating to a sandboxed script evaluator.
      *
      * @param scriptEngineManager the script engine manager to use.
+     * @param compiledScriptCache the cache of scripts compiled by the engines of the script engine manager.
      * @param executorServiceFactory the factory for creating managed thread pools for script execution.
      * @return an appropriately configured script evaluator for use with scripted entitlement condition.
      */
@@ -145,9 +151,10 @@ public class ScriptingGuiceModule extends AbstractModule {
     @Named(POLICY_CONDITION_NAME)
     ScriptEvaluator getPoliyConditionScriptEvaluator(
             @Named(POLICY_CONDITION_NAME) StandardScriptEngineManager scriptEngineManager,
+            @Named(POLICY_CONDITION_NAME) CompiledScriptCache compiledScriptCache,
             ExecutorServiceFactory executorServiceFactory) {
 
-        return createEvaluator(scriptEngineManager, executorServiceFactory);
+        return createEvaluator(scriptEngineManager, compiledScriptCache, executorServiceFactory);
     }
 
     /**
@@ -155,6 +162,7 @@ public class ScriptingGuiceModule extends AbstractModule {
      * thread pool to evaluate scripts (supporting script interruption), delegating to a sandboxed script evaluator.
      *
      * @param scriptEngineManager the script engine manager to use.
+     * @param compiledScriptCache the cache of scripts compiled by the engines of the script engine manager.
      * @param executorServiceFactory the factory for creating managed thread pools for script execution.
      * @return an appropriately configured script evaluator for use with OIDC Claims scripts.
      */
@@ -164,12 +172,86 @@ public class ScriptingGuiceModule extends AbstractModule {
     @Named(OIDC_CLAIMS_NAME)
     ScriptEvaluator getOidcClaimsScriptEvaluator(
             @Named(OIDC_CLAIMS_NAME) StandardScriptEngineManager scriptEngineManager,
+            @Named(OIDC_CLAIMS_NAME) CompiledScriptCache compiledScriptCache,
             ExecutorServiceFactory executorServiceFactory) {
 
-        return createEvaluator(scriptEngineManager, executorServiceFactory);
+        return createEvaluator(scriptEngineManager, compiledScriptCache, executorServiceFactory);
+    }
+
+    /**
+     * Creates the cache of compiled scripted auth module scripts.
+     *
+     * @param scriptEngineManager the script engine manager whose engines compile the scripts.
+     * @return the cache of compiled scripts for scripted authentication.
+     */
+    @Provides
+    @Singleton
+    @Inject
+    @Named(AUTHENTICATION_SERVER_SIDE_NAME)
+    CompiledScriptCache getAuthenticationServerSideCompiledScriptCache(
+            @Named(AUTHENTICATION_SERVER_SIDE_NAME) StandardScriptEngineManager scriptEngineManager) {
+
+        return CompiledScriptCache.create(AUTHENTICATION_SERVER_SIDE_NAME, scriptEngineManager);
+    }
+
+    /**
+     * Creates the cache of compiled entitlement condition scripts.
+     *
+     * @param scriptEngineManager the script engine manager whose engines compile the scripts.
+     * @return the cache of compiled scripts for scripted entitlement conditions.
+     */
+    @Provides
+    @Singleton
+    @Inject
+    @Named(POLICY_CONDITION_NAME)
+    CompiledScriptCache getPolicyConditionCompiledScriptCache(
+            @Named(POLICY_CONDITION_NAME) StandardScriptEngineManager scriptEngineManager) {
+
+        return CompiledScriptCache.create(POLICY_CONDITION_NAME, scriptEngineManager);
+    }
+
+    /**
+     * Creates the cache of compiled OIDC Claims scripts.
+     *
+     * @param scriptEngineManager the script engine manager whose engines compile the scripts.
+     * @return the cache of compiled scripts for OIDC Claims.
+     */
+    @Provides
+    @Singleton
+    @Inject
+    @Named(OIDC_CLAIMS_NAME)
+    CompiledScriptCache getOidcClaimsCompiledScriptCache(
+            @Named(OIDC_CLAIMS_NAME) StandardScriptEngineManager scriptEngineManager) {
+
+        return CompiledScriptCache.create(OIDC_CLAIMS_NAME, scriptEngineManager);
+    }
+
+    /**
+     * Maps each script context evaluated on the server to the cache of its compiled scripts, so that the scripting
+     * service can compile scripts as they are saved and evict them once they are replaced.
+     *
+     * @param authenticationCache the cache of compiled scripted auth module scripts.
+     * @param policyConditionCache the cache of compiled entitlement condition scripts.
+     * @param oidcClaimsCache the cache of compiled OIDC Claims scripts.
+     * @return the compiled script caches by script context.
+     */
+    @Provides
+    @Singleton
+    @Inject
+    Map<ScriptContext, CompiledScriptCache> getCompiledScriptCaches(
+            @Named(AUTHENTICATION_SERVER_SIDE_NAME) CompiledScriptCache authenticationCache,
+            @Named(POLICY_CONDITION_NAME) CompiledScriptCache policyConditionCache,
+            @Named(OIDC_CLAIMS_NAME) CompiledScriptCache oidcClaimsCache) {
+
+        Map<ScriptContext, CompiledScriptCache> caches = new EnumMap<>(ScriptContext.class);
+        caches.put(AUTHENTICATION_SERVER_SIDE, authenticationCache);
+        caches.put(POLICY_CONDITION, policyConditionCache);
+        caches.put(OIDC_CLAIMS, oidcClaimsCache);
+        return caches;
     }
 
     private ThreadPoolScriptEvaluator createEvaluator(StandardScriptEngineManager scriptEngineManager,
+                                                      CompiledScriptCache compiledScriptCache,
                                                       ExecutorServiceFactory executorServiceFactory) {
 
         ScriptEngineConfiguration configuration = scriptEngineManager.getConfiguration();
@@ -182,7 +264,7 @@ public class ScriptingGuiceModule extends AbstractModule {
                         TimeUnit.SECONDS,
                         getThreadPoolQueue(configuration.getThreadPoolQueueSize())
                 ),
-                new StandardScriptEvaluator(scriptEngineManager));
+                new StandardScriptEvaluator(scriptEngineManager, compiledScriptCache));
     }
 
     private BlockingQueue<Runnable> getThreadPoolQueue(int size) {
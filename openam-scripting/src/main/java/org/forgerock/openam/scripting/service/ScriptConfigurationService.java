@@ -25,7 +25,10 @@ import com.google.inject.assistedinject.Assisted;
 import com.google.inject.name.Named;
 import com.sun.identity.entitlement.opensso.SubjectUtils;
 import org.forgerock.util.query.QueryFilter;
+import org.forgerock.openam.scripting.CompiledScriptCache;
+import org.forgerock.openam.scripting.ScriptConstants.ScriptContext;
 import org.forgerock.openam.scripting.ScriptException;
+import org.forgerock.openam.scripting.ScriptObject;
 import org.forgerock.openam.scripting.datastore.ScriptingDataStore;
 import org.forgerock.openam.scripting.datastore.ScriptingDataStoreFactory;
 import org.forgerock.util.Reject;
@@ -33,6 +36,7 @@ import org.slf4j.Logger;
 
 import javax.security.auth.Subject;
 import java.util.Date;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -47,6 +51,7 @@ public class ScriptConfigurationService implements ScriptingService {
     private final Subject subject;
     private final String realm;
     private final ScriptingDataStore dataStore;
+    private final Map<ScriptContext, CompiledScriptCache> compiledScriptCaches;
 
     /**
      * Construct a new instance of {@code ScriptConfigurationService}.
@@ -54,16 +59,19 @@ public class ScriptConfigurationService implements ScriptingService {
      * @param subject The subject requesting modification to the {@code ScriptConfiguration}.
      * @param realm The realm in which the {@code ScriptConfiguration} resides in.
      * @param dataStoreFactory A factory for providing new scripting data store instances.
+     * @param compiledScriptCaches The caches of compiled scripts for each script context evaluated on the server.
      */
     @Inject
     public ScriptConfigurationService(@Named("ScriptLogger") Logger logger,
                                       @Assisted Subject subject, @Assisted String realm,
-                                      ScriptingDataStoreFactory dataStoreFactory) {
-        Reject.ifNull(subject, realm);
+                                      ScriptingDataStoreFactory dataStoreFactory,
+                                      Map<ScriptContext, CompiledScriptCache> compiledScriptCaches) {
+        Reject.ifNull(subject, realm, compiledScriptCaches);
         this.logger = logger;
         this.subject = subject;
         this.realm = realm;
         this.dataStore = dataStoreFactory.create(subject, realm);
+        this.compiledScriptCaches = compiledScriptCaches;
     }
 
     @Override
@@ -72,13 +80,16 @@ public class ScriptConfigurationService implements ScriptingService {
         failIfNameExists(config.getName());
         final ScriptConfiguration updatedConfig = setMetaData(config);
         dataStore.save(updatedConfig);
+        warmCompiledScript(updatedConfig);
         return updatedConfig;
     }
 
     @Override
     public void delete(String uuid) throws ScriptException {
         failIfUuidDoesNotExist(uuid);
+        final ScriptConfiguration oldConfig = dataStore.get(uuid);
         dataStore.delete(uuid);
+        evictCompiledScript(oldConfig);
     }
 
     @Override
@@ -105,9 +116,41 @@ public class ScriptConfigurationService implements ScriptingService {
         }
         final ScriptConfiguration updatedConfig = setMetaData(config);
         dataStore.save(updatedConfig);
+        if (!oldConfig.getScript().equals(updatedConfig.getScript())
+                || oldConfig.getLanguage() != updatedConfig.getLanguage()
+                || oldConfig.getContext() != updatedConfig.getContext()) {
+            evictCompiledScript(oldConfig);
+        }
+        warmCompiledScript(updatedConfig);
         return updatedConfig;
     }
 
+    /**
+     * Compiles the saved script ahead of its first evaluation. Scripts which do not compile are left to fail when
+     * they are evaluated, as they would without the cache.
+     */
+    private void warmCompiledScript(ScriptConfiguration config) {
+        final CompiledScriptCache cache = compiledScriptCaches.get(config.getContext());
+        if (cache == null || config.getScript() == null) {
+            return;
+        }
+        try {
+            cache.warm(new ScriptObject(config.getName(), config.getScript(), config.getLanguage()));
+        } catch (javax.script.ScriptException | RuntimeException e) {
+            logger.debug("Unable to compile script {} in realm {}", config.getId(), realm, e);
+        }
+    }
+
+    /**
+     * Drops the compiled form of a script which has been replaced or deleted.
+     */
+    private void evictCompiledScript(ScriptConfiguration config) {
+        final CompiledScriptCache cache = compiledScriptCaches.get(config.getContext());
+        if (cache != null && config.getScript() != null && config.getLanguage() != null) {
+            cache.evict(config.getLanguage(), config.getScript());
+        }
+    }
+
     private void failIfNameExists(String name) throws ScriptException {
         if (dataStore.containsName(name)) {
             throw createAndLogDebug(logger, SCRIPT_NAME_EXISTS, name, realm);
@@ -0,0 +1,159 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.scripting;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CompiledScriptCacheTest {
+
+    private StandardScriptEngineManager scriptEngineManager;
+    private CompilableScriptEngine engine;
+    private ScriptingLanguage language;
+    private CompiledScriptCache cache;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        scriptEngineManager = new StandardScriptEngineManager();
+        engine = mock(CompilableScriptEngine.class);
+        given(engine.compile(anyString())).willAnswer(new Answer<CompiledScript>() {
+            @Override
+            public CompiledScript answer(InvocationOnMock invocation) {
+                return mock(CompiledScript.class);
+            }
+        });
+        language = mock(ScriptingLanguage.class);
+        given(language.getScriptEngine(scriptEngineManager)).willReturn(engine);
+        cache = new CompiledScriptCache("test", scriptEngineManager, 2);
+        scriptEngineManager.addConfigurationListener(cache);
+    }
+
+    @Test
+    public void shouldCompileScriptOnce() throws Exception {
+        // Given
+        CompiledScript compiledScript = cache.getCompiledScript(script("1 + 1"));
+
+        // When
+        CompiledScript result = cache.getCompiledScript(script("1 + 1"));
+
+        // Then
+        assertThat(result).isSameAs(compiledScript);
+        verify(engine, times(1)).compile("1 + 1");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCompileChangedScript() throws Exception {
+        // Given
+        CompiledScript compiledScript = cache.getCompiledScript(script("1 + 1"));
+
+        // When
+        CompiledScript result = cache.getCompiledScript(script("1 + 2"));
+
+        // Then
+        assertThat(result).isNotSameAs(compiledScript);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldCompileAgainAfterConfigurationChange() throws Exception {
+        // Given
+        cache.getCompiledScript(script("1 + 1"));
+
+        // When
+        scriptEngineManager.setConfiguration(ScriptEngineConfiguration.builder().build());
+        cache.getCompiledScript(script("1 + 1"));
+
+        // Then
+        verify(engine, times(2)).compile("1 + 1");
+    }
+
+    @Test
+    public void shouldCompileAgainAfterEviction() throws Exception {
+        // Given
+        cache.getCompiledScript(script("1 + 1"));
+
+        // When
+        cache.evict(language, "1 + 1");
+        cache.getCompiledScript(script("1 + 1"));
+
+        // Then
+        verify(engine, times(2)).compile("1 + 1");
+    }
+
+    @Test
+    public void shouldHoldNoMoreThanMaximumSize() throws Exception {
+        // When
+        cache.getCompiledScript(script("1 + 1"));
+        cache.getCompiledScript(script("1 + 2"));
+        cache.getCompiledScript(script("1 + 3"));
+
+        // Then
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotCompileScriptsForEnginesWhichCannotCompile() throws Exception {
+        // Given
+        given(language.getScriptEngine(scriptEngineManager)).willReturn(mock(ScriptEngine.class));
+
+        // When
+        CompiledScript result = cache.getCompiledScript(script("1 + 1"));
+
+        // Then
+        assertThat(result).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotCompileWhenDisabled() throws Exception {
+        // Given
+        cache = new CompiledScriptCache("test", scriptEngineManager, 0);
+
+        // When
+        CompiledScript result = cache.getCompiledScript(script("1 + 1"));
+
+        // Then
+        assertThat(result).isNull();
+        verify(engine, times(0)).compile(anyString());
+    }
+
+    private ScriptObject script(String source) {
+        return new ScriptObject("test", source, language);
+    }
+
+    /**
+     * Combined interface to ensure mock implements both.
+     */
+    private interface CompilableScriptEngine extends ScriptEngine, Compilable {
+
+    }
+}
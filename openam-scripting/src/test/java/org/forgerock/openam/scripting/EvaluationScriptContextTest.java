@@ -0,0 +1,93 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.scripting;
+
+import static javax.script.ScriptContext.ENGINE_SCOPE;
+import static javax.script.ScriptContext.GLOBAL_SCOPE;
+import static org.fest.assertions.Assertions.assertThat;
+
+import javax.script.Bindings;
+import javax.script.SimpleBindings;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class EvaluationScriptContextTest {
+
+    private Bindings engineScope;
+    private Bindings globalScope;
+    private EvaluationScriptContext context;
+
+    @BeforeMethod
+    public void setup() {
+        engineScope = new SimpleBindings();
+        globalScope = new SimpleBindings();
+        context = new EvaluationScriptContext(engineScope, globalScope);
+    }
+
+    @Test
+    public void shouldResolveAttributesFromEngineScopeBeforeGlobalScope() {
+        // Given
+        globalScope.put("shared", "global");
+        globalScope.put("globalOnly", "global");
+        engineScope.put("shared", "engine");
+
+        // Then
+        assertThat(context.getAttribute("shared")).isEqualTo("engine");
+        assertThat(context.getAttributesScope("shared")).isEqualTo(ENGINE_SCOPE);
+        assertThat(context.getAttribute("globalOnly")).isEqualTo("global");
+        assertThat(context.getAttributesScope("globalOnly")).isEqualTo(GLOBAL_SCOPE);
+        assertThat(context.getAttributesScope("missing")).isEqualTo(-1);
+    }
+
+    @Test
+    public void shouldSetAttributesInRequestedScope() {
+        // When
+        context.setAttribute("name", "value", GLOBAL_SCOPE);
+
+        // Then
+        assertThat(globalScope.get("name")).isEqualTo("value");
+        assertThat(engineScope.containsKey("name")).isFalse();
+    }
+
+    @Test
+    public void shouldHaveNoInputAndDiscardOutput() {
+        // Then
+        assertThat(context.getReader()).isNull();
+        assertThat(context.getWriter()).isNotNull();
+        assertThat(context.getErrorWriter()).isNotNull();
+        assertThat(context.getScopes()).containsOnly(ENGINE_SCOPE, GLOBAL_SCOPE);
+    }
+
+    @Test
+    public void shouldIgnoreMissingGlobalScope() {
+        // Given
+        context = new EvaluationScriptContext(engineScope, null);
+
+        // When
+        context.setAttribute("name", "value", GLOBAL_SCOPE);
+
+        // Then
+        assertThat(context.getAttribute("name")).isNull();
+        assertThat(context.getAttributesScope("name")).isEqualTo(-1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectUnknownScope() {
+        context.getBindings(300);
+    }
+}
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.scripting.factories;
@@ -21,6 +21,7 @@ import org.testng.annotations.Test;
 
 import javax.script.ScriptEngine;
 import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -100,4 +101,25 @@ public class RhinoScriptEngineTest {
         // Then
         assertThat(result).isEqualTo(12);
     }
-}
\ No newline at end of file
+
+    @Test(expectedExceptions = ScriptException.class)
+    public void shouldNotAllowStandardObjectsToBeModified() throws Exception {
+        // Given
+        String script = "String.prototype.trim = function() { return 'modified'; }";
+
+        // When
+        testEngine.eval(script);
+    }
+
+    @Test
+    public void shouldNotShareVariablesBetweenEvaluations() throws Exception {
+        // Given
+        testEngine.eval("var shared = 1;", new SimpleScriptContext());
+
+        // When
+        Object result = testEngine.eval("typeof shared", new SimpleScriptContext());
+
+        // Then
+        assertThat(result).isEqualTo("undefined");
+    }
+}
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 package org.forgerock.openam.scripting.service;
 
@@ -25,6 +25,8 @@ import static org.mockito.Mockito.when;
 import static org.testng.Assert.*;
 
 import org.forgerock.json.resource.ResourceException;
+import org.forgerock.openam.scripting.CompiledScriptCache;
+import org.forgerock.openam.scripting.ScriptConstants.ScriptContext;
 import org.forgerock.openam.scripting.ScriptException;
 import org.forgerock.openam.scripting.datastore.ScriptingDataStore;
 import org.forgerock.openam.scripting.datastore.ScriptingDataStoreFactory;
@@ -34,6 +36,7 @@ import org.testng.annotations.Test;
 
 import javax.security.auth.Subject;
 import java.security.Principal;
+import java.util.Collections;
 
 public class ScriptConfigurationServiceTest {
 
@@ -55,7 +58,8 @@ public class ScriptConfigurationServiceTest {
         dataStore = mock(ScriptingDataStore.class);
         ScriptingDataStoreFactory dataStoreFactory = mock(ScriptingDataStoreFactory.class);
         when(dataStoreFactory.create(any(Subject.class), anyString())).thenReturn(dataStore);
-        service = new ScriptConfigurationService(logger, subject, "/", dataStoreFactory);
+        service = new ScriptConfigurationService(logger, subject, "/", dataStoreFactory,
+                Collections.<ScriptContext, CompiledScriptCache>emptyMap());
     }
 
     @Test
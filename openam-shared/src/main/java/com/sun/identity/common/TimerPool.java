@@ -32,22 +32,34 @@ package com.sun.identity.common;
 import static org.forgerock.openam.utils.Time.*;
 
 import com.sun.identity.shared.debug.Debug;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.NoSuchElementException;
-import java.util.Set;
-import java.util.SortedMap;
-import java.util.Timer;
-import java.util.TreeMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * TimerPool is a scheduleable version of ThreadPool.
+ * <p>
+ * Tasks are grouped by the time they are scheduled to run at, and the groups
+ * are held in a hashed timing wheel of {@value #WHEEL_SIZE} slots, each
+ * covering {@value #TICK_MILLIS}ms. Scheduling a task does not take a lock
+ * unless the scheduler thread has to be woken early. The scheduler thread
+ * sleeps until the next occupied slot, and hands each group of tasks which
+ * is due to a worker thread.
  */
 
 public class TimerPool implements Triggerable {
 
     static final String SCHEDULER_SUFFIX = "-Scheduler";
+    /** The time (in ms) covered by each slot of the timing wheel. */
+    static final long TICK_MILLIS = 10;
+    /** The number of slots in the timing wheel; must be a power of two. */
+    static final int WHEEL_SIZE = 1024;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
     private int poolSize;
     private String name;
     private int busyThreadCount;
@@ -56,8 +68,14 @@ public class TimerPool implements Triggerable {
     private boolean daemon;
     private WorkerThread[] threads;
     private Scheduler scheduler;
-    private SortedMap taskList;
-    private Date nextRun;
+    // The head task of each group of tasks, by the time it is scheduled at.
+    private final ConcurrentMap<Long, HeadTaskRunnable> taskList;
+    private final ConcurrentLinkedQueue<HeadTaskRunnable>[] wheel;
+    // Groups due no later than the next tick to be processed.
+    private final ConcurrentLinkedQueue<HeadTaskRunnable> dueList;
+    // The last tick whose slot the scheduler has processed.
+    private volatile long processedTick;
+    private final TimerPoolStats stats;
     private Debug debug;
 
     /**
@@ -70,18 +88,26 @@ public class TimerPool implements Triggerable {
      * @param debug Debug object to send debugging message to.
      */
     
+    @SuppressWarnings("unchecked")
     public TimerPool(String name, int poolSize, boolean daemon, Debug debug) {
         this.name = name;
-	this.poolSize = poolSize;
+        this.poolSize = poolSize;
         this.busyThreadCount = 0;
         this.currentThreadCount = 0;
         this.daemon = daemon;
         this.debug = debug;
         this.shutdownThePool = false;
         this.threads = new WorkerThread[poolSize];
-        this.scheduler = new Scheduler(this);
+        this.taskList = new ConcurrentHashMap<Long, HeadTaskRunnable>();
+        this.wheel = new ConcurrentLinkedQueue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<HeadTaskRunnable>();
+        }
+        this.dueList = new ConcurrentLinkedQueue<HeadTaskRunnable>();
+        this.processedTick = currentTimeMillis() / TICK_MILLIS;
+        this.stats = new TimerPoolStats(name, this);
+        this.scheduler = new Scheduler(this, true);
         this.scheduler.start();
-        this.taskList = Collections.synchronizedSortedMap(new TreeMap());
         synchronized (this) {
             createThreads(poolSize);
         }
@@ -125,52 +151,159 @@ public class TimerPool implements Triggerable {
     }
     
     /**
-     * Runs the next timeout task in the sorted container.
+     * Runs the tasks which are due: those in the slots of the ticks since
+     * the last run, and those in the due list.
      */
     
     private void runNext() {
+        long now = currentTimeMillis();
+        long currentTick = now / TICK_MILLIS;
+        long fromTick = processedTick + 1;
+        if (currentTick - fromTick >= WHEEL_SIZE) {
+            // every slot is due, so visit each one once.
+            fromTick = currentTick - WHEEL_SIZE + 1;
+        }
+        // publish the tick before the slots are scanned, so that a group
+        // added to a slot concurrently is either seen by the scan or moved
+        // to the due list by addToWheel.
+        if (currentTick > processedTick) {
+            processedTick = currentTick;
+        }
+        for (long tick = fromTick; tick <= currentTick; tick++) {
+            Iterator<HeadTaskRunnable> iter =
+                wheel[(int) (tick & WHEEL_MASK)].iterator();
+            while (iter.hasNext()) {
+                HeadTaskRunnable head = iter.next();
+                long time = head.time.getTime();
+                // groups due in a later turn of the wheel stay in the slot.
+                if (time / TICK_MILLIS <= currentTick) {
+                    iter.remove();
+                    if (time <= now) {
+                        runTask(head);
+                    } else {
+                        dueList.add(head);
+                    }
+                }
+            }
+        }
+        List<HeadTaskRunnable> notDue = null;
+        HeadTaskRunnable head;
+        while ((head = dueList.poll()) != null) {
+            if (head.time.getTime() <= now) {
+                runTask(head);
+            } else {
+                if (notDue == null) {
+                    notDue = new ArrayList<HeadTaskRunnable>();
+                }
+                notDue.add(head);
+            }
+        }
+        if (notDue != null) {
+            dueList.addAll(notDue);
+        }
+    }
+
+    /**
+     * Hands a group of tasks to a worker thread, waiting for one to be free,
+     * unless the group has been cancelled or has already been run.
+     *
+     * @param head The head of the group of tasks
+     */
+
+    private void runTask(HeadTaskRunnable head) {
+        if (!taskList.remove(head.time.getTime(), head)) {
+            return;
+        }
         WorkerThread t = null;
-        HeadTaskRunnable task = null;
         synchronized (this) {
-            if (shutdownThePool) {
-                return;
-            } else {
-                while (busyThreadCount == poolSize) {
-                    try {
-                        wait();
-                        if (shutdownThePool) {
-                            return;
-                        }
-                    } catch(Exception ex) {
-                        if (debug != null) {
-                            debug.error("TimerPool:runNext() " + name, ex);
-                        }
+            while (busyThreadCount == poolSize) {
+                try {
+                    wait();
+                } catch(Exception ex) {
+                    if (debug != null) {
+                        debug.error("TimerPool:runNext() " + name, ex);
                     }
                 }
-                if (nextRun != null) {
-                    long now = currentTimeMillis();
-                    if (nextRun.getTime() <= now ) {
-                        if ((task = (HeadTaskRunnable) taskList.remove(nextRun)) 
-                            != null) {
-                            t = getAvailableThread();
-                        }
-                    }
-                    try {
-                        nextRun = (Date) taskList.firstKey();
-                        long delay = nextRun.getTime() - now;
-                        scheduler.setDelay((delay >= 0 ? delay : 0));
-                    } catch(NoSuchElementException ex) {
-                        nextRun = null;
-                        scheduler.setDelay(-1);
-                    }
+                if (shutdownThePool) {
+                    return;
                 }
             }
+            if (shutdownThePool) {
+                return;
+            }
+            t = getAvailableThread();
+        }
+        t.runTask(head);
+    }
+
+    /**
+     * Returns the time the scheduler should next wake up at: the start of
+     * the next tick if any group is in the due list, else the start of the
+     * tick of the next occupied slot, else never.
+     *
+     * @param currentTick The last tick processed
+     * @return The time (in ms) to wake up at, or <code>Long.MAX_VALUE</code>
+     */
+
+    private long nextWakeTime(long currentTick) {
+        if (!dueList.isEmpty()) {
+            return (currentTick + 1) * TICK_MILLIS;
+        }
+        for (long tick = currentTick + 1; tick <= currentTick + WHEEL_SIZE;
+            tick++) {
+            if (!wheel[(int) (tick & WHEEL_MASK)].isEmpty()) {
+                return tick * TICK_MILLIS;
+            }
         }
-        if ((t != null) && (task != null)) {
-            t.runTask(task);
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Puts a new group of tasks into the timing wheel.
+     *
+     * @param head The head of the group of tasks
+     */
+
+    private void addToWheel(HeadTaskRunnable head) {
+        long time = head.time.getTime();
+        long tick = time / TICK_MILLIS;
+        if (tick <= processedTick + 1) {
+            dueList.add(head);
+        } else {
+            ConcurrentLinkedQueue<HeadTaskRunnable> slot =
+                wheel[(int) (tick & WHEEL_MASK)];
+            slot.add(head);
+            // re-read the processed tick after the group is in the slot: if
+            // the scheduler has since reached the tick, its scan may have
+            // missed the slot, so move the group to the due list rather than
+            // leave it for the next turn of the wheel.
+            if ((tick <= processedTick) && slot.remove(head)) {
+                dueList.add(head);
+            }
         }
+        scheduler.wakeUpBefore(time);
     }
     
+    /**
+     * Returns the number of times which tasks are scheduled to run at.
+     *
+     * @return The number of scheduled times
+     */
+
+    int getScheduledCount() {
+        return taskList.size();
+    }
+
+    /**
+     * Returns the statistics of the tasks run by this TimerPool.
+     *
+     * @return The statistics
+     */
+
+    TimerPoolStats getStats() {
+        return stats;
+    }
+
     /**
      * Decreases the number of current threads in the TimerPool.
      */
@@ -187,7 +320,7 @@ public class TimerPool implements Triggerable {
     
     private synchronized void replaceScheduler() {
         scheduler.terminate();
-        scheduler = new Scheduler(this);
+        scheduler = new Scheduler(this, false);
         scheduler.start();
     }
     
@@ -254,24 +387,16 @@ public class TimerPool implements Triggerable {
                         }
                     }
                 } while (head != task.getHeadTask());
-                synchronized (taskList) {
-                    if((head = (HeadTaskRunnable) taskList.get(time)) == null) {
-                        task.setNext(null);
-                        taskList.put(time, new HeadTaskRunnable(this, task,
-                            time));        
+                Long key = time.getTime();
+                if ((head = taskList.get(key)) == null) {
+                    task.setNext(null);
+                    HeadTaskRunnable newHead =
+                        new HeadTaskRunnable(this, task, time);
+                    if ((head = taskList.putIfAbsent(key, newHead)) == null) {
+                        addToWheel(newHead);
                     }
                 }
-                if (head == null) {
-                    synchronized (this) {
-                        if ((nextRun == null) ||
-                            (time.getTime() < nextRun.getTime())) {
-                            nextRun = time;
-                            long delay = time.getTime() -
-                                    currentTimeMillis();
-                            scheduler.setWait(((delay < 0) ? 0 : delay));
-                        }
-                    }
-                } else {
+                if (head != null) {
                     if (head.acquireValidLock()) {
                         try {
                             task.setHeadTask(head);
@@ -310,8 +435,8 @@ public class TimerPool implements Triggerable {
      */
     
     public void trigger(Date time) {
-        // no need to synchronize for single operation
-        taskList.remove(time);
+        // the group stays in the timing wheel until its slot is processed.
+        taskList.remove(time.getTime());
     }
     
     /**
@@ -431,7 +556,11 @@ public class TimerPool implements Triggerable {
                                     localTask = localTask.next();
                                     // cut the connection before run the task.
                                     runTask.setNext(null);
+                                    long start = currentTimeMillis();
                                     runTask.run();
+                                    stats.taskRun(runTask, start -
+                                        localHeadTask.time.getTime(),
+                                        currentTimeMillis() - start);
                                     if (runTask.getRunPeriod() >= 0) {
                                         pool.schedule(runTask, new Date(
                                             localHeadTask
@@ -567,44 +696,39 @@ public class TimerPool implements Triggerable {
     private class Scheduler extends Thread {
         
         private volatile boolean shouldTerminate;
-        private boolean beingNotified;
-        private long delay;
+        // The time this Scheduler will next wake up at. Long.MAX_VALUE while
+        // it is running, so that any task scheduled meanwhile wakes it.
+        private volatile long wakeTime;
+        private final boolean registerStats;
         private TimerPool pool;
         
         /**
          * Constructor of Scheduler.
          *
          * @param pool The TimerPool the Scheduler belongs to
+         * @param registerStats Whether to register the statistics of the pool
          */
         
-        public Scheduler(TimerPool pool) {
+        public Scheduler(TimerPool pool, boolean registerStats) {
             this.shouldTerminate = false;
-            this.beingNotified = false;
-            this.delay = -1;
+            this.wakeTime = Long.MAX_VALUE;
+            this.registerStats = registerStats;
             this.pool = pool;
             setName(pool.name + SCHEDULER_SUFFIX);
         }
         
         /**
-         * Sets the time (in ms) to wait.
+         * Wakes this Scheduler if it would otherwise sleep past the given time.
          *
-         * @param delay The time (in ms) to wait
+         * @param time The time (in ms) a task is scheduled at
          */
         
-        public synchronized void setWait(long delay) {
-            this.delay = delay;
-            this.beingNotified = true;
-            this.notify();
-        }
-        
-        /**
-         * Sets the time (in ms) to wait without notification.
-         *
-         * @param delay The time (in ms) to wait
-         */
-        
-        public synchronized void setDelay(long delay) {
-            this.delay = delay;
+        public void wakeUpBefore(long time) {
+            if (time < wakeTime) {
+                synchronized (this) {
+                    this.notify();
+                }
+            }
         }
         
         /**
@@ -621,24 +745,30 @@ public class TimerPool implements Triggerable {
          */
         
         public void run() {
-            long localDelay = -1;
+            if (registerStats) {
+                // not in the constructor, which may hold the SystemTimer lock.
+                try {
+                    pool.stats.register();
+                } catch (RuntimeException ex) {
+                    if (debug != null) {
+                        debug.error("TimerPool$Scheduler:run() " + name, ex);
+                    }
+                }
+            }
             while (true) {
                 try {
+                    wakeTime = Long.MAX_VALUE;
+                    pool.runNext();
                     synchronized (this) {
                         if (!shouldTerminate) {
-                            if (delay > 0) {
-                                this.wait(delay);
-                                if (beingNotified) {
-                                    beingNotified = false;
-                                    continue;
-                                }
+                            long time = pool.nextWakeTime(pool.processedTick);
+                            wakeTime = time;
+                            if (time == Long.MAX_VALUE) {
+                                this.wait();
                             } else {
-                                if (delay < 0) {
-                                    this.wait();
-                                    if (beingNotified) {
-                                        beingNotified = false;
-                                        continue;
-                                    }
+                                long delay = time - currentTimeMillis();
+                                if (delay > 0) {
+                                    this.wait(delay);
                                 }
                             }
                         }
@@ -646,7 +776,6 @@ public class TimerPool implements Triggerable {
                     if (shouldTerminate) {
                         break;
                     }
-                    pool.runNext();
                 } catch (RuntimeException ex) {
                     pool.replaceScheduler();
                 } catch (Exception ex) {
@@ -660,4 +789,4 @@ public class TimerPool implements Triggerable {
             }
         }
     }
-} 
+}
@@ -0,0 +1,152 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.common;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.identity.shared.stats.Stats;
+import com.sun.identity.shared.stats.StatsListener;
+
+/**
+ * Statistics of the tasks run by a {@link TimerPool}, by type of task: how many have run, how long they took to run
+ * and how late they started. Printed to the {@value #STATS_NAME} stats file along with the number of times which
+ * tasks are scheduled to run at.
+ */
+public class TimerPoolStats implements StatsListener {
+
+    /** The name of the stats file. */
+    public static final String STATS_NAME = "amTimerPool";
+
+    private final String name;
+    private final TimerPool pool;
+    private final ConcurrentMap<String, TaskStats> taskStats = new ConcurrentHashMap<String, TaskStats>();
+
+    TimerPoolStats(String name, TimerPool pool) {
+        this.name = name;
+        this.pool = pool;
+    }
+
+    /**
+     * Adds these statistics as a listener of the stats service, if it is enabled. Must not be called while holding
+     * the lock on {@link SystemTimer}, as the stats service schedules itself using that timer.
+     */
+    void register() {
+        Stats stats = Stats.getInstance(STATS_NAME);
+        if (stats.isEnabled()) {
+            stats.addStatsListener(this);
+        }
+    }
+
+    /**
+     * Records a run of a task.
+     *
+     * @param task The task.
+     * @param lag How late, in milliseconds, the task started running.
+     * @param runTime How long, in milliseconds, the task took to run.
+     */
+    void taskRun(TaskRunnable task, long lag, long runTime) {
+        String type = task.getClass().getName();
+        TaskStats stats = taskStats.get(type);
+        if (stats == null) {
+            TaskStats newStats = new TaskStats();
+            stats = taskStats.putIfAbsent(type, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        stats.record(Math.max(0, lag), Math.max(0, runTime));
+    }
+
+    /**
+     * Returns the statistics of the given type of task.
+     *
+     * @param type The class name of the task.
+     * @return The statistics, or {@code null} if no task of the type has run.
+     */
+    TaskStats getTaskStats(String type) {
+        return taskStats.get(type);
+    }
+
+    @Override
+    public void printStats() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("TimerPool ").append(name).append(" Statistics")
+                .append("\n--------------------")
+                .append("\nScheduled times: ").append(pool.getScheduledCount());
+        for (Map.Entry<String, TaskStats> entry : new TreeMap<String, TaskStats>(taskStats).entrySet()) {
+            TaskStats stats = entry.getValue();
+            long runs = stats.getRunCount();
+            buffer.append("\n").append(entry.getKey())
+                    .append(": runs ").append(runs)
+                    .append(", mean run time ").append(runs == 0 ? 0 : stats.getTotalRunTime() / runs)
+                    .append("ms, max run time ").append(stats.getMaxRunTime())
+                    .append("ms, mean lag ").append(runs == 0 ? 0 : stats.getTotalLag() / runs)
+                    .append("ms, max lag ").append(stats.getMaxLag()).append("ms");
+        }
+        Stats.getInstance(STATS_NAME).record(buffer.toString());
+    }
+
+    /**
+     * The statistics of one type of task.
+     */
+    static final class TaskStats {
+
+        private final AtomicLong runCount = new AtomicLong();
+        private final AtomicLong totalRunTime = new AtomicLong();
+        private final AtomicLong maxRunTime = new AtomicLong();
+        private final AtomicLong totalLag = new AtomicLong();
+        private final AtomicLong maxLag = new AtomicLong();
+
+        private void record(long lag, long runTime) {
+            runCount.incrementAndGet();
+            totalRunTime.addAndGet(runTime);
+            totalLag.addAndGet(lag);
+            updateMax(maxRunTime, runTime);
+            updateMax(maxLag, lag);
+        }
+
+        private static void updateMax(AtomicLong max, long value) {
+            long current;
+            while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+                // retry
+            }
+        }
+
+        long getRunCount() {
+            return runCount.get();
+        }
+
+        long getTotalRunTime() {
+            return totalRunTime.get();
+        }
+
+        long getMaxRunTime() {
+            return maxRunTime.get();
+        }
+
+        long getTotalLag() {
+            return totalLag.get();
+        }
+
+        long getMaxLag() {
+            return maxLag.get();
+        }
+    }
+}
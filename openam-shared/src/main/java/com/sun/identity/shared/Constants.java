@@ -635,6 +635,19 @@ public interface Constants {
     static final String SESSION_REPOSITORY_COMPRESSION =
             "com.sun.identity.session.repository.enableCompression";
 
+    /**
+     * The codec used to compress sessions in the Session Repository, GZIP by default.
+     */
+    static final String SESSION_REPOSITORY_COMPRESSION_CODEC =
+            "com.sun.identity.session.repository.compressionCodec";
+
+    /**
+     * Sessions that are stored in binary rather than JSON take less storage space and are quicker to read and
+     * write, but cannot be read by servers which predate the binary format. JSON by default.
+     */
+    static final String SESSION_REPOSITORY_BINARY_SERIALISATION =
+            "com.sun.identity.session.repository.enableBinarySerialisation";
+
     /**
      * Additional compression option for Session Tokens.
      */
@@ -0,0 +1,191 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.common;
+
+import static org.fest.assertions.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TimerPoolTest {
+
+    private TimerPool pool;
+
+    @BeforeMethod
+    public void setup() {
+        pool = new TimerPool("TimerPoolTest", 2, true, null);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void shouldRunTasksInScheduledOrder() throws Exception {
+        // Given
+        Queue<Integer> order = new ConcurrentLinkedQueue<Integer>();
+        CountDownLatch done = new CountDownLatch(3);
+        long now = System.currentTimeMillis();
+
+        // When
+        pool.schedule(new RecordingTask(order, 3, done), new Date(now + 300));
+        pool.schedule(new RecordingTask(order, 1, done), new Date(now + 50));
+        pool.schedule(new RecordingTask(order, 2, done), new Date(now + 150));
+
+        // Then
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(new ArrayList<Integer>(order)).isEqualTo(Arrays.asList(1, 2, 3));
+        assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(now + 300);
+    }
+
+    @Test
+    public void shouldRunTaskScheduledMoreThanOneTurnOfTheWheelAhead() throws Exception {
+        // Given
+        CountDownLatch done = new CountDownLatch(1);
+        long delay = TimerPool.TICK_MILLIS * TimerPool.WHEEL_SIZE + 200;
+        long now = System.currentTimeMillis();
+
+        // When
+        pool.schedule(new RecordingTask(new ConcurrentLinkedQueue<Integer>(), 1, done), new Date(now + delay));
+
+        // Then
+        assertThat(done.await(TimerPool.TICK_MILLIS * TimerPool.WHEEL_SIZE, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(now + delay);
+    }
+
+    @Test
+    public void shouldRunTasksScheduledWhileTheWheelAdvancesWithinOneTurn() throws Exception {
+        // Given
+        final int tasksPerThread = 200;
+        final CountDownLatch done = new CountDownLatch(4 * tasksPerThread);
+        final Queue<Integer> order = new ConcurrentLinkedQueue<Integer>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < tasksPerThread; j++) {
+                        long time = System.currentTimeMillis() + TimerPool.TICK_MILLIS * (2 + j % 3);
+                        pool.schedule(new RecordingTask(order, j, done), new Date(time));
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+
+        // When
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Then
+        long turn = TimerPool.TICK_MILLIS * TimerPool.WHEEL_SIZE;
+        assertThat(done.await(turn / 2, TimeUnit.MILLISECONDS)).isTrue();
+    }
+
+    @Test
+    public void shouldNotRunCancelledTask() throws Exception {
+        // Given
+        Queue<Integer> order = new ConcurrentLinkedQueue<Integer>();
+        CountDownLatch done = new CountDownLatch(1);
+        long now = System.currentTimeMillis();
+        RecordingTask cancelled = new RecordingTask(order, 1, new CountDownLatch(1));
+        pool.schedule(cancelled, new Date(now + 100));
+        pool.schedule(new RecordingTask(order, 2, done), new Date(now + 200));
+
+        // When
+        cancelled.cancel();
+
+        // Then
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(new ArrayList<Integer>(order)).isEqualTo(Arrays.asList(2));
+        assertThat(pool.getScheduledCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRecordStatisticsOfTasksRun() throws Exception {
+        // Given
+        CountDownLatch done = new CountDownLatch(2);
+        Queue<Integer> order = new ConcurrentLinkedQueue<Integer>();
+
+        // When
+        pool.schedule(new RecordingTask(order, 1, done), 0);
+        pool.schedule(new RecordingTask(order, 2, done), 10);
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Then
+        TimerPoolStats.TaskStats stats = null;
+        for (int i = 0; i < 100 && (stats == null || stats.getRunCount() < 2); i++) {
+            Thread.sleep(10);
+            stats = pool.getStats().getTaskStats(RecordingTask.class.getName());
+        }
+        assertThat(stats.getRunCount()).isEqualTo(2);
+    }
+
+    private static final class RecordingTask extends GeneralTaskRunnable {
+
+        private final Queue<Integer> order;
+        private final int id;
+        private final CountDownLatch done;
+
+        private RecordingTask(Queue<Integer> order, int id, CountDownLatch done) {
+            this.order = order;
+            this.id = id;
+            this.done = done;
+        }
+
+        @Override
+        public boolean addElement(Object obj) {
+            return false;
+        }
+
+        @Override
+        public boolean removeElement(Object obj) {
+            return false;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+
+        @Override
+        public long getRunPeriod() {
+            return -1;
+        }
+
+        @Override
+        public void run() {
+            order.add(id);
+            done.countDown();
+        }
+    }
+}